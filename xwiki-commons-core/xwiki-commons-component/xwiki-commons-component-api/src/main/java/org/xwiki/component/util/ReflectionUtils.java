@@ -418,6 +418,40 @@ public static Type resolveType(Type type, Type childType)
         return resolvedType;
     }
 
+    /**
+     * Serialize the passed {@link Type} in the form supported by {@link #unserializeType(String, ClassLoader)}.
+     * 
+     * @param type the {@link Type} to serialize, only {@link Class} and {@link ParameterizedType} are supported
+     * @return the serialized form of the passed {@link Type}
+     * @throws IllegalArgumentException if the passed {@link Type} cannot be serialized
+     * @since 5.0M2
+     */
+    public static String serializeType(Type type)
+    {
+        StringBuilder builder = new StringBuilder();
+
+        if (type instanceof Class) {
+            builder.append(((Class< ? >) type).getName());
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+
+            builder.append(serializeType(parameterizedType.getRawType()));
+            builder.append('<');
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            for (int i = 0; i < arguments.length; ++i) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(serializeType(arguments[i]));
+            }
+            builder.append('>');
+        } else {
+            throw new IllegalArgumentException("Unsupported type [" + type + "]");
+        }
+
+        return builder.toString();
+    }
+
     /**
      * Retrieve a {@link Type} object from it's serialized form.
      *
@@ -75,6 +75,20 @@ public void testGetFieldWhenDoesntExist()
         }
     }
 
+    @Test
+    public void testSerializeType() throws Exception
+    {
+        Type annotatedType = new DefaultParameterizedType(null, ComponentRole.class, String.class);
+        Type mapType = new DefaultParameterizedType(null, java.util.Map.class, String.class, annotatedType);
+        String serializedType = ReflectionUtils.serializeType(mapType);
+
+        Assert.assertEquals(
+            "java.util.Map<java.lang.String,org.xwiki.component.descriptor.ComponentRole<java.lang.String>>",
+            serializedType);
+        Assert.assertEquals(mapType,
+            ReflectionUtils.unserializeType(serializedType, Thread.currentThread().getContextClassLoader()));
+    }
+
     @Test
     public void testUnserializeType() throws Exception
     {
@@ -35,11 +35,19 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import javax.inject.Provider;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.component.descriptor.ComponentDescriptor;
@@ -72,6 +80,13 @@
     @Deprecated
     public static final String COMPONENT_OVERRIDE_LIST = "META-INF/component-overrides.txt";
 
+    /**
+     * The system property which can be used to change the default {@link #setParallelism(int) parallelism}.
+     * 
+     * @since 5.0M2
+     */
+    public static final String PARALLELISM_PROPERTY = "xwiki.component.loader.parallelism";
+
     /**
      * The encoding used to parse component list files.
      */
@@ -82,6 +97,11 @@
      */
     private ComponentDescriptorFactory factory = new ComponentDescriptorFactory();
 
+    /**
+     * @see #setParallelism(int)
+     */
+    private int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, 1);
+
     /**
      * Logger to use for logging...
      */
@@ -97,14 +117,19 @@
     public void initialize(ComponentManager manager, ClassLoader classLoader)
     {
         try {
-            // Find all declared components by retrieving the list defined in COMPONENT_LIST.
-            List<ComponentDeclaration> componentDeclarations = getDeclaredComponents(classLoader, COMPONENT_LIST);
+            long startTime = System.currentTimeMillis();
+
+            // Find all declared components by retrieving the list defined in COMPONENT_LIST, along with their build
+            // time index when there's one.
+            ComponentIndex index = new ComponentIndex();
+            List<ComponentDeclaration> componentDeclarations =
+                getDeclaredComponents(classLoader, COMPONENT_LIST, index);
 
             // Find all the Component overrides and adds them to the bottom of the list as component declarations with
             // the highest priority of 0. This is purely for backward compatibility since the override files is now
             // deprecated.
             List<ComponentDeclaration> componentOverrideDeclarations =
-                getDeclaredComponents(classLoader, COMPONENT_OVERRIDE_LIST);
+                getDeclaredComponents(classLoader, COMPONENT_OVERRIDE_LIST, null);
             for (ComponentDeclaration componentOverrideDeclaration : componentOverrideDeclarations) {
                 // Since the old way to declare an override was to define it in both a component.txt and a
                 // component-overrides.txt file we first need to remove the override component declaration stored in
@@ -115,7 +140,10 @@ public void initialize(ComponentManager manager, ClassLoader classLoader)
                     .getImplementationClassName(), 0));
             }
 
-            initialize(manager, classLoader, componentDeclarations);
+            LOGGER.debug("Read [{}] component declarations ([{}] indexed) in [{}] ms", new Object[] {
+                componentDeclarations.size(), index.size(), System.currentTimeMillis() - startTime});
+
+            register(manager, classLoader, componentDeclarations, index);
         } catch (Exception e) {
             // Make sure we make the calling code fail in order to fail fast and prevent the application to start
             // if something is amiss.
@@ -146,28 +174,57 @@ public void initialize(ComponentManager manager, ClassLoader classLoader,
     public void register(ComponentManager manager, ClassLoader classLoader,
         List<ComponentDeclaration> componentDeclarations)
     {
+        register(manager, classLoader, componentDeclarations, null);
+    }
+
+    /**
+     * @param manager the component manager to use to dynamically register components
+     * @param classLoader the classloader to use to look for the Component list declaration file (
+     *            {@code META-INF/components.txt})
+     * @param componentDeclarations the declarations of components to register
+     * @param index the build time descriptors of the declared components or null to introspect all of them
+     */
+    private void register(ComponentManager manager, ClassLoader classLoader,
+        List<ComponentDeclaration> componentDeclarations, ComponentIndex index)
+    {
+        ExecutorService executor = null;
+        if (this.parallelism > 1 && componentDeclarations.size() > 1) {
+            executor =
+                Executors.newFixedThreadPool(this.parallelism, new BasicThreadFactory.Builder()
+                    .namingPattern("Component loader %d").daemon(true).build());
+        }
+
         try {
             // 2) For each component class name found, load its class and use introspection to find the necessary
             // annotations required to create a Component Descriptor.
+            long startTime = System.currentTimeMillis();
+
+            List<Class< ? >> componentClasses = loadComponentClasses(classLoader, componentDeclarations, executor);
+
+            long loadedTime = System.currentTimeMillis();
+
+            List<List<ComponentDescriptor< ? >>> componentDescriptors =
+                createComponentDescriptors(componentClasses, index, executor);
+
+            long createdTime = System.currentTimeMillis();
+
+            // If there's a already a existing role/hint in the list of descriptors then decide which one to keep by
+            // looking at their priorities. This is always done in the order of the declarations so that the result
+            // does not depend on the order in which the descriptors have been created.
             Map<RoleHint< ? >, ComponentDescriptor< ? >> descriptorMap =
                 new HashMap<RoleHint< ? >, ComponentDescriptor< ? >>();
             Map<RoleHint< ? >, Integer> priorityMap = new HashMap<RoleHint< ? >, Integer>();
 
-            for (ComponentDeclaration componentDeclaration : componentDeclarations) {
-                Class< ? > componentClass = classLoader.loadClass(componentDeclaration.getImplementationClassName());
+            for (int i = 0; i < componentDeclarations.size(); ++i) {
+                ComponentDeclaration componentDeclaration = componentDeclarations.get(i);
 
-                // Look for ComponentRole annotations and register one component per ComponentRole found
-                for (Type componentRoleType : findComponentRoleTypes(componentClass)) {
-                    for (ComponentDescriptor< ? > componentDescriptor : this.factory.createComponentDescriptors(
-                        componentClass, componentRoleType)) {
-                        // If there's already a existing role/hint in the list of descriptors then decide which one
-                        // to keep by looking at their priorities. Highest priority wins (i.e. lowest integer value).
-                        RoleHint< ? > roleHint =
-                            new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
+                for (ComponentDescriptor< ? > componentDescriptor : componentDescriptors.get(i)) {
+                    // Highest priority wins (i.e. lowest integer value).
+                    RoleHint< ? > roleHint =
+                        new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
 
-                        addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
-                            true);
-                    }
+                    addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
+                        true);
                 }
             }
 
@@ -175,11 +232,148 @@ public void register(ComponentManager manager, ClassLoader classLoader,
             for (ComponentDescriptor< ? > descriptor : descriptorMap.values()) {
                 manager.registerComponent(descriptor);
             }
+
+            LOGGER.debug(
+                "Registered [{}] components in [{}] ms (loading classes: [{}] ms, creating descriptors: [{}] ms, "
+                    + "registering descriptors: [{}] ms)",
+                new Object[] {descriptorMap.size(), System.currentTimeMillis() - startTime, loadedTime - startTime,
+                createdTime - loadedTime, System.currentTimeMillis() - createdTime});
         } catch (Exception e) {
             // Make sure we make the calling code fail in order to fail fast and prevent the application to start
             // if something is amiss.
             throw new RuntimeException("Failed to dynamically load components with annotations", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @param classLoader the classloader to use to load the component implementations
+     * @param componentDeclarations the declarations of components to load
+     * @param executor the executor to use to load the classes in parallel or null to load them in the current thread
+     * @return the component implementation classes, in the same order as the declarations
+     * @throws Exception when failing to load a class
+     */
+    private List<Class< ? >> loadComponentClasses(final ClassLoader classLoader,
+        List<ComponentDeclaration> componentDeclarations, ExecutorService executor) throws Exception
+    {
+        List<Callable<Class< ? >>> tasks = new ArrayList<Callable<Class< ? >>>(componentDeclarations.size());
+        for (final ComponentDeclaration componentDeclaration : componentDeclarations) {
+            tasks.add(new Callable<Class< ? >>()
+            {
+                @Override
+                public Class< ? > call() throws Exception
+                {
+                    return classLoader.loadClass(componentDeclaration.getImplementationClassName());
+                }
+            });
         }
+
+        return execute(tasks, executor);
+    }
+
+    /**
+     * @param componentClasses the component implementation classes
+     * @param index the build time descriptors of the component implementations, can be null
+     * @param executor the executor to use to create the descriptors in parallel or null to create them in the current
+     *            thread
+     * @return the descriptors of each component implementation class, in the same order as the classes
+     * @throws Exception when failing to create a descriptor
+     */
+    private List<List<ComponentDescriptor< ? >>> createComponentDescriptors(List<Class< ? >> componentClasses,
+        final ComponentIndex index, ExecutorService executor) throws Exception
+    {
+        List<Callable<List<ComponentDescriptor< ? >>>> tasks =
+            new ArrayList<Callable<List<ComponentDescriptor< ? >>>>(componentClasses.size());
+        for (final Class< ? > componentClass : componentClasses) {
+            tasks.add(new Callable<List<ComponentDescriptor< ? >>>()
+            {
+                @Override
+                public List<ComponentDescriptor< ? >> call()
+                {
+                    if (index != null) {
+                        try {
+                            List<ComponentDescriptor< ? >> descriptors = index.getComponentDescriptors(componentClass);
+                            if (descriptors != null) {
+                                return descriptors;
+                            }
+                        } catch (Exception e) {
+                            LOGGER.debug("Failed to read the indexed descriptors of component [{}], introspecting it",
+                                componentClass.getName(), e);
+                        }
+                    }
+
+                    List<ComponentDescriptor< ? >> descriptors = new ArrayList<ComponentDescriptor< ? >>();
+
+                    // Look for ComponentRole annotations and register one component per ComponentRole found
+                    for (Type componentRoleType : findComponentRoleTypes(componentClass)) {
+                        for (ComponentDescriptor< ? > descriptor : factory.createComponentDescriptors(componentClass,
+                            componentRoleType)) {
+                            descriptors.add(descriptor);
+                        }
+                    }
+
+                    return descriptors;
+                }
+            });
+        }
+
+        return execute(tasks, executor);
+    }
+
+    /**
+     * @param <T> the type of the results
+     * @param tasks the tasks to execute
+     * @param executor the executor to use to execute the tasks in parallel or null to execute them in the current
+     *            thread
+     * @return the results of the tasks, in the same order as the tasks
+     * @throws Exception the exception thrown by the first failing task
+     */
+    private <T> List<T> execute(List<Callable<T>> tasks, ExecutorService executor) throws Exception
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+
+        if (executor != null) {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+
+                    throw e;
+                }
+            }
+        } else {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * @param parallelism the number of threads to use to load the component classes and create their descriptors, 1
+     *            (the default unless the {@value #PARALLELISM_PROPERTY} system property is set) means that everything
+     *            is done in the calling thread. The result of the registration is the same whatever the parallelism.
+     * @since 5.0M2
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of threads to use to load the component classes and create their descriptors
+     * @since 5.0M2
+     */
+    public int getParallelism()
+    {
+        return this.parallelism;
     }
 
     private void addComponent(Map<RoleHint< ? >, ComponentDescriptor< ? >> descriptorMap,
@@ -395,30 +589,84 @@ public Set<Type> findComponentRoleTypes(Class< ? > componentClass, Type[] parame
      * 
      * @param classLoader the classloader to use to find the resources
      * @param location the name of the resources to look for
+     * @param index the index where to load the build time descriptors found next to the resources, null to ignore
+     *            them
      * @return the list of component implementation class names
      * @throws IOException in case of an error loading the component list resource
      * @since 3.3M1
      */
-    private List<ComponentDeclaration> getDeclaredComponents(ClassLoader classLoader, String location)
-        throws IOException
+    private List<ComponentDeclaration> getDeclaredComponents(ClassLoader classLoader, String location,
+        ComponentIndex index) throws IOException
     {
         List<ComponentDeclaration> annotatedClassNames = new ArrayList<ComponentDeclaration>();
         Enumeration<URL> urls = classLoader.getResources(location);
         while (urls.hasMoreElements()) {
             URL url = urls.nextElement();
 
-            InputStream componentListStream = url.openStream();
+            CheckedInputStream componentListStream = new CheckedInputStream(url.openStream(), new CRC32());
 
+            List<ComponentDeclaration> declarations;
             try {
-                annotatedClassNames.addAll(getDeclaredComponents(componentListStream));
+                declarations = getDeclaredComponents(componentListStream);
             } finally {
                 componentListStream.close();
             }
+            annotatedClassNames.addAll(declarations);
+
+            if (index != null) {
+                loadIndex(index, url, componentListStream.getChecksum().getValue(), declarations);
+            }
         }
 
         return annotatedClassNames;
     }
 
+    /**
+     * Load the build time descriptors located next to the passed component list, if any.
+     * 
+     * @param index the index where to load the descriptors
+     * @param componentListURL the component list file
+     * @param checksum the checksum of the component list file
+     * @param declarations the components declared in the component list file
+     */
+    private void loadIndex(ComponentIndex index, URL componentListURL, long checksum,
+        List<ComponentDeclaration> declarations)
+    {
+        URL indexURL;
+        InputStream indexStream;
+        try {
+            indexURL = new URL(componentListURL, ComponentIndex.INDEX_FILE);
+            indexStream = indexURL.openStream();
+        } catch (IOException e) {
+            // No index, the components will be introspected
+            return;
+        }
+
+        try {
+            if (ComponentIndex.isOlderThanClasses(indexURL, declarations)
+                || !index.load(indexStream, checksum, getComponentDependencyFactoryNames())) {
+                LOGGER.debug("Ignoring stale component index [{}]", indexURL);
+            }
+        } catch (IOException e) {
+            getLogger().warn("Failed to read component index [{}], the components will be introspected", indexURL, e);
+        } finally {
+            try {
+                indexStream.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    /**
+     * @return the class names of the Component Dependency Factories used to create the component descriptors
+     * @since 5.0M2
+     */
+    List<String> getComponentDependencyFactoryNames()
+    {
+        return this.factory.getComponentDependencyFactoryNames();
+    }
+
     /**
      * Get all components listed in the passed resource stream. The format is:
      * {@code (priority level):(fully qualified component implementation name)}.
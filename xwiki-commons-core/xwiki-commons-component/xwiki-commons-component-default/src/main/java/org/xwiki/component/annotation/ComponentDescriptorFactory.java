@@ -47,9 +47,39 @@
      * Load all Component Descriptor Factories implementations using the JDK's Service Loader facility. Note that we
      * cannot use Components to do this since it would be a chicken and egg issue since this factory class is used to
      * initialize Components...
+     * <p>
+     * The factories are loaded once and copied in a list since {@link ServiceLoader} is not thread safe and descriptors
+     * can be created from several threads (see {@link ComponentAnnotationLoader#setParallelism(int)}).
      */
-    private ServiceLoader<ComponentDependencyFactory> componentDependencyFactories = ServiceLoader
-        .load(ComponentDependencyFactory.class);
+    private List<ComponentDependencyFactory> componentDependencyFactories = loadComponentDependencyFactories();
+
+    /**
+     * @return the Component Dependency Factories found using the JDK's Service Loader facility
+     */
+    private static List<ComponentDependencyFactory> loadComponentDependencyFactories()
+    {
+        List<ComponentDependencyFactory> factories = new ArrayList<ComponentDependencyFactory>();
+        for (ComponentDependencyFactory factory : ServiceLoader.load(ComponentDependencyFactory.class)) {
+            factories.add(factory);
+        }
+
+        return factories;
+    }
+
+    /**
+     * @return the class names of the Component Dependency Factories in use, in the order they are tried; the created
+     *         descriptors depend on them so this is used to check that a {@link ComponentIndex} is still valid
+     * @since 5.0M2
+     */
+    List<String> getComponentDependencyFactoryNames()
+    {
+        List<String> names = new ArrayList<String>(this.componentDependencyFactories.size());
+        for (ComponentDependencyFactory factory : this.componentDependencyFactories) {
+            names.add(factory.getClass().getName());
+        }
+
+        return names;
+    }
 
     /**
      * Create component descriptors for the passed component implementation class and component role class. There can be
@@ -0,0 +1,436 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.descriptor.DefaultComponentDependency;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Component descriptors computed at build time (see {@link ComponentIndexGenerator}) and stored next to the
+ * {@code META-INF/components.txt} file they have been computed from, so that {@link ComponentAnnotationLoader} doesn't
+ * have to introspect the annotations of the component implementations when starting.
+ * <p>
+ * The index is a UTF-8 text file where each line is made of URL encoded fields separated by {@code :}:
+ * <ul>
+ * <li>{@code version:<format version>}</li>
+ * <li>{@code checksum:<CRC32 of the components.txt file the index has been generated from>}</li>
+ * <li>{@code factories:<the ComponentDependencyFactory implementations used to create the descriptors>}</li>
+ * <li>{@code component:<implementation class name>} followed by the descriptors of that implementation</li>
+ * <li>{@code descriptor:<role type>:<role hint>:<instantiation strategy>} followed by its dependencies</li>
+ * <li>{@code dependency:<field name>:<role type>:<role hint>:<hints>}</li>
+ * </ul>
+ * An index is ignored as a whole when any of the version, the checksum or the factories doesn't match the runtime ones
+ * or when it cannot be parsed. An index located in a directory is also ignored when the class file of a declared
+ * component is more recent than it (see {@link #isOlderThanClasses(URL, List)}). These checks are done once per index
+ * when loading it, the class files of the components are not read.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+class ComponentIndex
+{
+    /**
+     * The name of the index file, relative to the {@link ComponentAnnotationLoader#COMPONENT_LIST} file it indexes.
+     */
+    static final String INDEX_FILE = "components.idx";
+
+    /**
+     * The version of the index format.
+     */
+    private static final String VERSION = "3";
+
+    /**
+     * The encoding of the index file.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The separator of the fields of a line.
+     */
+    private static final String SEPARATOR = ":";
+
+    /**
+     * The separator of the elements of a list field.
+     */
+    private static final String LIST_SEPARATOR = ",";
+
+    /**
+     * The first character of comment lines.
+     */
+    private static final String COMMENT = "#";
+
+    /**
+     * The key of the line containing the version of the index format.
+     */
+    private static final String VERSION_KEY = "version";
+
+    /**
+     * The key of the line containing the checksum of the indexed component list.
+     */
+    private static final String CHECKSUM_KEY = "checksum";
+
+    /**
+     * The key of the line containing the Component Dependency Factories used to create the descriptors.
+     */
+    private static final String FACTORIES_KEY = "factories";
+
+    /**
+     * The key of the line containing the start of the descriptors of a component implementation.
+     */
+    private static final String COMPONENT_KEY = "component";
+
+    /**
+     * The key of the line containing the component descriptor.
+     */
+    private static final String DESCRIPTOR_KEY = "descriptor";
+
+    /**
+     * The key of the line containing the component dependency.
+     */
+    private static final String DEPENDENCY_KEY = "dependency";
+
+    /**
+     * The number of fields of a component line.
+     */
+    private static final int COMPONENT_FIELDS = 2;
+
+    /**
+     * The number of fields of a descriptor line.
+     */
+    private static final int DESCRIPTOR_FIELDS = 4;
+
+    /**
+     * The number of fields of a dependency line.
+     */
+    private static final int DEPENDENCY_FIELDS = 5;
+
+    /**
+     * The descriptors and dependencies lines of each indexed component implementation, indexed by implementation class
+     * name. The lines are only parsed when the descriptors are requested.
+     */
+    private final Map<String, List<String[]>> entries = new LinkedHashMap<String, List<String[]>>();
+
+    /**
+     * @return the number of indexed component implementations
+     */
+    public int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Add the descriptors of the passed component implementation to the index. Descriptors which cannot be restored
+     * identically from the index (for example because one of the types cannot be serialized) are not indexed and the
+     * loader falls back on introspection for them.
+     * 
+     * @param implementation the component implementation class
+     * @param descriptors the descriptors created by introspection for the passed implementation
+     * @return true if the descriptors have been indexed
+     */
+    public boolean add(Class< ? > implementation, List<ComponentDescriptor> descriptors)
+    {
+        List<String[]> lines = new ArrayList<String[]>();
+
+        try {
+            for (ComponentDescriptor< ? > descriptor : descriptors) {
+                lines.add(new String[] {DESCRIPTOR_KEY, ReflectionUtils.serializeType(descriptor.getRoleType()),
+                    descriptor.getRoleHint(), descriptor.getInstantiationStrategy().name()});
+
+                for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+                    lines.add(new String[] {DEPENDENCY_KEY, dependency.getName(),
+                        ReflectionUtils.serializeType(dependency.getRoleType()), dependency.getRoleHint(),
+                        StringUtils.join(dependency.getHints(), LIST_SEPARATOR)});
+                }
+            }
+
+            this.entries.put(implementation.getName(), lines);
+
+            // Make sure what's read from the index is exactly what introspection produces
+            if (descriptors.equals(getComponentDescriptors(implementation))) {
+                return true;
+            }
+        } catch (Exception e) {
+            // Not indexable
+        }
+
+        this.entries.remove(implementation.getName());
+
+        return false;
+    }
+
+    /**
+     * @param implementation the component implementation class
+     * @return the indexed descriptors of the passed component implementation or null if it's not indexed
+     * @throws ClassNotFoundException when failing to resolve a type of the index
+     * @throws IllegalArgumentException when the index contains an invalid line
+     */
+    public List<ComponentDescriptor< ? >> getComponentDescriptors(Class< ? > implementation)
+        throws ClassNotFoundException
+    {
+        List<String[]> lines = this.entries.get(implementation.getName());
+        if (lines == null) {
+            return null;
+        }
+
+        ClassLoader classLoader = implementation.getClassLoader();
+
+        List<ComponentDescriptor< ? >> descriptors = new ArrayList<ComponentDescriptor< ? >>();
+        DefaultComponentDescriptor descriptor = null;
+        for (String[] line : lines) {
+            if (line[0].equals(DESCRIPTOR_KEY)) {
+                checkLine(line, DESCRIPTOR_FIELDS);
+                descriptor = new DefaultComponentDescriptor();
+                descriptor.setImplementation(implementation);
+                descriptor.setRoleType(ReflectionUtils.unserializeType(line[1], classLoader));
+                descriptor.setRoleHint(line[2]);
+                descriptor.setInstantiationStrategy(ComponentInstantiationStrategy.valueOf(line[3]));
+                descriptors.add(descriptor);
+            } else if (line[0].equals(DEPENDENCY_KEY) && descriptor != null) {
+                checkLine(line, DEPENDENCY_FIELDS);
+                DefaultComponentDependency dependency = new DefaultComponentDependency();
+                dependency.setName(line[1]);
+                dependency.setRoleType(ReflectionUtils.unserializeType(line[2], classLoader));
+                dependency.setRoleHint(line[3]);
+                if (line[4] != null) {
+                    dependency.setHints(StringUtils.split(line[4], LIST_SEPARATOR));
+                }
+                descriptor.addComponentDependency(dependency);
+            } else {
+                throw new IllegalArgumentException("Unexpected component index line " + Arrays.toString(line));
+            }
+        }
+
+        return descriptors;
+    }
+
+    /**
+     * @param line the fields of a line
+     * @param fields the expected number of fields
+     * @throws IllegalArgumentException when the line doesn't have the expected number of fields
+     */
+    private void checkLine(String[] line, int fields)
+    {
+        if (line.length != fields) {
+            throw new IllegalArgumentException("Invalid component index line " + Arrays.toString(line));
+        }
+    }
+
+    /**
+     * The index of a jar is generated before the jar is packaged so it can't be older than the classes it contains.
+     * Only the index of a directory (e.g. the build output directory used by an IDE) can be left behind when classes
+     * are recompiled without regenerating it.
+     * 
+     * @param indexURL the URL of the index file
+     * @param declarations the components declared in the component list the index has been generated from
+     * @return true if the class file of a declared component located next to the index is more recent than the index
+     */
+    static boolean isOlderThanClasses(URL indexURL, List<ComponentDeclaration> declarations)
+    {
+        if (!"file".equals(indexURL.getProtocol())) {
+            return false;
+        }
+
+        File indexFile;
+        try {
+            indexFile = new File(indexURL.toURI());
+        } catch (URISyntaxException e) {
+            return true;
+        }
+
+        long indexDate = indexFile.lastModified();
+        // The index is located in the META-INF directory of the class directory
+        File classDirectory = indexFile.getParentFile().getParentFile();
+        for (ComponentDeclaration declaration : declarations) {
+            File classFile =
+                new File(classDirectory, declaration.getImplementationClassName().replace('.', File.separatorChar)
+                    + ".class");
+            // A missing file has no date and is ignored
+            if (classFile.lastModified() > indexDate) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Load the passed index file into this index if it's still valid.
+     * 
+     * @param stream the stream of the index file
+     * @param checksum the checksum of the component list file the index is supposed to have been generated from
+     * @param factories the class names of the Component Dependency Factories in use
+     * @return true if the index has been loaded, false if it's stale or invalid
+     * @throws IOException when failing to read the index
+     */
+    public boolean load(InputStream stream, long checksum, List<String> factories) throws IOException
+    {
+        Map<String, List<String[]>> loadedEntries = new LinkedHashMap<String, List<String[]>>();
+        Map<String, String> header = new HashMap<String, String>();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(stream, ENCODING));
+        List<String[]> lines = null;
+        for (String inputLine = in.readLine(); inputLine != null; inputLine = in.readLine()) {
+            String[] line = inputLine.startsWith(COMMENT) ? null : decode(inputLine);
+            if (line == null || line[0] == null) {
+                continue;
+            } else if (!isValid(line)) {
+                return false;
+            } else if (line[0].equals(COMPONENT_KEY)) {
+                lines = new ArrayList<String[]>();
+                loadedEntries.put(line[1], lines);
+            } else if (lines != null) {
+                lines.add(line);
+            } else {
+                header.put(line[0], line[1]);
+            }
+        }
+
+        if (isUpToDate(header, checksum, factories)) {
+            this.entries.putAll(loadedEntries);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param line the fields of a line of the index file
+     * @return true if the line has the minimum number of fields expected by {@link #load(InputStream, long, List)}
+     */
+    private boolean isValid(String[] line)
+    {
+        if (line[0].equals(COMPONENT_KEY)) {
+            return line.length == COMPONENT_FIELDS;
+        }
+
+        return line.length >= 2;
+    }
+
+    /**
+     * @param header the header of the index file
+     * @param checksum the checksum of the component list file the index is supposed to have been generated from
+     * @param factories the class names of the Component Dependency Factories in use
+     * @return true if the index has been generated from the passed component list with the passed factories
+     */
+    private boolean isUpToDate(Map<String, String> header, long checksum, List<String> factories)
+    {
+        return VERSION.equals(header.get(VERSION_KEY)) && Long.toHexString(checksum).equals(header.get(CHECKSUM_KEY))
+            && isSameFactories(factories, header.get(FACTORIES_KEY));
+    }
+
+    /**
+     * @param factories the class names of the Component Dependency Factories in use
+     * @param indexedFactories the serialized class names of the Component Dependency Factories used to generate the
+     *            index
+     * @return true if the index has been generated with the Component Dependency Factories in use
+     */
+    private boolean isSameFactories(List<String> factories, String indexedFactories)
+    {
+        return StringUtils.defaultString(StringUtils.join(factories, LIST_SEPARATOR)).equals(
+            StringUtils.defaultString(indexedFactories));
+    }
+
+    /**
+     * @param stream the stream where to write the index file
+     * @param checksum the checksum of the component list file the index has been generated from
+     * @param factories the class names of the Component Dependency Factories used to create the descriptors
+     * @throws IOException when failing to write the index
+     */
+    public void write(OutputStream stream, long checksum, List<String> factories) throws IOException
+    {
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, ENCODING));
+
+        out.write(COMMENT + " Generated at build time from components.txt, do not edit.\n");
+        write(out, VERSION_KEY, VERSION);
+        write(out, CHECKSUM_KEY, Long.toHexString(checksum));
+        write(out, FACTORIES_KEY, StringUtils.join(factories, LIST_SEPARATOR));
+
+        for (Map.Entry<String, List<String[]>> entry : this.entries.entrySet()) {
+            write(out, COMPONENT_KEY, entry.getKey());
+            for (String[] line : entry.getValue()) {
+                write(out, line);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * @param out the writer where to write the line
+     * @param fields the fields of the line
+     * @throws IOException when failing to write the line
+     */
+    private void write(BufferedWriter out, String... fields) throws IOException
+    {
+        for (int i = 0; i < fields.length; ++i) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            if (fields[i] != null) {
+                out.write(URLEncoder.encode(fields[i], ENCODING));
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * @param inputLine the line to parse
+     * @return the decoded fields of the line, empty fields being null
+     * @throws IOException when the line is not properly encoded
+     */
+    private String[] decode(String inputLine) throws IOException
+    {
+        String[] fields = inputLine.split(SEPARATOR, -1);
+        for (int i = 0; i < fields.length; ++i) {
+            try {
+                fields[i] = fields[i].length() > 0 ? URLDecoder.decode(fields[i], ENCODING) : null;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid component index line [" + inputLine + "]", e);
+            }
+        }
+
+        return fields;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Generate the component index of a build output directory, i.e. the descriptors of the components declared in its
+ * {@code META-INF/components.txt} file, so that {@link ComponentAnnotationLoader} can skip annotation introspection at
+ * runtime. Meant to be executed after the classes have been compiled, through {@link ComponentIndexGeneratorMain}. The
+ * XWiki Commons modules do it with the {@code maven-antrun-plugin} in the {@code process-classes} phase (see the
+ * {@code component-index} profile of {@code xwiki-commons-core}):
+ * 
+ * <pre>
+ * &lt;java classname="org.xwiki.component.annotation.ComponentIndexGeneratorMain"
+ *   classpathref="maven.test.classpath" fork="true" failonerror="true"&gt;
+ *   &lt;arg value="${project.build.outputDirectory}" /&gt;
+ * &lt;/java&gt;
+ * </pre>
+ * 
+ * The index is ignored at runtime as soon as the {@code components.txt} file is modified or the available
+ * {@link ComponentDependencyFactory} implementations are not the same as the ones used to generate it, or, for an index
+ * located in a directory, when a component class has been recompiled after it.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class ComponentIndexGenerator
+{
+    /**
+     * Used to parse the component list and to create the descriptors.
+     */
+    private ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
+
+    /**
+     * Generate the index of the {@code META-INF/components.txt} file located in the passed directory.
+     * 
+     * @param directory the directory containing the {@code META-INF/components.txt} file
+     * @param classLoader the class loader to use to load the component implementations
+     * @return the number of indexed component implementations, -1 if there is no component list in the passed
+     *         directory
+     * @throws IOException when failing to read the component list or to write the index
+     * @throws ClassNotFoundException when a declared component implementation cannot be found
+     */
+    public int generate(File directory, ClassLoader classLoader) throws IOException, ClassNotFoundException
+    {
+        File componentList = new File(directory, ComponentAnnotationLoader.COMPONENT_LIST);
+        if (!componentList.isFile()) {
+            return -1;
+        }
+
+        CheckedInputStream stream = new CheckedInputStream(new FileInputStream(componentList), new CRC32());
+        List<ComponentDeclaration> componentDeclarations;
+        try {
+            componentDeclarations = this.loader.getDeclaredComponents(stream);
+        } finally {
+            stream.close();
+        }
+
+        ComponentIndex index = new ComponentIndex();
+        for (ComponentDeclaration componentDeclaration : componentDeclarations) {
+            Class< ? > componentClass = classLoader.loadClass(componentDeclaration.getImplementationClassName());
+            index.add(componentClass, this.loader.getComponentsDescriptors(componentClass));
+        }
+
+        OutputStream out =
+            new FileOutputStream(new File(componentList.getParentFile(), ComponentIndex.INDEX_FILE));
+        try {
+            index.write(out, stream.getChecksum().getValue(), this.loader.getComponentDependencyFactoryNames());
+        } finally {
+            out.close();
+        }
+
+        return index.size();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Command line entry point of {@link ComponentIndexGenerator}, to be called at build time with the build output
+ * directory as only argument.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public final class ComponentIndexGeneratorMain
+{
+    /**
+     * Utility class.
+     */
+    private ComponentIndexGeneratorMain()
+    {
+    }
+
+    /**
+     * @param args the build output directory containing the {@code META-INF/components.txt} file to index
+     * @throws Exception when failing to generate the index
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ComponentIndexGeneratorMain <build output directory>");
+        }
+
+        File directory = new File(args[0]);
+        ClassLoader classLoader =
+            new URLClassLoader(new URL[] {directory.toURI().toURL()}, Thread.currentThread().getContextClassLoader());
+
+        new ComponentIndexGenerator().generate(directory, classLoader);
+    }
+}
@@ -27,6 +27,7 @@
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Provider;
 
@@ -46,7 +47,6 @@
 import org.xwiki.component.manager.ComponentManagerInitializer;
 import org.xwiki.component.manager.ComponentRepositoryException;
 import org.xwiki.component.phase.Disposable;
-import org.xwiki.component.util.ReflectionUtils;
 
 /**
  * Simple implementation of {@link ComponentManager} to be used when using some XWiki modules standalone.
@@ -78,16 +78,86 @@ public class EmbeddableComponentManager implements ComponentManager, Disposable
          */
         public volatile R instance;
 
+        /**
+         * How to inject the dependencies of new instances. Lazily initialized when the first instance is created.
+         */
+        private volatile InjectionPlan injectionPlan;
+
         public ComponentEntry(ComponentDescriptor<R> descriptor, R instance)
         {
             this.descriptor = descriptor;
             this.instance = instance;
         }
+
+        /**
+         * @return how to inject the dependencies of new instances
+         */
+        public InjectionPlan getInjectionPlan()
+        {
+            InjectionPlan plan = this.injectionPlan;
+
+            if (plan == null) {
+                // Several threads might compute the plan at the same time but they would all produce the same result
+                plan = new InjectionPlan(this.descriptor);
+                this.injectionPlan = plan;
+            }
+
+            return plan;
+        }
     }
 
     private Map<RoleHint< ? >, ComponentEntry< ? >> componentEntries =
         new ConcurrentHashMap<RoleHint< ? >, ComponentEntry< ? >>();
 
+    /**
+     * The same entries as {@link #componentEntries} indexed by role type and then by hint so that listing the
+     * components of a given role does not require going through all the registered components.
+     * <p>
+     * Both maps are only modified while holding the lock on {@link #componentEntries}.
+     */
+    private Map<Type, Map<String, ComponentEntry< ? >>> componentEntriesByRole =
+        new ConcurrentHashMap<Type, Map<String, ComponentEntry< ? >>>();
+
+    /**
+     * Used to produce the values of {@link #generation}, shared by all the Component Managers so that a modification in
+     * any Component Manager of a hierarchy produces a new highest generation in this hierarchy.
+     */
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    /**
+     * Updated each time a component is added or removed or the parent changes. Used to know when the cached merged
+     * views of this and parent Component Managers are outdated.
+     */
+    private volatile long generation = GENERATIONS.incrementAndGet();
+
+    /**
+     * Cache of the component descriptors of a given role merged with the ones of the parent Component Manager.
+     */
+    private Map<Type, MergedDescriptors> mergedDescriptors = new ConcurrentHashMap<Type, MergedDescriptors>();
+
+    /**
+     * The descriptors returned by {@link EmbeddableComponentManager#getComponentDescriptorList(Type)} for a given role
+     * and the state of the Component Managers when they were computed.
+     */
+    private static class MergedDescriptors
+    {
+        /**
+         * @see EmbeddableComponentManager#getHierarchyGeneration()
+         */
+        private final long generation;
+
+        /**
+         * The merged descriptors.
+         */
+        private final List<ComponentDescriptor< ? >> descriptors;
+
+        MergedDescriptors(long generation, List<ComponentDescriptor< ? >> descriptors)
+        {
+            this.generation = generation;
+            this.descriptors = descriptors;
+        }
+    }
+
     private Logger logger = LoggerFactory.getLogger(EmbeddableComponentManager.class);
 
     /**
@@ -177,14 +247,14 @@ public <T> Map<String, T> getInstanceMap(Type role) throws ComponentLookupExcept
     {
         Map<String, T> objects = new HashMap<String, T>();
 
-        for (Map.Entry<RoleHint< ? >, ComponentEntry< ? >> entry : this.componentEntries.entrySet()) {
-            RoleHint< ? > roleHint = entry.getKey();
-
-            if (role.equals(roleHint.getRoleType())) {
+        Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry< ? >> entry : entries.entrySet()) {
                 try {
-                    objects.put(roleHint.getHint(), getComponentInstance((ComponentEntry<T>) entry.getValue()));
+                    objects.put(entry.getKey(), getComponentInstance((ComponentEntry<T>) entry.getValue()));
                 } catch (Exception e) {
-                    throw new ComponentLookupException("Failed to lookup component [" + roleHint + "]", e);
+                    throw new ComponentLookupException("Failed to lookup component [" + new RoleHint<T>(role,
+                        entry.getKey()) + "]", e);
                 }
             }
         }
@@ -223,12 +293,31 @@ public <T> ComponentDescriptor<T> getComponentDescriptor(Type role, String hint)
     @Override
     @SuppressWarnings("unchecked")
     public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Type role)
+    {
+        long currentGeneration = getHierarchyGeneration();
+
+        MergedDescriptors merged = this.mergedDescriptors.get(role);
+        if (merged == null || merged.generation != currentGeneration) {
+            merged = new MergedDescriptors(currentGeneration, (List) createComponentDescriptorList(role));
+
+            // Only cache it when it's possible to know if the parent changed
+            if (currentGeneration >= 0) {
+                this.mergedDescriptors.put(role, merged);
+            }
+        }
+
+        return new ArrayList<ComponentDescriptor<T>>((List) merged.descriptors);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<ComponentDescriptor<T>> createComponentDescriptorList(Type role)
     {
         Map<String, ComponentDescriptor<T>> descriptors = new HashMap<String, ComponentDescriptor<T>>();
 
-        for (Map.Entry<RoleHint< ? >, ComponentEntry< ? >> entry : this.componentEntries.entrySet()) {
-            if (entry.getKey().getRoleType().equals(role)) {
-                descriptors.put(entry.getKey().getHint(), (ComponentDescriptor<T>) entry.getValue().descriptor);
+        Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry< ? >> entry : entries.entrySet()) {
+                descriptors.put(entry.getKey(), (ComponentDescriptor<T>) entry.getValue().descriptor);
             }
         }
 
@@ -246,6 +335,26 @@ public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Type role)
         return new ArrayList<ComponentDescriptor<T>>(descriptors.values());
     }
 
+    /**
+     * @return a number which changes each time a component is added to or removed from this Component Manager or one
+     *         of its parents, -1 if a parent is not an {@link EmbeddableComponentManager} and it's thus impossible to
+     *         know if it changed
+     */
+    private long getHierarchyGeneration()
+    {
+        long hierarchyGeneration = this.generation;
+
+        ComponentManager parentComponentManager = getParent();
+        if (parentComponentManager instanceof EmbeddableComponentManager) {
+            long parentGeneration = ((EmbeddableComponentManager) parentComponentManager).getHierarchyGeneration();
+            hierarchyGeneration = parentGeneration >= 0 ? Math.max(hierarchyGeneration, parentGeneration) : -1;
+        } else if (parentComponentManager != null) {
+            hierarchyGeneration = -1;
+        }
+
+        return hierarchyGeneration;
+    }
+
     @Override
     public ComponentEventManager getComponentEventManager()
     {
@@ -267,18 +376,26 @@ public ComponentManager getParent()
     @Override
     public void setParent(ComponentManager parentComponentManager)
     {
-        this.parent = parentComponentManager;
+        synchronized (this.componentEntries) {
+            this.parent = parentComponentManager;
+            this.generation = GENERATIONS.incrementAndGet();
+        }
     }
 
-    private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
+    private <T> T createInstance(ComponentEntry<T> componentEntry) throws Exception
     {
+        ComponentDescriptor<T> descriptor = componentEntry.descriptor;
+
         T instance = descriptor.getImplementation().newInstance();
 
-        // Set each dependency
-        for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+        // Set each dependency. The kind of each dependency and the field to set are resolved only once by the
+        // injection plan of the component.
+        for (InjectionPlan.Injection injection : componentEntry.getInjectionPlan().getInjections()) {
 
             // TODO: Handle dependency cycles
 
+            ComponentDependency< ? > dependency = injection.getDependency();
+
             // Handle different field types
             Object fieldValue;
 
@@ -291,30 +408,31 @@ private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
             // Step 3: No producer found, handle scalar and collection types by looking up standard component
             // implementations.
 
-            Class< ? > dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
-
-            if (dependencyRoleClass.isAssignableFrom(Logger.class)) {
-                fieldValue = createLogger(instance.getClass());
-            } else if (dependencyRoleClass.isAssignableFrom(List.class)) {
-                fieldValue = getInstanceList(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-            } else if (dependencyRoleClass.isAssignableFrom(Map.class)) {
-                fieldValue = getInstanceMap(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-            } else if (dependencyRoleClass.isAssignableFrom(Provider.class)) {
-                try {
+            switch (injection.getKind()) {
+                case LOGGER:
+                    fieldValue = createLogger(instance.getClass());
+                    break;
+                case LIST:
+                    fieldValue = getInstanceList(injection.getCollectionRoleType());
+                    break;
+                case MAP:
+                    fieldValue = getInstanceMap(injection.getCollectionRoleType());
+                    break;
+                case PROVIDER:
+                    try {
+                        fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
+                    } catch (ComponentLookupException e) {
+                        fieldValue = new GenericProvider<Object>(this, injection.getProvidedRoleHint());
+                    }
+                    break;
+                default:
                     fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
-                } catch (ComponentLookupException e) {
-                    fieldValue =
-                        new GenericProvider<Object>(this, new RoleHint<Object>(
-                            ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()),
-                            dependency.getRoleHint()));
-                }
-            } else {
-                fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
+                    break;
             }
 
-            // Set the field by introspection
+            // Set the field
             if (fieldValue != null) {
-                ReflectionUtils.setFieldValue(instance, dependency.getName(), fieldValue);
+                injection.inject(instance, fieldValue);
             }
         }
 
@@ -375,13 +493,13 @@ private <T> T getComponentInstance(ComponentEntry<T> componentEntry) throws Exce
                     if (componentEntry.instance != null) {
                         instance = componentEntry.instance;
                     } else {
-                        componentEntry.instance = createInstance(descriptor);
+                        componentEntry.instance = createInstance(componentEntry);
                         instance = componentEntry.instance;
                     }
                 }
             }
         } else {
-            instance = createInstance(descriptor);
+            instance = createInstance(componentEntry);
         }
 
         return instance;
@@ -417,7 +535,18 @@ private <T> void addComponent(RoleHint<T> roleHint, ComponentDescriptor<T> descr
         ComponentEntry<T> componentEntry = new ComponentEntry<T>(descriptor, instance);
 
         // Register new component
-        this.componentEntries.put(roleHint, componentEntry);
+        synchronized (this.componentEntries) {
+            this.componentEntries.put(roleHint, componentEntry);
+
+            Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(roleHint.getRoleType());
+            if (entries == null) {
+                entries = new ConcurrentHashMap<String, ComponentEntry< ? >>();
+                this.componentEntriesByRole.put(roleHint.getRoleType(), entries);
+            }
+            entries.put(roleHint.getHint(), componentEntry);
+
+            this.generation = GENERATIONS.incrementAndGet();
+        }
 
         // Send event about component registration
         if (this.eventManager != null) {
@@ -500,7 +629,22 @@ private void removeComponent(RoleHint< ? > roleHint) throws ComponentLifecycleEx
     {
         // Make sure to remove the entry from the map before destroying it to reduce at the minimum the risk of
         // lookupping something invalid
-        ComponentEntry< ? > componentEntry = this.componentEntries.remove(roleHint);
+        ComponentEntry< ? > componentEntry;
+        synchronized (this.componentEntries) {
+            componentEntry = this.componentEntries.remove(roleHint);
+
+            if (componentEntry != null) {
+                Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(roleHint.getRoleType());
+                if (entries != null) {
+                    entries.remove(roleHint.getHint());
+                    if (entries.isEmpty()) {
+                        this.componentEntriesByRole.remove(roleHint.getRoleType());
+                    }
+                }
+
+                this.generation = GENERATIONS.incrementAndGet();
+            }
+        }
 
         if (componentEntry != null) {
             ComponentDescriptor< ? > oldDescriptor = componentEntry.descriptor;
@@ -0,0 +1,255 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.internal.RoleHint;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Everything needed to inject the dependencies of a component, resolved once from its {@link ComponentDescriptor} so
+ * that creating new instances of the component (for example for a per lookup component) does not require any
+ * introspection.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+final class InjectionPlan
+{
+    /**
+     * The various ways of producing the value of a dependency.
+     */
+    enum Kind
+    {
+        /**
+         * A {@link Logger} created for the component implementation.
+         */
+        LOGGER,
+
+        /**
+         * The {@link List} of all the components implementing a role.
+         */
+        LIST,
+
+        /**
+         * The {@link Map} of all the components implementing a role, indexed by hint.
+         */
+        MAP,
+
+        /**
+         * A {@link Provider}, registered as a component or generic.
+         */
+        PROVIDER,
+
+        /**
+         * A standard component.
+         */
+        COMPONENT
+    }
+
+    /**
+     * A resolved dependency.
+     */
+    static final class Injection
+    {
+        /**
+         * The dependency as declared in the component descriptor.
+         */
+        private final ComponentDependency< ? > dependency;
+
+        /**
+         * How to produce the value to inject.
+         */
+        private final Kind kind;
+
+        /**
+         * The role of the components to lookup for {@link Kind#LIST} and {@link Kind#MAP} dependencies.
+         */
+        private final Type collectionRoleType;
+
+        /**
+         * The role and hint to use in the generic provider for {@link Kind#PROVIDER} dependencies.
+         */
+        private final RoleHint<Object> providedRoleHint;
+
+        /**
+         * The field to set or null if the implementation does not have any field with the dependency name.
+         */
+        private final Field field;
+
+        /**
+         * @param dependency the dependency as declared in the component descriptor
+         * @param implementation the component implementation class
+         */
+        Injection(ComponentDependency< ? > dependency, Class< ? > implementation)
+        {
+            this.dependency = dependency;
+
+            Type roleType = dependency.getRoleType();
+            Class< ? > roleClass = ReflectionUtils.getTypeClass(roleType);
+
+            if (roleClass.isAssignableFrom(Logger.class)) {
+                this.kind = Kind.LOGGER;
+            } else if (roleClass.isAssignableFrom(List.class)) {
+                this.kind = Kind.LIST;
+            } else if (roleClass.isAssignableFrom(Map.class)) {
+                this.kind = Kind.MAP;
+            } else if (roleClass.isAssignableFrom(Provider.class)) {
+                this.kind = Kind.PROVIDER;
+            } else {
+                this.kind = Kind.COMPONENT;
+            }
+
+            if (this.kind == Kind.LIST || this.kind == Kind.MAP) {
+                this.collectionRoleType = ReflectionUtils.getLastTypeGenericArgument(roleType);
+            } else {
+                this.collectionRoleType = null;
+            }
+
+            if (this.kind == Kind.PROVIDER) {
+                Type providedType = ReflectionUtils.getLastTypeGenericArgument(roleType);
+                this.providedRoleHint = new RoleHint<Object>(providedType, dependency.getRoleHint());
+            } else {
+                this.providedRoleHint = null;
+            }
+
+            this.field = findField(implementation, dependency.getName());
+        }
+
+        /**
+         * @return the dependency as declared in the component descriptor
+         */
+        ComponentDependency< ? > getDependency()
+        {
+            return this.dependency;
+        }
+
+        /**
+         * @return how to produce the value to inject
+         */
+        Kind getKind()
+        {
+            return this.kind;
+        }
+
+        /**
+         * @return the role of the components to lookup for {@link Kind#LIST} and {@link Kind#MAP} dependencies
+         */
+        Type getCollectionRoleType()
+        {
+            return this.collectionRoleType;
+        }
+
+        /**
+         * @return the role and hint to use in the generic provider for {@link Kind#PROVIDER} dependencies
+         */
+        RoleHint<Object> getProvidedRoleHint()
+        {
+            return this.providedRoleHint;
+        }
+
+        /**
+         * @param instance the component instance
+         * @param value the value to inject
+         */
+        void inject(Object instance, Object value)
+        {
+            if (this.field != null) {
+                try {
+                    this.field.set(instance, value);
+                } catch (Exception e) {
+                    // Same behavior as ReflectionUtils#setFieldValue()
+                    throw new RuntimeException("Failed to set field [" + this.dependency.getName()
+                        + "] in instance of [" + instance.getClass().getName() + "]. The Java Security Manager has "
+                        + "probably been configured to prevent settting private field values. XWiki requires "
+                        + "this ability to work.", e);
+                }
+            }
+        }
+
+        /**
+         * Find the field the same way {@link ReflectionUtils#setFieldValue(Object, String, Object)} does.
+         * 
+         * @param implementation the component implementation class
+         * @param fieldName the name of the field
+         * @return the accessible field or null if none could be found
+         */
+        private static Field findField(Class< ? > implementation, String fieldName)
+        {
+            Class< ? > targetClass = implementation;
+            while (targetClass != null) {
+                for (Field targetField : targetClass.getDeclaredFields()) {
+                    if (targetField.getName().equalsIgnoreCase(fieldName)) {
+                        try {
+                            targetField.setAccessible(true);
+                        } catch (SecurityException e) {
+                            throw new RuntimeException("Failed to access field [" + fieldName + "] in class ["
+                                + implementation.getName() + "]. The Java Security Manager has probably been "
+                                + "configured to prevent settting private field values. XWiki requires this ability "
+                                + "to work.", e);
+                        }
+
+                        return targetField;
+                    }
+                }
+                targetClass = targetClass.getSuperclass();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * The dependencies to inject, in the order of the descriptor.
+     */
+    private final Injection[] injections;
+
+    /**
+     * @param descriptor the descriptor of the component
+     */
+    InjectionPlan(ComponentDescriptor< ? > descriptor)
+    {
+        Collection<ComponentDependency< ? >> dependencies = descriptor.getComponentDependencies();
+
+        this.injections = new Injection[dependencies.size()];
+        int index = 0;
+        for (ComponentDependency< ? > dependency : dependencies) {
+            this.injections[index++] = new Injection(dependency, descriptor.getImplementation());
+        }
+    }
+
+    /**
+     * @return the dependencies to inject, in the order of the descriptor
+     */
+    Injection[] getInjections()
+    {
+        return this.injections;
+    }
+}
@@ -227,6 +227,17 @@ public void testPriorities() throws Exception
         this.loader.initialize(mockManager, this.getClass().getClassLoader());
     }
 
+    /**
+     * Verify that loading the components on several threads gives the same result.
+     */
+    @Test
+    public void testPrioritiesWhenParallel() throws Exception
+    {
+        this.loader.setParallelism(4);
+
+        testPriorities();
+    }
+
     @Test
     public void testFindComponentRoleTypes()
     {
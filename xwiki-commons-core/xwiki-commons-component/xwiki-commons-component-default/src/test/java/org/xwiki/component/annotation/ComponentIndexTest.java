@@ -0,0 +1,329 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.component.embed.EmbeddableComponentManager;
+
+/**
+ * Unit tests for {@link ComponentIndex} and {@link ComponentIndexGenerator}.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class ComponentIndexTest
+{
+    @Role
+    public interface IndexedRole
+    {
+    }
+
+    @Role
+    public interface NotIndexedRole<T>
+    {
+    }
+
+    @Component
+    @Named("hint")
+    @Singleton
+    public static class IndexedComponent implements IndexedRole
+    {
+        @Inject
+        private Logger logger;
+
+        @Inject
+        @Named("other")
+        private IndexedRole other;
+
+        @Inject
+        private Provider<IndexedRole> provider;
+
+        @Inject
+        private List<IndexedRole> list;
+    }
+
+    /**
+     * The role of this component is a parameterized nested type which cannot be unserialized identically.
+     */
+    @Component
+    @Singleton
+    public static class NotIndexedComponent implements NotIndexedRole<String>
+    {
+    }
+
+    private File directory;
+
+    private File componentList;
+
+    private File indexFile;
+
+    private ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = new File("target/ComponentIndexTest");
+        this.componentList = new File(this.directory, ComponentAnnotationLoader.COMPONENT_LIST);
+        this.indexFile = new File(this.componentList.getParentFile(), ComponentIndex.INDEX_FILE);
+
+        this.componentList.getParentFile().mkdirs();
+        this.indexFile.delete();
+        write(this.componentList, IndexedComponent.class.getName() + '\n' + NotIndexedComponent.class.getName());
+    }
+
+    @Test
+    public void testGenerate() throws Exception
+    {
+        Assert.assertEquals(1, new ComponentIndexGenerator().generate(this.directory, getClass().getClassLoader()));
+
+        ComponentIndex index = new ComponentIndex();
+        Assert.assertTrue(load(index, checksum(this.componentList)));
+        Assert.assertEquals(1, index.size());
+
+        Assert.assertEquals(this.loader.getComponentsDescriptors(IndexedComponent.class),
+            index.getComponentDescriptors(IndexedComponent.class));
+        Assert.assertNull(index.getComponentDescriptors(NotIndexedComponent.class));
+    }
+
+    @Test
+    public void testLoadWhenStale() throws Exception
+    {
+        new ComponentIndexGenerator().generate(this.directory, getClass().getClassLoader());
+
+        Assert.assertFalse(load(new ComponentIndex(), checksum(this.componentList) + 1));
+    }
+
+    @Test
+    public void testGenerateWithoutComponentList() throws Exception
+    {
+        Assert.assertEquals(-1, new ComponentIndexGenerator().generate(new File(this.directory, "missing"),
+            getClass().getClassLoader()));
+    }
+
+    @Test
+    public void testInitializeUsesIndex() throws Exception
+    {
+        new ComponentIndexGenerator().generate(this.directory, getClass().getClassLoader());
+
+        // Modify the index to make sure it's what the loader is using
+        String content = read(this.indexFile);
+        write(this.indexFile, content.replace(":hint:", ":indexed:"));
+
+        EmbeddableComponentManager manager = new EmbeddableComponentManager();
+        this.loader.initialize(manager, new IsolatedClassLoader());
+
+        Assert.assertNotNull(manager.getComponentDescriptor(IndexedRole.class, "indexed"));
+        Assert.assertNull(manager.getComponentDescriptor(IndexedRole.class, "hint"));
+        Assert.assertEquals(this.loader.getComponentsDescriptors(NotIndexedComponent.class).get(0),
+            manager.getComponentDescriptor(this.loader.getComponentsDescriptors(NotIndexedComponent.class).get(0)
+                .getRoleType(), "default"));
+
+        // A modified component list makes the index stale
+        write(this.componentList, IndexedComponent.class.getName());
+
+        manager = new EmbeddableComponentManager();
+        this.loader.initialize(manager, new IsolatedClassLoader());
+
+        Assert.assertNull(manager.getComponentDescriptor(IndexedRole.class, "indexed"));
+        Assert.assertNotNull(manager.getComponentDescriptor(IndexedRole.class, "hint"));
+    }
+
+    @Test
+    public void testInitializeWithInvalidIndex() throws Exception
+    {
+        new ComponentIndexGenerator().generate(this.directory, getClass().getClassLoader());
+
+        String content = read(this.indexFile);
+
+        // Unknown instantiation strategy
+        write(this.indexFile, content.replace(":hint:SINGLETON", ":hint:UNKNOWN"));
+        assertIntrospected();
+
+        // Missing field
+        write(this.indexFile, content.replace(":hint:SINGLETON", ":hint"));
+        assertIntrospected();
+
+        // Invalid component line
+        write(this.indexFile, content.replaceFirst("(component:.*)", "$1:invalid"));
+        assertIntrospected();
+
+        // Invalid encoding
+        write(this.indexFile, content.replace(":hint:", ":%hint:"));
+        assertIntrospected();
+    }
+
+    @Test
+    public void testInitializeWhenClassRecompiled() throws Exception
+    {
+        new ComponentIndexGenerator().generate(this.directory, getClass().getClassLoader());
+
+        String content = read(this.indexFile);
+        write(this.indexFile, content.replace(":hint:", ":indexed:"));
+
+        // Only the date of the class file located next to the index matters
+        File classFile = new File(this.directory, IndexedComponent.class.getName().replace('.', '/') + ".class");
+        classFile.getParentFile().mkdirs();
+        write(classFile, "");
+        classFile.setLastModified(this.indexFile.lastModified() + 2000);
+
+        try {
+            EmbeddableComponentManager manager = new EmbeddableComponentManager();
+            this.loader.initialize(manager, new IsolatedClassLoader());
+
+            Assert.assertNull(manager.getComponentDescriptor(IndexedRole.class, "indexed"));
+            Assert.assertNotNull(manager.getComponentDescriptor(IndexedRole.class, "hint"));
+        } finally {
+            classFile.delete();
+        }
+    }
+
+    @Test
+    public void testIsOlderThanClassesInJar() throws Exception
+    {
+        List<ComponentDeclaration> declarations =
+            Arrays.asList(new ComponentDeclaration(IndexedComponent.class.getName()));
+
+        Assert.assertFalse(ComponentIndex.isOlderThanClasses(new URL("jar:" + this.directory.toURI().toURL()
+            + "test.jar!/META-INF/" + ComponentIndex.INDEX_FILE), declarations));
+    }
+
+    /**
+     * Check the index generated by the build of this module.
+     */
+    @Test
+    public void testGeneratedIndex() throws Exception
+    {
+        File classes = new File("target/classes/META-INF");
+        File generatedComponentList = new File(classes, "components.txt");
+
+        ComponentIndex index = new ComponentIndex();
+        InputStream stream = new FileInputStream(new File(classes, ComponentIndex.INDEX_FILE));
+        try {
+            Assert.assertTrue(index.load(stream, checksum(generatedComponentList),
+                this.loader.getComponentDependencyFactoryNames()));
+        } finally {
+            stream.close();
+        }
+
+        stream = new FileInputStream(generatedComponentList);
+        try {
+            List<ComponentDeclaration> declarations = this.loader.getDeclaredComponents(stream);
+            Assert.assertEquals(declarations.size(), index.size());
+            for (ComponentDeclaration declaration : declarations) {
+                Class< ? > implementation = Class.forName(declaration.getImplementationClassName());
+                Assert.assertEquals(this.loader.getComponentsDescriptors(implementation),
+                    index.getComponentDescriptors(implementation));
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void assertIntrospected() throws Exception
+    {
+        EmbeddableComponentManager manager = new EmbeddableComponentManager();
+        this.loader.initialize(manager, new IsolatedClassLoader());
+
+        Assert.assertNotNull(manager.getComponentDescriptor(IndexedRole.class, "hint"));
+    }
+
+    private boolean load(ComponentIndex index, long checksum) throws IOException
+    {
+        InputStream stream = new FileInputStream(this.indexFile);
+        try {
+            return index.load(stream, checksum, this.loader.getComponentDependencyFactoryNames());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private long checksum(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(read(file).getBytes("UTF-8"));
+
+        return crc.getValue();
+    }
+
+    private String read(File file) throws IOException
+    {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream stream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += stream.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            stream.close();
+        }
+
+        return new String(bytes, "UTF-8");
+    }
+
+    private void write(File file, String content) throws IOException
+    {
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(content.getBytes("UTF-8"));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Only exposes the resources of the test directory so that the components declared in the test classpath are not
+     * loaded.
+     */
+    private class IsolatedClassLoader extends URLClassLoader
+    {
+        public IsolatedClassLoader() throws IOException
+        {
+            super(new URL[] {directory.toURI().toURL()}, ComponentIndexTest.class.getClassLoader());
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException
+        {
+            return findResources(name);
+        }
+    }
+}
@@ -40,6 +40,7 @@
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.test.jmock.JMockRule;
 
 /**
@@ -107,6 +108,23 @@ public Logger getLogger()
         }
     }
 
+    public static class PerLookupRoleImpl implements Role
+    {
+        private Role dependency;
+
+        private List<ComponentManager> componentManagers;
+
+        public Role getDependency()
+        {
+            return this.dependency;
+        }
+
+        public List<ComponentManager> getComponentManagers()
+        {
+            return this.componentManagers;
+        }
+    }
+
     @Test
     public void testLookupThisComponentManager() throws ComponentLookupException
     {
@@ -547,4 +565,79 @@ public void testDispose() throws ComponentRepositoryException, ComponentLookupEx
 
         Assert.assertTrue(instance.isFinalized());
     }
+
+    @Test
+    public void testPerLookupComponentInjection() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<Role> dependencyDescriptor = new DefaultComponentDescriptor<Role>();
+        dependencyDescriptor.setRoleType(Role.class);
+        dependencyDescriptor.setRoleHint("dependency");
+        dependencyDescriptor.setImplementation(RoleImpl.class);
+        ecm.registerComponent(dependencyDescriptor);
+
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<Role>();
+        cd.setRoleType(Role.class);
+        cd.setImplementation(PerLookupRoleImpl.class);
+        cd.setInstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP);
+        DefaultComponentDependency<Role> dependency = new DefaultComponentDependency<Role>();
+        dependency.setRoleType(Role.class);
+        dependency.setRoleHint("dependency");
+        // Field names are matched ignoring the case
+        dependency.setName("DEPENDENCY");
+        cd.addComponentDependency(dependency);
+        DefaultComponentDependency<List<ComponentManager>> listDependency =
+            new DefaultComponentDependency<List<ComponentManager>>();
+        listDependency.setRoleType(new DefaultParameterizedType(null, List.class, ComponentManager.class));
+        listDependency.setName("componentManagers");
+        cd.addComponentDependency(listDependency);
+        ecm.registerComponent(cd);
+
+        PerLookupRoleImpl instance1 = ecm.getInstance(Role.class);
+        PerLookupRoleImpl instance2 = ecm.getInstance(Role.class);
+
+        Assert.assertNotSame(instance1, instance2);
+        Assert.assertSame(ecm.getInstance(Role.class, "dependency"), instance1.getDependency());
+        Assert.assertSame(instance1.getDependency(), instance2.getDependency());
+        Assert.assertEquals(1, instance2.getComponentManagers().size());
+        Assert.assertSame(ecm, instance2.getComponentManagers().get(0));
+    }
+
+    @Test
+    public void getComponentDescriptorListWhenParentChanges() throws Exception
+    {
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        Assert.assertTrue(ecm.getComponentDescriptorList((Type) Role.class).isEmpty());
+
+        DefaultComponentDescriptor<Role> cd1 = new DefaultComponentDescriptor<Role>();
+        cd1.setRoleType(Role.class);
+        cd1.setRoleHint("hint1");
+        cd1.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd1);
+
+        Assert.assertEquals(1, ecm.getComponentDescriptorList((Type) Role.class).size());
+
+        DefaultComponentDescriptor<Role> cd2 = new DefaultComponentDescriptor<Role>();
+        cd2.setRoleType(Role.class);
+        cd2.setRoleHint("hint2");
+        cd2.setImplementation(OtherRoleImpl.class);
+        ecm.registerComponent(cd2);
+
+        Assert.assertEquals(2, ecm.getComponentDescriptorList((Type) Role.class).size());
+        Assert.assertEquals(2, ecm.getInstanceList(Role.class).size());
+
+        parent.unregisterComponent(Role.class, "hint1");
+
+        List<ComponentDescriptor<Role>> descriptors = ecm.getComponentDescriptorList((Type) Role.class);
+        Assert.assertEquals(1, descriptors.size());
+        Assert.assertEquals(OtherRoleImpl.class, descriptors.get(0).getImplementation());
+
+        ecm.setParent(createParentComponentManager());
+
+        Assert.assertEquals(2, ecm.getComponentDescriptorList((Type) Role.class).size());
+    }
 }
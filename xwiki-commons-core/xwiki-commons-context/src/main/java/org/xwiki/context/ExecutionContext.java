@@ -19,8 +19,9 @@
  */
 package org.xwiki.context;
 
-import java.util.Map;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,10 +40,22 @@
     /** Logger object. */
     private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionContext.class);
 
+    /** Empty store shared by all contexts until a property with a registered key is declared. */
+    private static final ExecutionContextProperty[] NO_SLOTS = new ExecutionContextProperty[0];
+
     /**
+     * The properties declared with a name which is not registered as an {@link ExecutionContextKey}. Created lazily.
+     *
      * @see #getProperty(String)
      */
-    private Map<String, ExecutionContextProperty> properties = new HashMap<String, ExecutionContextProperty>();
+    private Map<String, ExecutionContextProperty> properties;
+
+    /**
+     * The properties declared with a name registered as an {@link ExecutionContextKey}, indexed by key slot.
+     *
+     * @see #getProperty(ExecutionContextKey)
+     */
+    private ExecutionContextProperty[] slots = NO_SLOTS;
 
     /**
      * @param key the key under which is stored the property to retrieve
@@ -50,16 +63,55 @@
      */
     public Object getProperty(String key)
     {
-        ExecutionContextProperty property = properties.get(key);
+        return getPropertyValue(ExecutionContextKey.get(key), key);
+    }
+
+    /**
+     * @param <T> the type of the property value
+     * @param key the key under which is stored the property to retrieve
+     * @return the property matching the passed key
+     * @since 5.0M2
+     */
+    public <T> T getProperty(ExecutionContextKey<T> key)
+    {
+        return (T) getPropertyValue(key, key.getName());
+    }
+
+    /**
+     * @param key the registered key of the property, null if the name is not registered
+     * @param name the name of the property
+     * @return the property value
+     */
+    private Object getPropertyValue(ExecutionContextKey< ? > key, String name)
+    {
+        ExecutionContextProperty property = getExecutionContextProperty(key, name);
 
         if (property == null) {
-            LOGGER.debug("Getting undefined property {} from execution context.", key);
+            LOGGER.debug("Getting undefined property {} from execution context.", name);
             return null;
         }
 
         return property.getValue();
     }
 
+    /**
+     * @param key the registered key of the property, null if the name is not registered
+     * @param name the name of the property
+     * @return the property or null if there is none
+     */
+    private ExecutionContextProperty getExecutionContextProperty(ExecutionContextKey< ? > key, String name)
+    {
+        if (key != null && key.getIndex() < this.slots.length) {
+            ExecutionContextProperty property = this.slots[key.getIndex()];
+            if (property != null) {
+                return property;
+            }
+        }
+
+        // The name might have been used before being registered
+        return this.properties != null ? this.properties.get(name) : null;
+    }
+
     /**
      * @param key the key of the property.
      * @return a builder object for performing the declaration.  The property will not be declared until the declare
@@ -70,13 +122,34 @@ public DeclarationBuilder newProperty(String key)
         return new DeclarationBuilder(key);
     }
 
+    /**
+     * @param key the key of the property, its type is used as the type of the property
+     * @return a builder object for performing the declaration.  The property will not be declared until the declare
+     * method is called on the builder object.
+     * @since 5.0M2
+     */
+    public DeclarationBuilder newProperty(ExecutionContextKey< ? > key)
+    {
+        return new DeclarationBuilder(key.getName()).type(key.getType());
+    }
+
     /**
      * @param key the key under which is stored the property to retrieve
      * @return {@code true} if there is a property declared for the given key.
      */
     public boolean hasProperty(String key)
     {
-        return properties.containsKey(key);
+        return getExecutionContextProperty(ExecutionContextKey.get(key), key) != null;
+    }
+
+    /**
+     * @param key the key under which is stored the property to retrieve
+     * @return {@code true} if there is a property declared for the given key.
+     * @since 5.0M2
+     */
+    public boolean hasProperty(ExecutionContextKey< ? > key)
+    {
+        return getExecutionContextProperty(key, key.getName()) != null;
     }
 
     /**
@@ -86,8 +159,16 @@ public Map<String, Object> getProperties()
     {
         Map<String, Object> map = new HashMap<String, Object>();
 
-        for (Map.Entry<String, ExecutionContextProperty> entry : properties.entrySet()) {
-            map.put(entry.getKey(), entry.getValue().getValue());
+        for (ExecutionContextProperty property : this.slots) {
+            if (property != null) {
+                map.put(property.getKey(), property.getValue());
+            }
+        }
+
+        if (this.properties != null) {
+            for (Map.Entry<String, ExecutionContextProperty> entry : this.properties.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().getValue());
+            }
         }
 
         return map;
@@ -98,18 +179,40 @@ public Map<String, Object> getProperties()
      */
     public void removeProperty(String key)
     {
-        ExecutionContextProperty property = properties.get(key);
+        removeProperty(ExecutionContextKey.get(key), key);
+    }
+
+    /**
+     * @param key remove the property whose key matches the passed key
+     * @since 5.0M2
+     */
+    public void removeProperty(ExecutionContextKey< ? > key)
+    {
+        removeProperty(key, key.getName());
+    }
+
+    /**
+     * @param key the registered key of the property, null if the name is not registered
+     * @param name the name of the property
+     */
+    private void removeProperty(ExecutionContextKey< ? > key, String name)
+    {
+        ExecutionContextProperty property = getExecutionContextProperty(key, name);
 
         if (property == null) {
-            LOGGER.warn("Tried to remove non-existing property [{}] from execution context.", key);
+            LOGGER.warn("Tried to remove non-existing property [{}] from execution context.", name);
             return;
         }
 
         if (property.isFinal()) {
-            throw new PropertyIsFinalException(key);
+            throw new PropertyIsFinalException(name);
         }
 
-        this.properties.remove(key);
+        if (key != null && key.getIndex() < this.slots.length && this.slots[key.getIndex()] == property) {
+            this.slots[key.getIndex()] = null;
+        } else {
+            this.properties.remove(name);
+        }
     }
 
     /**
@@ -118,17 +221,43 @@ public void removeProperty(String key)
      */
     public void setProperty(String key, Object value)
     {
-        ExecutionContextProperty property = properties.get(key);
+        setProperty(ExecutionContextKey.get(key), key, value);
+    }
+
+    /**
+     * @param <T> the type of the property value
+     * @param key the key under which to save the passed property value
+     * @param value the value to set
+     * @since 5.0M2
+     */
+    public <T> void setProperty(ExecutionContextKey<T> key, T value)
+    {
+        setProperty(key, key.getName(), value);
+    }
+
+    /**
+     * @param key the registered key of the property, null if the name is not registered
+     * @param name the name of the property
+     * @param value the value to set
+     */
+    private void setProperty(ExecutionContextKey< ? > key, String name, Object value)
+    {
+        ExecutionContextProperty property = getExecutionContextProperty(key, name);
 
         if (property == null) {
-            LOGGER.debug("Implicit declaration of property {}.", key);
-            newProperty(key).declare();
-            property = properties.get(key);
+            LOGGER.debug("Implicit declaration of property {}.", name);
+            newProperty(name).initial(value).declare();
         } else if (property.isFinal()) {
-            throw new PropertyIsFinalException(key);
+            throw new PropertyIsFinalException(name);
+        } else if (property.isShared()) {
+            // The property is shared with the context it has been inherited from (or which inherited from this one):
+            // copy it before modifying it.
+            ExecutionContextProperty copy = property.clone();
+            copy.setValue(value);
+            putProperty(key, copy);
+        } else {
+            property.setValue(value);
         }
-
-        property.setValue(value);
     }
 
     /**
@@ -152,11 +281,33 @@ public void setProperties(Map<String, Object> properties)
      */
     private void declareProperty(ExecutionContextProperty property)
     {
-        if (properties.containsKey(property.getKey())) {
+        ExecutionContextKey< ? > key = ExecutionContextKey.get(property.getKey());
+
+        if (getExecutionContextProperty(key, property.getKey()) != null) {
             throw new PropertyAlreadyExistsException(property.getKey());
         }
 
-        properties.put(property.getKey(), property);
+        putProperty(key, property);
+    }
+
+    /**
+     * @param key the registered key of the property, null if the name is not registered
+     * @param property the property to store
+     */
+    private void putProperty(ExecutionContextKey< ? > key, ExecutionContextProperty property)
+    {
+        if (key != null && (this.properties == null || !this.properties.containsKey(property.getKey()))) {
+            int index = key.getIndex();
+            if (index >= this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, Math.max(index + 1, ExecutionContextKey.getCount()));
+            }
+            this.slots[index] = property;
+        } else {
+            if (this.properties == null) {
+                this.properties = new HashMap<String, ExecutionContextProperty>();
+            }
+            this.properties.put(property.getKey(), property);
+        }
     }
 
     /**
@@ -166,7 +317,8 @@ private void declareProperty(ExecutionContextProperty property)
      * is a current execution context.
      *
      * All properties marked as 'inherited' will be copied into this context, unless the property already is declared in
-     * this context.
+     * this context. Properties are shared between both contexts and copied only when one of the contexts modifies them,
+     * unless their value has to be cloned.
      *
      * It is an error if this context contain a value that was declared as 'inherited' and 'final' in the inherited
      * execution context and an exception will be thrown.
@@ -177,15 +329,88 @@ private void declareProperty(ExecutionContextProperty property)
      */
     public void inheritFrom(ExecutionContext executionContext)
     {
-        for (ExecutionContextProperty property : executionContext.properties.values()) {
-            if (property.isInherited()) {
-                if (this.properties.containsKey(property.getKey())) {
+        inheritSlots(executionContext.slots);
+
+        if (executionContext.properties != null) {
+            for (ExecutionContextProperty property : executionContext.properties.values()) {
+                if (property.isInherited()) {
+                    if (hasProperty(property.getKey())) {
+                        checkIfInheritedPropertyMayBeIgnored(property);
+                    } else {
+                        declareProperty(share(property));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inheritedSlots the properties with a registered key of the context to inherit
+     */
+    private void inheritSlots(ExecutionContextProperty[] inheritedSlots)
+    {
+        if (this.slots.length < inheritedSlots.length) {
+            this.slots = Arrays.copyOf(this.slots, inheritedSlots.length);
+        }
+
+        for (int i = 0; i < inheritedSlots.length; ++i) {
+            ExecutionContextProperty property = inheritedSlots[i];
+            if (property != null && property.isInherited()) {
+                if (this.slots[i] != null
+                    || (this.properties != null && this.properties.containsKey(property.getKey()))) {
                     checkIfInheritedPropertyMayBeIgnored(property);
                 } else {
-                    declareProperty(property.clone());
+                    this.slots[i] = share(property);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a copy of this execution context containing all its properties, whatever their inheritance settings. As
+     * with inheritance, properties are shared between both contexts and copied only when one of the contexts modifies
+     * them, unless their value has to be cloned. This is much cheaper than creating and initializing a new context and
+     * is typically used to hand the current context over to another thread.
+     *
+     * @return the copy of this execution context
+     * @since 5.0M2
+     */
+    public ExecutionContext copy()
+    {
+        ExecutionContext copy = new ExecutionContext();
+
+        if (this.slots.length > 0) {
+            copy.slots = new ExecutionContextProperty[this.slots.length];
+            for (int i = 0; i < this.slots.length; ++i) {
+                if (this.slots[i] != null) {
+                    copy.slots[i] = share(this.slots[i]);
                 }
             }
         }
+
+        if (this.properties != null) {
+            copy.properties = new HashMap<String, ExecutionContextProperty>(this.properties.size());
+            for (ExecutionContextProperty property : this.properties.values()) {
+                copy.properties.put(property.getKey(), share(property));
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * @param property the property to share with another context
+     * @return the property to store in the other context
+     */
+    private ExecutionContextProperty share(ExecutionContextProperty property)
+    {
+        if (property.isCloneValue()) {
+            return property.clone();
+        }
+
+        property.setShared();
+
+        return property;
     }
 
     /**
@@ -195,7 +420,8 @@ public void inheritFrom(ExecutionContext executionContext)
     private void checkIfInheritedPropertyMayBeIgnored(ExecutionContextProperty property)
     {
         if (property.isFinal()) {
-            ExecutionContextProperty shadowingProperty = this.properties.get(property.getKey());
+            ExecutionContextProperty shadowingProperty =
+                getExecutionContextProperty(ExecutionContextKey.get(property.getKey()), property.getKey());
             if (!(shadowingProperty == property || shadowingProperty.isClonedFrom(property))) {
                 throw new IllegalStateException(
                      String.format("Execution context cannot be inherited because it already contains"
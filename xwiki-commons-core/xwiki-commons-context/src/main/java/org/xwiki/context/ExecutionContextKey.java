@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A typed key of an {@link ExecutionContext} property. Keys are registered once (typically in a static field of the
+ * component owning the property) and each one is given a slot in the compact property store of the execution contexts,
+ * which makes accessing and inheriting properties through keys much cheaper than through their names.
+ * <p>
+ * The property of a registered key can still be accessed by name with the String based API of
+ * {@link ExecutionContext}, both APIs being interchangeable.
+ * 
+ * <pre>
+ * private static final ExecutionContextKey&lt;VelocityContext&gt; VELOCITY_CONTEXT =
+ *     ExecutionContextKey.register(&quot;velocityContext&quot;, VelocityContext.class);
+ * 
+ * VelocityContext velocityContext = execution.getContext().getProperty(VELOCITY_CONTEXT);
+ * </pre>
+ * 
+ * @param <T> the type of the property value
+ * @version $Id$
+ * @since 5.0M2
+ */
+public final class ExecutionContextKey<T>
+{
+    /**
+     * The registered keys indexed by name.
+     */
+    private static final ConcurrentMap<String, ExecutionContextKey< ? >> KEYS =
+        new ConcurrentHashMap<String, ExecutionContextKey< ? >>();
+
+    /**
+     * The number of registered keys, i.e. the next slot index.
+     */
+    private static volatile int count;
+
+    /**
+     * @see #getName()
+     */
+    private final String name;
+
+    /**
+     * @see #getType()
+     */
+    private final Class<T> type;
+
+    /**
+     * The index of the slot of the property in the execution context store.
+     */
+    private final int index;
+
+    /**
+     * @param name the name of the property
+     * @param type the type of the property value
+     * @param index the index of the slot of the property in the execution context store
+     */
+    private ExecutionContextKey(String name, Class<T> type, int index)
+    {
+        this.name = name;
+        this.type = type;
+        this.index = index;
+    }
+
+    /**
+     * Register a new key or return the already registered one with the same name and type.
+     * 
+     * @param <T> the type of the property value
+     * @param name the name of the property
+     * @param type the type of the property value
+     * @return the registered key
+     * @throws IllegalArgumentException if a key with the same name but a different type is already registered
+     */
+    public static <T> ExecutionContextKey<T> register(String name, Class<T> type)
+    {
+        ExecutionContextKey< ? > key = KEYS.get(name);
+
+        if (key == null) {
+            synchronized (KEYS) {
+                key = KEYS.get(name);
+                if (key == null) {
+                    key = new ExecutionContextKey<T>(name, type, count++);
+                    KEYS.put(name, key);
+                }
+            }
+        }
+
+        if (key.getType() != type) {
+            throw new IllegalArgumentException(String.format(
+                "Execution context key [%s] is already registered with type [%s]", name, key.getType()));
+        }
+
+        return (ExecutionContextKey<T>) key;
+    }
+
+    /**
+     * @param name the name of the property
+     * @return the key registered with the passed name or null if there is none
+     */
+    static ExecutionContextKey< ? > get(String name)
+    {
+        return KEYS.get(name);
+    }
+
+    /**
+     * @return the number of registered keys
+     */
+    static int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the name of the property
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the type of the property value
+     */
+    public Class<T> getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * @return the index of the slot of the property in the execution context store
+     */
+    int getIndex()
+    {
+        return this.index;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+}
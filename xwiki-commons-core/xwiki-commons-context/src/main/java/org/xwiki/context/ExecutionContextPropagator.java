@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Hand over the execution context of the current thread to other threads. This is much cheaper than
+ * {@link ExecutionContextManager#clone(ExecutionContext)} since the context is copied (see
+ * {@link ExecutionContext#copy()}) instead of being recreated by the {@link ExecutionContextInitializer}s. As a
+ * consequence the values of the properties are shared with the calling thread instead of being recreated, unless the
+ * properties have been declared with {@link ExecutionContext.DeclarationBuilder#cloneValue()}.
+ * <p>
+ * A wrapped task sets the captured contexts in the thread executing it and restores the contexts of that thread (or
+ * removes the thread local state if it did not have any) once done.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Role
+public interface ExecutionContextPropagator
+{
+    /**
+     * @return the execution context levels of the current thread
+     */
+    ExecutionContextSnapshot takeSnapshot();
+
+    /**
+     * @param task the task to wrap
+     * @return a task executing the passed task with the execution context of the current thread
+     */
+    Runnable wrap(Runnable task);
+
+    /**
+     * @param task the task to wrap
+     * @param snapshot the execution context levels to use while executing the task
+     * @return a task executing the passed task with the passed execution context
+     */
+    Runnable wrap(Runnable task, ExecutionContextSnapshot snapshot);
+
+    /**
+     * @param <V> the type of the task result
+     * @param task the task to wrap
+     * @return a task executing the passed task with the execution context of the current thread
+     */
+    <V> Callable<V> wrap(Callable<V> task);
+
+    /**
+     * @param <V> the type of the task result
+     * @param task the task to wrap
+     * @param snapshot the execution context levels to use while executing the task
+     * @return a task executing the passed task with the passed execution context
+     */
+    <V> Callable<V> wrap(Callable<V> task, ExecutionContextSnapshot snapshot);
+
+    /**
+     * @param executor the executor to wrap
+     * @return an executor executing each task with the execution context of the thread submitting it
+     */
+    Executor wrap(Executor executor);
+
+    /**
+     * @param executorService the executor service to wrap
+     * @return an executor service executing each task with the execution context of the thread submitting it
+     */
+    ExecutorService wrap(ExecutorService executorService);
+}
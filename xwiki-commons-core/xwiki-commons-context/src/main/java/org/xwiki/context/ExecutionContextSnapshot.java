@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The execution context levels of a thread captured at a given time (see
+ * {@link ExecutionContextPropagator#takeSnapshot()}). The captured contexts are copies (see
+ * {@link ExecutionContext#copy()}) so that modifications made to the contexts of the thread after the snapshot has been
+ * taken are not visible in the snapshot, and the other way around.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public final class ExecutionContextSnapshot
+{
+    /**
+     * The captured contexts, from the first level to the current one.
+     */
+    private final List<ExecutionContext> contexts;
+
+    /**
+     * @param contexts the contexts to capture, from the first level to the current one
+     */
+    public ExecutionContextSnapshot(List<ExecutionContext> contexts)
+    {
+        List<ExecutionContext> copies = new ArrayList<ExecutionContext>(contexts.size());
+        for (ExecutionContext context : contexts) {
+            copies.add(context.copy());
+        }
+
+        this.contexts = Collections.unmodifiableList(copies);
+    }
+
+    /**
+     * @return true if no context was set when the snapshot was taken
+     */
+    public boolean isEmpty()
+    {
+        return this.contexts.isEmpty();
+    }
+
+    /**
+     * Create new copies of the captured contexts so that the snapshot can be restored several times, possibly
+     * concurrently, without the restored contexts interfering with each other.
+     * 
+     * @return copies of the captured contexts, from the first level to the current one
+     */
+    public List<ExecutionContext> copyContexts()
+    {
+        List<ExecutionContext> copies = new ArrayList<ExecutionContext>(this.contexts.size());
+        for (ExecutionContext context : this.contexts) {
+            copies.add(context.copy());
+        }
+
+        return copies;
+    }
+}
@@ -19,7 +19,10 @@
  */
 package org.xwiki.context.internal;
 
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
 
 import javax.inject.Singleton;
 
@@ -40,16 +43,90 @@
 public class DefaultExecution implements Execution
 {
     /**
-     * Isolate the execution context by thread.
+     * Isolate the execution context by thread. The stack is removed as soon as it's empty so that no state is kept for
+     * threads which are done with their execution contexts.
      */
-    private ThreadLocal<Stack<ExecutionContext>> context = new ThreadLocal<Stack<ExecutionContext>>();
+    private ThreadLocal<ContextStack> context = new ThreadLocal<ContextStack>();
+
+    /**
+     * An unsynchronized array based stack of execution contexts. Contrary to {@link java.util.Stack} it doesn't need
+     * any locking since it's only accessed by the thread owning it.
+     */
+    private static final class ContextStack
+    {
+        /**
+         * The initial capacity of the stack, most threads don't go beyond a few levels.
+         */
+        private static final int INITIAL_CAPACITY = 4;
+
+        /**
+         * The contexts, from the first level to the current one.
+         */
+        private ExecutionContext[] contexts = new ExecutionContext[INITIAL_CAPACITY];
+
+        /**
+         * The number of levels.
+         */
+        private int size;
+
+        /**
+         * @param context the context to add as new level
+         */
+        void push(ExecutionContext context)
+        {
+            if (this.size == this.contexts.length) {
+                this.contexts = Arrays.copyOf(this.contexts, this.size * 2);
+            }
+            this.contexts[this.size++] = context;
+        }
+
+        /**
+         * Remove the current level.
+         */
+        void pop()
+        {
+            this.contexts[--this.size] = null;
+        }
+
+        /**
+         * @return the context of the current level
+         */
+        ExecutionContext peek()
+        {
+            return this.contexts[this.size - 1];
+        }
+
+        /**
+         * @param context the context to set as current level
+         */
+        void set(ExecutionContext context)
+        {
+            this.contexts[this.size - 1] = context;
+        }
+
+        /**
+         * @return true if there is no level left
+         */
+        boolean isEmpty()
+        {
+            return this.size == 0;
+        }
+
+        /**
+         * @return the contexts, from the first level to the current one
+         */
+        List<ExecutionContext> toList()
+        {
+            return new ArrayList<ExecutionContext>(Arrays.asList(this.contexts).subList(0, this.size));
+        }
+    }
 
     @Override
     public void pushContext(ExecutionContext context)
     {
-        Stack<ExecutionContext> stack = this.context.get();
+        ContextStack stack = this.context.get();
         if (stack == null) {
-            stack = new Stack<ExecutionContext>();
+            stack = new ContextStack();
             this.context.set(stack);
         } else if (!stack.isEmpty()) {
             context.inheritFrom(stack.peek());
@@ -61,22 +138,32 @@ public void pushContext(ExecutionContext context)
     @Override
     public void popContext()
     {
-        this.context.get().pop();
+        ContextStack stack = this.context.get();
+        if (stack == null || stack.isEmpty()) {
+            throw new EmptyStackException();
+        }
+
+        stack.pop();
+
+        // Don't keep anything for the thread once it's done with its contexts
+        if (stack.isEmpty()) {
+            this.context.remove();
+        }
     }
 
     @Override
     public ExecutionContext getContext()
     {
-        Stack<ExecutionContext> stack = this.context.get();
+        ContextStack stack = this.context.get();
         return stack == null || stack.isEmpty() ? null : stack.peek();
     }
 
     @Override
     public void setContext(ExecutionContext context)
     {
-        Stack<ExecutionContext> stack = this.context.get();
+        ContextStack stack = this.context.get();
         if (stack == null) {
-            stack = new Stack<ExecutionContext>();
+            stack = new ContextStack();
             this.context.set(stack);
             stack.push(context);
         } else if (stack.isEmpty()) {
@@ -85,7 +172,7 @@ public void setContext(ExecutionContext context)
             if (context != null) {
                 context.inheritFrom(stack.peek());
             }
-            stack.set(stack.size() - 1, context);
+            stack.set(context);
         }
     }
 
@@ -94,4 +181,36 @@ public void removeContext()
     {
         this.context.remove();
     }
+
+    /**
+     * @return all the context levels of the current thread, from the first one to the current one, or null if there
+     *         is none
+     * @since 5.0M2
+     */
+    public List<ExecutionContext> getContexts()
+    {
+        ContextStack stack = this.context.get();
+
+        return stack == null || stack.isEmpty() ? null : stack.toList();
+    }
+
+    /**
+     * Replace all the context levels of the current thread.
+     *
+     * @param contexts the context levels to set, from the first one to the current one, null or empty to remove all
+     *            context levels
+     * @since 5.0M2
+     */
+    public void setContexts(List<ExecutionContext> contexts)
+    {
+        if (contexts == null || contexts.isEmpty()) {
+            removeContext();
+        } else {
+            ContextStack stack = new ContextStack();
+            for (ExecutionContext executionContext : contexts) {
+                stack.push(executionContext);
+            }
+            this.context.set(stack);
+        }
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextPropagator;
+import org.xwiki.context.ExecutionContextSnapshot;
+
+/**
+ * Default implementation of {@link ExecutionContextPropagator}. All the context levels are captured and restored when
+ * the {@link Execution} is a {@link DefaultExecution}, only the current context otherwise.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component
+@Singleton
+public class DefaultExecutionContextPropagator implements ExecutionContextPropagator
+{
+    /**
+     * Used to get and set the contexts of the current thread.
+     */
+    @Inject
+    private Execution execution;
+
+    /**
+     * Default constructor.
+     */
+    public DefaultExecutionContextPropagator()
+    {
+    }
+
+    /**
+     * Generally used for unit tests.
+     * 
+     * @param execution the {@link Execution} to get and set the contexts from
+     */
+    public DefaultExecutionContextPropagator(Execution execution)
+    {
+        this.execution = execution;
+    }
+
+    @Override
+    public ExecutionContextSnapshot takeSnapshot()
+    {
+        List<ExecutionContext> contexts;
+        if (this.execution instanceof DefaultExecution) {
+            contexts = ((DefaultExecution) this.execution).getContexts();
+        } else {
+            ExecutionContext context = this.execution.getContext();
+            contexts = context != null ? Collections.singletonList(context) : null;
+        }
+
+        return new ExecutionContextSnapshot(contexts != null ? contexts : Collections.<ExecutionContext>emptyList());
+    }
+
+    @Override
+    public Runnable wrap(Runnable task)
+    {
+        return wrap(task, takeSnapshot());
+    }
+
+    @Override
+    public Runnable wrap(final Runnable task, final ExecutionContextSnapshot snapshot)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                List<ExecutionContext> previousContexts = restore(snapshot);
+                try {
+                    task.run();
+                } finally {
+                    reset(snapshot, previousContexts);
+                }
+            }
+        };
+    }
+
+    @Override
+    public <V> Callable<V> wrap(Callable<V> task)
+    {
+        return wrap(task, takeSnapshot());
+    }
+
+    @Override
+    public <V> Callable<V> wrap(final Callable<V> task, final ExecutionContextSnapshot snapshot)
+    {
+        return new Callable<V>()
+        {
+            @Override
+            public V call() throws Exception
+            {
+                List<ExecutionContext> previousContexts = restore(snapshot);
+                try {
+                    return task.call();
+                } finally {
+                    reset(snapshot, previousContexts);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Executor wrap(final Executor executor)
+    {
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                executor.execute(wrap(command));
+            }
+        };
+    }
+
+    @Override
+    public ExecutorService wrap(ExecutorService executorService)
+    {
+        return new ExecutionContextExecutorService(executorService, this);
+    }
+
+    /**
+     * Set the contexts of the passed snapshot in the current thread.
+     * 
+     * @param snapshot the snapshot to restore
+     * @return the previous contexts of the current thread
+     */
+    private List<ExecutionContext> restore(ExecutionContextSnapshot snapshot)
+    {
+        List<ExecutionContext> previousContexts;
+
+        if (this.execution instanceof DefaultExecution) {
+            DefaultExecution defaultExecution = (DefaultExecution) this.execution;
+            previousContexts = defaultExecution.getContexts();
+            defaultExecution.setContexts(snapshot.copyContexts());
+        } else {
+            ExecutionContext previousContext = this.execution.getContext();
+            previousContexts = previousContext != null ? Collections.singletonList(previousContext) : null;
+            if (!snapshot.isEmpty()) {
+                List<ExecutionContext> contexts = snapshot.copyContexts();
+                this.execution.pushContext(contexts.get(contexts.size() - 1));
+            }
+        }
+
+        return previousContexts;
+    }
+
+    /**
+     * Restore the contexts the current thread had before {@link #restore(ExecutionContextSnapshot)}, removing all
+     * thread local state if there was none.
+     * 
+     * @param snapshot the restored snapshot
+     * @param previousContexts the previous contexts of the current thread
+     */
+    private void reset(ExecutionContextSnapshot snapshot, List<ExecutionContext> previousContexts)
+    {
+        if (this.execution instanceof DefaultExecution) {
+            ((DefaultExecution) this.execution).setContexts(previousContexts);
+        } else if (previousContexts == null) {
+            this.execution.removeContext();
+        } else if (!snapshot.isEmpty()) {
+            this.execution.popContext();
+        }
+    }
+}
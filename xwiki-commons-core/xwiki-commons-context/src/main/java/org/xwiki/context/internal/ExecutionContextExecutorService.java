@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.xwiki.context.ExecutionContextPropagator;
+import org.xwiki.context.ExecutionContextSnapshot;
+
+/**
+ * An {@link ExecutorService} executing each task with the execution context of the thread submitting it.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class ExecutionContextExecutorService implements ExecutorService
+{
+    /**
+     * The wrapped executor service.
+     */
+    private final ExecutorService executorService;
+
+    /**
+     * Used to wrap the tasks.
+     */
+    private final ExecutionContextPropagator propagator;
+
+    /**
+     * @param executorService the executor service to wrap
+     * @param propagator used to wrap the tasks
+     */
+    public ExecutionContextExecutorService(ExecutorService executorService, ExecutionContextPropagator propagator)
+    {
+        this.executorService = executorService;
+        this.propagator = propagator;
+    }
+
+    /**
+     * @param <T> the type of the tasks results
+     * @param tasks the tasks to wrap
+     * @return the wrapped tasks, all sharing the same snapshot
+     */
+    private <T> List<Callable<T>> wrap(Collection< ? extends Callable<T>> tasks)
+    {
+        ExecutionContextSnapshot snapshot = this.propagator.takeSnapshot();
+
+        List<Callable<T>> wrappedTasks = new ArrayList<Callable<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrappedTasks.add(this.propagator.wrap(task, snapshot));
+        }
+
+        return wrappedTasks;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        this.executorService.execute(this.propagator.wrap(command));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task)
+    {
+        return this.executorService.submit(this.propagator.wrap(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result)
+    {
+        return this.executorService.submit(this.propagator.wrap(task), result);
+    }
+
+    @Override
+    public Future< ? > submit(Runnable task)
+    {
+        return this.executorService.submit(this.propagator.wrap(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection< ? extends Callable<T>> tasks) throws InterruptedException
+    {
+        return this.executorService.invokeAll(wrap(tasks));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection< ? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        return this.executorService.invokeAll(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection< ? extends Callable<T>> tasks) throws InterruptedException, ExecutionException
+    {
+        return this.executorService.invokeAny(wrap(tasks));
+    }
+
+    @Override
+    public <T> T invokeAny(Collection< ? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return this.executorService.invokeAny(wrap(tasks), timeout, unit);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        this.executorService.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return this.executorService.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return this.executorService.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return this.executorService.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return this.executorService.awaitTermination(timeout, unit);
+    }
+}
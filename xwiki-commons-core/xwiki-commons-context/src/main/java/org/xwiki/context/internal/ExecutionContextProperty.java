@@ -62,6 +62,9 @@ public class ExecutionContextProperty implements Cloneable
     /** @see isClonedFrom(ExecutionContextProperty property). */
     private WeakReference<ExecutionContextProperty> clonedFrom;
 
+    /** @see #isShared() */
+    private volatile boolean shared;
+
     /**
      * @param key The execution context key.
      * @param initialValue The initial value.
@@ -138,6 +141,35 @@ public boolean isInherited()
         return this.inherited;
     }
 
+    /**
+     * @return wether the value should be cloned when this property is cloned
+     * @since 5.0M2
+     */
+    public boolean isCloneValue()
+    {
+        return this.cloneValue;
+    }
+
+    /**
+     * @return wether this property is shared by several execution contexts, in which case it must be cloned before
+     *         being modified
+     * @since 5.0M2
+     */
+    public boolean isShared()
+    {
+        return this.shared;
+    }
+
+    /**
+     * Indicate that this property is shared by several execution contexts.
+     *
+     * @since 5.0M2
+     */
+    public void setShared()
+    {
+        this.shared = true;
+    }
+
     @Override
     public ExecutionContextProperty clone()
     {
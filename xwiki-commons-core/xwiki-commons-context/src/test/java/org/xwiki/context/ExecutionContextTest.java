@@ -57,4 +57,100 @@ public void illegalInheritance()
 
         context.inheritFrom(parent);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void typedKey()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("typedKey", String.class);
+        Assert.assertSame(key, ExecutionContextKey.register("typedKey", String.class));
+
+        ExecutionContext context = new ExecutionContext();
+
+        Assert.assertFalse(context.hasProperty(key));
+        context.setProperty(key, "value");
+        Assert.assertTrue(context.hasProperty("typedKey"));
+        Assert.assertEquals("value", context.getProperty("typedKey"));
+
+        context.setProperty("typedKey", "other");
+        Assert.assertEquals("other", context.getProperty(key));
+        Assert.assertEquals("other", context.getProperties().get("typedKey"));
+
+        context.removeProperty(key);
+        Assert.assertFalse(context.hasProperty("typedKey"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typedKeyWithDifferentType()
+    {
+        ExecutionContextKey.register("typedKeyWithDifferentType", String.class);
+        ExecutionContextKey.register("typedKeyWithDifferentType", Integer.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typedKeyDeclarationType()
+    {
+        ExecutionContextKey<Integer> key = ExecutionContextKey.register("typedKeyDeclarationType", Integer.class);
+
+        new ExecutionContext().newProperty(key).initial("not an integer").declare();
+    }
+
+    @Test
+    public void keyRegisteredAfterUse()
+    {
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty("keyRegisteredAfterUse", 1);
+
+        ExecutionContextKey<Integer> key = ExecutionContextKey.register("keyRegisteredAfterUse", Integer.class);
+
+        Assert.assertEquals(Integer.valueOf(1), context.getProperty(key));
+        context.setProperty(key, 2);
+        Assert.assertEquals(2, context.getProperty("keyRegisteredAfterUse"));
+        context.removeProperty(key);
+        Assert.assertFalse(context.hasProperty(key));
+    }
+
+    @Test
+    public void inheritanceIsCopyOnWrite()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("inheritanceIsCopyOnWrite", String.class);
+
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty(key).inherited().initial("parent").declare();
+        parent.newProperty("inheritanceIsCopyOnWrite.name").inherited().initial("parent").declare();
+
+        ExecutionContext context = new ExecutionContext();
+        context.inheritFrom(parent);
+        ExecutionContext grandChild = new ExecutionContext();
+        grandChild.inheritFrom(context);
+
+        Assert.assertEquals("parent", context.getProperty(key));
+        Assert.assertEquals("parent", grandChild.getProperty(key));
+
+        context.setProperty(key, "context");
+        context.setProperty("inheritanceIsCopyOnWrite.name", "context");
+        Assert.assertEquals("context", context.getProperty(key));
+        Assert.assertEquals("parent", parent.getProperty(key));
+        Assert.assertEquals("parent", grandChild.getProperty(key));
+        Assert.assertEquals("parent", parent.getProperty("inheritanceIsCopyOnWrite.name"));
+
+        parent.setProperty(key, "modified");
+        Assert.assertEquals("modified", parent.getProperty(key));
+        Assert.assertEquals("parent", grandChild.getProperty(key));
+    }
+
+    @Test
+    public void inheritanceOfFinalProperty()
+    {
+        ExecutionContextKey<String> key = ExecutionContextKey.register("inheritanceOfFinalProperty", String.class);
+
+        ExecutionContext parent = new ExecutionContext();
+        parent.newProperty(key).inherited().makeFinal().initial("final").declare();
+
+        ExecutionContext context = new ExecutionContext();
+        context.inheritFrom(parent);
+        // Inheriting twice from the same context is allowed
+        context.inheritFrom(parent);
+
+        Assert.assertEquals("final", context.getProperty(key));
+    }
+}
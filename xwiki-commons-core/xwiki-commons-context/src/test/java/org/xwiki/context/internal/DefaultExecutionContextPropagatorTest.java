@@ -0,0 +1,189 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.context.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextPropagator;
+
+/**
+ * Unit tests for {@link DefaultExecutionContextPropagator}.
+ * 
+ * @version $Id$
+ */
+public class DefaultExecutionContextPropagatorTest
+{
+    private DefaultExecution execution = new DefaultExecution();
+
+    private ExecutionContextPropagator propagator = new DefaultExecutionContextPropagator(this.execution);
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp()
+    {
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty("key", "value");
+        this.execution.pushContext(context);
+        this.execution.pushContext(new ExecutionContext());
+        this.execution.getContext().setProperty("key", "current");
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.execution.removeContext();
+        this.executor.shutdownNow();
+    }
+
+    private Callable<Object> getTask()
+    {
+        return new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                Object value = execution.getContext().getProperty("key");
+
+                execution.getContext().setProperty("key", "modified");
+                execution.popContext();
+
+                return value + ":" + execution.getContext().getProperty("key");
+            }
+        };
+    }
+
+    @Test
+    public void testWrapExecutorService() throws Exception
+    {
+        ExecutorService wrappedExecutor = this.propagator.wrap(this.executor);
+
+        Assert.assertEquals("current:value", wrappedExecutor.submit(getTask()).get());
+        // Each task gets its own copy of the contexts
+        Assert.assertEquals("current:value", wrappedExecutor.invokeAll(Arrays.asList(getTask())).get(0)
+            .get());
+
+        // The contexts of the calling thread are not modified
+        Assert.assertEquals("current", this.execution.getContext().getProperty("key"));
+        Assert.assertEquals(2, this.execution.getContexts().size());
+
+        // The thread local state of the worker thread is cleaned
+        Assert.assertNull(this.executor.submit(new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                return execution.getContexts();
+            }
+        }).get());
+    }
+
+    @Test
+    public void testWrapRestoresPreviousContexts() throws Exception
+    {
+        ExecutionContext previousContext = new ExecutionContext();
+        Runnable task = this.propagator.wrap(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Assert.assertEquals("current", execution.getContext().getProperty("key"));
+            }
+        });
+
+        this.execution.removeContext();
+        this.execution.pushContext(previousContext);
+
+        task.run();
+
+        Assert.assertSame(previousContext, this.execution.getContext());
+        Assert.assertEquals(1, this.execution.getContexts().size());
+    }
+
+    @Test
+    public void testWrapWithAnotherExecution() throws Exception
+    {
+        final Execution otherExecution = new Execution()
+        {
+            private DefaultExecution delegate = new DefaultExecution();
+
+            @Override
+            public ExecutionContext getContext()
+            {
+                return this.delegate.getContext();
+            }
+
+            @Override
+            public void setContext(ExecutionContext context)
+            {
+                this.delegate.setContext(context);
+            }
+
+            @Override
+            public void pushContext(ExecutionContext context)
+            {
+                this.delegate.pushContext(context);
+            }
+
+            @Override
+            public void popContext()
+            {
+                this.delegate.popContext();
+            }
+
+            @Override
+            public void removeContext()
+            {
+                this.delegate.removeContext();
+            }
+        };
+        otherExecution.pushContext(this.execution.getContext());
+
+        Callable<Object> task = new DefaultExecutionContextPropagator(otherExecution).wrap(new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                return otherExecution.getContext().getProperty("key");
+            }
+        });
+
+        Assert.assertEquals("current", this.executor.submit(task).get());
+        Assert.assertNull(this.executor.submit(new Callable<Object>()
+        {
+            @Override
+            public Object call() throws Exception
+            {
+                return otherExecution.getContext();
+            }
+        }).get());
+
+        otherExecution.removeContext();
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.context.internal;
 
+import java.lang.reflect.Field;
+import java.util.EmptyStackException;
+
 import org.junit.Test;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
@@ -87,4 +90,31 @@ public void testRemoveContext() throws Exception
 
         Assert.assertNull(execution.getContext());
     }
+
+    @Test
+    public void testPopLastContextRemovesThreadState() throws Exception
+    {
+        Execution execution = new DefaultExecution();
+        Field field = DefaultExecution.class.getDeclaredField("context");
+        field.setAccessible(true);
+        ThreadLocal< ? > threadLocal = (ThreadLocal< ? >) field.get(execution);
+
+        // Go beyond the initial capacity of the stack
+        for (int i = 0; i < 10; ++i) {
+            execution.pushContext(new ExecutionContext());
+        }
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotNull(threadLocal.get());
+            execution.popContext();
+        }
+
+        Assert.assertNull(threadLocal.get());
+        Assert.assertNull(execution.getContext());
+    }
+
+    @Test(expected = EmptyStackException.class)
+    public void testPopWithoutContext() throws Exception
+    {
+        new DefaultExecution().popContext();
+    }
 }
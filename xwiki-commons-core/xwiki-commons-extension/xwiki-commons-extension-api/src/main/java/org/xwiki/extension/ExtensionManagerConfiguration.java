@@ -58,4 +58,46 @@
      * @return the user agent to declare when communication with external services (generally repositories)
      */
     String getUserAgent();
+
+    /**
+     * @return true if the repositories should be queried at the same time when resolving an extension, the result of
+     *         the first repository (in the order the repositories were added) able to resolve it is used
+     * @since 5.0M2
+     */
+    boolean isResolveParallel();
+
+    /**
+     * @return the maximum number of resolve results (including the extensions which could not be found) remembered by
+     *         the repository manager, 0 (the default) to disable the cache
+     * @since 5.0M2
+     */
+    int getResolveCacheSize();
+
+    /**
+     * @return the time in milliseconds during which a resolve result (including the extensions which could not be
+     *         found) is remembered by the repository manager
+     * @since 5.0M2
+     */
+    long getResolveCacheTTL();
+
+    /**
+     * @return the time in milliseconds between two refreshes of the local index of the searchable remote repositories,
+     *         0 to disable the index and search directly in each repository
+     * @since 5.0M2
+     */
+    long getSearchIndexRefreshInterval();
+
+    /**
+     * @return the maximum number of core extensions resolved at the same time in the remote repositories to get more
+     *         details about them
+     * @since 5.0M2
+     */
+    int getCoreExtensionUpdateThreads();
+
+    /**
+     * @return the time in milliseconds after which the core extensions which have not been resolved yet in the remote
+     *         repositories are not updated anymore
+     * @since 5.0M2
+     */
+    long getCoreExtensionUpdateTimeout();
 }
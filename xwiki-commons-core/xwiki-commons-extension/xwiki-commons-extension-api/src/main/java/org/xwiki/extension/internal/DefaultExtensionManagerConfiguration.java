@@ -75,6 +75,41 @@ public class DefaultExtensionManagerConfiguration implements ExtensionManagerCon
      */
     private static final String CK_REPOSITORIES_PEFIX = CK_PEFIX + "repositories.";
 
+    /**
+     * The prefix of all the resolve related properties.
+     */
+    private static final String CK_RESOLVE_PEFIX = CK_PEFIX + "resolve.";
+
+    /**
+     * The default maximum number of remembered resolve results (disabled).
+     */
+    private static final int DEFAULT_RESOLVE_CACHE_SIZE = 0;
+
+    /**
+     * The default time during which a resolve result is remembered (one minute).
+     */
+    private static final long DEFAULT_RESOLVE_CACHE_TTL = 60000L;
+
+    /**
+     * The default time between two refreshes of the search index of the remote repositories (disabled).
+     */
+    private static final long DEFAULT_SEARCH_INDEX_REFRESH = 0L;
+
+    /**
+     * The prefix of all the core extensions update related properties.
+     */
+    private static final String CK_CORE_UPDATE_PEFIX = CK_PEFIX + "core.update.";
+
+    /**
+     * The default number of core extensions resolved at the same time.
+     */
+    private static final int DEFAULT_CORE_UPDATE_THREADS = 4;
+
+    /**
+     * The default time after which the core extensions are not updated anymore (five minutes).
+     */
+    private static final long DEFAULT_CORE_UPDATE_TIMEOUT = 300000L;
+
     /**
      * The logger to log.
      */
@@ -226,4 +261,40 @@ public String getUserAgent()
         // TODO: add version (need a way to get platform version first)
         return this.configuration.get().getProperty(CK_PEFIX + "userAgent", DEFAULT_USERAGENT);
     }
+
+    @Override
+    public boolean isResolveParallel()
+    {
+        return this.configuration.get().getProperty(CK_RESOLVE_PEFIX + "parallel", false);
+    }
+
+    @Override
+    public int getResolveCacheSize()
+    {
+        return this.configuration.get().getProperty(CK_RESOLVE_PEFIX + "cache.size", DEFAULT_RESOLVE_CACHE_SIZE);
+    }
+
+    @Override
+    public long getResolveCacheTTL()
+    {
+        return this.configuration.get().getProperty(CK_RESOLVE_PEFIX + "cache.ttl", DEFAULT_RESOLVE_CACHE_TTL);
+    }
+
+    @Override
+    public long getSearchIndexRefreshInterval()
+    {
+        return this.configuration.get().getProperty(CK_PEFIX + "search.index.refresh", DEFAULT_SEARCH_INDEX_REFRESH);
+    }
+
+    @Override
+    public int getCoreExtensionUpdateThreads()
+    {
+        return this.configuration.get().getProperty(CK_CORE_UPDATE_PEFIX + "threads", DEFAULT_CORE_UPDATE_THREADS);
+    }
+
+    @Override
+    public long getCoreExtensionUpdateTimeout()
+    {
+        return this.configuration.get().getProperty(CK_CORE_UPDATE_PEFIX + "timeout", DEFAULT_CORE_UPDATE_TIMEOUT);
+    }
 }
@@ -171,8 +171,8 @@ public void setChildren(Collection< ? extends ExtensionPlanNode> children)
     @Override
     protected DefaultExtensionPlan<R> createNewStatus(R request)
     {
-        return new DefaultExtensionPlan<R>(request, this.observationManager, this.loggerManager, this.extensionTree,
-            this.jobContext.getCurrentJob() != null);
+        return new DefaultExtensionPlan<R>(request, this.progressManager, this.observationManager,
+            this.loggerManager, this.extensionTree, this.jobContext.getCurrentJob() != null);
     }
 
     protected void setExtensionTree(ModifableExtensionPlanTree extensionTree)
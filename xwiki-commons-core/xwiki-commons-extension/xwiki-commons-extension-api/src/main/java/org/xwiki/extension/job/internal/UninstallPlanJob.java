@@ -82,8 +82,8 @@ public String getType()
     @Override
     protected DefaultExtensionPlan<UninstallRequest> createNewStatus(UninstallRequest request)
     {
-        return new DefaultExtensionPlan<UninstallRequest>(request, this.observationManager, this.loggerManager,
-            this.extensionTree, this.jobContext.getCurrentJob() != null);
+        return new DefaultExtensionPlan<UninstallRequest>(request, this.progressManager, this.observationManager,
+            this.loggerManager, this.extensionTree, this.jobContext.getCurrentJob() != null);
     }
 
     @Override
@@ -29,6 +29,7 @@
 import org.xwiki.extension.job.plan.ExtensionPlanNode;
 import org.xwiki.extension.job.plan.ExtensionPlanTree;
 import org.xwiki.job.internal.AbstractJobStatus;
+import org.xwiki.job.internal.JobProgressManager;
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.ObservationManager;
 
@@ -64,6 +65,24 @@ public DefaultExtensionPlan(R request, ObservationManager observationManager, Lo
         this.tree = tree;
     }
 
+    /**
+     * @param request the request provided when started the job
+     * @param progressManager the component used to update the progress
+     * @param observationManager the observation manager component
+     * @param loggerManager the logger manager component
+     * @param tree the tree representation of the plan, it's not copied but taken as it it to allow filling it from
+     *            outside
+     * @param subJob indicate of the job has been started by another one
+     * @since 5.0M2
+     */
+    public DefaultExtensionPlan(R request, JobProgressManager progressManager, ObservationManager observationManager,
+        LoggerManager loggerManager, ExtensionPlanTree tree, boolean subJob)
+    {
+        super(request, progressManager, observationManager, loggerManager, subJob);
+
+        this.tree = tree;
+    }
+
     /**
      * @param extensions the list of fill with actions
      * @param nodes of branch of the tree representation of the plan
@@ -25,19 +25,23 @@
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionManagerConfiguration;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.ExtensionRepository;
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
@@ -61,7 +65,7 @@
  */
 @Component
 @Singleton
-public class DefaultExtensionRepositoryManager implements ExtensionRepositoryManager, Initializable
+public class DefaultExtensionRepositoryManager implements ExtensionRepositoryManager, Initializable, Disposable
 {
     /**
      * Used to lookup {@link ExtensionRepositoryFactory}s.
@@ -81,11 +85,37 @@ public class DefaultExtensionRepositoryManager implements ExtensionRepositoryMan
     @Inject
     private List<ExtensionRepositorySource> repositoriesSources;
 
+    /**
+     * Used to get the resolve settings.
+     */
+    @Inject
+    private ExtensionManagerConfiguration configuration;
+
     /**
      * The registered repositories.
      */
     private Map<String, ExtensionRepository> repositories = new ConcurrentHashMap<String, ExtensionRepository>();
 
+    /**
+     * The registered repositories in the order they were added, which is also their priority when resolving.
+     */
+    private List<ExtensionRepository> repositoryList = new CopyOnWriteArrayList<ExtensionRepository>();
+
+    /**
+     * Resolve extensions in the registered repositories, lazily created since it depends on the configuration.
+     */
+    private volatile ExtensionRepositoriesResolver resolver;
+
+    /**
+     * Local index of the registered repositories used when searching, null if disabled or not used yet.
+     */
+    private volatile ExtensionRepositoriesIndex searchIndex;
+
+    /**
+     * True when the configuration of the search index has been read.
+     */
+    private volatile boolean searchIndexConfigured;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -102,6 +132,38 @@ public void initialize() throws InitializationException
         }
     }
 
+    @Override
+    public synchronized void dispose() throws ComponentLifecycleException
+    {
+        if (this.resolver != null) {
+            this.resolver.dispose();
+        }
+
+        if (this.searchIndex != null) {
+            this.searchIndex.dispose();
+        }
+
+        for (ExtensionRepository repository : this.repositoryList) {
+            disposeRepository(repository);
+        }
+    }
+
+    /**
+     * Give a chance to a repository which is not used anymore to release its resources (connections, etc.).
+     * 
+     * @param repository the repository to dispose
+     */
+    private void disposeRepository(ExtensionRepository repository)
+    {
+        if (repository instanceof Disposable) {
+            try {
+                ((Disposable) repository).dispose();
+            } catch (ComponentLifecycleException e) {
+                this.logger.error("Failed to dispose repository [{}]", repository.getDescriptor(), e);
+            }
+        }
+    }
+
     @Override
     public ExtensionRepository addRepository(ExtensionRepositoryId repositoryId) throws ExtensionRepositoryException
     {
@@ -130,15 +192,48 @@ public ExtensionRepository addRepository(ExtensionRepositoryDescriptor repositor
     }
 
     @Override
-    public void addRepository(ExtensionRepository repository)
+    public synchronized void addRepository(ExtensionRepository repository)
     {
-        this.repositories.put(repository.getDescriptor().getId(), repository);
+        ExtensionRepository previousRepository = this.repositories.put(repository.getDescriptor().getId(), repository);
+
+        // Replacing a repository keeps its priority
+        int index = previousRepository != null ? this.repositoryList.indexOf(previousRepository) : -1;
+        if (index != -1) {
+            this.repositoryList.set(index, repository);
+        } else {
+            this.repositoryList.add(repository);
+        }
+
+        clearResolveCache();
+
+        if (this.searchIndex != null) {
+            if (previousRepository != null) {
+                this.searchIndex.remove(previousRepository);
+            }
+            this.searchIndex.add(repository);
+        }
+
+        if (previousRepository != null && previousRepository != repository) {
+            disposeRepository(previousRepository);
+        }
     }
 
     @Override
-    public void removeRepository(String repositoryId)
+    public synchronized void removeRepository(String repositoryId)
     {
-        this.repositories.remove(repositoryId);
+        ExtensionRepository repository = this.repositories.remove(repositoryId);
+
+        if (repository != null) {
+            this.repositoryList.remove(repository);
+
+            clearResolveCache();
+
+            if (this.searchIndex != null) {
+                this.searchIndex.remove(repository);
+            }
+
+            disposeRepository(repository);
+        }
     }
 
     @Override
@@ -150,52 +245,76 @@ public ExtensionRepository getRepository(String repositoryId)
     @Override
     public Collection<ExtensionRepository> getRepositories()
     {
-        return Collections.unmodifiableCollection(this.repositories.values());
+        return Collections.unmodifiableCollection(this.repositoryList);
     }
 
-    @Override
-    public Extension resolve(ExtensionId extensionId) throws ResolveException
+    /**
+     * @return the component used to resolve extensions in the registered repositories
+     */
+    private ExtensionRepositoriesResolver getResolver()
     {
-        ResolveException lastExtension = null;
-
-        for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                return repository.resolve(extensionId);
-            } catch (ResolveException e) {
-                this.logger.debug("Could not find extension [{}] in repository [{}]", extensionId,
-                    repository.getDescriptor(), e);
-
-                lastExtension = e;
+        if (this.resolver == null) {
+            synchronized (this) {
+                if (this.resolver == null) {
+                    this.resolver =
+                        new ExtensionRepositoriesResolver(new ExtensionResolveCache(
+                            this.configuration.getResolveCacheSize(), this.configuration.getResolveCacheTTL()),
+                            this.configuration.isResolveParallel(), this.logger);
+                }
             }
         }
 
-        throw new ResolveException(MessageFormat.format("Could not find extension [{0}]", extensionId), lastExtension);
+        return this.resolver;
     }
 
-    @Override
-    public Extension resolve(ExtensionDependency extensionDependency) throws ResolveException
+    /**
+     * @return the local index of the registered repositories, created on first search since it depends on the
+     *         configuration and starts listing the repositories in background, null if disabled
+     */
+    private ExtensionRepositoriesIndex getSearchIndex()
     {
-        ResolveException lastExtension = null;
+        if (!this.searchIndexConfigured) {
+            synchronized (this) {
+                if (!this.searchIndexConfigured) {
+                    long refreshInterval = this.configuration.getSearchIndexRefreshInterval();
+                    if (refreshInterval > 0) {
+                        this.searchIndex =
+                            new ExtensionRepositoriesIndex(this.repositoryList, refreshInterval, this.logger);
+                    }
+                    this.searchIndexConfigured = true;
+                }
+            }
+        }
 
-        for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                return repository.resolve(extensionDependency);
-            } catch (ResolveException e) {
-                this.logger.debug("Could not find extension dependency [{}] in repository [{}]", extensionDependency,
-                    repository.getDescriptor(), e);
+        return this.searchIndex;
+    }
 
-                lastExtension = e;
-            }
+    /**
+     * Forget the remembered resolve results since they might not be valid anymore.
+     */
+    private void clearResolveCache()
+    {
+        if (this.resolver != null) {
+            this.resolver.clearCache();
         }
+    }
 
-        throw new ResolveException(MessageFormat.format("Could not find extension dependency [{0}]",
-            extensionDependency), lastExtension);
+    @Override
+    public Extension resolve(ExtensionId extensionId) throws ResolveException
+    {
+        return getResolver().resolve(extensionId, this.repositoryList);
+    }
+
+    @Override
+    public Extension resolve(ExtensionDependency extensionDependency) throws ResolveException
+    {
+        return getResolver().resolve(extensionDependency, this.repositoryList);
     }
 
     @Override
     public IterableResult<Version> resolveVersions(String id, int offset, int nb) throws ResolveException
     {
-        for (ExtensionRepository repository : this.repositories.values()) {
+        for (ExtensionRepository repository : this.repositoryList) {
             try {
                 return repository.resolveVersions(id, offset, nb);
             } catch (ResolveException e) {
@@ -209,13 +328,18 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb)
     {
+        ExtensionRepositoriesIndex index = getSearchIndex();
+        if (index != null && index.isIndexed()) {
+            return index.search(pattern, offset, nb);
+        }
+
         IterableResult<Extension> searchResult = null;
 
         int currentOffset = offset > 0 ? offset : 0;
         int currentNb = nb;
 
-        // A local index would avoid things like this...
-        for (ExtensionRepository repository : this.repositories.values()) {
+        // The search index is disabled or not ready yet, ask each repository
+        for (ExtensionRepository repository : this.repositoryList) {
             try {
                 searchResult = search(repository, pattern, currentOffset, currentNb, searchResult);
 
@@ -0,0 +1,250 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.ExtensionRepository;
+import org.xwiki.extension.repository.result.IterableResult;
+import org.xwiki.extension.repository.search.SearchException;
+import org.xwiki.extension.repository.search.Searchable;
+
+/**
+ * Local index of the extensions of {@link Searchable} repositories, used to search them without querying each
+ * repository.
+ * <p>
+ * The extensions of the repositories are listed in a background thread when the index is created or a repository is
+ * added and then at a fixed interval, the index of each repository is updated with what changed. A repository can be
+ * searched through the index only once it has been listed at least once.
+ *
+ * @version $Id$
+ * @since 5.0M2
+ */
+class ExtensionRepositoriesIndex
+{
+    /**
+     * The indexed extensions of a repository.
+     *
+     * @version $Id$
+     */
+    private static class RepositoryIndex
+    {
+        /**
+         * The index.
+         */
+        private final ExtensionSearchIndex index = new ExtensionSearchIndex();
+
+        /**
+         * The extensions found the last time the repository was listed.
+         */
+        private Map<ExtensionId, Extension> extensions = new HashMap<ExtensionId, Extension>();
+    }
+
+    /**
+     * The indexes of the repositories listed at least once.
+     */
+    private final Map<ExtensionRepository, RepositoryIndex> indexes =
+        new ConcurrentHashMap<ExtensionRepository, RepositoryIndex>();
+
+    /**
+     * The repositories to index.
+     */
+    private final Collection<ExtensionRepository> repositories;
+
+    /**
+     * Used to list the extensions of the repositories.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The logger to log.
+     */
+    private final Logger logger;
+
+    /**
+     * @param repositories the repositories to index in the order of their priority, the collection is expected to be
+     *            kept up to date by the caller
+     * @param refreshInterval the time in milliseconds between two refreshes of the index
+     * @param logger the logger to log
+     */
+    ExtensionRepositoriesIndex(Collection<ExtensionRepository> repositories, long refreshInterval, Logger logger)
+    {
+        this.repositories = repositories;
+        this.logger = logger;
+
+        BasicThreadFactory threadFactory =
+            new BasicThreadFactory.Builder().namingPattern("Extension repositories indexer").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+        this.executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+
+        this.executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (ExtensionRepository repository : ExtensionRepositoriesIndex.this.repositories) {
+                    indexSafely(repository);
+                }
+            }
+        }, 0, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Index the extensions of a repository added after the creation of the index in the background.
+     *
+     * @param repository the repository to index
+     */
+    void add(final ExtensionRepository repository)
+    {
+        if (repository instanceof Searchable) {
+            this.executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    indexSafely(repository);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param repository the repository to forget
+     */
+    synchronized void remove(ExtensionRepository repository)
+    {
+        this.indexes.remove(repository);
+    }
+
+    /**
+     * Stop refreshing the index.
+     */
+    void dispose()
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @return true if all the {@link Searchable} repositories have been indexed
+     */
+    boolean isIndexed()
+    {
+        for (ExtensionRepository repository : this.repositories) {
+            if (repository instanceof Searchable && !this.indexes.containsKey(repository)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param pattern the pattern to search
+     * @param offset the offset from where to start returning search results
+     * @param nb the maximum number of search results to return
+     * @return the found extensions, the most relevant first (and then in the order of the repositories)
+     */
+    IterableResult<Extension> search(String pattern, int offset, int nb)
+    {
+        List<ExtensionSearchIndex> repositoriesIndexes = new ArrayList<ExtensionSearchIndex>(this.repositories.size());
+        for (ExtensionRepository repository : this.repositories) {
+            RepositoryIndex repositoryIndex = this.indexes.get(repository);
+            if (repositoryIndex != null) {
+                repositoriesIndexes.add(repositoryIndex.index);
+            }
+        }
+
+        return ExtensionSearchIndex.search(repositoriesIndexes, pattern, offset, nb);
+    }
+
+    /**
+     * Same as {@link #index(ExtensionRepository)} but never fails: an exception thrown by a scheduled task would cancel
+     * all the following refreshes.
+     *
+     * @param repository the repository to index
+     */
+    private void indexSafely(ExtensionRepository repository)
+    {
+        try {
+            index(repository);
+        } catch (RuntimeException e) {
+            this.logger.error("Failed to index the extensions of repository [{}]", repository, e);
+        }
+    }
+
+    /**
+     * List the extensions of the passed repository and update its index.
+     *
+     * @param repository the repository to index
+     */
+    private void index(ExtensionRepository repository)
+    {
+        if (!(repository instanceof Searchable)) {
+            return;
+        }
+
+        Map<ExtensionId, Extension> extensions = new HashMap<ExtensionId, Extension>();
+        try {
+            for (Extension extension : ((Searchable) repository).search(null, 0, -1)) {
+                extensions.put(extension.getId(), extension);
+            }
+        } catch (SearchException e) {
+            this.logger.warn("Failed to list the extensions of repository [{}]: {}", repository,
+                ExceptionUtils.getRootCauseMessage(e));
+
+            return;
+        }
+
+        RepositoryIndex repositoryIndex = this.indexes.get(repository);
+        if (repositoryIndex == null) {
+            repositoryIndex = new RepositoryIndex();
+        }
+
+        for (Extension extension : extensions.values()) {
+            repositoryIndex.index.add(extension);
+        }
+        for (Extension extension : repositoryIndex.extensions.values()) {
+            if (!extensions.containsKey(extension.getId())) {
+                repositoryIndex.index.remove(extension);
+            }
+        }
+        repositoryIndex.extensions = extensions;
+
+        synchronized (this) {
+            // Make sure the repository has not been removed while it was listed
+            if (this.repositories.contains(repository)) {
+                this.indexes.put(repository, repositoryIndex);
+            }
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionNotFoundException;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.ExtensionRepository;
+
+/**
+ * Resolve extensions in a list of repositories, the first repository able to resolve the extension wins.
+ * <p>
+ * The results are remembered in a {@link ExtensionResolveCache}. A failure is remembered only when all the repositories
+ * reported that the extension does not exist (see {@link ExtensionNotFoundException}), not when one of them could not be
+ * accessed. In parallel mode all the repositories are queried at
+ * the same time and the lookups still running when a repository with a higher priority succeeded are cancelled.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+class ExtensionRepositoriesResolver
+{
+    /**
+     * The maximum number of threads used to query the repositories in parallel mode.
+     */
+    private static final int THREADS = 10;
+
+    /**
+     * An extension or extension dependency to resolve.
+     * 
+     * @version $Id$
+     */
+    private static class ResolveRequest
+    {
+        /**
+         * The kind of element to resolve, used in messages.
+         */
+        private final String type;
+
+        /**
+         * The {@link ExtensionId} or {@link ExtensionDependency} to resolve.
+         */
+        private final Object element;
+
+        /**
+         * @param type the kind of element to resolve, used in messages
+         * @param element the {@link ExtensionId} or {@link ExtensionDependency} to resolve
+         */
+        ResolveRequest(String type, Object element)
+        {
+            this.type = type;
+            this.element = element;
+        }
+
+        /**
+         * @param repository the repository where to search
+         * @return the resolved extension
+         * @throws ResolveException failed to resolve the extension in the passed repository
+         */
+        Extension resolve(ExtensionRepository repository) throws ResolveException
+        {
+            if (this.element instanceof ExtensionId) {
+                return repository.resolve((ExtensionId) this.element);
+            } else {
+                return repository.resolve((ExtensionDependency) this.element);
+            }
+        }
+    }
+
+    /**
+     * The logger to log.
+     */
+    private final Logger logger;
+
+    /**
+     * The remembered results.
+     */
+    private final ExtensionResolveCache cache;
+
+    /**
+     * Used to query the repositories at the same time, null when the repositories are queried one after the other.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param cache the remembered results
+     * @param parallel true if the repositories should be queried at the same time
+     * @param logger the logger to log
+     */
+    ExtensionRepositoriesResolver(ExtensionResolveCache cache, boolean parallel, Logger logger)
+    {
+        this.cache = cache;
+        this.logger = logger;
+
+        if (parallel) {
+            this.executor =
+                new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new BasicThreadFactory.Builder().namingPattern("Extension resolver %d").daemon(true).build());
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Stop the threads used to query the repositories at the same time.
+     */
+    void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Forget all the remembered results, to call when the repositories change.
+     */
+    void clearCache()
+    {
+        this.cache.clear();
+    }
+
+    /**
+     * @param extensionId the extension to resolve
+     * @param repositories the repositories where to search, by priority
+     * @return the resolved extension
+     * @throws ResolveException failed to resolve the extension in any repository
+     */
+    Extension resolve(ExtensionId extensionId, List<ExtensionRepository> repositories) throws ResolveException
+    {
+        return resolve(extensionId, new ResolveRequest("extension", extensionId), repositories);
+    }
+
+    /**
+     * @param extensionDependency the extension dependency to resolve
+     * @param repositories the repositories where to search, by priority
+     * @return the resolved extension
+     * @throws ResolveException failed to resolve the extension dependency in any repository
+     */
+    Extension resolve(ExtensionDependency extensionDependency, List<ExtensionRepository> repositories)
+        throws ResolveException
+    {
+        // ExtensionDependency implementations don't always implement equals/hashCode
+        Object key =
+            Arrays.asList(extensionDependency.getId(), extensionDependency.getVersionConstraint().getValue());
+
+        return resolve(key, new ResolveRequest("extension dependency", extensionDependency), repositories);
+    }
+
+    /**
+     * @param key the key of the element to resolve in the cache
+     * @param request the element to resolve
+     * @param repositories the repositories where to search, by priority
+     * @return the resolved extension
+     * @throws ResolveException failed to resolve the element in any repository
+     */
+    private Extension resolve(Object key, ResolveRequest request, List<ExtensionRepository> repositories)
+        throws ResolveException
+    {
+        ExtensionResolveCache.Entry entry = this.cache.get(key);
+        if (entry != null) {
+            return entry.getExtension();
+        }
+
+        long generation = this.cache.getGeneration();
+
+        Extension extension;
+        try {
+            if (this.executor != null && repositories.size() > 1) {
+                extension = resolveParallel(request, repositories);
+            } else {
+                extension = resolveSequential(request, repositories);
+            }
+        } catch (ExtensionNotFoundException e) {
+            this.cache.put(key, e, generation);
+
+            throw e;
+        }
+
+        this.cache.put(key, extension, generation);
+
+        return extension;
+    }
+
+    /**
+     * @param request the element to resolve
+     * @param repositories the repositories where to search, by priority
+     * @return the resolved extension
+     * @throws ResolveException failed to resolve the element in any repository
+     */
+    private Extension resolveSequential(ResolveRequest request, List<ExtensionRepository> repositories)
+        throws ResolveException
+    {
+        ResolveException lastException = null;
+        boolean notFound = true;
+
+        for (ExtensionRepository repository : repositories) {
+            try {
+                return request.resolve(repository);
+            } catch (ResolveException e) {
+                logFailure(request, repository, e);
+
+                lastException = e;
+                notFound &= e instanceof ExtensionNotFoundException;
+            }
+        }
+
+        throw createException(request, lastException, notFound);
+    }
+
+    /**
+     * @param request the element to resolve
+     * @param repositories the repositories where to search, by priority
+     * @return the resolved extension
+     * @throws ResolveException failed to resolve the element in any repository
+     */
+    private Extension resolveParallel(final ResolveRequest request, List<ExtensionRepository> repositories)
+        throws ResolveException
+    {
+        // Make sure the futures and the repositories stay aligned even if the passed list is modified
+        List<ExtensionRepository> repositoryList = new ArrayList<ExtensionRepository>(repositories);
+
+        List<Future<Extension>> futures = new ArrayList<Future<Extension>>(repositoryList.size());
+        for (final ExtensionRepository repository : repositoryList) {
+            futures.add(this.executor.submit(new Callable<Extension>()
+            {
+                @Override
+                public Extension call() throws ResolveException
+                {
+                    return request.resolve(repository);
+                }
+            }));
+        }
+
+        ResolveException lastException = null;
+        boolean notFound = true;
+
+        try {
+            // Wait for the results by priority
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    return futures.get(i).get();
+                } catch (ExecutionException e) {
+                    lastException = getResolveException(e);
+                    notFound &= lastException instanceof ExtensionNotFoundException;
+
+                    logFailure(request, repositoryList.get(i), lastException);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ResolveException(MessageFormat.format("Interrupted while resolving {0} [{1}]", request.type,
+                request.element), e);
+        } finally {
+            // Cancel the lookups still running in repositories with a lower priority
+            for (Future<Extension> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        throw createException(request, lastException, notFound);
+    }
+
+    /**
+     * @param e the failure of a lookup
+     * @return the reason why the lookup failed
+     */
+    private ResolveException getResolveException(ExecutionException e)
+    {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof ResolveException) {
+            return (ResolveException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else {
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * @param request the element which could not be resolved
+     * @param repository the repository which failed to resolve the element
+     * @param e the reason
+     */
+    private void logFailure(ResolveRequest request, ExtensionRepository repository, ResolveException e)
+    {
+        this.logger.debug("Could not find {} [{}] in repository [{}]", new Object[] {request.type,
+            request.element, repository.getDescriptor(), e});
+    }
+
+    /**
+     * @param request the element which could not be resolved
+     * @param lastException the reason why the last repository failed to resolve the element
+     * @param notFound true if all the repositories reported that the element does not exist
+     * @return the exception to throw
+     */
+    private ResolveException createException(ResolveRequest request, ResolveException lastException,
+        boolean notFound)
+    {
+        String message = MessageFormat.format("Could not find {0} [{1}]", request.type, request.element);
+
+        return notFound ? new ExtensionNotFoundException(message, lastException) : new ResolveException(message,
+            lastException);
+    }
+}
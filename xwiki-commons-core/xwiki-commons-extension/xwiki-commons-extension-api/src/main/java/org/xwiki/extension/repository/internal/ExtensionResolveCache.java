@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionNotFoundException;
+
+/**
+ * A bounded cache of resolve results (resolved extension or missing extension) which expire after a fixed delay.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+class ExtensionResolveCache
+{
+    /**
+     * A cached resolve result.
+     * 
+     * @version $Id$
+     */
+    static class Entry
+    {
+        /**
+         * @see #getExtension()
+         */
+        private final Extension extension;
+
+        /**
+         * The reason why the extension could not be found.
+         */
+        private final ExtensionNotFoundException exception;
+
+        /**
+         * The date after which the result is not valid anymore.
+         */
+        private final long expiration;
+
+        /**
+         * @param extension the resolved extension
+         * @param exception the reason why the extension could not be found
+         * @param expiration the date after which the result is not valid anymore
+         */
+        Entry(Extension extension, ExtensionNotFoundException exception, long expiration)
+        {
+            this.extension = extension;
+            this.exception = exception;
+            this.expiration = expiration;
+        }
+
+        /**
+         * @return the resolved extension
+         * @throws ExtensionNotFoundException the reason why the extension could not be found
+         */
+        Extension getExtension() throws ExtensionNotFoundException
+        {
+            if (this.exception != null) {
+                // A new exception each time so that the cached one is never modified by the caller and the stack trace
+                // matches the current call
+                throw new ExtensionNotFoundException(this.exception.getMessage(), this.exception.getCause());
+            }
+
+            return this.extension;
+        }
+    }
+
+    /**
+     * The time in milliseconds during which a result is valid.
+     */
+    private final long ttl;
+
+    /**
+     * The cached results, the least recently used first.
+     */
+    private final Map<Object, Entry> entries;
+
+    /**
+     * Incremented each time the cache is cleared so that results computed before are not stored.
+     */
+    private long generation;
+
+    /**
+     * @param maxSize the maximum number of results to remember, 0 to not remember anything
+     * @param ttl the time in milliseconds during which a result is valid
+     */
+    ExtensionResolveCache(final int maxSize, long ttl)
+    {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the current generation of the cache, to pass to {@link #put(Object, Extension, long)} or
+     *         {@link #put(Object, ExtensionNotFoundException, long)}
+     */
+    synchronized long getGeneration()
+    {
+        return this.generation;
+    }
+
+    /**
+     * @param key the key of the resolved element
+     * @return the cached result or null if none could be found or if it expired
+     */
+    synchronized Entry get(Object key)
+    {
+        Entry entry = this.entries.get(key);
+
+        if (entry != null && entry.expiration < System.currentTimeMillis()) {
+            this.entries.remove(key);
+            entry = null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * @param key the key of the resolved element
+     * @param extension the resolved extension
+     * @param generation the generation of the cache when the resolution started
+     */
+    void put(Object key, Extension extension, long generation)
+    {
+        put(key, new Entry(extension, null, System.currentTimeMillis() + this.ttl), generation);
+    }
+
+    /**
+     * @param key the key of the resolved element
+     * @param exception the reason why the extension could not be found
+     * @param generation the generation of the cache when the resolution started
+     */
+    void put(Object key, ExtensionNotFoundException exception, long generation)
+    {
+        put(key, new Entry(null, exception, System.currentTimeMillis() + this.ttl), generation);
+    }
+
+    /**
+     * @param key the key of the resolved element
+     * @param entry the result
+     * @param generation the generation of the cache when the resolution started
+     */
+    private synchronized void put(Object key, Entry entry, long generation)
+    {
+        // Ignore results computed with repositories which changed in the meantime
+        if (generation == this.generation) {
+            this.entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Forget all the results.
+     */
+    synchronized void clear()
+    {
+        this.entries.clear();
+        ++this.generation;
+    }
+}
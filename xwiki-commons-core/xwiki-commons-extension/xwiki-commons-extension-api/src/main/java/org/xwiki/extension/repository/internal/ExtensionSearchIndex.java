@@ -0,0 +1,526 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionAuthor;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.result.IterableResult;
+
+/**
+ * In memory inverted index of extensions used to search them without scanning all of them.
+ * <p>
+ * The id, name, summary, description, features and authors of the extensions are split in lower case tokens. To keep
+ * the historical semantic of the search (the pattern has to be contained in one of these elements, ignoring case) the
+ * index also knows all the suffixes of the tokens: the candidates are the extensions having, for each token of the
+ * pattern, a token containing it and they are then checked against the whole pattern.
+ * <p>
+ * The results are ordered by relevance: where the pattern has been found (id and name first, then features, summary
+ * and authors, then description) and how (the whole element, the start of a word or anywhere).
+ * <p>
+ * The index is updated incrementally and is thread safe.
+ *
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class ExtensionSearchIndex
+{
+    /**
+     * The weight of a match in the id or the name of the extension.
+     */
+    private static final int WEIGHT_HIGH = 8;
+
+    /**
+     * The weight of a match in a feature of the extension.
+     */
+    private static final int WEIGHT_FEATURE = 4;
+
+    /**
+     * The weight of a match in the summary or an author of the extension.
+     */
+    private static final int WEIGHT_MEDIUM = 2;
+
+    /**
+     * The weight of a match in the description of the extension.
+     */
+    private static final int WEIGHT_LOW = 1;
+
+    /**
+     * The factor applied when the pattern is the whole element.
+     */
+    private static final int FACTOR_EXACT = 4;
+
+    /**
+     * The factor applied when the pattern is found at the start of a word.
+     */
+    private static final int FACTOR_WORD = 2;
+
+    /**
+     * What separates tokens.
+     */
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Order the extensions on id and then on version (greatest first).
+     */
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>()
+    {
+        @Override
+        public int compare(Entry entry1, Entry entry2)
+        {
+            ExtensionId id1 = entry1.extension.getId();
+            ExtensionId id2 = entry2.extension.getId();
+
+            int result = id1.getId().compareTo(id2.getId());
+
+            return result != 0 ? result : ObjectUtils.compare(id2.getVersion(), id1.getVersion());
+        }
+    };
+
+    /**
+     * Order the matches on relevance (greatest first).
+     */
+    private static final Comparator<Match> RELEVANCE_ORDER = new Comparator<Match>()
+    {
+        @Override
+        public int compare(Match match1, Match match2)
+        {
+            return match2.score < match1.score ? -1 : (match2.score == match1.score ? 0 : 1);
+        }
+    };
+
+    /**
+     * An indexed extension.
+     *
+     * @version $Id$
+     */
+    private static class Entry
+    {
+        /**
+         * The extension.
+         */
+        private final Extension extension;
+
+        /**
+         * The searched elements of the extension, in lower case.
+         */
+        private final List<String> elements = new ArrayList<String>();
+
+        /**
+         * The weight of each element.
+         */
+        private final List<Integer> weights = new ArrayList<Integer>();
+
+        /**
+         * The tokens of all the elements.
+         */
+        private final Set<String> tokens = new HashSet<String>();
+
+        /**
+         * @param extension the extension to index
+         */
+        Entry(Extension extension)
+        {
+            this.extension = extension;
+
+            addElement(extension.getId().getId(), WEIGHT_HIGH);
+            addElement(extension.getName(), WEIGHT_HIGH);
+            for (String feature : extension.getFeatures()) {
+                addElement(feature, WEIGHT_FEATURE);
+            }
+            addElement(extension.getSummary(), WEIGHT_MEDIUM);
+            for (ExtensionAuthor author : extension.getAuthors()) {
+                addElement(author.getName(), WEIGHT_MEDIUM);
+            }
+            addElement(extension.getDescription(), WEIGHT_LOW);
+        }
+
+        /**
+         * @param element the element to index
+         * @param weight the weight of the element
+         */
+        private void addElement(String element, int weight)
+        {
+            if (StringUtils.isNotEmpty(element)) {
+                String lowerElement = element.toLowerCase();
+
+                this.elements.add(lowerElement);
+                this.weights.add(weight);
+                this.tokens.addAll(tokenize(lowerElement));
+            }
+        }
+
+        /**
+         * @param pattern the lower case pattern
+         * @return the relevance of the extension for the passed pattern, 0 if it does not match
+         */
+        int score(String pattern)
+        {
+            int score = 0;
+
+            for (int i = 0; i < this.elements.size(); ++i) {
+                score += this.weights.get(i) * getFactor(this.elements.get(i), pattern);
+            }
+
+            return score;
+        }
+    }
+
+    /**
+     * An extension matching a search.
+     *
+     * @version $Id$
+     */
+    private static class Match
+    {
+        /**
+         * The matched extension.
+         */
+        private final Extension extension;
+
+        /**
+         * The relevance of the extension.
+         */
+        private final int score;
+
+        /**
+         * @param extension the matched extension
+         * @param score the relevance of the extension
+         */
+        Match(Extension extension, int score)
+        {
+            this.extension = extension;
+            this.score = score;
+        }
+    }
+
+    /**
+     * The indexed extensions.
+     */
+    private final Map<ExtensionId, Entry> entries = new HashMap<ExtensionId, Entry>();
+
+    /**
+     * The extensions containing each token.
+     */
+    private final Map<String, Set<Entry>> postings = new HashMap<String, Set<Entry>>();
+
+    /**
+     * The tokens ending with each suffix, sorted to find all the suffixes starting with a searched token.
+     */
+    private final NavigableMap<String, Set<String>> suffixes = new TreeMap<String, Set<String>>();
+
+    /**
+     * Protect the index.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param element the lower case element to split
+     * @return the tokens of the element
+     */
+    private static Collection<String> tokenize(String element)
+    {
+        Collection<String> tokens = new ArrayList<String>();
+
+        for (String token : TOKEN_SEPARATOR.split(element)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+
+        return tokens;
+    }
+
+    /**
+     * @param element the lower case element
+     * @param pattern the lower case pattern
+     * @return how well the pattern matches the element, 0 if it's not contained in the element
+     */
+    private static int getFactor(String element, String pattern)
+    {
+        if (element.equals(pattern)) {
+            return FACTOR_EXACT;
+        }
+
+        int factor = 0;
+
+        for (int index = element.indexOf(pattern); index != -1; index = element.indexOf(pattern, index + 1)) {
+            if (index == 0 || !Character.isLetterOrDigit(element.charAt(index - 1))) {
+                return FACTOR_WORD;
+            }
+
+            factor = 1;
+        }
+
+        return factor;
+    }
+
+    /**
+     * Add an extension to the index or update it if an extension with the same id is already indexed.
+     *
+     * @param extension the extension to index
+     */
+    public void add(Extension extension)
+    {
+        Entry entry = new Entry(extension);
+
+        this.lock.writeLock().lock();
+
+        try {
+            removeEntry(extension.getId());
+
+            this.entries.put(extension.getId(), entry);
+
+            for (String token : entry.tokens) {
+                Set<Entry> tokenEntries = this.postings.get(token);
+                if (tokenEntries == null) {
+                    tokenEntries = new HashSet<Entry>();
+                    this.postings.put(token, tokenEntries);
+                    addSuffixes(token);
+                }
+                tokenEntries.add(entry);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove an extension from the index.
+     *
+     * @param extension the extension to remove
+     */
+    public void remove(Extension extension)
+    {
+        this.lock.writeLock().lock();
+
+        try {
+            removeEntry(extension.getId());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all the extensions from the index.
+     */
+    public void clear()
+    {
+        this.lock.writeLock().lock();
+
+        try {
+            this.entries.clear();
+            this.postings.clear();
+            this.suffixes.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed extensions
+     */
+    public int size()
+    {
+        this.lock.readLock().lock();
+
+        try {
+            return this.entries.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param extensionId the id of the extension to remove
+     */
+    private void removeEntry(ExtensionId extensionId)
+    {
+        Entry entry = this.entries.remove(extensionId);
+
+        if (entry != null) {
+            for (String token : entry.tokens) {
+                Set<Entry> tokenEntries = this.postings.get(token);
+                tokenEntries.remove(entry);
+                if (tokenEntries.isEmpty()) {
+                    this.postings.remove(token);
+                    removeSuffixes(token);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param token the new token
+     */
+    private void addSuffixes(String token)
+    {
+        for (int i = 0; i < token.length(); ++i) {
+            String suffix = token.substring(i);
+
+            Set<String> tokens = this.suffixes.get(suffix);
+            if (tokens == null) {
+                tokens = new HashSet<String>();
+                this.suffixes.put(suffix, tokens);
+            }
+            tokens.add(token);
+        }
+    }
+
+    /**
+     * @param token the token not used anymore
+     */
+    private void removeSuffixes(String token)
+    {
+        for (int i = 0; i < token.length(); ++i) {
+            String suffix = token.substring(i);
+
+            Set<String> tokens = this.suffixes.get(suffix);
+            tokens.remove(token);
+            if (tokens.isEmpty()) {
+                this.suffixes.remove(suffix);
+            }
+        }
+    }
+
+    /**
+     * Search the indexed extensions.
+     *
+     * @param pattern the pattern to search, all the extensions are returned if empty
+     * @param offset the offset from where to start returning search results
+     * @param nb the maximum number of search results to return, -1 for all
+     * @return the found extensions, the most relevant first
+     */
+    public IterableResult<Extension> search(String pattern, int offset, int nb)
+    {
+        return search(Collections.singletonList(this), pattern, offset, nb);
+    }
+
+    /**
+     * Search the extensions of several indexes.
+     *
+     * @param indexes the indexes to search, when two matches have the same relevance the one from the first index comes
+     *            first
+     * @param pattern the pattern to search, all the extensions are returned if empty
+     * @param offset the offset from where to start returning search results
+     * @param nb the maximum number of search results to return, -1 for all
+     * @return the found extensions, the most relevant first
+     */
+    public static IterableResult<Extension> search(Collection<ExtensionSearchIndex> indexes, String pattern,
+        int offset, int nb)
+    {
+        String lowerPattern = StringUtils.isEmpty(pattern) ? null : pattern.toLowerCase();
+
+        List<Match> matches = new ArrayList<Match>();
+        for (ExtensionSearchIndex index : indexes) {
+            index.collect(lowerPattern, matches);
+        }
+
+        // Stable so that equivalent matches stay in index and then id order
+        Collections.sort(matches, RELEVANCE_ORDER);
+
+        List<Extension> extensions = new ArrayList<Extension>(matches.size());
+        for (Match match : matches) {
+            extensions.add(match.extension);
+        }
+
+        return RepositoryUtils.searchInCollection(offset, nb, extensions);
+    }
+
+    /**
+     * @param pattern the lower case pattern, null to match all the extensions
+     * @param matches the list where to add the matched extensions
+     */
+    private void collect(String pattern, List<Match> matches)
+    {
+        List<Entry> candidates;
+
+        this.lock.readLock().lock();
+
+        try {
+            candidates = new ArrayList<Entry>(pattern != null ? getCandidates(pattern) : this.entries.values());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        Collections.sort(candidates, ENTRY_ORDER);
+
+        for (Entry candidate : candidates) {
+            int score = pattern != null ? candidate.score(pattern) : 0;
+            if (pattern == null || score > 0) {
+                matches.add(new Match(candidate.extension, score));
+            }
+        }
+    }
+
+    /**
+     * @param pattern the lower case pattern
+     * @return the extensions which might contain the pattern
+     */
+    private Collection<Entry> getCandidates(String pattern)
+    {
+        Collection<String> patternTokens = tokenize(pattern);
+
+        if (patternTokens.isEmpty()) {
+            // Only separators, nothing to narrow the search
+            return this.entries.values();
+        }
+
+        Set<Entry> candidates = null;
+        for (String patternToken : patternTokens) {
+            Set<Entry> tokenCandidates = new HashSet<Entry>();
+            for (Set<String> tokens : this.suffixes.subMap(patternToken, true, patternToken + Character.MAX_VALUE,
+                false).values()) {
+                for (String token : tokens) {
+                    tokenCandidates.addAll(this.postings.get(token));
+                }
+            }
+
+            if (candidates == null) {
+                candidates = tokenCandidates;
+            } else {
+                candidates.retainAll(tokenCandidates);
+            }
+
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+
+        return candidates;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Persistent cache of the Maven descriptors found in the classpath entries, stored along with the size and last
+ * modification date of the entry they have been found in. Used by {@link DefaultCoreExtensionScanner} to only scan the
+ * classpath entries which changed since the previous start.
+ * <p>
+ * Only regular files (i.e. jars) are cached, a classpath directory can be modified without its own modification date
+ * being updated.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+class CoreExtensionCache
+{
+    /**
+     * The version of the cache format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The descriptors found in a classpath entry.
+     * 
+     * @version $Id$
+     */
+    private static class Entry
+    {
+        /**
+         * The size of the classpath entry when it has been scanned.
+         */
+        private final long size;
+
+        /**
+         * The last modification date of the classpath entry when it has been scanned.
+         */
+        private final long lastModified;
+
+        /**
+         * The content of the descriptors indexed by resource name.
+         */
+        private final Map<String, byte[]> descriptors;
+
+        /**
+         * @param size the size of the classpath entry
+         * @param lastModified the last modification date of the classpath entry
+         * @param descriptors the content of the descriptors indexed by resource name
+         */
+        Entry(long size, long lastModified, Map<String, byte[]> descriptors)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.descriptors = descriptors;
+        }
+
+        /**
+         * @param file the classpath entry file
+         * @return true if the passed file did not change since it has been scanned
+         */
+        boolean matches(File file)
+        {
+            return file.length() == this.size && file.lastModified() == this.lastModified;
+        }
+    }
+
+    /**
+     * The entries loaded from the cache file which have not been used yet, indexed by URL.
+     */
+    private final Map<String, Entry> previousEntries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * The entries of the current classpath, indexed by URL.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * True if some cached classpath entry changed or a classpath entry has been scanned since the cache has been
+     * loaded.
+     */
+    private boolean modified;
+
+    /**
+     * @param url the URL of the classpath entry
+     * @return the cached descriptors of the passed classpath entry or null if it's not cached or changed since it was
+     *         cached
+     */
+    public Map<String, byte[]> get(URL url)
+    {
+        String key = url.toString();
+
+        Entry entry = this.previousEntries.remove(key);
+        if (entry != null) {
+            File file = toFile(url);
+            if (file != null && entry.matches(file)) {
+                this.entries.put(key, entry);
+
+                return entry.descriptors;
+            }
+
+            this.modified = true;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param url the URL of the scanned classpath entry
+     * @param descriptors the content of the descriptors found in the classpath entry indexed by resource name
+     */
+    public void put(URL url, Map<String, byte[]> descriptors)
+    {
+        File file = toFile(url);
+
+        // Classpath entries which are not regular files (folders, remote URLs, etc.) can't be cached and don't modify
+        // the cache
+        if (file != null) {
+            this.entries.put(url.toString(), new Entry(file.length(), file.lastModified(), descriptors));
+
+            this.modified = true;
+        }
+    }
+
+    /**
+     * @return true if the cache content is different from what was loaded (a classpath entry has been scanned or
+     *         removed from the classpath)
+     */
+    public boolean isModified()
+    {
+        return this.modified || !this.previousEntries.isEmpty();
+    }
+
+    /**
+     * @param url the URL of a classpath entry
+     * @return the file of the passed classpath entry or null if it's not a regular file
+     */
+    private File toFile(URL url)
+    {
+        if (url.getProtocol().equals("file")) {
+            try {
+                File file = new File(url.toURI());
+
+                return file.isFile() ? file : null;
+            } catch (URISyntaxException e) {
+                // Not a valid file URL
+            } catch (IllegalArgumentException e) {
+                // Not a valid file URL
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Load the entries of the passed cache file. A cache file with a different version is ignored.
+     * 
+     * @param file the cache file
+     * @throws IOException when failing to read the cache file
+     */
+    public void load(File file) throws IOException
+    {
+        Map<String, Entry> loadedEntries = new LinkedHashMap<String, Entry>();
+
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+
+            for (int entryCount = in.readInt(); entryCount > 0; --entryCount) {
+                String url = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+
+                Map<String, byte[]> descriptors = new LinkedHashMap<String, byte[]>();
+                for (int descriptorCount = in.readInt(); descriptorCount > 0; --descriptorCount) {
+                    String descriptor = in.readUTF();
+                    byte[] content = new byte[in.readInt()];
+                    in.readFully(content);
+                    descriptors.put(descriptor, content);
+                }
+
+                loadedEntries.put(url, new Entry(size, lastModified, descriptors));
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        this.previousEntries.putAll(loadedEntries);
+    }
+
+    /**
+     * Save the entries of the current classpath in the passed cache file.
+     * 
+     * @param file the cache file
+     * @throws IOException when failing to write the cache file
+     */
+    public void save(File file) throws IOException
+    {
+        // Write in a temporary file first so that a concurrent or interrupted write never leaves a corrupted cache
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        FileUtils.forceMkdir(file.getParentFile());
+
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+        try {
+            out.writeInt(VERSION);
+
+            out.writeInt(this.entries.size());
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+
+                out.writeInt(entry.getValue().descriptors.size());
+                for (Map.Entry<String, byte[]> descriptor : entry.getValue().descriptors.entrySet()) {
+                    out.writeUTF(descriptor.getKey());
+                    out.writeInt(descriptor.getValue().length);
+                    out.write(descriptor.getValue());
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        FileUtils.deleteQuietly(file);
+        if (!tmpFile.renameTo(file)) {
+            FileUtils.deleteQuietly(tmpFile);
+
+            throw new IOException("Failed to move [" + tmpFile + "] to [" + file + "]");
+        }
+    }
+}
@@ -37,11 +37,12 @@
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionNotFoundException;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.AbstractExtensionRepository;
 import org.xwiki.extension.repository.CoreExtensionRepository;
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
-import org.xwiki.extension.repository.internal.RepositoryUtils;
+import org.xwiki.extension.repository.internal.ExtensionSearchIndex;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.result.IterableResult;
 import org.xwiki.extension.repository.search.SearchException;
@@ -81,6 +82,16 @@ public class DefaultCoreExtensionRepository extends AbstractExtensionRepository
     @Inject
     private transient CoreExtensionScanner scanner;
 
+    /**
+     * The searchable core extensions, created when first needed.
+     */
+    private transient volatile ExtensionSearchIndex searchIndex;
+
+    /**
+     * The number of entries in {@link #extensions} when {@link #searchIndex} was created.
+     */
+    private transient volatile int searchIndexSize;
+
     /**
      * Default constructor.
      */
@@ -114,6 +125,9 @@ public void initialize() throws InitializationException
                 public void run()
                 {
                     scanner.updateExtensions(extensions.values());
+
+                    // The extensions have been modified
+                    resetSearchIndex();
                 }
             });
 
@@ -135,7 +149,7 @@ public CoreExtension resolve(ExtensionId extensionId) throws ResolveException
 
         if (extension == null
             || (extensionId.getVersion() != null && !extension.getId().getVersion().equals(extensionId.getVersion()))) {
-            throw new ResolveException("Could not find extension [" + extensionId + "]");
+            throw new ExtensionNotFoundException("Could not find extension [" + extensionId + "]");
         }
 
         return extension;
@@ -148,7 +162,7 @@ public CoreExtension resolve(ExtensionDependency extensionDependency) throws Res
 
         if (extension == null
             || (!extensionDependency.getVersionConstraint().containsVersion(extension.getId().getVersion()))) {
-            throw new ResolveException("Could not find extension dependency [" + extensionDependency + "]");
+            throw new ExtensionNotFoundException("Could not find extension dependency [" + extensionDependency + "]");
         }
 
         return extension;
@@ -179,7 +193,7 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
         Extension extension = getCoreExtension(id);
 
         if (extension == null) {
-            throw new ResolveException("Could not find extension with id [" + id + "]");
+            throw new ExtensionNotFoundException("Could not find extension with id [" + id + "]");
         }
 
         Collection<Version> versions;
@@ -223,6 +237,37 @@ public CoreExtension getCoreExtension(String feature)
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb) throws SearchException
     {
-        return RepositoryUtils.searchInCollection(pattern, offset, nb, this.extensions.values());
+        return getSearchIndex().search(pattern, offset, nb);
+    }
+
+    /**
+     * @return the index of the core extensions
+     */
+    private ExtensionSearchIndex getSearchIndex()
+    {
+        ExtensionSearchIndex index = this.searchIndex;
+
+        // Extending classes might have added extensions since the index was created
+        int size = this.extensions.size();
+        if (index == null || this.searchIndexSize != size) {
+            index = new ExtensionSearchIndex();
+            // Extensions are also registered under their features, indexing them again just replaces their entry
+            for (DefaultCoreExtension extension : this.extensions.values()) {
+                index.add(extension);
+            }
+
+            this.searchIndexSize = size;
+            this.searchIndex = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Make sure the index is created again with the current extensions metadata.
+     */
+    private void resetSearchIndex()
+    {
+        this.searchIndex = null;
     }
 }
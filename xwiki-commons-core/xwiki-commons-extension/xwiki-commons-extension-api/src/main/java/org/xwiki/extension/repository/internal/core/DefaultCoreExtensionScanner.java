@@ -19,16 +19,31 @@
  */
 package org.xwiki.extension.repository.internal.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
@@ -39,6 +54,7 @@
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Developer;
 import org.apache.maven.model.License;
@@ -61,6 +77,7 @@
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ExtensionLicense;
 import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.ExtensionManagerConfiguration;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.ExtensionRepositoryManager;
 import org.xwiki.extension.version.internal.DefaultVersionConstraint;
@@ -103,6 +120,11 @@ public class DefaultCoreExtensionScanner implements CoreExtensionScanner
      */
     private static final String MF_EXTENSION_ID = "XWiki-Extension-Id";
 
+    /**
+     * The file where the Maven descriptors found in the classpath are cached, relative to the permanent directory.
+     */
+    private static final String CACHE_FILE = "extension/cache/core.cache";
+
     /**
      * The logger to log.
      */
@@ -130,6 +152,67 @@ public class DefaultCoreExtensionScanner implements CoreExtensionScanner
     @Inject
     private Environment environment;
 
+    /**
+     * Used to get the number of threads and the timeout of the core extensions update.
+     */
+    @Inject
+    private ExtensionManagerConfiguration configuration;
+
+    /**
+     * Parse a Maven descriptor into a {@link DefaultCoreExtension}.
+     * 
+     * @version $Id$
+     */
+    private class DescriptorParser implements Callable<DefaultCoreExtension>
+    {
+        /**
+         * The resource name of the descriptor.
+         */
+        private final String descriptor;
+
+        /**
+         * The content of the descriptor.
+         */
+        private final byte[] content;
+
+        /**
+         * The classpath entry containing the descriptor.
+         */
+        private final URL extensionURL;
+
+        /**
+         * The repository used to create the {@link DefaultCoreExtension}.
+         */
+        private final DefaultCoreExtensionRepository repository;
+
+        /**
+         * @param descriptor the resource name of the descriptor
+         * @param content the content of the descriptor
+         * @param extensionURL the classpath entry containing the descriptor
+         * @param repository the repository used to create the {@link DefaultCoreExtension}
+         */
+        DescriptorParser(String descriptor, byte[] content, URL extensionURL, DefaultCoreExtensionRepository repository)
+        {
+            this.descriptor = descriptor;
+            this.content = content;
+            this.extensionURL = extensionURL;
+            this.repository = repository;
+        }
+
+        @Override
+        public DefaultCoreExtension call()
+        {
+            try {
+                return parseMavenPom(new ByteArrayInputStream(this.content), this.extensionURL, this.repository);
+            } catch (Exception e) {
+                logger.warn("Failed to parse extension descriptor [{}] from [{}]", this.descriptor,
+                    this.extensionURL, e);
+            }
+
+            return null;
+        }
+    }
+
     private Dependency toDependency(String id, String version, String type) throws ResolveException
     {
         Matcher matcher = PARSER_ID.matcher(id);
@@ -196,89 +279,103 @@ private URL getExtensionURL(URL descriptorUrl) throws MalformedURLException
         extensionURLStr =
             extensionURLStr.substring(0, descriptorUrl.toString().indexOf(MAVENPACKAGE.replace('.', '/')));
 
-        if (extensionURLStr.startsWith("jar:")) {
+        return toClasspathURL(extensionURLStr);
+    }
+
+    /**
+     * @param urlStr the URL of a classpath entry, possibly using the jar protocol
+     * @return the URL of the classpath entry file
+     * @throws MalformedURLException when failing to create the URL
+     */
+    private URL toClasspathURL(String urlStr) throws MalformedURLException
+    {
+        String classpathURLStr = urlStr;
+
+        if (classpathURLStr.startsWith("jar:")) {
             int start = "jar:".length();
-            int end = extensionURLStr.length();
-            if (extensionURLStr.endsWith("!/")) {
+            int end = classpathURLStr.length();
+            if (classpathURLStr.endsWith("!/")) {
                 end -= "!/".length();
             }
 
-            extensionURLStr = extensionURLStr.substring(start, end);
+            classpathURLStr = classpathURLStr.substring(start, end);
         }
 
-        return new URL(extensionURLStr);
+        return new URL(classpathURLStr);
     }
 
     private DefaultCoreExtension parseMavenPom(URL descriptorUrl, DefaultCoreExtensionRepository repository)
         throws IOException, XmlPullParserException
     {
-        DefaultCoreExtension coreExtension = null;
-
         InputStream descriptorStream = descriptorUrl.openStream();
         try {
-            MavenXpp3Reader reader = new MavenXpp3Reader();
-            Model mavenModel = reader.read(descriptorStream);
-
-            String version = resolveVersion(mavenModel.getVersion(), mavenModel, false);
-            String groupId = resolveGroupId(mavenModel.getGroupId(), mavenModel, false);
-
-            URL extensionURL = getExtensionURL(descriptorUrl);
-
-            coreExtension =
-                new MavenCoreExtension(repository, extensionURL, new ExtensionId(groupId + ':'
-                    + mavenModel.getArtifactId(), version), packagingToType(mavenModel.getPackaging()), mavenModel);
-
-            coreExtension.setName(mavenModel.getName());
-            coreExtension.setSummary(mavenModel.getDescription());
-            for (Developer developer : mavenModel.getDevelopers()) {
-                URL authorURL = null;
-                if (developer.getUrl() != null) {
-                    try {
-                        authorURL = new URL(developer.getUrl());
-                    } catch (MalformedURLException e) {
-                        // TODO: log ?
-                    }
-                }
+            return parseMavenPom(descriptorStream, getExtensionURL(descriptorUrl), repository);
+        } finally {
+            IOUtils.closeQuietly(descriptorStream);
+        }
+    }
 
-                coreExtension.addAuthor(new DefaultExtensionAuthor(developer.getId(), authorURL));
-            }
-            coreExtension.setWebsite(mavenModel.getUrl());
+    private DefaultCoreExtension parseMavenPom(InputStream descriptorStream, URL extensionURL,
+        DefaultCoreExtensionRepository repository) throws IOException, XmlPullParserException
+    {
+        MavenXpp3Reader reader = new MavenXpp3Reader();
+        Model mavenModel = reader.read(descriptorStream);
 
-            // licenses
-            for (License license : mavenModel.getLicenses()) {
-                coreExtension.addLicense(getExtensionLicense(license));
-            }
+        String version = resolveVersion(mavenModel.getVersion(), mavenModel, false);
+        String groupId = resolveGroupId(mavenModel.getGroupId(), mavenModel, false);
+
+        DefaultCoreExtension coreExtension =
+            new MavenCoreExtension(repository, extensionURL, new ExtensionId(groupId + ':'
+                + mavenModel.getArtifactId(), version), packagingToType(mavenModel.getPackaging()), mavenModel);
 
-            // features
-            String featuresString = mavenModel.getProperties().getProperty("xwiki.extension.features");
-            if (StringUtils.isNotBlank(featuresString)) {
-                coreExtension.setFeatures(this.converter.<Collection<String>> convert(List.class, featuresString));
+        coreExtension.setName(mavenModel.getName());
+        coreExtension.setSummary(mavenModel.getDescription());
+        for (Developer developer : mavenModel.getDevelopers()) {
+            URL authorURL = null;
+            if (developer.getUrl() != null) {
+                try {
+                    authorURL = new URL(developer.getUrl());
+                } catch (MalformedURLException e) {
+                    // TODO: log ?
+                }
             }
 
-            // custom properties
-            coreExtension.putProperty("maven.groupId", groupId);
-            coreExtension.putProperty("maven.artifactId", mavenModel.getArtifactId());
+            coreExtension.addAuthor(new DefaultExtensionAuthor(developer.getId(), authorURL));
+        }
+        coreExtension.setWebsite(mavenModel.getUrl());
+
+        // licenses
+        for (License license : mavenModel.getLicenses()) {
+            coreExtension.addLicense(getExtensionLicense(license));
+        }
+
+        // features
+        String featuresString = mavenModel.getProperties().getProperty("xwiki.extension.features");
+        if (StringUtils.isNotBlank(featuresString)) {
+            coreExtension.setFeatures(this.converter.<Collection<String>> convert(List.class, featuresString));
+        }
 
-            // dependencies
-            for (Dependency mavenDependency : mavenModel.getDependencies()) {
-                if (!mavenDependency.isOptional()
-                    && (mavenDependency.getScope() == null || mavenDependency.getScope().equals("compile") || mavenDependency
-                        .getScope().equals("runtime"))) {
+        // custom properties
+        coreExtension.putProperty("maven.groupId", groupId);
+        coreExtension.putProperty("maven.artifactId", mavenModel.getArtifactId());
 
-                    String dependencyGroupId = resolveGroupId(mavenDependency.getGroupId(), mavenModel, true);
-                    String dependencyArtifactId = mavenDependency.getArtifactId();
-                    String dependencyClassifier = mavenDependency.getClassifier();
-                    String dependencyVersion = resolveVersion(mavenDependency.getVersion(), mavenModel, true);
+        // dependencies
+        for (Dependency mavenDependency : mavenModel.getDependencies()) {
+            if (!mavenDependency.isOptional()
+                && (mavenDependency.getScope() == null || mavenDependency.getScope().equals("compile") || mavenDependency
+                    .getScope().equals("runtime"))) {
 
-                    DefaultExtensionDependency extensionDependency =
-                        new MavenCoreExtensionDependency(toExtensionId(dependencyGroupId, dependencyArtifactId,
-                            dependencyClassifier), new DefaultVersionConstraint(dependencyVersion), mavenDependency);
+                String dependencyGroupId = resolveGroupId(mavenDependency.getGroupId(), mavenModel, true);
+                String dependencyArtifactId = mavenDependency.getArtifactId();
+                String dependencyClassifier = mavenDependency.getClassifier();
+                String dependencyVersion = resolveVersion(mavenDependency.getVersion(), mavenModel, true);
 
-                    coreExtension.addDependency(extensionDependency);
-                }
+                DefaultExtensionDependency extensionDependency =
+                    new MavenCoreExtensionDependency(toExtensionId(dependencyGroupId, dependencyArtifactId,
+                        dependencyClassifier), new DefaultVersionConstraint(dependencyVersion), mavenDependency);
+
+                coreExtension.addDependency(extensionDependency);
             }
-        } finally {
-            IOUtils.closeQuietly(descriptorStream);
         }
 
         return coreExtension;
@@ -287,14 +384,65 @@ private DefaultCoreExtension parseMavenPom(URL descriptorUrl, DefaultCoreExtensi
     @Override
     public void updateExtensions(Collection<DefaultCoreExtension> extensions)
     {
-        for (DefaultCoreExtension extension : extensions) {
-            try {
-                Extension remoteExtension = this.repositoryManager.resolve(extension.getId());
+        // The same extension can be listed several times (for each of its features)
+        final Queue<DefaultCoreExtension> queue =
+            new ConcurrentLinkedQueue<DefaultCoreExtension>(new LinkedHashSet<DefaultCoreExtension>(extensions));
 
-                extension.set(remoteExtension);
-            } catch (ResolveException e) {
-                this.logger.debug("Can't find remote extension with id [{}]", extension.getId(), e);
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        // Each worker resolves the next extension in the queue until it's empty, each extension is updated as soon as
+        // it's resolved
+        Runnable worker = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (DefaultCoreExtension extension = queue.poll(); extension != null
+                    && !Thread.currentThread().isInterrupted(); extension = queue.poll()) {
+                    updateExtension(extension);
+                }
             }
+        };
+
+        int threads = Math.max(1, Math.min(this.configuration.getCoreExtensionUpdateThreads(), queue.size()));
+        ExecutorService executor =
+            Executors.newFixedThreadPool(threads, new BasicThreadFactory.Builder()
+                .namingPattern("Core extension updater-%d").daemon(true).priority(Thread.MIN_PRIORITY).build());
+        for (int i = 0; i < threads; ++i) {
+            executor.execute(worker);
+        }
+        executor.shutdown();
+
+        long timeout = this.configuration.getCoreExtensionUpdateTimeout();
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                this.logger.warn("Core extensions update did not finish in [{}] ms, [{}] extensions have been skipped",
+                    timeout, queue.size());
+            }
+        } catch (InterruptedException e) {
+            this.logger.warn("Interrupted while updating core extensions");
+
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get more details about the passed extension from the remote repositories.
+     * 
+     * @param extension the extension to update
+     */
+    private void updateExtension(DefaultCoreExtension extension)
+    {
+        try {
+            Extension remoteExtension = this.repositoryManager.resolve(extension.getId());
+
+            extension.set(remoteExtension);
+        } catch (ResolveException e) {
+            this.logger.debug("Can't find remote extension with id [{}]", extension.getId(), e);
         }
     }
 
@@ -356,32 +504,201 @@ public DefaultCoreExtension loadEnvironmentExtensions(DefaultCoreExtensionReposi
     private void loadExtensionsFromClassloaders(Map<String, DefaultCoreExtension> extensions,
         DefaultCoreExtensionRepository repository)
     {
-        Set<URL> mavenURLs = ClasspathHelper.forPackage(MAVENPACKAGE);
+        // The classpath entries containing Maven informations
+        Map<String, URL> urls = new LinkedHashMap<String, URL>();
+        for (URL url : ClasspathHelper.forPackage(MAVENPACKAGE)) {
+            try {
+                URL classpathURL = toClasspathURL(url.toString());
+                urls.put(classpathURL.toString(), classpathURL);
+            } catch (MalformedURLException e) {
+                this.logger.warn("Failed to parse classpath entry [{}]", url, e);
+            }
+        }
+
+        // Reuse the descriptors of the classpath entries which did not change since the previous start
+        CoreExtensionCache cache = loadCache();
+
+        Map<String, Map<String, byte[]>> descriptors = new LinkedHashMap<String, Map<String, byte[]>>();
+        Map<String, URL> modifiedURLs = new LinkedHashMap<String, URL>();
+        for (Map.Entry<String, URL> entry : urls.entrySet()) {
+            Map<String, byte[]> urlDescriptors = cache.get(entry.getValue());
+            if (urlDescriptors != null) {
+                descriptors.put(entry.getKey(), urlDescriptors);
+            } else {
+                modifiedURLs.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (!modifiedURLs.isEmpty()) {
+            Map<String, Map<String, byte[]>> scannedDescriptors = scanDescriptors(modifiedURLs);
+
+            for (Map.Entry<String, URL> entry : modifiedURLs.entrySet()) {
+                Map<String, byte[]> urlDescriptors = scannedDescriptors.get(entry.getKey());
+                if (urlDescriptors == null) {
+                    urlDescriptors = Collections.emptyMap();
+                }
+
+                cache.put(entry.getValue(), urlDescriptors);
+                descriptors.put(entry.getKey(), urlDescriptors);
+            }
+        }
+
+        if (cache.isModified()) {
+            saveCache(cache);
+        }
+
+        parseDescriptors(descriptors, urls, extensions, repository);
+
+        // Try to find more
+
+        guess(extensions, repository);
+    }
+
+    /**
+     * Parse the passed Maven descriptors in parallel.
+     * 
+     * @param descriptors the content of the descriptors indexed by classpath entry URL and then by resource name
+     * @param urls the classpath entries indexed by URL
+     * @param extensions the map where to put the found extensions
+     * @param repository the repository used to create {@link DefaultCoreExtension}s
+     */
+    private void parseDescriptors(Map<String, Map<String, byte[]>> descriptors, Map<String, URL> urls,
+        Map<String, DefaultCoreExtension> extensions, DefaultCoreExtensionRepository repository)
+    {
+        int descriptorCount = 0;
+        for (Map<String, byte[]> urlDescriptors : descriptors.values()) {
+            descriptorCount += urlDescriptors.size();
+        }
+
+        if (descriptorCount == 0) {
+            return;
+        }
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), descriptorCount);
+        ExecutorService executor =
+            Executors.newFixedThreadPool(threads, new BasicThreadFactory.Builder()
+                .namingPattern("Core extension descriptor parser-%d").daemon(true).build());
+
+        try {
+            List<Future<DefaultCoreExtension>> futures = new ArrayList<Future<DefaultCoreExtension>>(descriptorCount);
+            for (Map.Entry<String, Map<String, byte[]>> entry : descriptors.entrySet()) {
+                for (Map.Entry<String, byte[]> descriptor : entry.getValue().entrySet()) {
+                    futures.add(executor.submit(new DescriptorParser(descriptor.getKey(), descriptor.getValue(), urls
+                        .get(entry.getKey()), repository)));
+                }
+            }
+
+            // Collect the extensions in the classpath order, the first classpath entry containing an extension wins
+            for (Future<DefaultCoreExtension> future : futures) {
+                DefaultCoreExtension coreExtension = future.get();
+
+                if (coreExtension != null && !extensions.containsKey(coreExtension.getId().getId())) {
+                    extensions.put(coreExtension.getId().getId(), coreExtension);
+                }
+            }
+        } catch (InterruptedException e) {
+            this.logger.warn("Interrupted while parsing extension descriptors");
+
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            this.logger.warn("Failed to parse extension descriptors", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Scan the passed classpath entries to find Maven descriptors.
+     * 
+     * @param urls the classpath entries to scan indexed by URL
+     * @return the content of the found descriptors indexed by classpath entry URL and then by resource name
+     */
+    private Map<String, Map<String, byte[]>> scanDescriptors(Map<String, URL> urls)
+    {
+        Map<String, Map<String, byte[]>> descriptors = new HashMap<String, Map<String, byte[]>>();
 
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         configurationBuilder.setScanners(new ResourcesScanner());
-        configurationBuilder.setUrls(mavenURLs);
+        configurationBuilder.setUrls(urls.values());
         configurationBuilder.filterInputsBy(new FilterBuilder.Include(FilterBuilder.prefix(MAVENPACKAGE)));
 
         Reflections reflections = new Reflections(configurationBuilder);
 
-        Set<String> descriptors = reflections.getResources(Predicates.equalTo("pom.xml"));
+        for (String descriptor : reflections.getResources(Predicates.equalTo("pom.xml"))) {
+            try {
+                // The same descriptor can be found in several classpath entries
+                Enumeration<URL> descriptorUrls = getClass().getClassLoader().getResources(descriptor);
+                while (descriptorUrls.hasMoreElements()) {
+                    URL descriptorUrl = descriptorUrls.nextElement();
+                    String extensionURL = getExtensionURL(descriptorUrl).toString();
+
+                    if (urls.containsKey(extensionURL)) {
+                        Map<String, byte[]> urlDescriptors = descriptors.get(extensionURL);
+                        if (urlDescriptors == null) {
+                            urlDescriptors = new LinkedHashMap<String, byte[]>();
+                            descriptors.put(extensionURL, urlDescriptors);
+                        }
+
+                        InputStream descriptorStream = descriptorUrl.openStream();
+                        try {
+                            urlDescriptors.put(descriptor, IOUtils.toByteArray(descriptorStream));
+                        } finally {
+                            IOUtils.closeQuietly(descriptorStream);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                this.logger.warn("Failed to read extension descriptor [{}]", descriptor, e);
+            }
+        }
 
-        for (String descriptor : descriptors) {
-            URL descriptorUrl = getClass().getClassLoader().getResource(descriptor);
+        return descriptors;
+    }
 
-            try {
-                DefaultCoreExtension coreExtension = parseMavenPom(descriptorUrl, repository);
+    /**
+     * @return the file where the Maven descriptors found in the classpath are cached or null if there is no permanent
+     *         directory
+     */
+    private File getCacheFile()
+    {
+        File permanentDirectory = this.environment.getPermanentDirectory();
+
+        return permanentDirectory != null ? new File(permanentDirectory, CACHE_FILE) : null;
+    }
 
-                extensions.put(coreExtension.getId().getId(), coreExtension);
+    /**
+     * @return the Maven descriptors found in the classpath during the previous start
+     */
+    private CoreExtensionCache loadCache()
+    {
+        CoreExtensionCache cache = new CoreExtensionCache();
+
+        File file = getCacheFile();
+        if (file != null && file.exists()) {
+            try {
+                cache.load(file);
             } catch (Exception e) {
-                this.logger.warn("Failed to pase extension descriptor [{}]", descriptorUrl, e);
+                this.logger.warn("Failed to load the core extensions cache [{}], the classpath will be fully scanned",
+                    file, e);
             }
         }
 
-        // Try to find more
+        return cache;
+    }
 
-        guess(extensions, repository);
+    /**
+     * @param cache the Maven descriptors found in the classpath
+     */
+    private void saveCache(CoreExtensionCache cache)
+    {
+        File file = getCacheFile();
+        if (file != null) {
+            try {
+                cache.save(file);
+            } catch (Exception e) {
+                this.logger.warn("Failed to save the core extensions cache [{}]", file, e);
+            }
+        }
     }
 
     private void guess(Map<String, DefaultCoreExtension> extensions, DefaultCoreExtensionRepository repository)
@@ -40,6 +40,7 @@
 import org.xwiki.extension.CoreExtension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionNotFoundException;
 import org.xwiki.extension.InstallException;
 import org.xwiki.extension.InstalledExtension;
 import org.xwiki.extension.InvalidExtensionException;
@@ -567,7 +568,8 @@ public Collection<InstalledExtension> getBackwardDependencies(String feature, St
         throws ResolveException
     {
         if (getInstalledExtension(feature, namespace) == null) {
-            throw new ResolveException("Extension [" + feature + "] is not installed on namespace [" + namespace + "]");
+            throw new ExtensionNotFoundException("Extension [" + feature + "] is not installed on namespace ["
+                + namespace + "]");
         }
 
         Map<String, InstalledFeature> installedExtensionsByFeature = this.extensionNamespaceByFeature.get(feature);
@@ -21,20 +21,17 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionNotFoundException;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.AbstractExtensionRepository;
-import org.xwiki.extension.repository.internal.RepositoryUtils;
+import org.xwiki.extension.repository.internal.ExtensionSearchIndex;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.result.IterableResult;
 import org.xwiki.extension.repository.search.SearchException;
@@ -64,6 +61,11 @@
      */
     protected Map<String, List<E>> extensionsVersions = new ConcurrentHashMap<String, List<E>>();
 
+    /**
+     * The searchable extensions: the greatest version of each id and feature.
+     */
+    private ExtensionSearchIndex searchIndex = new ExtensionSearchIndex();
+
     /**
      * Register a new local extension.
      * 
@@ -80,6 +82,8 @@ protected void addCachedExtension(E extension)
             for (String feature : extension.getFeatures()) {
                 addCachedExtensionVersion(feature, extension);
             }
+
+            updateSearchIndex(extension);
         }
     }
 
@@ -107,6 +111,11 @@ protected void addCachedExtensionVersion(String feature, E extension)
             }
 
             versions.add(index, extension);
+
+            if (index == 0) {
+                // The previous greatest version might not be searchable anymore
+                updateSearchIndex(versions.get(1));
+            }
         }
     }
 
@@ -125,6 +134,8 @@ protected void removeCachedExtension(E extension)
         for (String feature : extension.getFeatures()) {
             removeCachedExtensionVersion(feature, extension);
         }
+
+        this.searchIndex.remove(extension);
     }
 
     /**
@@ -137,10 +148,60 @@ protected void removeCachedExtensionVersion(String feature, E extension)
     {
         // versions
         List<E> localExtensionVersions = this.extensionsVersions.get(feature);
+        boolean greatest = !localExtensionVersions.isEmpty() && localExtensionVersions.get(0) == extension;
         localExtensionVersions.remove(extension);
         if (localExtensionVersions.isEmpty()) {
             this.extensionsVersions.remove(feature);
+        } else if (greatest) {
+            // The new greatest version is now searchable
+            updateSearchIndex(localExtensionVersions.get(0));
+        }
+    }
+
+    /**
+     * Make sure the passed extension can be found by {@link #search(String, int, int)} only when it's the greatest
+     * version of its id or of one of its features.
+     * 
+     * @param extension the extension to update in the search index
+     */
+    private void updateSearchIndex(E extension)
+    {
+        if (this.extensions.containsKey(extension.getId()) && isGreatestVersion(extension)) {
+            this.searchIndex.add(extension);
+        } else {
+            this.searchIndex.remove(extension);
+        }
+    }
+
+    /**
+     * @param extension the extension
+     * @return true if the passed extension is the greatest version of its id or of one of its features
+     */
+    private boolean isGreatestVersion(E extension)
+    {
+        if (isGreatestVersion(extension.getId().getId(), extension)) {
+            return true;
+        }
+
+        for (String feature : extension.getFeatures()) {
+            if (isGreatestVersion(feature, extension)) {
+                return true;
+            }
         }
+
+        return false;
+    }
+
+    /**
+     * @param feature the feature
+     * @param extension the extension
+     * @return true if the passed extension is the greatest version of the passed feature
+     */
+    private boolean isGreatestVersion(String feature, E extension)
+    {
+        List<E> versions = this.extensionsVersions.get(feature);
+
+        return versions != null && !versions.isEmpty() && versions.get(0) == extension;
     }
 
     // ExtensionRepository
@@ -151,7 +212,7 @@ public E resolve(ExtensionId extensionId) throws ResolveException
         E localExtension = this.extensions.get(extensionId);
 
         if (localExtension == null) {
-            throw new ResolveException("Can't find extension [" + extensionId + "]");
+            throw new ExtensionNotFoundException("Can't find extension [" + extensionId + "]");
         }
 
         return localExtension;
@@ -171,7 +232,7 @@ public E resolve(ExtensionDependency extensionDependency) throws ResolveExceptio
             }
         }
 
-        throw new ResolveException("Can't find extension dependency [" + extensionDependency + "]");
+        throw new ExtensionNotFoundException("Can't find extension dependency [" + extensionDependency + "]");
     }
 
     @Override
@@ -186,7 +247,7 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
         List<E> versions = this.extensionsVersions.get(id);
 
         if (versions == null) {
-            throw new ResolveException("Can't find extension with id [" + id + "]");
+            throw new ExtensionNotFoundException("Can't find extension with id [" + id + "]");
         }
 
         if (nb == 0 || offset >= versions.size()) {
@@ -211,23 +272,6 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb) throws SearchException
     {
-        Pattern patternMatcher =
-            StringUtils.isEmpty(pattern) ? null : Pattern.compile(RepositoryUtils.SEARCH_PATTERN_SUFFIXNPREFIX
-                + Pattern.quote(pattern.toLowerCase()) + RepositoryUtils.SEARCH_PATTERN_SUFFIXNPREFIX);
-
-        Set<Extension> set = new HashSet<Extension>();
-        List<Extension> result = new ArrayList<Extension>(this.extensionsVersions.size());
-
-        for (List<E> versions : this.extensionsVersions.values()) {
-            E extension = versions.get(0);
-
-            if ((patternMatcher == null || RepositoryUtils.matches(patternMatcher, extension))
-                && !set.contains(extension)) {
-                result.add(extension);
-                set.add(extension);
-            }
-        }
-
-        return RepositoryUtils.searchInCollection(offset, nb, result);
+        return this.searchIndex.search(pattern, offset, nb);
     }
 }
@@ -103,4 +103,43 @@ public void testGetExtensionRepositoryDescriptorsWithProperties() throws URISynt
         Assert.assertEquals("value", descriptor.getProperty("property"));
         Assert.assertEquals("other value", descriptor.getProperty("property.with.dots"));
     }
+
+    @Test
+    public void testGetResolveSettings()
+    {
+        Assert.assertFalse(this.configuration.isResolveParallel());
+        Assert.assertEquals(0, this.configuration.getResolveCacheSize());
+        Assert.assertEquals(60000L, this.configuration.getResolveCacheTTL());
+
+        this.source.setProperty("extension.resolve.parallel", true);
+        this.source.setProperty("extension.resolve.cache.size", 10);
+        this.source.setProperty("extension.resolve.cache.ttl", 1000L);
+
+        Assert.assertTrue(this.configuration.isResolveParallel());
+        Assert.assertEquals(10, this.configuration.getResolveCacheSize());
+        Assert.assertEquals(1000L, this.configuration.getResolveCacheTTL());
+    }
+
+    @Test
+    public void testGetSearchIndexRefreshInterval()
+    {
+        Assert.assertEquals(0L, this.configuration.getSearchIndexRefreshInterval());
+
+        this.source.setProperty("extension.search.index.refresh", 3600000L);
+
+        Assert.assertEquals(3600000L, this.configuration.getSearchIndexRefreshInterval());
+    }
+
+    @Test
+    public void testGetCoreExtensionUpdateSettings()
+    {
+        Assert.assertEquals(4, this.configuration.getCoreExtensionUpdateThreads());
+        Assert.assertEquals(300000L, this.configuration.getCoreExtensionUpdateTimeout());
+
+        this.source.setProperty("extension.core.update.threads", 1);
+        this.source.setProperty("extension.core.update.timeout", 1000L);
+
+        Assert.assertEquals(1, this.configuration.getCoreExtensionUpdateThreads());
+        Assert.assertEquals(1000L, this.configuration.getCoreExtensionUpdateTimeout());
+    }
 }
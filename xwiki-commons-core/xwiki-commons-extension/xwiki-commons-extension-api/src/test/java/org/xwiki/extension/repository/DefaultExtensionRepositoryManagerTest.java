@@ -31,6 +31,7 @@
 import org.junit.Test;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.extension.repository.internal.DefaultExtensionRepositoryManager;
 import org.xwiki.test.jmock.AbstractMockingComponentTestCase;
 import org.xwiki.test.jmock.annotation.MockingRequirement;
@@ -43,6 +44,13 @@
 @MockingRequirement(value = DefaultExtensionRepositoryManager.class, exceptions = {ComponentManager.class})
 public class DefaultExtensionRepositoryManagerTest extends AbstractMockingComponentTestCase<ExtensionRepositoryManager>
 {
+    /**
+     * A repository holding resources to release when it's not used anymore.
+     */
+    public interface DisposableExtensionRepository extends ExtensionRepository, Disposable
+    {
+    }
+
     private ExtensionRepository testRepository;
 
     private ExtensionRepositoryDescriptor descriptor;
@@ -132,4 +140,46 @@ public void getRepositories() throws ExtensionRepositoryException, ComponentLook
 
         Assert.assertEquals(Arrays.asList(testRepository), new ArrayList<ExtensionRepository>(repositorties));
     }
+
+    @Test
+    public void removeRepositoryDisposesIt() throws Exception
+    {
+        final DisposableExtensionRepository repository = getMockery().mock(DisposableExtensionRepository.class);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(repository).getDescriptor();
+                will(returnValue(descriptor));
+
+                oneOf(repository).dispose();
+            }
+        });
+
+        getMockedComponent().addRepository(repository);
+
+        getMockedComponent().removeRepository(descriptor.getId());
+    }
+
+    @Test
+    public void replaceRepositoryDisposesPrevious() throws Exception
+    {
+        final DisposableExtensionRepository repository = getMockery().mock(DisposableExtensionRepository.class);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(repository).getDescriptor();
+                will(returnValue(descriptor));
+
+                oneOf(repository).dispose();
+            }
+        });
+
+        getMockedComponent().addRepository(repository);
+
+        getMockedComponent().addRepository(descriptor);
+
+        Assert.assertSame(testRepository, getMockedComponent().getRepository("id"));
+    }
 }
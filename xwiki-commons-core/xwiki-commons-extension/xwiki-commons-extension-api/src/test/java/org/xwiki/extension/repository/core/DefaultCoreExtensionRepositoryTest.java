@@ -19,6 +19,9 @@
  */
 package org.xwiki.extension.repository.core;
 
+import java.io.File;
+import java.util.Map;
+
 import junit.framework.Assert;
 
 import org.jmock.Expectations;
@@ -28,6 +31,8 @@
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.CoreExtensionRepository;
+import org.xwiki.extension.repository.internal.core.CoreExtensionScanner;
+import org.xwiki.extension.repository.internal.core.DefaultCoreExtension;
 import org.xwiki.extension.test.ConfigurableDefaultCoreExtensionRepository;
 import org.xwiki.extension.version.internal.DefaultVersion;
 import org.xwiki.test.jmock.AbstractComponentTestCase;
@@ -36,11 +41,15 @@ public class DefaultCoreExtensionRepositoryTest extends AbstractComponentTestCas
 {
     private ConfigurableDefaultCoreExtensionRepository coreExtensionRepository;
 
+    private File permanentDirectory;
+
     @Override
     public void setUp() throws Exception
     {
         super.setUp();
 
+        this.permanentDirectory = new File("target/test-" + System.currentTimeMillis() + "/permanent");
+
         // Mock Environment
         final Environment environment = registerMockComponent(Environment.class);
 
@@ -49,6 +58,8 @@ public void setUp() throws Exception
             {
                 allowing(environment).getResourceAsStream(with(any(String.class)));
                 will(returnValue(null));
+                allowing(environment).getPermanentDirectory();
+                will(returnValue(permanentDirectory));
             }
         });
 
@@ -121,4 +132,26 @@ public void testResolve() throws ResolveException
         Assert.assertEquals("existingextension", extension.getId().getId());
         Assert.assertEquals("version", extension.getId().getVersion().getValue());
     }
+
+    /**
+     * Validate that core extensions loaded from the cache are the same as the scanned ones.
+     */
+    @Test
+    public void testLoadExtensionsFromCache() throws Exception
+    {
+        Assert.assertTrue(new File(this.permanentDirectory, "extension/cache/core.cache").exists());
+
+        CoreExtensionScanner scanner = getComponentManager().getInstance(CoreExtensionScanner.class);
+
+        Map<String, DefaultCoreExtension> extensions = scanner.loadExtensions(this.coreExtensionRepository);
+
+        Assert.assertFalse(extensions.isEmpty());
+        for (DefaultCoreExtension extension : extensions.values()) {
+            DefaultCoreExtension scannedExtension =
+                (DefaultCoreExtension) this.coreExtensionRepository.getCoreExtension(extension.getId().getId());
+
+            Assert.assertEquals(scannedExtension.getId(), extension.getId());
+            Assert.assertEquals(scannedExtension.getURL().toString(), extension.getURL().toString());
+        }
+    }
 }
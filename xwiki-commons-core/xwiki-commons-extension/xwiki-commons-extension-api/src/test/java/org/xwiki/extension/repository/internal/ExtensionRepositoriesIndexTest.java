@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.ExtensionRepository;
+import org.xwiki.extension.repository.result.CollectionIterableResult;
+import org.xwiki.extension.repository.result.IterableResult;
+import org.xwiki.extension.repository.search.Searchable;
+
+/**
+ * Unit tests for {@link ExtensionRepositoriesIndex}.
+ *
+ * @version $Id$
+ */
+public class ExtensionRepositoriesIndexTest
+{
+    private List<ExtensionRepository> repositories = new CopyOnWriteArrayList<ExtensionRepository>();
+
+    private ExtensionRepository repository;
+
+    private ExtensionRepository notSearchableRepository;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.repository = mock(ExtensionRepository.class, withSettings().extraInterfaces(Searchable.class));
+        this.notSearchableRepository = mock(ExtensionRepository.class);
+
+        this.repositories.add(this.notSearchableRepository);
+        this.repositories.add(this.repository);
+    }
+
+    private Extension createExtension(String id)
+    {
+        Extension extension = mock(Extension.class, id);
+        when(extension.getId()).thenReturn(new ExtensionId(id, "1.0"));
+
+        return extension;
+    }
+
+    private void setExtensions(Extension... extensions) throws Exception
+    {
+        when(((Searchable) this.repository).search(null, 0, -1)).thenReturn(
+            new CollectionIterableResult<Extension>(extensions.length, 0, Arrays.asList(extensions)));
+    }
+
+    private IterableResult<Extension> waitForHits(ExtensionRepositoriesIndex index, String pattern, int hits)
+        throws InterruptedException
+    {
+        IterableResult<Extension> result = index.search(pattern, 0, -1);
+        for (int i = 0; i < 100 && result.getTotalHits() != hits; ++i) {
+            Thread.sleep(50);
+            result = index.search(pattern, 0, -1);
+        }
+
+        return result;
+    }
+
+    // Tests
+
+    @Test
+    public void testIndexAndRefresh() throws Exception
+    {
+        Extension extension1 = createExtension("extension1");
+        Extension extension2 = createExtension("extension2");
+
+        setExtensions(extension1);
+
+        ExtensionRepositoriesIndex index =
+            new ExtensionRepositoriesIndex(this.repositories, 100, mock(Logger.class));
+
+        IterableResult<Extension> result = waitForHits(index, "extension", 1);
+
+        Assert.assertTrue(index.isIndexed());
+        Assert.assertEquals(extension1, result.iterator().next());
+
+        // The refresh takes into account the new and removed extensions
+        setExtensions(extension2);
+
+        // New extensions are indexed before the removed ones are forgotten
+        Assert.assertEquals(0, waitForHits(index, "extension1", 0).getTotalHits());
+        Assert.assertEquals(extension2, index.search("extension", 0, -1).iterator().next());
+    }
+
+    @Test
+    public void testRemove() throws Exception
+    {
+        setExtensions(createExtension("extension"));
+
+        ExtensionRepositoriesIndex index =
+            new ExtensionRepositoriesIndex(this.repositories, 100000, mock(Logger.class));
+
+        waitForHits(index, null, 1);
+
+        this.repositories.remove(this.repository);
+        index.remove(this.repository);
+
+        Assert.assertEquals(0, index.search(null, 0, -1).getTotalHits());
+
+        // Not indexed yet
+        this.repositories.add(this.repository);
+
+        Assert.assertFalse(index.isIndexed());
+
+        index.add(this.repository);
+
+        Assert.assertEquals(1, waitForHits(index, null, 1).getTotalHits());
+        Assert.assertTrue(index.isIndexed());
+    }
+
+    @Test
+    public void testRefreshAfterRuntimeException() throws Exception
+    {
+        when(((Searchable) this.repository).search(null, 0, -1)).thenThrow(new RuntimeException("broken"))
+            .thenReturn(new CollectionIterableResult<Extension>(1, 0, Arrays.asList(createExtension("extension"))));
+
+        ExtensionRepositoriesIndex index =
+            new ExtensionRepositoriesIndex(this.repositories, 100, mock(Logger.class));
+
+        // The first refresh failed but the following ones are still executed
+        Assert.assertEquals(1, waitForHits(index, null, 1).getTotalHits());
+
+        index.dispose();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionNotFoundException;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.ExtensionRepository;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+
+/**
+ * Unit tests for {@link ExtensionRepositoriesResolver}.
+ * 
+ * @version $Id$
+ */
+public class ExtensionRepositoriesResolverTest
+{
+    private static final ExtensionId EXTENSIONID = new ExtensionId("extension", "1.0");
+
+    private ExtensionRepository repository1;
+
+    private ExtensionRepository repository2;
+
+    private Extension extension1;
+
+    private Extension extension2;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.repository1 = mock(ExtensionRepository.class, "repository1");
+        this.repository2 = mock(ExtensionRepository.class, "repository2");
+        this.extension1 = mock(Extension.class, "extension1");
+        this.extension2 = mock(Extension.class, "extension2");
+    }
+
+    private ExtensionRepositoriesResolver createResolver(boolean parallel, long ttl)
+    {
+        return new ExtensionRepositoriesResolver(new ExtensionResolveCache(10, ttl), parallel, mock(Logger.class));
+    }
+
+    private Extension resolve(ExtensionRepositoriesResolver resolver) throws ResolveException
+    {
+        return resolver.resolve(EXTENSIONID, Arrays.asList(this.repository1, this.repository2));
+    }
+
+    // Tests
+
+    @Test
+    public void testResolveSequentialAndCache() throws Exception
+    {
+        when(this.repository1.resolve(EXTENSIONID)).thenThrow(new ResolveException("not found"));
+        when(this.repository2.resolve(EXTENSIONID)).thenReturn(this.extension2);
+
+        ExtensionRepositoriesResolver resolver = createResolver(false, 60000);
+
+        Assert.assertSame(this.extension2, resolve(resolver));
+        Assert.assertSame(this.extension2, resolve(resolver));
+
+        verify(this.repository1, times(1)).resolve(EXTENSIONID);
+        verify(this.repository2, times(1)).resolve(EXTENSIONID);
+
+        resolver.clearCache();
+
+        Assert.assertSame(this.extension2, resolve(resolver));
+
+        verify(this.repository2, times(2)).resolve(EXTENSIONID);
+    }
+
+    private ResolveException resolveFailure(ExtensionRepositoriesResolver resolver)
+    {
+        try {
+            resolve(resolver);
+            Assert.fail("Should have failed to resolve extension");
+        } catch (ResolveException expected) {
+            Assert.assertEquals("Could not find extension [extension-1.0]", expected.getMessage());
+
+            return expected;
+        }
+
+        return null;
+    }
+
+    @Test
+    public void testResolveNotFoundIsCached() throws Exception
+    {
+        when(this.repository1.resolve(EXTENSIONID)).thenThrow(new ExtensionNotFoundException("not found"));
+        when(this.repository2.resolve(EXTENSIONID)).thenThrow(new ExtensionNotFoundException("not found"));
+
+        ExtensionRepositoriesResolver resolver = createResolver(false, 60000);
+
+        ResolveException exception = resolveFailure(resolver);
+        ResolveException cachedException = resolveFailure(resolver);
+
+        Assert.assertTrue(cachedException instanceof ExtensionNotFoundException);
+        // A new exception is thrown each time
+        Assert.assertNotSame(exception, cachedException);
+        Assert.assertSame(exception.getCause(), cachedException.getCause());
+
+        verify(this.repository1, times(1)).resolve(EXTENSIONID);
+        verify(this.repository2, times(1)).resolve(EXTENSIONID);
+    }
+
+    @Test
+    public void testResolveFailureIsNotCached() throws Exception
+    {
+        // The first repository could not be accessed
+        when(this.repository1.resolve(EXTENSIONID)).thenThrow(new ResolveException("connection failure"));
+        when(this.repository2.resolve(EXTENSIONID)).thenThrow(new ExtensionNotFoundException("not found"));
+
+        ExtensionRepositoriesResolver resolver = createResolver(false, 60000);
+
+        Assert.assertFalse(resolveFailure(resolver) instanceof ExtensionNotFoundException);
+        resolveFailure(resolver);
+
+        verify(this.repository1, times(2)).resolve(EXTENSIONID);
+        verify(this.repository2, times(2)).resolve(EXTENSIONID);
+    }
+
+    @Test
+    public void testResolveParallelNotFound() throws Exception
+    {
+        when(this.repository1.resolve(EXTENSIONID)).thenThrow(new ExtensionNotFoundException("not found"));
+        when(this.repository2.resolve(EXTENSIONID)).thenThrow(new ExtensionNotFoundException("not found"));
+
+        Assert.assertTrue(resolveFailure(createResolver(true, 60000)) instanceof ExtensionNotFoundException);
+    }
+
+    @Test
+    public void testResolveCacheExpiration() throws Exception
+    {
+        when(this.repository1.resolve(EXTENSIONID)).thenReturn(this.extension1);
+
+        ExtensionRepositoriesResolver resolver = createResolver(false, 10);
+
+        Assert.assertSame(this.extension1, resolve(resolver));
+
+        Thread.sleep(50);
+
+        Assert.assertSame(this.extension1, resolve(resolver));
+
+        verify(this.repository1, times(2)).resolve(EXTENSIONID);
+    }
+
+    @Test
+    public void testResolveDependency() throws Exception
+    {
+        ExtensionDependency dependency =
+            new DefaultExtensionDependency("extension", new DefaultVersionConstraint("[1.0,2.0)"));
+        ExtensionDependency sameDependency =
+            new DefaultExtensionDependency("extension", new DefaultVersionConstraint("[1.0,2.0)"));
+
+        when(this.repository1.resolve(dependency)).thenReturn(this.extension1);
+
+        ExtensionRepositoriesResolver resolver = createResolver(false, 60000);
+
+        Assert.assertSame(this.extension1, resolver.resolve(dependency, Arrays.asList(this.repository1)));
+        Assert.assertSame(this.extension1, resolver.resolve(sameDependency, Arrays.asList(this.repository1)));
+
+        verify(this.repository1, times(1)).resolve(dependency);
+    }
+
+    @Test
+    public void testResolveParallelUsesPriority() throws Exception
+    {
+        // The repository with the highest priority is the slowest
+        when(this.repository1.resolve(EXTENSIONID)).thenAnswer(new Answer<Extension>()
+        {
+            @Override
+            public Extension answer(InvocationOnMock invocation) throws Throwable
+            {
+                Thread.sleep(100);
+
+                return extension1;
+            }
+        });
+        when(this.repository2.resolve(EXTENSIONID)).thenReturn(this.extension2);
+
+        Assert.assertSame(this.extension1, resolve(createResolver(true, 60000)));
+    }
+
+    @Test
+    public void testResolveParallelFallback() throws Exception
+    {
+        when(this.repository1.resolve(EXTENSIONID)).thenThrow(new ResolveException("not found"));
+        when(this.repository2.resolve(EXTENSIONID)).thenReturn(this.extension2);
+
+        Assert.assertSame(this.extension2, resolve(createResolver(true, 60000)));
+    }
+
+    @Test
+    public void testResolveParallelCancelsSlowerLookups() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        when(this.repository1.resolve(EXTENSIONID)).thenAnswer(new Answer<Extension>()
+        {
+            @Override
+            public Extension answer(InvocationOnMock invocation) throws Throwable
+            {
+                // Make sure the lookup in the other repository started
+                started.await();
+
+                return extension1;
+            }
+        });
+        when(this.repository2.resolve(EXTENSIONID)).thenAnswer(new Answer<Extension>()
+        {
+            @Override
+            public Extension answer(InvocationOnMock invocation) throws Throwable
+            {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+
+                return extension2;
+            }
+        });
+
+        Assert.assertSame(this.extension1, resolve(createResolver(true, 60000)));
+
+        Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+}
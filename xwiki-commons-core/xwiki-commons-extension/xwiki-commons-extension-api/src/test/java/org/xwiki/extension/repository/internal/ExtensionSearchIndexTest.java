@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.extension.AbstractExtension;
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.result.IterableResult;
+
+/**
+ * Unit tests for {@link ExtensionSearchIndex}.
+ *
+ * @version $Id$
+ */
+public class ExtensionSearchIndexTest
+{
+    private ExtensionSearchIndex index;
+
+    private AbstractExtension rendering;
+
+    private AbstractExtension macro;
+
+    private AbstractExtension other;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.index = new ExtensionSearchIndex();
+
+        this.rendering = createExtension("org.xwiki.rendering:xwiki-rendering-api", "1.0");
+        this.rendering.setName("Rendering API");
+        this.rendering.setSummary("Rendering engine");
+
+        this.macro = createExtension("org.xwiki.rendering:xwiki-rendering-macro-toc", "1.0");
+        this.macro.setName("TOC Macro");
+        this.macro.setDescription("Generates a table of contents using the rendering API");
+        this.macro.addFeature("toc-macro");
+
+        this.other = createExtension("other", "2.0");
+        this.other.addAuthor(new DefaultExtensionAuthor("Renderer", null));
+
+        this.index.add(this.rendering);
+        this.index.add(this.macro);
+        this.index.add(this.other);
+    }
+
+    private AbstractExtension createExtension(String id, String version)
+    {
+        return new AbstractExtension(null, new ExtensionId(id, version), "jar")
+        {
+        };
+    }
+
+    private List<Extension> search(String pattern)
+    {
+        return toList(this.index.search(pattern, 0, -1));
+    }
+
+    private List<Extension> toList(IterableResult<Extension> result)
+    {
+        List<Extension> extensions = new ArrayList<Extension>();
+        for (Extension extension : result) {
+            extensions.add(extension);
+        }
+
+        return extensions;
+    }
+
+    // Tests
+
+    @Test
+    public void testSearchAll()
+    {
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro, this.other), search(null));
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro, this.other), search(""));
+    }
+
+    @Test
+    public void testSearchIsCaseInsensitiveSubstring()
+    {
+        // In the middle of a word
+        Assert.assertEquals(Arrays.<Extension> asList(this.macro), search("ONTENT"));
+        // Across several words
+        Assert.assertEquals(Arrays.<Extension> asList(this.macro), search("table of cont"));
+        // Tokens of the pattern are found but not the pattern itself
+        Assert.assertEquals(Arrays.<Extension> asList(), search("contents table"));
+        // Only separators
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro), search(":"));
+        Assert.assertEquals(Arrays.<Extension> asList(), search("unknown"));
+    }
+
+    @Test
+    public void testSearchRelevance()
+    {
+        // Matches in id and name first, then in authors
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro, this.other), search("render"));
+
+        // Whole name before description
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro), search("rendering api"));
+    }
+
+    @Test
+    public void testSearchPagination()
+    {
+        IterableResult<Extension> result = this.index.search("render", 1, 1);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertEquals(1, result.getSize());
+        Assert.assertEquals(1, result.getOffset());
+        Assert.assertEquals(Arrays.<Extension> asList(this.macro), toList(result));
+    }
+
+    @Test
+    public void testUpdateAndRemove()
+    {
+        AbstractExtension updatedOther = createExtension("other", "2.0");
+        updatedOther.setSummary("Something else");
+        this.index.add(updatedOther);
+
+        Assert.assertEquals(3, this.index.size());
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, this.macro), search("render"));
+        Assert.assertEquals(Arrays.<Extension> asList(updatedOther), search("else"));
+
+        this.index.remove(this.macro);
+
+        Assert.assertEquals(2, this.index.size());
+        Assert.assertEquals(Arrays.<Extension> asList(), search("toc"));
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering), search("render"));
+
+        this.index.clear();
+
+        Assert.assertEquals(0, this.index.size());
+        Assert.assertEquals(Arrays.<Extension> asList(), search(null));
+    }
+
+    @Test
+    public void testSearchSeveralIndexes()
+    {
+        ExtensionSearchIndex index2 = new ExtensionSearchIndex();
+        AbstractExtension rendering2 = createExtension("rendering", "3.0");
+        index2.add(rendering2);
+
+        IterableResult<Extension> result =
+            ExtensionSearchIndex.search(Arrays.asList(this.index, index2), "rendering", 0, -1);
+
+        Assert.assertEquals(Arrays.<Extension> asList(this.rendering, rendering2, this.macro), toList(result));
+        Assert.assertEquals(3, result.getTotalHits());
+    }
+}
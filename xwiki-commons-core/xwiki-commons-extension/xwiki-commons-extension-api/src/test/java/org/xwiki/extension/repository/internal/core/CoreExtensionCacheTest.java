@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CoreExtensionCache}.
+ * 
+ * @version $Id$
+ */
+public class CoreExtensionCacheTest
+{
+    private static final String DESCRIPTOR = "META-INF/maven/groupid/artifactid/pom.xml";
+
+    private File directory;
+
+    private File cacheFile;
+
+    private File jar;
+
+    private URL jarURL;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = new File("target/test-" + System.currentTimeMillis());
+        this.cacheFile = new File(this.directory, "cache/core.cache");
+
+        this.jar = new File(this.directory, "lib/extension.jar");
+        FileUtils.writeStringToFile(this.jar, "content");
+        this.jarURL = this.jar.toURI().toURL();
+    }
+
+    private CoreExtensionCache load() throws Exception
+    {
+        CoreExtensionCache cache = new CoreExtensionCache();
+        cache.load(this.cacheFile);
+
+        return cache;
+    }
+
+    // Tests
+
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        CoreExtensionCache cache = new CoreExtensionCache();
+
+        Assert.assertNull(cache.get(this.jarURL));
+
+        cache.put(this.jarURL, Collections.singletonMap(DESCRIPTOR, "<project/>".getBytes("UTF-8")));
+        cache.put(this.directory.toURI().toURL(), Collections.<String, byte[]> emptyMap());
+
+        Assert.assertTrue(cache.isModified());
+
+        cache.save(this.cacheFile);
+
+        cache = load();
+
+        Map<String, byte[]> descriptors = cache.get(this.jarURL);
+
+        Assert.assertEquals(Collections.singleton(DESCRIPTOR), descriptors.keySet());
+        Assert.assertEquals("<project/>", new String(descriptors.get(DESCRIPTOR), "UTF-8"));
+        Assert.assertFalse(cache.isModified());
+
+        // Directories are not cached
+        Assert.assertNull(cache.get(this.directory.toURI().toURL()));
+
+        // Scanning them again does not require to save the cache
+        cache.put(this.directory.toURI().toURL(), Collections.<String, byte[]> emptyMap());
+        Assert.assertFalse(cache.isModified());
+    }
+
+    @Test
+    public void testModifiedEntry() throws Exception
+    {
+        CoreExtensionCache cache = new CoreExtensionCache();
+        cache.put(this.jarURL, Collections.<String, byte[]> emptyMap());
+        cache.save(this.cacheFile);
+
+        FileUtils.writeStringToFile(this.jar, "modified content");
+
+        cache = load();
+
+        Assert.assertNull(cache.get(this.jarURL));
+        Assert.assertTrue(cache.isModified());
+    }
+
+    @Test
+    public void testRemovedEntry() throws Exception
+    {
+        CoreExtensionCache cache = new CoreExtensionCache();
+        cache.put(this.jarURL, Collections.<String, byte[]> emptyMap());
+        cache.save(this.cacheFile);
+
+        // The entry is not in the classpath anymore
+        cache = load();
+
+        Assert.assertTrue(cache.isModified());
+
+        cache.save(this.cacheFile);
+
+        Assert.assertNull(load().get(this.jarURL));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionManagerConfiguration;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.ExtensionRepositoryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Unit tests for {@link DefaultCoreExtensionScanner}.
+ * 
+ * @version $Id$
+ */
+public class DefaultCoreExtensionScannerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<CoreExtensionScanner> mocker =
+        new MockitoComponentMockingRule<CoreExtensionScanner>(DefaultCoreExtensionScanner.class);
+
+    private ExtensionRepositoryManager repositoryManager;
+
+    private ExtensionManagerConfiguration configuration;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.repositoryManager = this.mocker.getInstance(ExtensionRepositoryManager.class);
+        this.configuration = this.mocker.getInstance(ExtensionManagerConfiguration.class);
+
+        when(this.configuration.getCoreExtensionUpdateThreads()).thenReturn(2);
+        when(this.configuration.getCoreExtensionUpdateTimeout()).thenReturn(10000L);
+    }
+
+    private DefaultCoreExtension createExtension(String id)
+    {
+        return new DefaultCoreExtension(null, null, new ExtensionId(id, "1.0"), "jar");
+    }
+
+    private DefaultCoreExtension createRemoteExtension(DefaultCoreExtension extension) throws ResolveException
+    {
+        DefaultCoreExtension remoteExtension = createExtension(extension.getId().getId());
+        remoteExtension.setSummary("remote " + extension.getId().getId());
+
+        when(this.repositoryManager.resolve(extension.getId())).thenReturn(remoteExtension);
+
+        return remoteExtension;
+    }
+
+    // Tests
+
+    @Test
+    public void testUpdateExtensions() throws Exception
+    {
+        DefaultCoreExtension extension1 = createExtension("extension1");
+        DefaultCoreExtension extension2 = createExtension("extension2");
+        DefaultCoreExtension extension3 = createExtension("extension3");
+
+        createRemoteExtension(extension1);
+        createRemoteExtension(extension3);
+        when(this.repositoryManager.resolve(extension2.getId())).thenThrow(new ResolveException("not found"));
+
+        this.mocker.getComponentUnderTest().updateExtensions(
+            Arrays.asList(extension1, extension2, extension3, extension1));
+
+        Assert.assertEquals("remote extension1", extension1.getSummary());
+        Assert.assertNull(extension2.getSummary());
+        Assert.assertEquals("remote extension3", extension3.getSummary());
+    }
+
+    @Test
+    public void testUpdateExtensionsTimeout() throws Exception
+    {
+        DefaultCoreExtension extension1 = createExtension("extension1");
+        DefaultCoreExtension extension2 = createExtension("extension2");
+
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Extension remoteExtension1 = createRemoteExtension(extension1);
+        when(this.repositoryManager.resolve(extension1.getId())).thenAnswer(new Answer<Extension>()
+        {
+            @Override
+            public Extension answer(InvocationOnMock invocation) throws Throwable
+            {
+                unblock.await();
+
+                return remoteExtension1;
+            }
+        });
+        createRemoteExtension(extension2);
+
+        when(this.configuration.getCoreExtensionUpdateTimeout()).thenReturn(500L);
+
+        long start = System.currentTimeMillis();
+
+        this.mocker.getComponentUnderTest().updateExtensions(Arrays.asList(extension1, extension2));
+
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+        // The extension resolved before the deadline has been updated
+        Assert.assertEquals("remote extension2", extension2.getSummary());
+        Assert.assertNull(extension1.getSummary());
+
+        unblock.countDown();
+    }
+}
@@ -26,24 +26,32 @@
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.bind.JAXBException;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
 import org.apache.http.params.CoreConnectionPNames;
 import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.restlet.data.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
@@ -71,8 +79,25 @@
  * @version $Id$
  * @since 4.0M1
  */
-public class XWikiExtensionRepository extends AbstractExtensionRepository implements Searchable
+public class XWikiExtensionRepository extends AbstractExtensionRepository implements Searchable, Disposable
 {
+    /**
+     * The name of the repository descriptor property containing the maximum number of connections opened at the same
+     * time to the same route.
+     * 
+     * @since 5.0M2
+     */
+    public static final String PROPERTY_MAXCONNECTIONSPERROUTE = "http.maxConnectionsPerRoute";
+
+    /**
+     * The default maximum number of connections opened at the same time to the same route.
+     * 
+     * @since 5.0M2
+     */
+    public static final int DEFAULT_MAXCONNECTIONSPERROUTE = 10;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XWikiExtensionRepository.class);
+
     private final transient XWikiExtensionRepositoryFactory repositoryFactory;
 
     private final transient ExtensionLicenseManager licenseManager;
@@ -87,11 +112,32 @@ public class XWikiExtensionRepository extends AbstractExtensionRepository implem
 
     private final transient UriBuilder searchUriBuider;
 
-    private BasicHttpContext localContext;
+    private final transient XWikiExtensionRepositoryStatistics statistics;
+
+    /**
+     * Shared by all the requests, keeps the connections to the repository alive.
+     */
+    private final transient DefaultHttpClient httpClient;
+
+    /**
+     * The host to authenticate preemptively to, null if the repository does not require authentication.
+     */
+    private transient HttpHost authHost;
 
     public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescriptor,
         XWikiExtensionRepositoryFactory repositoryFactory, ExtensionLicenseManager licenseManager,
         ExtensionManagerConfiguration configuration) throws Exception
+    {
+        this(repositoryDescriptor, repositoryFactory, licenseManager, configuration,
+            new XWikiExtensionRepositoryStatistics());
+    }
+
+    /**
+     * @since 5.0M2
+     */
+    public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescriptor,
+        XWikiExtensionRepositoryFactory repositoryFactory, ExtensionLicenseManager licenseManager,
+        ExtensionManagerConfiguration configuration, XWikiExtensionRepositoryStatistics statistics) throws Exception
     {
         super(repositoryDescriptor.getURI().getPath().endsWith("/") ? new DefaultExtensionRepositoryDescriptor(
             repositoryDescriptor.getId(), repositoryDescriptor.getType(), new URI(StringUtils.chop(repositoryDescriptor
@@ -100,6 +146,7 @@ public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescript
         this.repositoryFactory = repositoryFactory;
         this.licenseManager = licenseManager;
         this.configuration = configuration;
+        this.statistics = statistics;
 
         // Uri builders
         this.extensionVersionUriBuider = createUriBuilder(Resources.EXTENSION_VERSION);
@@ -109,17 +156,21 @@ public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescript
 
         // Setup preemptive authentication
         if (getDescriptor().getProperty("auth.user") != null) {
-            // Create AuthCache instance
-            AuthCache authCache = new BasicAuthCache();
-            // Generate BASIC scheme object and add it to the local
-            // auth cache
-            BasicScheme basicAuth = new BasicScheme();
-            authCache.put(new HttpHost(getDescriptor().getURI().getHost(), getDescriptor().getURI().getPort(),
-                getDescriptor().getURI().getScheme()), basicAuth);
-            // Add AuthCache to the execution context
-            this.localContext = new BasicHttpContext();
-            this.localContext.setAttribute(ClientContext.AUTH_CACHE, authCache);
+            this.authHost =
+                new HttpHost(getDescriptor().getURI().getHost(), getDescriptor().getURI().getPort(), getDescriptor()
+                    .getURI().getScheme());
         }
+
+        this.httpClient = createClient();
+    }
+
+    /**
+     * @return the statistics about the requests sent to the repository
+     * @since 5.0M2
+     */
+    public XWikiExtensionRepositoryStatistics getStatistics()
+    {
+        return this.statistics;
     }
 
     protected UriBuilder getExtensionFileUriBuider()
@@ -136,26 +187,32 @@ protected HttpResponse getRESTResource(UriBuilder builder, Object... values) thr
             throw new IOException("Failed to build REST URL", e);
         }
 
-        HttpClient httpClient = createClient();
-
         HttpGet getMethod = new HttpGet(url);
         getMethod.addHeader("Accept", MediaType.APPLICATION_XML.toString());
+
+        long start = System.currentTimeMillis();
+
         HttpResponse response;
         try {
-            if (this.localContext != null) {
-                response = httpClient.execute(getMethod, this.localContext);
-            } else {
-                response = httpClient.execute(getMethod);
-            }
+            response = this.httpClient.execute(getMethod, createContext());
         } catch (Exception e) {
+            this.statistics.addRequest(System.currentTimeMillis() - start, false);
+
             throw new IOException("Failed to request [" + getMethod.getURI() + "]", e);
         }
 
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            this.statistics.addRequest(System.currentTimeMillis() - start, false);
+
+            // Release the connection
+            EntityUtils.consume(response.getEntity());
+
             throw new IOException("Invalid answer (" + response.getStatusLine().getStatusCode()
                 + ") fo the server when requesting");
         }
 
+        this.statistics.addRequest(System.currentTimeMillis() - start, true);
+
         return response;
     }
 
@@ -164,13 +221,87 @@ protected InputStream getRESTResourceAsStream(UriBuilder builder, Object... valu
         return getRESTResource(builder, values).getEntity().getContent();
     }
 
-    private HttpClient createClient()
+    /**
+     * Unmarshal the REST resource and release the connection.
+     * 
+     * @since 5.0M2
+     */
+    protected Object getRESTObject(UriBuilder builder, Object... values) throws IOException, JAXBException
+    {
+        InputStream stream = getRESTResourceAsStream(builder, values);
+
+        try {
+            return this.repositoryFactory.getUnmarshaller().unmarshal(stream);
+        } finally {
+            // Closing the content stream put back the connection in the pool
+            stream.close();
+        }
+    }
+
+    private HttpContext createContext()
+    {
+        // The context is modified during the request execution so it can't be shared between threads
+        HttpContext context = new BasicHttpContext();
+
+        if (this.authHost != null) {
+            // BasicAuthCache is not thread safe so each request gets its own
+            BasicAuthCache authCache = new BasicAuthCache();
+            authCache.put(this.authHost, new BasicScheme());
+            context.setAttribute(ClientContext.AUTH_CACHE, authCache);
+        }
+
+        return context;
+    }
+
+    /**
+     * Close the connections kept alive to the repository.
+     * 
+     * @since 5.0M2
+     */
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.httpClient.getConnectionManager().shutdown();
+    }
+
+    private int getMaxConnectionsPerRoute()
+    {
+        String maxPerRouteString = getDescriptor().getProperty(PROPERTY_MAXCONNECTIONSPERROUTE);
+
+        if (maxPerRouteString != null) {
+            try {
+                int maxPerRoute = Integer.parseInt(maxPerRouteString.trim());
+                if (maxPerRoute > 0) {
+                    return maxPerRoute;
+                }
+            } catch (NumberFormatException e) {
+                // Logged below
+            }
+
+            LOGGER.warn("Invalid value [{}] for property [{}] of repository [{}], using the default value [{}]",
+                new Object[] {maxPerRouteString, PROPERTY_MAXCONNECTIONSPERROUTE, getDescriptor().getId(),
+                DEFAULT_MAXCONNECTIONSPERROUTE});
+        }
+
+        return DEFAULT_MAXCONNECTIONSPERROUTE;
+    }
+
+    private DefaultHttpClient createClient()
     {
-        DefaultHttpClient httpClient = new DefaultHttpClient();
+        int maxPerRoute = getMaxConnectionsPerRoute();
+
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // The repository is usually accessed through a single route (direct or proxy)
+        connectionManager.setMaxTotal(maxPerRoute * 2);
+
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
 
         httpClient.getParams().setParameter(CoreProtocolPNames.USER_AGENT, this.configuration.getUserAgent());
         httpClient.getParams().setIntParameter(CoreConnectionPNames.SO_TIMEOUT, 60000);
         httpClient.getParams().setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, 10000);
+        // Don't wait forever for a free connection in the pool
+        httpClient.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, 10000);
 
         // Setup proxy
         ProxySelectorRoutePlanner routePlanner =
@@ -199,9 +330,8 @@ private UriBuilder createUriBuilder(String path)
     public Extension resolve(ExtensionId extensionId) throws ResolveException
     {
         try {
-            return new XWikiExtension(this, (ExtensionVersion) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(this.extensionVersionUriBuider, extensionId.getId(), extensionId.getVersion()
-                    .getValue())), this.licenseManager);
+            return new XWikiExtension(this, (ExtensionVersion) getRESTObject(this.extensionVersionUriBuider,
+                extensionId.getId(), extensionId.getVersion().getValue()), this.licenseManager);
         } catch (Exception e) {
             throw new ResolveException("Failed to create extension object for extension [" + extensionId + "]", e);
         }
@@ -229,9 +359,8 @@ public Extension resolve(ExtensionDependency extensionDependency) throws Resolve
                 version = constraint.getVersion();
             }
 
-            return new XWikiExtension(this, (ExtensionVersion) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(this.extensionVersionUriBuider, extensionDependency.getId(), version)),
-                this.licenseManager);
+            return new XWikiExtension(this, (ExtensionVersion) getRESTObject(this.extensionVersionUriBuider,
+                extensionDependency.getId(), version), this.licenseManager);
         } catch (Exception e) {
             throw new ResolveException("Failed to create extension object for extension dependency ["
                 + extensionDependency + "]", e);
@@ -251,8 +380,7 @@ private ExtensionVersions resolveExtensionVersions(String id, VersionConstraint
         }
 
         try {
-            return (ExtensionVersions) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(builder));
+            return (ExtensionVersions) getRESTObject(builder);
         } catch (Exception e) {
             throw new ResolveException("Failed to find version for extension id [" + id + "]", e);
         }
@@ -285,9 +413,7 @@ public IterableResult<Extension> search(String pattern, int offset, int nb) thro
 
         ExtensionsSearchResult restExtensions;
         try {
-            restExtensions =
-                (ExtensionsSearchResult) this.repositoryFactory.getUnmarshaller().unmarshal(
-                    getRESTResourceAsStream(builder));
+            restExtensions = (ExtensionsSearchResult) getRESTObject(builder);
         } catch (Exception e) {
             throw new SearchException("Failed to search extensions based on pattern [" + pattern + "]", e);
         }
@@ -19,10 +19,15 @@
  */
 package org.xwiki.extension.repository.xwiki.internal;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import javax.management.ObjectName;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
@@ -35,6 +40,8 @@
 import org.xwiki.extension.repository.ExtensionRepository;
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepositoryException;
+import org.xwiki.extension.repository.xwiki.internal.jmx.JMXXWikiExtensionRepository;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * @version $Id$
@@ -51,30 +58,80 @@ public class XWikiExtensionRepositoryFactory extends AbstractExtensionRepository
     @Inject
     private ExtensionManagerConfiguration configuration;
 
-    private Marshaller marshaller;
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    /**
+     * Thread safe, used to create the marshallers and unmarshallers.
+     */
+    private JAXBContext context;
+
+    /**
+     * Marshallers are not thread safe so each thread get its own.
+     */
+    private final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
+
+    /**
+     * Unmarshallers are not thread safe so each thread get its own.
+     */
+    private final ThreadLocal<Unmarshaller> unmarshallers = new ThreadLocal<Unmarshaller>();
 
-    private Unmarshaller unmarshaller;
+    /**
+     * The statistics of the repositories indexed by repository id, kept when a repository is created again.
+     */
+    private final ConcurrentMap<String, XWikiExtensionRepositoryStatistics> statistics =
+        new ConcurrentHashMap<String, XWikiExtensionRepositoryStatistics>();
 
     @Override
     public void initialize() throws InitializationException
     {
         try {
-            JAXBContext context = JAXBContext.newInstance("org.xwiki.extension.repository.xwiki.model.jaxb");
-            this.marshaller = context.createMarshaller();
-            this.unmarshaller = context.createUnmarshaller();
+            this.context = JAXBContext.newInstance("org.xwiki.extension.repository.xwiki.model.jaxb");
         } catch (Exception e) {
             throw new InitializationException("Failed to create JAXB context", e);
         }
     }
 
-    public Marshaller getMarshaller()
+    public Marshaller getMarshaller() throws JAXBException
     {
-        return this.marshaller;
+        Marshaller marshaller = this.marshallers.get();
+
+        if (marshaller == null) {
+            marshaller = this.context.createMarshaller();
+            this.marshallers.set(marshaller);
+        }
+
+        return marshaller;
     }
 
-    public Unmarshaller getUnmarshaller()
+    public Unmarshaller getUnmarshaller() throws JAXBException
     {
-        return this.unmarshaller;
+        Unmarshaller unmarshaller = this.unmarshallers.get();
+
+        if (unmarshaller == null) {
+            unmarshaller = this.context.createUnmarshaller();
+            this.unmarshallers.set(unmarshaller);
+        }
+
+        return unmarshaller;
+    }
+
+    private XWikiExtensionRepositoryStatistics getStatistics(String id)
+    {
+        XWikiExtensionRepositoryStatistics repositoryStatistics = this.statistics.get(id);
+
+        if (repositoryStatistics == null) {
+            repositoryStatistics = new XWikiExtensionRepositoryStatistics();
+            XWikiExtensionRepositoryStatistics previous = this.statistics.putIfAbsent(id, repositoryStatistics);
+            if (previous != null) {
+                repositoryStatistics = previous;
+            } else {
+                this.jmxRegistration.registerMBean(new JMXXWikiExtensionRepository(repositoryStatistics),
+                    "type=Extension,domain=Repositories,name=" + ObjectName.quote(id));
+            }
+        }
+
+        return repositoryStatistics;
     }
 
     // ExtensionRepositoryFactory
@@ -84,7 +141,8 @@ public ExtensionRepository createRepository(ExtensionRepositoryDescriptor reposi
         throws ExtensionRepositoryException
     {
         try {
-            return new XWikiExtensionRepository(repositoryDescriptor, this, this.licenseManager, this.configuration);
+            return new XWikiExtensionRepository(repositoryDescriptor, this, this.licenseManager, this.configuration,
+                getStatistics(repositoryDescriptor.getId()));
         } catch (Exception e) {
             throw new ExtensionRepositoryException("Failed to create repository [" + repositoryDescriptor + "]", e);
         }
@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.xwiki.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the requests sent to a XWiki repository.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class XWikiExtensionRepositoryStatistics
+{
+    /**
+     * @see #getRequestCount()
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * @see #getFailedRequestCount()
+     */
+    private final AtomicLong failedRequestCount = new AtomicLong();
+
+    /**
+     * @see #getRequestTime()
+     */
+    private final AtomicLong requestTime = new AtomicLong();
+
+    /**
+     * @see #getMaxRequestTime()
+     */
+    private final AtomicLong maxRequestTime = new AtomicLong();
+
+    /**
+     * Register a request.
+     * 
+     * @param time the time spent waiting for the answer of the server, in milliseconds
+     * @param success true if the server answered with a success status
+     */
+    public void addRequest(long time, boolean success)
+    {
+        this.requestCount.incrementAndGet();
+        if (!success) {
+            this.failedRequestCount.incrementAndGet();
+        }
+
+        this.requestTime.addAndGet(time);
+
+        long max = this.maxRequestTime.get();
+        while (time > max && !this.maxRequestTime.compareAndSet(max, time)) {
+            max = this.maxRequestTime.get();
+        }
+    }
+
+    /**
+     * @return the number of requests sent to the repository
+     */
+    public long getRequestCount()
+    {
+        return this.requestCount.get();
+    }
+
+    /**
+     * @return the number of requests which failed or did not get a success status
+     */
+    public long getFailedRequestCount()
+    {
+        return this.failedRequestCount.get();
+    }
+
+    /**
+     * @return the total time spent waiting for the answers of the server, in milliseconds
+     */
+    public long getRequestTime()
+    {
+        return this.requestTime.get();
+    }
+
+    /**
+     * @return the longest time spent waiting for an answer of the server, in milliseconds
+     */
+    public long getMaxRequestTime()
+    {
+        return this.maxRequestTime.get();
+    }
+}
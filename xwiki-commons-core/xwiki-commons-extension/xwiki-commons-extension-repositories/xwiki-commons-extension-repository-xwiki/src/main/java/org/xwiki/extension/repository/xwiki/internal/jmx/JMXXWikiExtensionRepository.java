@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.xwiki.internal.jmx;
+
+import org.xwiki.extension.repository.xwiki.internal.XWikiExtensionRepositoryStatistics;
+
+/**
+ * Provide information about the requests sent to a XWiki repository.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class JMXXWikiExtensionRepository implements JMXXWikiExtensionRepositoryMBean
+{
+    /**
+     * The statistics for which to return management data.
+     */
+    private XWikiExtensionRepositoryStatistics statistics;
+
+    /**
+     * @param statistics the statistics for which to return management data
+     */
+    public JMXXWikiExtensionRepository(XWikiExtensionRepositoryStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return this.statistics.getRequestCount();
+    }
+
+    @Override
+    public long getFailedRequestCount()
+    {
+        return this.statistics.getFailedRequestCount();
+    }
+
+    @Override
+    public long getRequestTime()
+    {
+        return this.statistics.getRequestTime();
+    }
+
+    @Override
+    public double getAverageRequestTime()
+    {
+        long count = getRequestCount();
+
+        return count > 0 ? (double) getRequestTime() / count : 0;
+    }
+
+    @Override
+    public long getMaxRequestTime()
+    {
+        return this.statistics.getMaxRequestTime();
+    }
+}
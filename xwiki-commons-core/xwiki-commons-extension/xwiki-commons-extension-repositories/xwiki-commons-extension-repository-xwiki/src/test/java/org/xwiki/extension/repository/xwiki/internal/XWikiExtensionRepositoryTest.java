@@ -0,0 +1,302 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.xwiki.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionManagerConfiguration;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.ExtensionRepositoryFactory;
+import org.xwiki.extension.repository.xwiki.model.jaxb.ExtensionVersion;
+import org.xwiki.extension.repository.xwiki.model.jaxb.ObjectFactory;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Validate {@link XWikiExtensionRepository} against an embedded HTTP server serving the REST model.
+ * 
+ * @version $Id$
+ */
+public class XWikiExtensionRepositoryTest
+{
+    private static final String EXTENSION_PATH = "/repository/extensions/";
+
+    @Rule
+    public final MockitoComponentMockingRule<ExtensionRepositoryFactory> mocker =
+        new MockitoComponentMockingRule<ExtensionRepositoryFactory>(XWikiExtensionRepositoryFactory.class);
+
+    private HttpServer server;
+
+    /**
+     * The ports of the client connections received by the server.
+     */
+    private Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    /**
+     * The number of requests received with credentials.
+     */
+    private AtomicInteger authenticatedRequests = new AtomicInteger();
+
+    private URI uri;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ExtensionManagerConfiguration configuration = this.mocker.getInstance(ExtensionManagerConfiguration.class);
+        when(configuration.getUserAgent()).thenReturn("test");
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                if (exchange.getRequestHeaders().containsKey("Authorization")) {
+                    authenticatedRequests.incrementAndGet();
+                }
+
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        this.server.setExecutor(Executors.newFixedThreadPool(10));
+        this.server.start();
+
+        this.uri = new URI("http://localhost:" + this.server.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.stop(0);
+    }
+
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        // Expect /repository/extensions/{extensionId}/versions/{extensionVersion}
+        String path = exchange.getRequestURI().getPath();
+        String[] elements = path.substring(EXTENSION_PATH.length()).split("/");
+
+        if (!path.startsWith(EXTENSION_PATH) || elements.length != 3 || elements[0].equals("unknown")) {
+            exchange.sendResponseHeaders(404, -1);
+
+            return;
+        }
+
+        ExtensionVersion extension = new ObjectFactory().createExtensionVersion();
+        extension.setId(elements[0]);
+        extension.setVersion(elements[2]);
+        extension.setType("jar");
+        extension.setName("name " + elements[0]);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            getFactory().getMarshaller().marshal(extension, content);
+        } catch (Exception e) {
+            throw new IOException("Failed to marshal extension", e);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, content.size());
+        OutputStream stream = exchange.getResponseBody();
+        content.writeTo(stream);
+        stream.close();
+    }
+
+    private XWikiExtensionRepositoryFactory getFactory() throws Exception
+    {
+        return (XWikiExtensionRepositoryFactory) this.mocker.getComponentUnderTest();
+    }
+
+    private XWikiExtensionRepository createRepository(String maxConnectionsPerRoute) throws Exception
+    {
+        DefaultExtensionRepositoryDescriptor descriptor =
+            new DefaultExtensionRepositoryDescriptor("test", "xwiki", this.uri);
+        if (maxConnectionsPerRoute != null) {
+            descriptor.putProperty(XWikiExtensionRepository.PROPERTY_MAXCONNECTIONSPERROUTE, maxConnectionsPerRoute);
+        }
+
+        return (XWikiExtensionRepository) getFactory().createRepository(descriptor);
+    }
+
+    private List<Callable<Extension>> createResolveTasks(final XWikiExtensionRepository repository, int count)
+    {
+        List<Callable<Extension>> tasks = new ArrayList<Callable<Extension>>();
+        for (int i = 0; i < count; ++i) {
+            final ExtensionId extensionId = new ExtensionId("extension" + i, "1.0");
+            tasks.add(new Callable<Extension>()
+            {
+                @Override
+                public Extension call() throws Exception
+                {
+                    return repository.resolve(extensionId);
+                }
+            });
+        }
+
+        return tasks;
+    }
+
+    private void resolveConcurrently(XWikiExtensionRepository repository, int count) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Extension>> futures = executor.invokeAll(createResolveTasks(repository, count));
+            for (int i = 0; i < futures.size(); ++i) {
+                Assert.assertEquals("extension" + i, futures.get(i).get().getId().getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Tests
+
+    @Test
+    public void testResolve() throws Exception
+    {
+        XWikiExtensionRepository repository = createRepository(null);
+
+        Extension extension = repository.resolve(new ExtensionId("extension", "1.0"));
+
+        Assert.assertEquals(new ExtensionId("extension", "1.0"), extension.getId());
+        Assert.assertEquals("name extension", extension.getName());
+        Assert.assertEquals("jar", extension.getType());
+
+        Assert.assertEquals(1, repository.getStatistics().getRequestCount());
+        Assert.assertEquals(0, repository.getStatistics().getFailedRequestCount());
+
+        JMXBeanRegistration jmxRegistration = this.mocker.getInstance(JMXBeanRegistration.class);
+        verify(jmxRegistration).registerMBean(any(), anyString());
+
+        // The statistics are kept when the repository is created again
+        Assert.assertSame(repository.getStatistics(), createRepository(null).getStatistics());
+        verify(jmxRegistration, times(1)).registerMBean(any(), anyString());
+    }
+
+    @Test
+    public void testResolveUnknown() throws Exception
+    {
+        XWikiExtensionRepository repository = createRepository("1");
+
+        try {
+            repository.resolve(new ExtensionId("unknown", "1.0"));
+            Assert.fail("Should have failed to resolve unknown extension");
+        } catch (ResolveException expected) {
+            // expected
+        }
+
+        Assert.assertEquals(1, repository.getStatistics().getFailedRequestCount());
+
+        // The connection has been released
+        Assert.assertEquals("extension", repository.resolve(new ExtensionId("extension", "1.0")).getId().getId());
+    }
+
+    @Test
+    public void testInvalidMaxConnectionsPerRoute() throws Exception
+    {
+        // The default value is used instead
+        for (String maxConnectionsPerRoute : new String[] {"invalid", "0", ""}) {
+            XWikiExtensionRepository repository = createRepository(maxConnectionsPerRoute);
+
+            Assert.assertEquals("extension", repository.resolve(new ExtensionId("extension", "1.0")).getId().getId());
+        }
+    }
+
+    @Test
+    public void testResolveConcurrently() throws Exception
+    {
+        XWikiExtensionRepository repository = createRepository("2");
+
+        resolveConcurrently(repository, 100);
+
+        Assert.assertEquals(100, repository.getStatistics().getRequestCount());
+        // Connections are kept alive and reused
+        Assert.assertTrue("Too many connections: " + this.clientPorts.size(), this.clientPorts.size() <= 4);
+    }
+
+    @Test
+    public void testPreemptiveAuthenticationConcurrently() throws Exception
+    {
+        DefaultExtensionRepositoryDescriptor descriptor =
+            new DefaultExtensionRepositoryDescriptor("test", "xwiki", this.uri);
+        descriptor.putProperty("auth.user", "user");
+        descriptor.putProperty("auth.password", "password");
+        XWikiExtensionRepository repository = (XWikiExtensionRepository) getFactory().createRepository(descriptor);
+
+        resolveConcurrently(repository, 100);
+
+        // Each request is authenticated without waiting for a challenge from the server
+        Assert.assertEquals(100, this.authenticatedRequests.get());
+    }
+
+    @Test
+    public void testDispose() throws Exception
+    {
+        XWikiExtensionRepository repository = createRepository(null);
+
+        Assert.assertEquals("extension", repository.resolve(new ExtensionId("extension", "1.0")).getId().getId());
+
+        repository.dispose();
+
+        try {
+            repository.resolve(new ExtensionId("extension", "1.0"));
+            Assert.fail("Should have failed to resolve with a disposed repository");
+        } catch (ResolveException expected) {
+            // expected
+        }
+    }
+}
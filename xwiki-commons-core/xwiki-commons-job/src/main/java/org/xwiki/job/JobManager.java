@@ -34,6 +34,9 @@
 public interface JobManager
 {
     /**
+     * Since 5.0M2 jobs can be executed at the same time (see {@link JobManagerConfiguration}): when called from a
+     * thread executing a job this method returns the job of this thread, otherwise it returns the latest started job.
+     * 
      * @return the job currently running or the latest job, null if there is no job
      */
     Job getCurrentJob();
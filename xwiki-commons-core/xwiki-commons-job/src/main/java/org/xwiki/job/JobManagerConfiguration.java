@@ -36,4 +36,51 @@
      * @return the folder containing job executing status
      */
     File getStorage();
+
+    /**
+     * @return the maximum number of stored job statuses kept in memory
+     * @since 5.0M2
+     */
+    int getJobStatusCacheSize();
+
+    /**
+     * @return the hint of the serializer used to store the job statuses ("xml" or "binary")
+     * @since 5.0M2
+     */
+    String getJobStatusSerializer();
+
+    /**
+     * @return true if the job statuses should be compressed when the format support it
+     * @since 5.0M2
+     */
+    boolean isJobStatusCompressed();
+
+    /**
+     * @param idPrefix the first element of a job id
+     * @return the name of the lane where to execute the jobs with the passed id prefix, null if not configured
+     * @since 5.0M2
+     */
+    String getJobLaneForId(String idPrefix);
+
+    /**
+     * @param jobType the role hint of the job component
+     * @return the name of the lane where to execute the jobs of the passed type, null if not configured
+     * @since 5.0M2
+     */
+    String getJobLaneForType(String jobType);
+
+    /**
+     * @param lane the name of the lane
+     * @return the maximum number of jobs executed at the same time in the lane
+     * @since 5.0M2
+     */
+    int getJobLaneConcurrency(String lane);
+
+    /**
+     * @param lane the name of the lane
+     * @return true if the jobs of the lane have to be started in the order they were added, false if a job can be
+     *         started before a conflicting job added earlier
+     * @since 5.0M2
+     */
+    boolean isJobLaneOrdered(String lane);
 }
@@ -37,9 +37,6 @@
 import org.xwiki.job.event.JobStartedEvent;
 import org.xwiki.job.event.status.JobStatus;
 import org.xwiki.job.event.status.JobStatus.State;
-import org.xwiki.job.event.status.PopLevelProgressEvent;
-import org.xwiki.job.event.status.PushLevelProgressEvent;
-import org.xwiki.job.event.status.StepProgressEvent;
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.ObservationManager;
 
@@ -89,6 +86,14 @@
     @Inject
     protected JobContext jobContext;
 
+    /**
+     * Used to update the progress of the job.
+     * 
+     * @since 5.0M2
+     */
+    @Inject
+    protected JobProgressManager progressManager;
+
     /**
      * The job request.
      */
@@ -230,8 +235,8 @@ protected R castRequest(Request request)
      */
     protected S createNewStatus(R request)
     {
-        return (S) new DefaultJobStatus<R>(request, this.observationManager, this.loggerManager,
-            this.jobContext.getCurrentJob() != null);
+        return (S) new DefaultJobStatus<R>(request, this.progressManager, this.observationManager,
+            this.loggerManager, this.jobContext.getCurrentJob() != null);
     }
 
     /**
@@ -241,7 +246,7 @@ protected S createNewStatus(R request)
      */
     protected void notifyPushLevelProgress(int steps)
     {
-        this.observationManager.notify(new PushLevelProgressEvent(steps), this);
+        this.progressManager.pushLevelProgress(steps, this);
     }
 
     /**
@@ -249,7 +254,7 @@ protected void notifyPushLevelProgress(int steps)
      */
     protected void notifyStepPropress()
     {
-        this.observationManager.notify(new StepProgressEvent(), this);
+        this.progressManager.stepProgress(this);
     }
 
     /**
@@ -257,7 +262,7 @@ protected void notifyStepPropress()
      */
     protected void notifyPopLevelProgress()
     {
-        this.observationManager.notify(new PopLevelProgressEvent(), this);
+        this.progressManager.popLevelProgress(this);
     }
 
     /**
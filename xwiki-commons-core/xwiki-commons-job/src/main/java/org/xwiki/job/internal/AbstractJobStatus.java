@@ -48,6 +48,11 @@
      */
     private transient ObservationManager observationManager;
 
+    /**
+     * Used to update the progress.
+     */
+    private transient JobProgressManager progressManager;
+
     /**
      * Used to isolate job related log.
      */
@@ -116,8 +121,25 @@
      */
     public AbstractJobStatus(R request, ObservationManager observationManager, LoggerManager loggerManager,
         boolean subJob)
+    {
+        this(request, null, observationManager, loggerManager, subJob);
+    }
+
+    /**
+     * @param request the request provided when started the job
+     * @param progressManager the component used to update the progress, if null the progress is updated by listening
+     *            to progress events. When not null the progress events sent directly through the
+     *            {@link ObservationManager} (instead of the {@link JobProgressManager}) are ignored.
+     * @param observationManager the observation manager component
+     * @param loggerManager the logger manager component
+     * @param subJob indicate of the job has been started by another one
+     * @since 5.0M2
+     */
+    public AbstractJobStatus(R request, JobProgressManager progressManager, ObservationManager observationManager,
+        LoggerManager loggerManager, boolean subJob)
     {
         this.request = request;
+        this.progressManager = progressManager;
         this.observationManager = observationManager;
         this.loggerManager = loggerManager;
         this.subJob = subJob;
@@ -128,9 +150,13 @@ public AbstractJobStatus(R request, ObservationManager observationManager, Logge
      */
     public void startListening()
     {
-        // Register progress listener
+        // Bind the progress to the job thread
         this.progress = new DefaultJobProgress(Thread.currentThread());
-        this.observationManager.addListener(this.progress);
+        if (this.progressManager != null) {
+            this.progressManager.pushProgress(this.progress);
+        } else {
+            this.observationManager.addListener(this.progress);
+        }
 
         // Isolate log for the job status
         this.logListener = new LogQueueListener(LogQueueListener.class.getName() + '_' + hashCode(), this.logs);
@@ -151,7 +177,11 @@ public void stopListening()
         } else {
             this.loggerManager.popLogListener();
         }
-        this.observationManager.removeListener(this.progress.getName());
+        if (this.progressManager != null) {
+            this.progressManager.popProgress();
+        } else {
+            this.observationManager.removeListener(this.progress.getName());
+        }
     }
 
     // JobStatus
@@ -0,0 +1,226 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The informations written by {@link BinaryJobStatusSerializer} before the job status itself.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class BinaryJobStatusHeader
+{
+    /**
+     * Identify the format of the file.
+     */
+    private static final int MAGIC = 0x584A5342;
+
+    /**
+     * The version of the format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * Indicate that the job status is compressed.
+     */
+    private boolean compressed;
+
+    /**
+     * The id of the job.
+     */
+    private List<String> id;
+
+    /**
+     * The time the job started or -1 if unknown.
+     */
+    private long startDate = -1;
+
+    /**
+     * The number of logs stored in the log file.
+     */
+    private int logCount;
+
+    /**
+     * The size of the log file.
+     */
+    private long logLength;
+
+    /**
+     * @return true if the job status is compressed
+     */
+    public boolean isCompressed()
+    {
+        return this.compressed;
+    }
+
+    /**
+     * @param compressed true if the job status is compressed
+     */
+    public void setCompressed(boolean compressed)
+    {
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return the id of the job
+     */
+    public List<String> getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @param id the id of the job
+     */
+    public void setId(List<String> id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the time the job started or -1 if unknown
+     */
+    public long getStartDate()
+    {
+        return this.startDate;
+    }
+
+    /**
+     * @param startDate the time the job started or -1 if unknown
+     */
+    public void setStartDate(long startDate)
+    {
+        this.startDate = startDate;
+    }
+
+    /**
+     * @return the number of logs stored in the log file
+     */
+    public int getLogCount()
+    {
+        return this.logCount;
+    }
+
+    /**
+     * @param logCount the number of logs stored in the log file
+     */
+    public void setLogCount(int logCount)
+    {
+        this.logCount = logCount;
+    }
+
+    /**
+     * @return the size of the log file
+     */
+    public long getLogLength()
+    {
+        return this.logLength;
+    }
+
+    /**
+     * @param logLength the size of the log file
+     */
+    public void setLogLength(long logLength)
+    {
+        this.logLength = logLength;
+    }
+
+    /**
+     * @param other another header
+     * @return true if both headers are known to describe the same execution of the job
+     */
+    public boolean isSameExecution(BinaryJobStatusHeader other)
+    {
+        return this.startDate != -1 && this.startDate == other.startDate;
+    }
+
+    /**
+     * @param stream the stream to read, positioned at the start of the header
+     * @return the header
+     * @throws IOException when failing to read the header
+     */
+    public static BinaryJobStatusHeader read(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(stream);
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary job status");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary job status version [" + version + "]");
+        }
+
+        BinaryJobStatusHeader header = new BinaryJobStatusHeader();
+        header.compressed = in.readBoolean();
+
+        int idSize = in.readInt();
+        if (idSize >= 0) {
+            header.id = new ArrayList<String>(idSize);
+            for (int i = 0; i < idSize; ++i) {
+                header.id.add(in.readBoolean() ? in.readUTF() : null);
+            }
+        }
+
+        header.startDate = in.readLong();
+        header.logCount = in.readInt();
+        header.logLength = in.readLong();
+
+        return header;
+    }
+
+    /**
+     * @param stream the stream where to write the header
+     * @throws IOException when failing to write the header
+     */
+    public void write(OutputStream stream) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(stream);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeBoolean(this.compressed);
+
+        if (this.id != null) {
+            out.writeInt(this.id.size());
+            for (String idElement : this.id) {
+                out.writeBoolean(idElement != null);
+                if (idElement != null) {
+                    out.writeUTF(idElement);
+                }
+            }
+        } else {
+            out.writeInt(-1);
+        }
+
+        out.writeLong(this.startDate);
+        out.writeInt(this.logCount);
+        out.writeLong(this.logLength);
+        out.flush();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.logging.internal.LogEventFile;
+
+/**
+ * The append only file where {@link BinaryJobStatusSerializer} stores the log of a job. The part of the file which
+ * belongs to the stored job status is indicated in its {@link BinaryJobStatusHeader}.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class BinaryJobStatusLog
+{
+    /**
+     * The file containing the logs.
+     */
+    private final File file;
+
+    /**
+     * @param file the file containing the logs
+     */
+    public BinaryJobStatusLog(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @param logs the queue where to add the stored logs
+     * @param header the header of the job status
+     */
+    public void read(LogQueue logs, BinaryJobStatusHeader header)
+    {
+        if (header.getLogCount() > 0 && this.file.exists()) {
+            LogEventFile events = new LogEventFile(this.file);
+
+            try {
+                for (Iterator<LogEvent> it = events.iterator(0, header.getLogLength()); it.hasNext();) {
+                    logs.offer(it.next());
+                }
+            } finally {
+                events.close();
+            }
+        }
+    }
+
+    /**
+     * Write the logs not already stored in the file.
+     * 
+     * @param logs the logs to store
+     * @param header the header of the job status to update with the stored logs
+     * @param previous the header of the currently stored job status or null if there is none
+     * @throws IOException when failing to write the logs
+     */
+    public void write(LogQueue logs, BinaryJobStatusHeader header, BinaryJobStatusHeader previous)
+        throws IOException
+    {
+        LogEventFile events = new LogEventFile(this.file);
+
+        try {
+            int stored;
+            if (canAppend(logs, header, previous)) {
+                stored = previous.getLogCount();
+            } else {
+                events.delete();
+                stored = 0;
+            }
+
+            int count = 0;
+            if (logs != null) {
+                for (LogEvent logEvent : logs) {
+                    if (count >= stored) {
+                        events.append(logEvent);
+                    }
+                    ++count;
+                }
+            }
+
+            header.setLogCount(count);
+            header.setLogLength(events.length());
+        } finally {
+            events.close();
+        }
+    }
+
+    /**
+     * @param logs the logs to store
+     * @param header the header of the job status to store
+     * @param previous the header of the currently stored job status
+     * @return true if the stored logs belong to the same job execution and only the new ones have to be written
+     */
+    private boolean canAppend(LogQueue logs, BinaryJobStatusHeader header, BinaryJobStatusHeader previous)
+    {
+        if (previous == null || logs == null || !header.isSameExecution(previous)) {
+            return false;
+        }
+
+        return previous.getLogCount() <= logs.size() && this.file.length() == previous.getLogLength();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.job.JobManagerConfiguration;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.xstream.EmptyLogQueueConverter;
+import org.xwiki.job.internal.xstream.SafeXStream;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+
+/**
+ * Store the job status in a compact binary format, optionally compressed (see
+ * {@link JobManagerConfiguration#isJobStatusCompressed()}).
+ * <p>
+ * The status file starts with a small header containing the id of the job (so that it can be indexed without reading
+ * the whole status) followed by the job status serialized with XStream's binary format. The log of the job is not part
+ * of it: it's stored in a separate append only file and only the logs added since the previous save of the same job
+ * execution are written.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component
+@Named("binary")
+@Singleton
+public class BinaryJobStatusSerializer implements JobStatusSerializer
+{
+    /**
+     * The name of the file where the job status is stored.
+     */
+    private static final String FILENAME_STATUS = "status.bin";
+
+    /**
+     * The name of the file where the job log is stored.
+     */
+    private static final String FILENAME_LOG = "log.bin";
+
+    /**
+     * Used to know if the status should be compressed.
+     */
+    @Inject
+    private JobManagerConfiguration configuration;
+
+    /**
+     * Used to serialize and unserialize status.
+     */
+    private XStream xstream;
+
+    /**
+     * Default constructor.
+     */
+    public BinaryJobStatusSerializer()
+    {
+        this.xstream = new SafeXStream();
+        this.xstream.registerConverter(new EmptyLogQueueConverter(), XStream.PRIORITY_VERY_HIGH);
+    }
+
+    @Override
+    public String getFileName()
+    {
+        return FILENAME_STATUS;
+    }
+
+    /**
+     * @param statusFile the file containing the job status
+     * @return the file containing the job log
+     */
+    private BinaryJobStatusLog getLog(File statusFile)
+    {
+        return new BinaryJobStatusLog(new File(statusFile.getParentFile(), FILENAME_LOG));
+    }
+
+    /**
+     * @param statusFile the file containing the job status
+     * @return the header of the job status
+     * @throws IOException when failing to read the header
+     */
+    private BinaryJobStatusHeader readHeader(File statusFile) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(statusFile));
+
+        try {
+            return BinaryJobStatusHeader.read(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param statusFile the file containing the currently stored job status
+     * @return the header of the currently stored job status or null if it can't be read
+     */
+    private BinaryJobStatusHeader readPreviousHeader(File statusFile)
+    {
+        try {
+            return readHeader(statusFile);
+        } catch (IOException e) {
+            // Invalid file, it will be overwritten
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> readId(File statusFile) throws Exception
+    {
+        List<String> id = readHeader(statusFile).getId();
+
+        return id != null ? id : Collections.<String> emptyList();
+    }
+
+    @Override
+    public JobStatus read(File statusFile) throws Exception
+    {
+        JobStatus status;
+        BinaryJobStatusHeader header;
+
+        InputStream in = new BufferedInputStream(new FileInputStream(statusFile));
+        try {
+            header = BinaryJobStatusHeader.read(in);
+
+            InputStream payload = header.isCompressed() ? new GZIPInputStream(in) : in;
+            status = (JobStatus) this.xstream.unmarshal(new BinaryStreamReader(payload));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        if (status != null && status.getLog() != null) {
+            getLog(statusFile).read(status.getLog(), header);
+        }
+
+        return status;
+    }
+
+    @Override
+    public void write(JobStatus status, File statusFile) throws Exception
+    {
+        BinaryJobStatusHeader header = new BinaryJobStatusHeader();
+        header.setCompressed(this.configuration.isJobStatusCompressed());
+        header.setId(status.getRequest().getId());
+        if (status.getStartDate() != null) {
+            header.setStartDate(status.getStartDate().getTime());
+        }
+
+        BinaryJobStatusHeader previous = statusFile.exists() ? readPreviousHeader(statusFile) : null;
+        getLog(statusFile).write(status.getLog(), header, previous);
+
+        OutputStream out = new BufferedOutputStream(FileUtils.openOutputStream(statusFile));
+        try {
+            header.write(out);
+
+            OutputStream payload = header.isCompressed() ? new GZIPOutputStream(out) : out;
+            BinaryStreamWriter writer = new BinaryStreamWriter(payload);
+            this.xstream.marshal(status, writer);
+            writer.flush();
+            if (payload instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) payload).finish();
+            }
+            out.flush();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+}
@@ -20,19 +20,18 @@
 package org.xwiki.job.internal;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
-import org.xwiki.component.phase.Initializable;
-import org.xwiki.component.phase.InitializationException;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
@@ -40,44 +39,104 @@
 import org.xwiki.job.Job;
 import org.xwiki.job.JobException;
 import org.xwiki.job.JobManager;
+import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.Request;
 import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.JobLane.JobElement;
+import org.xwiki.job.internal.jmx.JMXJobLane;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * Default implementation of {@link JobManager}.
+ * <p>
+ * The jobs are executed in lanes, each with its own queue and threads (see {@link JobLane}). The lane of a job is
+ * configured from the first element of its id or from its type (see {@link JobManagerConfiguration}), the others are
+ * executed one by one in the default lane. In a lane the jobs with the same first id element (or the same type when
+ * they don't have any id) are never executed at the same time.
  * 
  * @version $Id$
  * @since 4.0M1
  */
 @Component
 @Singleton
-public class DefaultJobManager implements JobManager, Runnable, Initializable
+public class DefaultJobManager implements JobManager
 {
     /**
-     * A job to execute.
+     * The name of the lane where the jobs are executed when no other lane is configured.
+     */
+    private static final String DEFAULT_LANE = "default";
+
+    /**
+     * Execute the jobs of a lane.
      * 
      * @version $Id$
      */
-    private static class JobElement
+    private class LaneWorker implements Runnable
     {
         /**
-         * The job to execute.
+         * The lane from where to take the jobs to execute.
          */
-        public Job job;
+        private final JobLane lane;
 
         /**
-         * The request to use to control the job.
+         * @param lane the lane from where to take the jobs to execute
          */
-        public Request request;
+        public LaneWorker(JobLane lane)
+        {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run()
+        {
+            // Create a clean Execution Context
+            ExecutionContext context = new ExecutionContext();
+
+            try {
+                executionContextManager.initialize(context);
+            } catch (ExecutionContextException e) {
+                throw new RuntimeException("Failed to initialize Job Manager's execution context", e);
+            }
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        execute(this.lane.take());
+                    } catch (InterruptedException e) {
+                        // Thread has been stopped
+                        break;
+                    }
+                }
+            } finally {
+                execution.removeContext();
+            }
+        }
 
         /**
-         * @param job the job to execute
-         * @param request the request to use to control the job
+         * @param element the job to execute
          */
-        public JobElement(Job job, Request request)
+        private void execute(JobElement element)
         {
-            this.job = job;
-            this.request = request;
+            Job job = element.getJob();
+            // Jobs without id can't be retrieved by id
+            List<String> id = element.getRequest().getId();
+
+            lastJob = job;
+            workerJob.set(job);
+            if (id != null) {
+                runningJobs.put(id, job);
+            }
+
+            try {
+                job.start(element.getRequest());
+            } finally {
+                if (id != null) {
+                    // Another job with the same id might have been started meanwhile in another lane
+                    runningJobs.remove(id, job);
+                }
+                workerJob.remove();
+                this.lane.finished(element);
+            }
         }
     }
 
@@ -106,61 +165,117 @@ public JobElement(Job job, Request request)
     private ExecutionContextManager executionContextManager;
 
     /**
-     * @see #getCurrentJob()
+     * Used to configure the lanes.
      */
-    private volatile Job currentJob;
+    @Inject
+    private JobManagerConfiguration configuration;
 
     /**
-     * The queue of jobs to execute.
+     * Used to register the lanes MBeans.
      */
-    private BlockingQueue<JobElement> jobQueue = new LinkedBlockingQueue<JobElement>();
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
 
     /**
-     * The thread on which the job manager is running.
+     * The job started last in any lane, see {@link #getCurrentJob()}.
      */
-    private Thread thread;
+    private volatile Job lastJob;
 
-    @Override
-    public void initialize() throws InitializationException
-    {
-        this.thread = new Thread(this);
-        this.thread.setDaemon(true);
-        this.thread.start();
-        this.thread.setName("Job Manager daemon thread");
-    }
+    /**
+     * The job executed by the current thread when it's a lane worker, see {@link #getCurrentJob()}.
+     */
+    private final ThreadLocal<Job> workerJob = new ThreadLocal<Job>();
 
-    // Runnable
+    /**
+     * The jobs currently executed which have an id, indexed by job id.
+     */
+    private ConcurrentHashMap<List<String>, Job> runningJobs = new ConcurrentHashMap<List<String>, Job>();
 
-    @Override
-    public void run()
+    /**
+     * The lanes where the jobs are executed, created when first used.
+     */
+    private Map<String, JobLane> lanes = new ConcurrentHashMap<String, JobLane>();
+
+    /**
+     * @param jobType the role hint of the job component
+     * @param request the request
+     * @return the name of the lane where to execute the job
+     */
+    private String getLaneName(String jobType, Request request)
     {
-        // Create a clean Execution Context
-        ExecutionContext context = new ExecutionContext();
+        String laneName = null;
 
-        try {
-            this.executionContextManager.initialize(context);
-        } catch (ExecutionContextException e) {
-            throw new RuntimeException("Failed to initialize IRC Bot's execution context", e);
+        List<String> id = request.getId();
+        if (id != null && !id.isEmpty() && id.get(0) != null) {
+            laneName = this.configuration.getJobLaneForId(id.get(0));
         }
 
-        try {
-            while (!this.thread.isInterrupted()) {
-                try {
-                    JobElement element = this.jobQueue.take();
+        if (laneName == null) {
+            laneName = this.configuration.getJobLaneForType(jobType);
+        }
+
+        return laneName != null ? laneName : DEFAULT_LANE;
+    }
+
+    /**
+     * @param name the name of the lane
+     * @return the lane, created and started if it does not exist yet
+     */
+    private JobLane getLane(String name)
+    {
+        JobLane lane = this.lanes.get(name);
+
+        if (lane == null) {
+            synchronized (this.lanes) {
+                lane = this.lanes.get(name);
 
-                    this.currentJob = element.job;
+                if (lane == null) {
+                    lane = new JobLane(name, this.configuration.getJobLaneConcurrency(name),
+                        this.configuration.isJobLaneOrdered(name));
 
-                    // Wait in case synchronous job is running
-                    synchronized (this) {
-                        this.currentJob.start(element.request);
+                    for (int i = 0; i < lane.getConcurrency(); ++i) {
+                        Thread thread = new Thread(new LaneWorker(lane));
+                        thread.setDaemon(true);
+                        thread.setName(getThreadName(lane, i));
+                        thread.start();
                     }
-                } catch (InterruptedException e) {
-                    // Thread has been stopped
+
+                    this.lanes.put(name, lane);
+
+                    this.jmxRegistration.registerMBean(new JMXJobLane(lane), "type=Job,domain=Lanes,name=" + name);
                 }
             }
-        } finally {
-            this.execution.removeContext();
         }
+
+        return lane;
+    }
+
+    /**
+     * @param lane the lane
+     * @param index the index of the thread in the lane
+     * @return the name of the thread
+     */
+    private String getThreadName(JobLane lane, int index)
+    {
+        String threadName = "Job Manager daemon thread";
+
+        if (!lane.getName().equals(DEFAULT_LANE)) {
+            threadName += " [" + lane.getName() + ']';
+        }
+        if (lane.getConcurrency() > 1) {
+            threadName += " #" + (index + 1);
+        }
+
+        return threadName;
+    }
+
+    /**
+     * @return the lanes where the jobs are executed
+     * @since 5.0M2
+     */
+    public Collection<JobLane> getLanes()
+    {
+        return Collections.unmodifiableCollection(this.lanes.values());
     }
 
     // JobManager
@@ -168,7 +283,9 @@ public void run()
     @Override
     public Job getCurrentJob()
     {
-        return this.currentJob;
+        Job job = this.workerJob.get();
+
+        return job != null ? job : this.lastJob;
     }
 
     /**
@@ -207,7 +324,10 @@ public Job addJob(String jobType, Request request) throws JobException
     {
         Job job = createJob(jobType);
 
-        this.jobQueue.add(new JobElement(job, request));
+        List<String> id = request.getId();
+        String key = id != null && !id.isEmpty() ? id.get(0) : jobType;
+
+        getLane(getLaneName(jobType, request)).add(new JobElement(job, request, key));
 
         return job;
     }
@@ -221,8 +341,10 @@ public JobStatus getJobStatus(String id)
     @Override
     public JobStatus getJobStatus(List<String> id)
     {
-        if (this.currentJob != null && ObjectUtils.equals(id, this.currentJob.getRequest().getId())) {
-            return this.currentJob.getStatus();
+        // The status of a finished job is taken from the storage
+        Job job = id != null ? this.runningJobs.get(id) : null;
+        if (job != null) {
+            return job.getStatus();
         }
 
         return this.storage.getJobStatus(id);
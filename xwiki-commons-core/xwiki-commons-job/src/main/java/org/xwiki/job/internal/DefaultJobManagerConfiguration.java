@@ -40,6 +40,26 @@
 @Singleton
 public class DefaultJobManagerConfiguration implements JobManagerConfiguration
 {
+    /**
+     * The default maximum number of stored job statuses kept in memory.
+     */
+    private static final int DEFAULT_JOBSTATUS_CACHE_SIZE = 50;
+
+    /**
+     * The default serializer used to store the job statuses.
+     */
+    private static final String DEFAULT_JOBSTATUS_SERIALIZER = "xml";
+
+    /**
+     * The prefix of the lanes configuration properties.
+     */
+    private static final String PREFIX_LANE = "job.lane.";
+
+    /**
+     * The default maximum number of jobs executed at the same time in a lane.
+     */
+    private static final int DEFAULT_LANE_CONCURRENCY = 1;
+
     /**
      * Used to get permanent directory.
      */
@@ -82,4 +102,46 @@ public File getStorage()
 
         return this.store;
     }
+
+    @Override
+    public int getJobStatusCacheSize()
+    {
+        return this.configuration.get().getProperty("job.statusCacheSize", DEFAULT_JOBSTATUS_CACHE_SIZE);
+    }
+
+    @Override
+    public String getJobStatusSerializer()
+    {
+        return this.configuration.get().getProperty("job.statusSerializer", DEFAULT_JOBSTATUS_SERIALIZER);
+    }
+
+    @Override
+    public boolean isJobStatusCompressed()
+    {
+        return this.configuration.get().getProperty("job.statusCompressed", Boolean.TRUE);
+    }
+
+    @Override
+    public String getJobLaneForId(String idPrefix)
+    {
+        return this.configuration.get().getProperty(PREFIX_LANE + "id." + idPrefix, String.class);
+    }
+
+    @Override
+    public String getJobLaneForType(String jobType)
+    {
+        return this.configuration.get().getProperty(PREFIX_LANE + "type." + jobType, String.class);
+    }
+
+    @Override
+    public int getJobLaneConcurrency(String lane)
+    {
+        return this.configuration.get().getProperty(PREFIX_LANE + lane + ".concurrency", DEFAULT_LANE_CONCURRENCY);
+    }
+
+    @Override
+    public boolean isJobLaneOrdered(String lane)
+    {
+        return this.configuration.get().getProperty(PREFIX_LANE + lane + ".ordered", Boolean.FALSE);
+    }
 }
@@ -19,9 +19,10 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,12 @@
 import org.xwiki.observation.event.Event;
 
 /**
+ * Compute the progress of a job.
+ * <p>
+ * The progress is updated by the thread executing the job, directly (see {@link JobProgressManager}) or through
+ * progress events when registered as listener. {@link #getOffset()} and {@link #getCurrentLevelOffset()} can be called
+ * from any thread without locking.
+ * 
  * @version $Id$
  * @since 4.0M1
  */
@@ -60,9 +67,19 @@ public class DefaultJobProgress implements EventListener, JobProgress
     private Thread thread;
 
     /**
-     * The progress stack.
+     * The progress stack, only accessed by the thread updating the progress.
      */
-    private Stack<Level> progress = new Stack<Level>();
+    private Deque<Level> progress = new ArrayDeque<Level>();
+
+    /**
+     * @see #getOffset()
+     */
+    private volatile double offset;
+
+    /**
+     * @see #getCurrentLevelOffset()
+     */
+    private volatile double currentLevelOffset;
 
     /**
      * Flag indicating that the next {@link StepProgressEvent} should be ignored (probably because its progress was
@@ -154,26 +171,72 @@ public List<Event> getEvents()
     public void onEvent(Event event, Object arg1, Object arg2)
     {
         if (this.thread == null || this.thread == Thread.currentThread()) {
-            boolean ignoreNextStep = this.ignoreNextStepProgressEvent;
-            this.ignoreNextStepProgressEvent = false;
             if (event instanceof PushLevelProgressEvent) {
-                onPushLevelProgress((PushLevelProgressEvent) event);
+                pushLevelProgress(((PushLevelProgressEvent) event).getSteps());
             } else if (event instanceof PopLevelProgressEvent) {
-                onPopLevelProgress();
-            } else if (event instanceof StepProgressEvent && !ignoreNextStep) {
-                onStepProgress();
+                popLevelProgress();
+            } else if (event instanceof StepProgressEvent) {
+                stepProgress();
             }
         }
     }
 
+    // Progress
+
     /**
      * Adds a new level to the progress stack.
      * 
-     * @param event the event that was fired
+     * @param steps the number of steps of the new level
+     * @since 5.0M2
+     */
+    public void pushLevelProgress(int steps)
+    {
+        this.ignoreNextStepProgressEvent = false;
+
+        this.progress.push(new Level(steps, this.progress.peek().globalOffset, this.progress.peek().globalStepSize));
+
+        updateOffsets();
+    }
+
+    /**
+     * Move progress to next step, unless the step was already taken into account by {@link #popLevelProgress()}.
+     * 
+     * @since 5.0M2
+     */
+    public void stepProgress()
+    {
+        if (this.ignoreNextStepProgressEvent) {
+            this.ignoreNextStepProgressEvent = false;
+        } else {
+            onStepProgress();
+
+            updateOffsets();
+        }
+    }
+
+    /**
+     * Remove the current level from the progress stack and move the parent level to its next step.
+     * 
+     * @since 5.0M2
      */
-    private void onPushLevelProgress(PushLevelProgressEvent event)
+    public void popLevelProgress()
     {
-        this.progress.push(new Level(event.getSteps(), getOffset(), this.progress.peek().globalStepSize));
+        this.ignoreNextStepProgressEvent = false;
+
+        onPopLevelProgress();
+
+        updateOffsets();
+    }
+
+    /**
+     * Publish the offsets of the current level for the threads reading the progress.
+     */
+    private void updateOffsets()
+    {
+        Level level = this.progress.peek();
+
+        this.offset = level.globalOffset;
+        this.currentLevelOffset = level.levelOffset;
     }
 
     /**
@@ -193,7 +256,7 @@ private void onStepProgress()
     }
 
     /**
-     * Called when a {@link PopLevelProgressEvent} is fired.
+     * Remove the current level from the progress stack.
      */
     private void onPopLevelProgress()
     {
@@ -214,12 +277,12 @@ private void onPopLevelProgress()
     @Override
     public double getOffset()
     {
-        return this.progress.peek().globalOffset;
+        return this.offset;
     }
 
     @Override
     public double getCurrentLevelOffset()
     {
-        return this.progress.peek().levelOffset;
+        return this.currentLevelOffset;
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.job.event.status.StepProgressEvent;
+import org.xwiki.observation.ObservationManager;
+
+/**
+ * Default implementation of {@link JobProgressManager}.
+ * <p>
+ * The progress events are still sent for whoever listens to them but the bound progresses don't need to. They are not
+ * even created when nobody listens to them.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component
+@Singleton
+public class DefaultJobProgressManager implements JobProgressManager
+{
+    /**
+     * Used to send the progress events.
+     */
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * The progresses bound to each thread, in the order they were bound.
+     */
+    private final ThreadLocal<List<DefaultJobProgress>> progresses = new ThreadLocal<List<DefaultJobProgress>>();
+
+    @Override
+    public void pushProgress(DefaultJobProgress progress)
+    {
+        List<DefaultJobProgress> threadProgresses = this.progresses.get();
+        if (threadProgresses == null) {
+            threadProgresses = new ArrayList<DefaultJobProgress>();
+            this.progresses.set(threadProgresses);
+        }
+
+        threadProgresses.add(progress);
+    }
+
+    @Override
+    public void popProgress()
+    {
+        List<DefaultJobProgress> threadProgresses = this.progresses.get();
+
+        if (threadProgresses != null) {
+            threadProgresses.remove(threadProgresses.size() - 1);
+
+            if (threadProgresses.isEmpty()) {
+                this.progresses.remove();
+            }
+        }
+    }
+
+    @Override
+    public void pushLevelProgress(int steps, Object source)
+    {
+        List<DefaultJobProgress> threadProgresses = this.progresses.get();
+        if (threadProgresses != null) {
+            for (int i = 0; i < threadProgresses.size(); ++i) {
+                threadProgresses.get(i).pushLevelProgress(steps);
+            }
+        }
+
+        if (this.observationManager.hasListener(PushLevelProgressEvent.class)) {
+            this.observationManager.notify(new PushLevelProgressEvent(steps), source);
+        }
+    }
+
+    @Override
+    public void stepProgress(Object source)
+    {
+        List<DefaultJobProgress> threadProgresses = this.progresses.get();
+        if (threadProgresses != null) {
+            for (int i = 0; i < threadProgresses.size(); ++i) {
+                threadProgresses.get(i).stepProgress();
+            }
+        }
+
+        if (this.observationManager.hasListener(StepProgressEvent.class)) {
+            this.observationManager.notify(new StepProgressEvent(), source);
+        }
+    }
+
+    @Override
+    public void popLevelProgress(Object source)
+    {
+        List<DefaultJobProgress> threadProgresses = this.progresses.get();
+        if (threadProgresses != null) {
+            for (int i = 0; i < threadProgresses.size(); ++i) {
+                threadProgresses.get(i).popLevelProgress();
+            }
+        }
+
+        if (this.observationManager.hasListener(PopLevelProgressEvent.class)) {
+            this.observationManager.notify(new PopLevelProgressEvent(), source);
+        }
+    }
+}
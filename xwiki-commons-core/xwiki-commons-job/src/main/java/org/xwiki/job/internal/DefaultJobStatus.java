@@ -50,4 +50,18 @@ public DefaultJobStatus(R request, ObservationManager observationManager, Logger
     {
         super(request, observationManager, loggerManager, subJob);
     }
+
+    /**
+     * @param request the request provided when started the job
+     * @param progressManager the component used to update the progress
+     * @param observationManager the observation manager component
+     * @param loggerManager the logger manager component
+     * @param subJob indicate of the job has been started by another one
+     * @since 5.0M2
+     */
+    public DefaultJobStatus(R request, JobProgressManager progressManager, ObservationManager observationManager,
+        LoggerManager loggerManager, boolean subJob)
+    {
+        super(request, progressManager, observationManager, loggerManager, subJob);
+    }
 }
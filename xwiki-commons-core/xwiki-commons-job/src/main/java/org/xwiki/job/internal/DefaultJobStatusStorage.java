@@ -20,42 +20,43 @@
 package org.xwiki.job.internal;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.event.status.JobStatus;
-import org.xwiki.job.internal.xstream.SafeArrayConverter;
-import org.xwiki.job.internal.xstream.SafeTreeUnmarshaller;
-
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.converters.ConverterLookup;
-import com.thoughtworks.xstream.core.TreeMarshallingStrategy;
-import com.thoughtworks.xstream.core.TreeUnmarshaller;
-import com.thoughtworks.xstream.io.HierarchicalStreamReader;
-import com.thoughtworks.xstream.mapper.Mapper;
-import com.thoughtworks.xstream.mapper.MapperWrapper;
+import org.xwiki.job.internal.jmx.JMXJobStatusStorage;
+import org.xwiki.management.JMXBeanRegistration;
 
 /**
  * Default implementation of {@link JobStatusStorage}.
+ * <p>
+ * Only the ids of the stored jobs are read when the storage is initialized. A job status is loaded from the file system
+ * the first time it's requested and the most recently used ones are kept in memory (see
+ * {@link JobManagerConfiguration#getJobStatusCacheSize()}).
+ * <p>
+ * The job statuses are written with the configured {@link JobStatusSerializer} (see
+ * {@link JobManagerConfiguration#getJobStatusSerializer()}) and read back with the serializer matching the stored file
+ * so that the statuses stored with another format stay readable.
  * 
  * @version $Id$
  * @since 4.0M1
@@ -65,12 +66,12 @@
 public class DefaultJobStatusStorage implements JobStatusStorage, Initializable
 {
     /**
-     * The name of the file where the job status is stored.
+     * The serializer used when the configured one does not exist.
      */
-    private static final String FILENAME_STATUS = "status.xml";
+    private static final String DEFAULT_SERIALIZER = "xml";
 
     /**
-     * Encoding used for file content and names.
+     * Encoding used for file names.
      */
     private static final String DEFAULT_ENCODING = "UTF-8";
 
@@ -84,6 +85,11 @@ public class DefaultJobStatusStorage implements JobStatusStorage, Initializable
      */
     private static final String FOLDER_STATUS = "&status";
 
+    /**
+     * The message logged when a job status can't be loaded.
+     */
+    private static final String LOAD_ERROR = "Failed to load job status from file [{}]";
+
     /**
      * Used to get the storage directory.
      */
@@ -99,44 +105,58 @@ public class DefaultJobStatusStorage implements JobStatusStorage, Initializable
     /**
      * Used to serialize and unserialize status.
      */
-    private XStream xstream;
+    @Inject
+    private Map<String, JobStatusSerializer> serializers;
+
+    /**
+     * Used to register the storage MBean.
+     */
+    @Inject
+    private JMXBeanRegistration jmxRegistration;
+
+    /**
+     * The files of the stored job statuses, indexed by job id.
+     */
+    private Map<List<String>, File> index = new ConcurrentHashMap<List<String>, File>();
+
+    /**
+     * The most recently used stored job statuses.
+     */
+    private Map<List<String>, JobStatus> cache;
+
+    /**
+     * The job statuses which can't be loaded from the file system (because they are not serializable or failed to be
+     * saved) and are thus always kept in memory.
+     */
+    private Map<List<String>, JobStatus> memoryJobs = new ConcurrentHashMap<List<String>, JobStatus>();
 
     /**
-     * A cache of stored job statuses.
+     * The number of requested job statuses found in memory.
      */
-    private Map<List<String>, JobStatus> jobs = new ConcurrentHashMap<List<String>, JobStatus>();
+    private AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * The number of requested job statuses loaded from the file system.
+     */
+    private AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * The time spent loading job statuses from the file system, in milliseconds.
+     */
+    private AtomicLong loadTime = new AtomicLong();
 
     @Override
     public void initialize() throws InitializationException
     {
-        this.xstream = new XStream()
+        final int cacheSize = this.configuration.getJobStatusCacheSize();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<List<String>, JobStatus>(16, 0.75F, true)
         {
-            @Override
-            protected MapperWrapper wrapMapper(MapperWrapper next)
-            {
-                return new MapperWrapper(next)
-                {
-                    @Override
-                    public boolean shouldSerializeMember(Class definedIn, String fieldName)
-                    {
-                        // Make XStream a bit stronger (we don't care if some field is missing)
-                        return definedIn != Object.class ? super.shouldSerializeMember(definedIn, fieldName) : false;
-                    }
-                };
-            }
-        };
+            private static final long serialVersionUID = 1L;
 
-        // Bulletproofing array elements unserialization
-        this.xstream.registerConverter(new SafeArrayConverter(this.xstream.getMapper()));
-
-        // If anything goes wrong with an element, replace it with null
-        this.xstream.setMarshallingStrategy(new TreeMarshallingStrategy()
-        {
             @Override
-            protected TreeUnmarshaller createUnmarshallingContext(Object root, HierarchicalStreamReader reader,
-                ConverterLookup converterLookup, Mapper mapper)
+            protected boolean removeEldestEntry(Map.Entry<List<String>, JobStatus> eldest)
             {
-                return new SafeTreeUnmarshaller(root, reader, converterLookup, mapper);
+                return size() > cacheSize;
             }
         });
 
@@ -145,6 +165,8 @@ protected TreeUnmarshaller createUnmarshallingContext(Object root, HierarchicalS
         } catch (Exception e) {
             this.logger.error("Failed to load jobs", e);
         }
+
+        this.jmxRegistration.registerMBean(new JMXJobStatusStorage(this), "type=Job,name=JobStatusStorage");
     }
 
     /**
@@ -171,7 +193,7 @@ private String encode(String name)
     }
 
     /**
-     * Load jobs from directory.
+     * Index the jobs stored in the directory.
      */
     private void load()
     {
@@ -183,10 +205,12 @@ private void load()
     }
 
     /**
-     * @param folder the folder from where to load the jobs
+     * @param folder the folder from where to index the jobs
      */
     private void loadFolder(File folder)
     {
+        loadStatus(folder);
+
         for (File file : folder.listFiles()) {
             if (file.isDirectory()) {
                 if (file.getName().equals(FOLDER_STATUS)) {
@@ -194,26 +218,83 @@ private void loadFolder(File folder)
                 } else {
                     loadFolder(file);
                 }
-            } else if (file.getName().equals(FILENAME_STATUS)) {
-                loadStatus(folder);
             }
         }
     }
 
     /**
-     * @param folder the folder from where to load the job status
+     * @return the serializer to use to store the job statuses
+     */
+    private JobStatusSerializer getSerializer()
+    {
+        String hint = this.configuration.getJobStatusSerializer();
+
+        JobStatusSerializer serializer = hint != null ? this.serializers.get(hint) : null;
+
+        return serializer != null ? serializer : this.serializers.get(DEFAULT_SERIALIZER);
+    }
+
+    /**
+     * @param statusFile the file containing a job status
+     * @return the serializer able to read the file or null if the file does not contain a job status
+     */
+    private JobStatusSerializer getSerializer(File statusFile)
+    {
+        for (JobStatusSerializer serializer : this.serializers.values()) {
+            if (serializer.getFileName().equals(statusFile.getName())) {
+                return serializer;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param folder the folder of the job
+     * @return the file containing the job status or null if the folder does not contain any
+     */
+    private File getStatusFile(File folder)
+    {
+        JobStatusSerializer serializer = getSerializer();
+        File statusFile = new File(folder, serializer.getFileName());
+
+        if (!statusFile.exists()) {
+            statusFile = null;
+
+            // Stored with another format
+            for (JobStatusSerializer otherSerializer : this.serializers.values()) {
+                File otherFile = new File(folder, otherSerializer.getFileName());
+                if (otherFile.exists()) {
+                    statusFile = otherFile;
+                    break;
+                }
+            }
+        }
+
+        return statusFile;
+    }
+
+    /**
+     * @param folder the folder from where to index the job status
      */
     private void loadStatus(File folder)
     {
-        File statusFile = new File(folder, FILENAME_STATUS);
-        if (statusFile.exists()) {
+        File statusFile = getStatusFile(folder);
+        if (statusFile != null) {
             try {
-                JobStatus status = loadJobStatus(statusFile);
+                List<String> id = getSerializer(statusFile).readId(statusFile);
 
-                List<String> id = status.getRequest().getId();
-                this.jobs.put(id != null ? id : Collections.<String> emptyList(), status);
+                if (id != null) {
+                    this.index.put(id, statusFile);
+                } else {
+                    // Unusual format, the status has to be unserialized to know its id
+                    JobStatus status = loadJobStatus(statusFile);
+                    id = getKey(status.getRequest().getId());
+                    this.index.put(id, statusFile);
+                    this.cache.put(id, status);
+                }
             } catch (Throwable e) {
-                this.logger.error("Failed to load job status from file [{}]", statusFile, e);
+                this.logger.error(LOAD_ERROR, statusFile, e);
             }
         }
     }
@@ -225,7 +306,16 @@ private void loadStatus(File folder)
      */
     private JobStatus loadJobStatus(File statusFile) throws Exception
     {
-        return (JobStatus) this.xstream.fromXML(statusFile);
+        return getSerializer(statusFile).read(statusFile);
+    }
+
+    /**
+     * @param id the id of the job
+     * @return the key of the job in the index and caches
+     */
+    private List<String> getKey(List<String> id)
+    {
+        return id != null ? id : Collections.<String> emptyList();
     }
 
     // JobStatusStorage
@@ -247,23 +337,25 @@ private File getJobFolder(List<String> id)
 
     /**
      * @param status the job status to save
-     * @throws IOException when falling to store the provided status
+     * @return the file where the job status has been saved
+     * @throws Exception when falling to store the provided status
      */
-    private void saveJobStatus(JobStatus status) throws IOException
+    private File saveJobStatus(JobStatus status) throws Exception
     {
-        File statusFile = getJobFolder(status.getRequest().getId());
-        statusFile = new File(statusFile, FILENAME_STATUS);
+        File folder = getJobFolder(getKey(status.getRequest().getId()));
 
-        FileOutputStream stream = FileUtils.openOutputStream(statusFile);
+        JobStatusSerializer serializer = getSerializer();
+        File statusFile = new File(folder, serializer.getFileName());
+        serializer.write(status, statusFile);
 
-        try {
-            OutputStreamWriter writer = new OutputStreamWriter(stream, DEFAULT_ENCODING);
-            writer.write("<?xml version=\"1.0\" encoding=\"" + DEFAULT_ENCODING + "\"?>\n");
-            this.xstream.toXML(status, writer);
-            writer.flush();
-        } finally {
-            IOUtils.closeQuietly(stream);
+        // Remove the status previously stored with another format
+        for (JobStatusSerializer otherSerializer : this.serializers.values()) {
+            if (otherSerializer != serializer) {
+                FileUtils.deleteQuietly(new File(folder, otherSerializer.getFileName()));
+            }
         }
+
+        return statusFile;
     }
 
     @Override
@@ -275,22 +367,97 @@ public JobStatus getJobStatus(String id)
     @Override
     public JobStatus getJobStatus(List<String> id)
     {
-        return this.jobs.get(id != null ? id : Collections.EMPTY_LIST);
+        List<String> key = getKey(id);
+
+        JobStatus status = this.memoryJobs.get(key);
+
+        if (status == null) {
+            status = this.cache.get(key);
+
+            if (status != null) {
+                this.cacheHits.incrementAndGet();
+            } else {
+                File statusFile = this.index.get(key);
+
+                if (statusFile != null) {
+                    status = loadCachedJobStatus(key, statusFile);
+                }
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * @param key the key of the job
+     * @param statusFile the file containing the job status
+     * @return the job status or null if it failed to be loaded
+     */
+    private JobStatus loadCachedJobStatus(List<String> key, File statusFile)
+    {
+        this.cacheMisses.incrementAndGet();
+
+        long start = System.currentTimeMillis();
+
+        JobStatus status = null;
+        try {
+            status = cacheLoadedJobStatus(key, statusFile, loadJobStatus(statusFile));
+        } catch (Throwable e) {
+            this.logger.error(LOAD_ERROR, statusFile, e);
+        } finally {
+            this.loadTime.addAndGet(System.currentTimeMillis() - start);
+        }
+
+        return status;
+    }
+
+    /**
+     * Cache a job status loaded from the file system unless it has been stored or removed while it was being loaded.
+     * 
+     * @param key the key of the job
+     * @param statusFile the file from where the job status has been loaded
+     * @param status the loaded job status
+     * @return the most recent job status
+     */
+    private JobStatus cacheLoadedJobStatus(List<String> key, File statusFile, JobStatus status)
+    {
+        synchronized (this.cache) {
+            JobStatus cachedStatus = this.cache.get(key);
+            if (cachedStatus != null) {
+                // Stored while it was being loaded
+                return cachedStatus;
+            }
+
+            // Don't cache the status if it has been removed or made memory only while it was being loaded
+            if (statusFile.equals(this.index.get(key)) && !this.memoryJobs.containsKey(key)) {
+                this.cache.put(key, status);
+            }
+        }
+
+        return status;
     }
 
     @Override
     public void store(JobStatus status)
     {
-        this.jobs.put(status.getRequest().getId(), status);
+        List<String> key = getKey(status.getRequest().getId());
 
         // On store Serializable job status on file system
         if (status instanceof Serializable) {
             try {
-                saveJobStatus(status);
+                this.index.put(key, saveJobStatus(status));
+                this.memoryJobs.remove(key);
+                this.cache.put(key, status);
+
+                return;
             } catch (Exception e) {
                 this.logger.warn("Failed to save job status [{}]", status, e);
             }
         }
+
+        // Can't be loaded from the file system
+        this.cache.remove(key);
+        this.memoryJobs.put(key, status);
     }
 
     @Override
@@ -302,9 +469,18 @@ public JobStatus remove(String id)
     @Override
     public JobStatus remove(List<String> id)
     {
-        JobStatus status = this.jobs.remove(id);
+        List<String> key = getKey(id);
+
+        JobStatus status = getJobStatus(key);
+
+        // The statuses of the jobs with the passed id as prefix are stored in the removed folder
+        removeFromIndex(key, this.index.keySet());
+        removeFromIndex(key, this.memoryJobs.keySet());
+        synchronized (this.cache) {
+            removeFromIndex(key, this.cache.keySet());
+        }
 
-        File jobFolder = getJobFolder(id);
+        File jobFolder = getJobFolder(key);
         if (jobFolder.exists()) {
             try {
                 FileUtils.deleteDirectory(jobFolder);
@@ -315,4 +491,65 @@ public JobStatus remove(List<String> id)
 
         return status;
     }
+
+    /**
+     * @param prefix the removed job id
+     * @param keys the keys from which to remove the passed id and the ids starting with it
+     */
+    private void removeFromIndex(List<String> prefix, Set<List<String>> keys)
+    {
+        for (Iterator<List<String>> it = keys.iterator(); it.hasNext();) {
+            List<String> key = it.next();
+            if (key.size() >= prefix.size() && key.subList(0, prefix.size()).equals(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    // Statistics
+
+    /**
+     * @return the number of stored job statuses
+     * @since 5.0M2
+     */
+    public int getStatusCount()
+    {
+        return this.index.size() + this.memoryJobs.size();
+    }
+
+    /**
+     * @return the number of stored job statuses currently kept in memory
+     * @since 5.0M2
+     */
+    public int getCachedStatusCount()
+    {
+        return this.cache.size() + this.memoryJobs.size();
+    }
+
+    /**
+     * @return the number of times a requested job status was already in memory
+     * @since 5.0M2
+     */
+    public long getCacheHitCount()
+    {
+        return this.cacheHits.get();
+    }
+
+    /**
+     * @return the number of times a requested job status had to be loaded from the file system
+     * @since 5.0M2
+     */
+    public long getCacheMissCount()
+    {
+        return this.cacheMisses.get();
+    }
+
+    /**
+     * @return the total time spent loading job statuses from the file system, in milliseconds
+     * @since 5.0M2
+     */
+    public long getLoadTime()
+    {
+        return this.loadTime.get();
+    }
 }
@@ -0,0 +1,331 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xwiki.job.Job;
+import org.xwiki.job.Request;
+
+/**
+ * A queue of jobs executed by a fixed number of threads.
+ * <p>
+ * Each job is associated to a conflict key: the jobs having the same key are never executed at the same time and are
+ * started in the order they were added. When the lane is not ordered a job can be started before a conflicting job
+ * added earlier.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class JobLane
+{
+    /**
+     * A job to execute.
+     * 
+     * @version $Id$
+     */
+    public static class JobElement
+    {
+        /**
+         * The job to execute.
+         */
+        private final Job job;
+
+        /**
+         * The request to use to control the job.
+         */
+        private final Request request;
+
+        /**
+         * The jobs with the same key are not executed at the same time.
+         */
+        private final String key;
+
+        /**
+         * The time when the job has been added to the lane.
+         */
+        private final long addedTime = System.currentTimeMillis();
+
+        /**
+         * @param job the job to execute
+         * @param request the request to use to control the job
+         * @param key the jobs with the same key are not executed at the same time
+         */
+        public JobElement(Job job, Request request, String key)
+        {
+            this.job = job;
+            this.request = request;
+            this.key = key;
+        }
+
+        /**
+         * @return the job to execute
+         */
+        public Job getJob()
+        {
+            return this.job;
+        }
+
+        /**
+         * @return the request to use to control the job
+         */
+        public Request getRequest()
+        {
+            return this.request;
+        }
+    }
+
+    /**
+     * The name of the lane.
+     */
+    private final String name;
+
+    /**
+     * The maximum number of jobs executed at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * @see #isOrdered()
+     */
+    private final boolean ordered;
+
+    /**
+     * The jobs waiting to be executed.
+     */
+    private final Deque<JobElement> queue = new ArrayDeque<JobElement>();
+
+    /**
+     * The keys of the jobs currently executed.
+     */
+    private final Set<String> runningKeys = new HashSet<String>();
+
+    /**
+     * Protect the queue and the statistics.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signaled when a job might be ready to start.
+     */
+    private final Condition available = this.lock.newCondition();
+
+    /**
+     * The number of started jobs.
+     */
+    private long startedCount;
+
+    /**
+     * The total time spent by the started jobs in the queue, in milliseconds.
+     */
+    private long waitTime;
+
+    /**
+     * The longest time spent by a started job in the queue, in milliseconds.
+     */
+    private long maxWaitTime;
+
+    /**
+     * @param name the name of the lane
+     * @param concurrency the maximum number of jobs executed at the same time
+     * @param ordered true if the jobs have to be started in the order they were added
+     */
+    public JobLane(String name, int concurrency, boolean ordered)
+    {
+        this.name = name;
+        this.concurrency = Math.max(concurrency, 1);
+        this.ordered = ordered;
+    }
+
+    /**
+     * @return the name of the lane
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the maximum number of jobs executed at the same time
+     */
+    public int getConcurrency()
+    {
+        return this.concurrency;
+    }
+
+    /**
+     * @return true if the jobs are started in the order they were added, false if a job can be started before a
+     *         conflicting job added earlier
+     */
+    public boolean isOrdered()
+    {
+        return this.ordered;
+    }
+
+    /**
+     * @param element the job to execute
+     */
+    public void add(JobElement element)
+    {
+        this.lock.lock();
+        try {
+            this.queue.add(element);
+            this.available.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a job which can be started.
+     * 
+     * @return the job to execute, {@link #finished(JobElement)} must be called once it's executed
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public JobElement take() throws InterruptedException
+    {
+        this.lock.lockInterruptibly();
+        try {
+            JobElement element = poll();
+            while (element == null) {
+                this.available.await();
+                element = poll();
+            }
+
+            long wait = System.currentTimeMillis() - element.addedTime;
+            ++this.startedCount;
+            this.waitTime += wait;
+            this.maxWaitTime = Math.max(this.maxWaitTime, wait);
+
+            this.runningKeys.add(element.key);
+
+            return element;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the first job which does not conflict with a running job, null if there is none
+     */
+    private JobElement poll()
+    {
+        for (Iterator<JobElement> it = this.queue.iterator(); it.hasNext();) {
+            JobElement element = it.next();
+
+            if (!this.runningKeys.contains(element.key)) {
+                it.remove();
+
+                return element;
+            } else if (this.ordered) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param element the executed job
+     */
+    public void finished(JobElement element)
+    {
+        this.lock.lock();
+        try {
+            this.runningKeys.remove(element.key);
+            this.available.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Statistics
+
+    /**
+     * @return the number of jobs waiting to be executed
+     */
+    public int getQueueSize()
+    {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of jobs currently executed
+     */
+    public int getRunningCount()
+    {
+        this.lock.lock();
+        try {
+            return this.runningKeys.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of started jobs
+     */
+    public long getStartedCount()
+    {
+        this.lock.lock();
+        try {
+            return this.startedCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time spent by the started jobs in the queue, in milliseconds
+     */
+    public long getWaitTime()
+    {
+        this.lock.lock();
+        try {
+            return this.waitTime;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the longest time spent by a started job in the queue, in milliseconds
+     */
+    public long getMaxWaitTime()
+    {
+        this.lock.lock();
+        try {
+            return this.maxWaitTime;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Update the progress of the jobs executed by the current thread.
+ * <p>
+ * The progress of a job is bound to the thread executing it. All the progresses bound to a thread (the ones of a job
+ * and of the jobs it executes) are updated directly, without going through the global event dispatch. As a consequence
+ * the progress events sent directly through the {@link org.xwiki.observation.ObservationManager} are ignored by these
+ * progresses: the progress has to be reported with this component (or the {@code notify*Progress} methods of
+ * {@link AbstractJob}).
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Role
+public interface JobProgressManager
+{
+    /**
+     * Bind a progress to the current thread.
+     * 
+     * @param progress the progress to update
+     */
+    void pushProgress(DefaultJobProgress progress);
+
+    /**
+     * Unbind the last progress bound to the current thread.
+     */
+    void popProgress();
+
+    /**
+     * Push a new progress level in the progresses bound to the current thread.
+     * 
+     * @param steps the number of steps of the new level
+     * @param source the source of the progress change
+     */
+    void pushLevelProgress(int steps, Object source);
+
+    /**
+     * Move the progresses bound to the current thread to the next step.
+     * 
+     * @param source the source of the progress change
+     */
+    void stepProgress(Object source);
+
+    /**
+     * Pop the current progress level of the progresses bound to the current thread.
+     * 
+     * @param source the source of the progress change
+     */
+    void popLevelProgress(Object source);
+}
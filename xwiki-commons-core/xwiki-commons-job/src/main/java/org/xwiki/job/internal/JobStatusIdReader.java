@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Extract the id of a job from a serialized job status without unserializing it. Only the beginning of the file is
+ * read, the logs (which are by far the biggest part of a job status) are never parsed.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class JobStatusIdReader
+{
+    /**
+     * The element containing the job request.
+     */
+    private static final String ELEMENT_REQUEST = "request";
+
+    /**
+     * The element containing the job id.
+     */
+    private static final String ELEMENT_ID = "id";
+
+    /**
+     * The element of a non null id element.
+     */
+    private static final String ELEMENT_STRING = "string";
+
+    /**
+     * The element of a null id element.
+     */
+    private static final String ELEMENT_NULL = "null";
+
+    /**
+     * Used to parse the status files.
+     */
+    private final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    /**
+     * @param statusFile the file containing the serialized job status
+     * @return the id of the job (an empty list when the job does not have any id) or null if the id could not be
+     *         extracted from the file (the status needs to be unserialized to find it)
+     * @throws IOException when failing to read the file
+     * @throws XMLStreamException when failing to parse the file
+     */
+    public List<String> read(File statusFile) throws IOException, XMLStreamException
+    {
+        InputStream stream = FileUtils.openInputStream(statusFile);
+
+        try {
+            XMLStreamReader reader = this.factory.createXMLStreamReader(stream);
+
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @param reader the XML reader
+     * @return the id of the job, an empty list if it does not have any and null if it could not be found
+     * @throws XMLStreamException when failing to parse the file
+     */
+    private List<String> read(XMLStreamReader reader) throws XMLStreamException
+    {
+        // The root element (the job status)
+        reader.nextTag();
+
+        // The request and the id are direct children
+        if (!moveToChild(reader, ELEMENT_REQUEST) || isReference(reader)) {
+            return null;
+        }
+        if (!moveToChild(reader, ELEMENT_ID)) {
+            return Collections.emptyList();
+        }
+        if (isReference(reader) || reader.getAttributeValue(null, "class") != null) {
+            // Something else than the standard list
+            return null;
+        }
+
+        List<String> id = new ArrayList<String>();
+        for (int event = reader.nextTag(); event == XMLStreamConstants.START_ELEMENT; event = reader.nextTag()) {
+            if (ELEMENT_STRING.equals(reader.getLocalName())) {
+                id.add(reader.getElementText());
+            } else if (ELEMENT_NULL.equals(reader.getLocalName())) {
+                id.add(null);
+                reader.nextTag();
+            } else {
+                return null;
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Move to the start of the passed child of the current element.
+     * 
+     * @param reader the XML reader, positioned at the start of the parent element
+     * @param name the name of the child element
+     * @return true if the child has been found, false if the end of the parent element has been reached
+     * @throws XMLStreamException when failing to parse the file
+     */
+    private boolean moveToChild(XMLStreamReader reader, String name) throws XMLStreamException
+    {
+        for (int event = reader.nextTag(); event == XMLStreamConstants.START_ELEMENT; event = reader.nextTag()) {
+            if (name.equals(reader.getLocalName())) {
+                return true;
+            }
+
+            skipElement(reader);
+        }
+
+        return false;
+    }
+
+    /**
+     * @param reader the XML reader, positioned at the start of the element to skip
+     * @throws XMLStreamException when failing to parse the file
+     */
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * @param reader the XML reader, positioned at the start of an element
+     * @return true if the element is a reference to another element of the file
+     */
+    private boolean isReference(XMLStreamReader reader)
+    {
+        return reader.getAttributeValue(null, "reference") != null;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Write and read back a job status in a file of the job folder.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Role
+public interface JobStatusSerializer
+{
+    /**
+     * @return the name of the file where the job status is stored
+     */
+    String getFileName();
+
+    /**
+     * Extract the id of the job without reading the whole status.
+     * 
+     * @param statusFile the file containing the job status
+     * @return the id of the job or null if it can only be known by reading the whole status
+     * @throws Exception when failing to read the file
+     */
+    List<String> readId(File statusFile) throws Exception;
+
+    /**
+     * @param statusFile the file containing the job status
+     * @return the job status
+     * @throws Exception when failing to read the job status
+     */
+    JobStatus read(File statusFile) throws Exception;
+
+    /**
+     * @param status the job status to write
+     * @param statusFile the file where to write the job status
+     * @throws Exception when failing to write the job status
+     */
+    void write(JobStatus status, File statusFile) throws Exception;
+}
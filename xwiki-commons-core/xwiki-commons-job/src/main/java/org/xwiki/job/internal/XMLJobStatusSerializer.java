@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.xstream.SafeXStream;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Store the whole job status (including its log) as XML.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component
+@Named("xml")
+@Singleton
+public class XMLJobStatusSerializer implements JobStatusSerializer
+{
+    /**
+     * The name of the file where the job status is stored.
+     */
+    private static final String FILENAME_STATUS = "status.xml";
+
+    /**
+     * Encoding used for file content.
+     */
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * Used to serialize and unserialize status.
+     */
+    private XStream xstream = new SafeXStream();
+
+    /**
+     * Used to extract the job id from the status files.
+     */
+    private JobStatusIdReader idReader = new JobStatusIdReader();
+
+    @Override
+    public String getFileName()
+    {
+        return FILENAME_STATUS;
+    }
+
+    @Override
+    public List<String> readId(File statusFile) throws Exception
+    {
+        return this.idReader.read(statusFile);
+    }
+
+    @Override
+    public JobStatus read(File statusFile) throws Exception
+    {
+        return (JobStatus) this.xstream.fromXML(statusFile);
+    }
+
+    @Override
+    public void write(JobStatus status, File statusFile) throws Exception
+    {
+        FileOutputStream stream = FileUtils.openOutputStream(statusFile);
+
+        try {
+            OutputStreamWriter writer = new OutputStreamWriter(stream, DEFAULT_ENCODING);
+            writer.write("<?xml version=\"1.0\" encoding=\"" + DEFAULT_ENCODING + "\"?>\n");
+            this.xstream.toXML(status, writer);
+            writer.flush();
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import org.xwiki.job.internal.JobLane;
+
+/**
+ * Provide information about a lane where jobs are executed.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class JMXJobLane implements JMXJobLaneMBean
+{
+    /**
+     * The lane for which to return management data.
+     */
+    private JobLane lane;
+
+    /**
+     * @param lane the lane for which to return management data
+     */
+    public JMXJobLane(JobLane lane)
+    {
+        this.lane = lane;
+    }
+
+    @Override
+    public int getConcurrency()
+    {
+        return this.lane.getConcurrency();
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        return this.lane.getQueueSize();
+    }
+
+    @Override
+    public int getRunningCount()
+    {
+        return this.lane.getRunningCount();
+    }
+
+    @Override
+    public long getStartedCount()
+    {
+        return this.lane.getStartedCount();
+    }
+
+    @Override
+    public long getWaitTime()
+    {
+        return this.lane.getWaitTime();
+    }
+
+    @Override
+    public double getAverageWaitTime()
+    {
+        long started = getStartedCount();
+
+        return started > 0 ? (double) getWaitTime() / started : 0;
+    }
+
+    @Override
+    public long getMaxWaitTime()
+    {
+        return this.lane.getMaxWaitTime();
+    }
+}
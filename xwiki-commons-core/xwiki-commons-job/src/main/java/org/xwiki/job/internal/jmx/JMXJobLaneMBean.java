@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+/**
+ * MBean API related to a lane where jobs are executed.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public interface JMXJobLaneMBean
+{
+    /**
+     * @return the maximum number of jobs executed at the same time
+     */
+    int getConcurrency();
+
+    /**
+     * @return the number of jobs waiting to be executed
+     */
+    int getQueueSize();
+
+    /**
+     * @return the number of jobs currently executed
+     */
+    int getRunningCount();
+
+    /**
+     * @return the number of started jobs
+     */
+    long getStartedCount();
+
+    /**
+     * @return the total time spent by the started jobs in the queue, in milliseconds
+     */
+    long getWaitTime();
+
+    /**
+     * @return the average time spent by the started jobs in the queue, in milliseconds
+     */
+    double getAverageWaitTime();
+
+    /**
+     * @return the longest time spent by a started job in the queue, in milliseconds
+     */
+    long getMaxWaitTime();
+}
@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+import org.xwiki.job.internal.DefaultJobStatusStorage;
+
+/**
+ * Provide information about the storage of the job statuses.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class JMXJobStatusStorage implements JMXJobStatusStorageMBean
+{
+    /**
+     * The storage for which to return management data.
+     */
+    private DefaultJobStatusStorage storage;
+
+    /**
+     * @param storage the storage for which to return management data
+     */
+    public JMXJobStatusStorage(DefaultJobStatusStorage storage)
+    {
+        this.storage = storage;
+    }
+
+    @Override
+    public int getStatusCount()
+    {
+        return this.storage.getStatusCount();
+    }
+
+    @Override
+    public int getCachedStatusCount()
+    {
+        return this.storage.getCachedStatusCount();
+    }
+
+    @Override
+    public long getCacheHitCount()
+    {
+        return this.storage.getCacheHitCount();
+    }
+
+    @Override
+    public long getCacheMissCount()
+    {
+        return this.storage.getCacheMissCount();
+    }
+
+    @Override
+    public long getLoadTime()
+    {
+        return this.storage.getLoadTime();
+    }
+
+    @Override
+    public double getAverageLoadTime()
+    {
+        long misses = getCacheMissCount();
+
+        return misses > 0 ? (double) getLoadTime() / misses : 0;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal.jmx;
+
+/**
+ * MBean API related to the storage of the job statuses.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public interface JMXJobStatusStorageMBean
+{
+    /**
+     * @return the number of stored job statuses
+     */
+    int getStatusCount();
+
+    /**
+     * @return the number of job statuses currently kept in memory
+     */
+    int getCachedStatusCount();
+
+    /**
+     * @return the number of times a requested job status was already in memory
+     */
+    long getCacheHitCount();
+
+    /**
+     * @return the number of times a requested job status had to be loaded from the file system
+     */
+    long getCacheMissCount();
+
+    /**
+     * @return the total time spent unserializing job statuses, in milliseconds
+     */
+    long getLoadTime();
+
+    /**
+     * @return the average time spent unserializing a job status, in milliseconds
+     */
+    double getAverageLoadTime();
+}
@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BinaryJobStatusHeader}.
+ * 
+ * @version $Id$
+ */
+public class BinaryJobStatusHeaderTest
+{
+    private BinaryJobStatusHeader writeAndRead(BinaryJobStatusHeader header) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(out);
+
+        // Something following the header
+        out.write(42);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        BinaryJobStatusHeader readHeader = BinaryJobStatusHeader.read(in);
+
+        // The header is read without consuming what follows it
+        Assert.assertEquals(42, in.read());
+
+        return readHeader;
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        BinaryJobStatusHeader header = new BinaryJobStatusHeader();
+        header.setCompressed(true);
+        header.setId(Arrays.asList("id1", null, "id3"));
+        header.setStartDate(1234L);
+        header.setLogCount(5);
+        header.setLogLength(6789L);
+
+        BinaryJobStatusHeader readHeader = writeAndRead(header);
+
+        Assert.assertTrue(readHeader.isCompressed());
+        Assert.assertEquals(Arrays.asList("id1", null, "id3"), readHeader.getId());
+        Assert.assertEquals(1234L, readHeader.getStartDate());
+        Assert.assertEquals(5, readHeader.getLogCount());
+        Assert.assertEquals(6789L, readHeader.getLogLength());
+        Assert.assertTrue(readHeader.isSameExecution(header));
+    }
+
+    @Test
+    public void testWriteAndReadDefault() throws IOException
+    {
+        BinaryJobStatusHeader readHeader = writeAndRead(new BinaryJobStatusHeader());
+
+        Assert.assertFalse(readHeader.isCompressed());
+        Assert.assertNull(readHeader.getId());
+        Assert.assertEquals(-1L, readHeader.getStartDate());
+        Assert.assertEquals(0, readHeader.getLogCount());
+        Assert.assertEquals(0L, readHeader.getLogLength());
+
+        // Statuses without start date can't be known to belong to the same execution
+        Assert.assertFalse(readHeader.isSameExecution(new BinaryJobStatusHeader()));
+    }
+
+    @Test
+    public void testIsSameExecution()
+    {
+        BinaryJobStatusHeader header = new BinaryJobStatusHeader();
+        header.setStartDate(1000L);
+
+        BinaryJobStatusHeader other = new BinaryJobStatusHeader();
+        other.setStartDate(1000L);
+        Assert.assertTrue(header.isSameExecution(other));
+
+        other.setStartDate(2000L);
+        Assert.assertFalse(header.isSameExecution(other));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException
+    {
+        BinaryJobStatusHeader.read(new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes("UTF-8")));
+    }
+}
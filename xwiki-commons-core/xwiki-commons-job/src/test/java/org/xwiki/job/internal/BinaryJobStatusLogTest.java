@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.logging.LogLevel;
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.event.LogEvent;
+
+/**
+ * Unit tests for {@link BinaryJobStatusLog}.
+ * 
+ * @version $Id$
+ */
+public class BinaryJobStatusLogTest
+{
+    private File folder = new File("target/BinaryJobStatusLogTest");
+
+    private File logFile = new File(this.folder, "log.bin");
+
+    private BinaryJobStatusLog log = new BinaryJobStatusLog(this.logFile);
+
+    @Before
+    public void before() throws Exception
+    {
+        FileUtils.deleteDirectory(this.folder);
+        this.folder.mkdirs();
+    }
+
+    private BinaryJobStatusHeader createHeader(long startDate)
+    {
+        BinaryJobStatusHeader header = new BinaryJobStatusHeader();
+        header.setStartDate(startDate);
+
+        return header;
+    }
+
+    private BinaryJobStatusHeader write(LogQueue logs, long startDate, BinaryJobStatusHeader previous)
+        throws IOException
+    {
+        BinaryJobStatusHeader header = createHeader(startDate);
+
+        this.log.write(logs, header, previous);
+
+        return header;
+    }
+
+    private void assertLogs(BinaryJobStatusHeader header, String... messages)
+    {
+        LogQueue logs = new LogQueue();
+        this.log.read(logs, header);
+
+        List<LogEvent> infos = logs.getLogs(LogLevel.INFO);
+        Assert.assertEquals(messages.length, logs.size());
+        Assert.assertEquals(messages.length, infos.size());
+        for (int i = 0; i < messages.length; ++i) {
+            Assert.assertEquals(messages[i], infos.get(i).getFormattedMessage());
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException
+    {
+        LogQueue logs = new LogQueue();
+        logs.info("message {}", 1);
+        logs.info("message {}", 2);
+
+        BinaryJobStatusHeader header = write(logs, 1000L, null);
+
+        Assert.assertEquals(2, header.getLogCount());
+        Assert.assertEquals(this.logFile.length(), header.getLogLength());
+        assertLogs(header, "message 1", "message 2");
+    }
+
+    @Test
+    public void testAppendToSameExecution() throws IOException
+    {
+        LogQueue logs = new LogQueue();
+        logs.info("message 1");
+
+        BinaryJobStatusHeader header = write(logs, 1000L, null);
+        long length = this.logFile.length();
+
+        logs.info("message 2");
+
+        BinaryJobStatusHeader header2 = write(logs, 1000L, header);
+
+        Assert.assertEquals(2, header2.getLogCount());
+        Assert.assertEquals(this.logFile.length(), header2.getLogLength());
+        // Only the new log has been written, the existing one is untouched
+        Assert.assertTrue(header2.getLogLength() > length);
+        Assert.assertTrue(header2.getLogLength() < 2 * length + 10);
+        assertLogs(header2, "message 1", "message 2");
+
+        // The previous header still describes the part of the file it was written with
+        assertLogs(header, "message 1");
+    }
+
+    @Test
+    public void testRewriteForNewExecution() throws IOException
+    {
+        LogQueue logs = new LogQueue();
+        logs.info("message 1");
+
+        BinaryJobStatusHeader header = write(logs, 1000L, null);
+        long length = this.logFile.length();
+
+        LogQueue newLogs = new LogQueue();
+        newLogs.info("message 2");
+
+        BinaryJobStatusHeader header2 = write(newLogs, 2000L, header);
+
+        Assert.assertEquals(1, header2.getLogCount());
+        Assert.assertEquals(length, this.logFile.length());
+        assertLogs(header2, "message 2");
+    }
+
+    @Test
+    public void testRewriteWhenFileDoesNotMatchPreviousHeader() throws IOException
+    {
+        LogQueue logs = new LogQueue();
+        logs.info("message 1");
+
+        BinaryJobStatusHeader header = write(logs, 1000L, null);
+
+        // The file has been modified since the previous header was written (e.g. a failed save)
+        FileUtils.writeByteArrayToFile(this.logFile, new byte[] {1, 2, 3}, true);
+
+        logs.info("message 2");
+
+        BinaryJobStatusHeader header2 = write(logs, 1000L, header);
+
+        Assert.assertEquals(this.logFile.length(), header2.getLogLength());
+        assertLogs(header2, "message 1", "message 2");
+    }
+
+    @Test
+    public void testRewriteWhenLogsHaveBeenRemoved() throws IOException
+    {
+        LogQueue logs = new LogQueue();
+        logs.info("message 1");
+        logs.info("message 2");
+
+        BinaryJobStatusHeader header = write(logs, 1000L, null);
+
+        logs.poll();
+        logs.poll();
+        logs.info("message 3");
+
+        assertLogs(write(logs, 1000L, header), "message 3");
+    }
+
+    @Test
+    public void testWriteWithoutLogs() throws IOException
+    {
+        BinaryJobStatusHeader header = write(null, 1000L, null);
+
+        Assert.assertEquals(0, header.getLogCount());
+        Assert.assertEquals(0L, header.getLogLength());
+        assertLogs(header);
+    }
+
+    @Test
+    public void testReadWithoutFile()
+    {
+        BinaryJobStatusHeader header = createHeader(1000L);
+        header.setLogCount(1);
+        header.setLogLength(10L);
+
+        assertLogs(header);
+    }
+}
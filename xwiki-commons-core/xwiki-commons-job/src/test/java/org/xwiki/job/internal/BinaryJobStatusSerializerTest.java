@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.job.JobManagerConfiguration;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.DefaultJobStatusStorageTest.TestJobStatus;
+import org.xwiki.logging.LogLevel;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Unit tests for {@link BinaryJobStatusSerializer}.
+ * 
+ * @version $Id$
+ */
+public class BinaryJobStatusSerializerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<JobStatusSerializer> mocker =
+        new MockitoComponentMockingRule<JobStatusSerializer>(BinaryJobStatusSerializer.class);
+
+    private File folder = new File("target/BinaryJobStatusSerializerTest");
+
+    private File statusFile = new File(this.folder, "status.bin");
+
+    private File logFile = new File(this.folder, "log.bin");
+
+    @Before
+    public void before() throws Exception
+    {
+        // XStream 1.4.4 fails to serialize anything on Java 8
+        Assume.assumeTrue(isXStreamSupported());
+
+        FileUtils.deleteDirectory(this.folder);
+
+        JobManagerConfiguration configuration = this.mocker.getInstance(JobManagerConfiguration.class);
+        when(configuration.isJobStatusCompressed()).thenReturn(true);
+    }
+
+    private boolean isXStreamSupported()
+    {
+        try {
+            new XStream().toXML(new TestJobStatus());
+
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private TestJobStatus createStatus(List<String> id, Date startDate)
+    {
+        TestJobStatus status = new TestJobStatus(id);
+        status.setStartDate(startDate);
+
+        return status;
+    }
+
+    private void assertLogs(JobStatus status, String... messages)
+    {
+        List<LogEvent> logs = status.getLog(LogLevel.INFO);
+
+        Assert.assertEquals(messages.length, logs.size());
+        for (int i = 0; i < messages.length; ++i) {
+            Assert.assertEquals(messages[i], logs.get(i).getFormattedMessage());
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception
+    {
+        TestJobStatus status = createStatus(Arrays.asList("id1", null, "id3"), new Date());
+        status.getLog().info("message {}", 1);
+        status.getLog().info("message {}", 2);
+
+        this.mocker.getComponentUnderTest().write(status, this.statusFile);
+
+        Assert.assertEquals(Arrays.asList("id1", null, "id3"),
+            this.mocker.getComponentUnderTest().readId(this.statusFile));
+
+        JobStatus readStatus = this.mocker.getComponentUnderTest().read(this.statusFile);
+
+        Assert.assertEquals(Arrays.asList("id1", null, "id3"), readStatus.getRequest().getId());
+        Assert.assertEquals(JobStatus.State.FINISHED, readStatus.getState());
+        Assert.assertEquals(status.getStartDate(), readStatus.getStartDate());
+        assertLogs(readStatus, "message 1", "message 2");
+    }
+
+    @Test
+    public void testWriteAndReadUncompressed() throws Exception
+    {
+        JobManagerConfiguration configuration = this.mocker.getInstance(JobManagerConfiguration.class);
+        when(configuration.isJobStatusCompressed()).thenReturn(false);
+
+        TestJobStatus status = createStatus(null, null);
+        status.getLog().info("message");
+
+        this.mocker.getComponentUnderTest().write(status, this.statusFile);
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().readId(this.statusFile).isEmpty());
+        assertLogs(this.mocker.getComponentUnderTest().read(this.statusFile), "message");
+    }
+
+    @Test
+    public void testAppendLogs() throws Exception
+    {
+        Date startDate = new Date();
+
+        TestJobStatus status = createStatus(Arrays.asList("id"), startDate);
+        status.getLog().info("message 1");
+
+        this.mocker.getComponentUnderTest().write(status, this.statusFile);
+
+        long length = this.logFile.length();
+
+        status.getLog().info("message 2");
+
+        this.mocker.getComponentUnderTest().write(status, this.statusFile);
+
+        // Only the new log has been written
+        Assert.assertTrue(this.logFile.length() > length);
+        Assert.assertTrue(this.logFile.length() < 2 * length + 10);
+        assertLogs(this.mocker.getComponentUnderTest().read(this.statusFile), "message 1", "message 2");
+
+        // Another execution of the same job replace the previous logs
+        status = createStatus(Arrays.asList("id"), new Date(startDate.getTime() + 1000));
+        status.getLog().info("message 3");
+
+        this.mocker.getComponentUnderTest().write(status, this.statusFile);
+
+        Assert.assertEquals(length, this.logFile.length());
+        assertLogs(this.mocker.getComponentUnderTest().read(this.statusFile), "message 3");
+    }
+}
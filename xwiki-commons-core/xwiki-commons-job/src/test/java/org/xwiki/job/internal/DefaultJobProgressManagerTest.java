@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.job.event.status.StepProgressEvent;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Unit tests for {@link DefaultJobProgressManager}.
+ * 
+ * @version $Id$
+ */
+public class DefaultJobProgressManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<JobProgressManager> mocker =
+        new MockitoComponentMockingRule<JobProgressManager>(DefaultJobProgressManager.class);
+
+    @Test
+    public void testProgress() throws Exception
+    {
+        JobProgressManager manager = this.mocker.getComponentUnderTest();
+
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        when(observationManager.hasListener(any(Class.class))).thenReturn(true);
+
+        DefaultJobProgress progress = new DefaultJobProgress(Thread.currentThread());
+        manager.pushProgress(progress);
+
+        manager.pushLevelProgress(4, this);
+        manager.stepProgress(this);
+
+        Assert.assertEquals(0.25D, progress.getOffset(), 0);
+        Assert.assertEquals(0.25D, progress.getCurrentLevelOffset(), 0);
+
+        // A sub job progress is bound to the same thread
+        DefaultJobProgress subProgress = new DefaultJobProgress(Thread.currentThread());
+        manager.pushProgress(subProgress);
+
+        manager.pushLevelProgress(2, this);
+        manager.stepProgress(this);
+
+        Assert.assertEquals(0.375D, progress.getOffset(), 0);
+        Assert.assertEquals(0.5D, progress.getCurrentLevelOffset(), 0);
+        Assert.assertEquals(0.5D, subProgress.getOffset(), 0);
+
+        manager.popLevelProgress(this);
+        manager.popProgress();
+
+        Assert.assertEquals(0.5D, progress.getOffset(), 0);
+        Assert.assertEquals(1D, subProgress.getOffset(), 0);
+
+        // The sub job progress is not updated anymore
+        manager.stepProgress(this);
+        manager.stepProgress(this);
+
+        Assert.assertEquals(0.75D, progress.getOffset(), 0);
+        Assert.assertEquals(1D, subProgress.getOffset(), 0);
+
+        manager.popProgress();
+
+        verify(observationManager, times(2)).notify(isA(PushLevelProgressEvent.class), same(this));
+        verify(observationManager, times(4)).notify(isA(StepProgressEvent.class), same(this));
+        verify(observationManager).notify(isA(PopLevelProgressEvent.class), same(this));
+    }
+
+    @Test
+    public void testProgressWithoutListener() throws Exception
+    {
+        JobProgressManager manager = this.mocker.getComponentUnderTest();
+
+        DefaultJobProgress progress = new DefaultJobProgress(Thread.currentThread());
+        manager.pushProgress(progress);
+
+        manager.pushLevelProgress(2, this);
+        manager.stepProgress(this);
+        manager.popLevelProgress(this);
+
+        Assert.assertEquals(1D, progress.getOffset(), 0);
+
+        manager.popProgress();
+
+        // No event is sent when nobody listens to them
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        verify(observationManager, never()).notify(any(Event.class), any());
+    }
+
+    @Test
+    public void testProgressFromOtherThread() throws Exception
+    {
+        final JobProgressManager manager = this.mocker.getComponentUnderTest();
+
+        DefaultJobProgress progress = new DefaultJobProgress(Thread.currentThread());
+        manager.pushProgress(progress);
+
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                manager.pushLevelProgress(1, null);
+                manager.stepProgress(null);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        // Only the progresses bound to the thread are updated
+        Assert.assertEquals(0D, progress.getOffset(), 0);
+
+        manager.popProgress();
+    }
+}
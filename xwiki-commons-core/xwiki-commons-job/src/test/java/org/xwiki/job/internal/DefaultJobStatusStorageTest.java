@@ -25,32 +25,74 @@
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.job.DefaultRequest;
 import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.thoughtworks.xstream.XStream;
+
 /**
  * Unit tests for {@link DefaultJobStatusStorage}.
  * 
  * @version $Id$
  */
+@ComponentList({XMLJobStatusSerializer.class, BinaryJobStatusSerializer.class})
 public class DefaultJobStatusStorageTest
 {
     @Rule
     public final MockitoComponentMockingRule<DefaultJobStatusStorage> componentManager =
         new MockitoComponentMockingRule<DefaultJobStatusStorage>(DefaultJobStatusStorage.class);
 
+    /**
+     * A job status which can be unserialized whatever the JVM.
+     */
+    public static class TestJobStatus extends DefaultJobStatus<DefaultRequest>
+    {
+        private static final long serialVersionUID = 1L;
+
+        public TestJobStatus()
+        {
+            this(null);
+        }
+
+        public TestJobStatus(List<String> id)
+        {
+            super(new DefaultRequest(), null, null, false);
+
+            getRequest().setId(id);
+            setState(State.FINISHED);
+        }
+    }
+
+    private JobManagerConfiguration jobManagerConfiguration;
+
+    private boolean isXStreamSupported()
+    {
+        try {
+            new XStream().toXML(new TestJobStatus());
+
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     @Before
     public void configure() throws Exception
     {
-        final JobManagerConfiguration jobManagerConfiguration =
-            this.componentManager.getInstance(JobManagerConfiguration.class);
+        this.jobManagerConfiguration = this.componentManager.getInstance(JobManagerConfiguration.class);
 
-        when(jobManagerConfiguration.getStorage()).thenReturn(new File("src/test/resources/jobs"));
+        when(this.jobManagerConfiguration.getStorage()).thenReturn(new File("src/test/resources/jobs"));
+        when(this.jobManagerConfiguration.getJobStatusCacheSize()).thenReturn(1);
     }
 
     @Test
@@ -78,4 +120,97 @@ public void testInit() throws Exception
 
         Assert.assertEquals(3, jobStatus.getLog().size());
     }
+
+    @Test
+    public void testIndex() throws Exception
+    {
+        DefaultJobStatusStorage storage = this.componentManager.getComponentUnderTest();
+
+        // The ids are found without unserializing the statuses
+        Assert.assertEquals(4, storage.getStatusCount());
+        Assert.assertEquals(0, storage.getCachedStatusCount());
+        Assert.assertEquals(0, storage.getCacheMissCount());
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception
+    {
+        // XStream 1.4.4 fails to serialize anything on Java 8
+        Assume.assumeTrue(isXStreamSupported());
+
+        File folder = new File("target/DefaultJobStatusStorageTest");
+        FileUtils.deleteDirectory(folder);
+        when(this.jobManagerConfiguration.getStorage()).thenReturn(folder);
+
+        DefaultJobStatusStorage storage = this.componentManager.getComponentUnderTest();
+
+        storage.store(new TestJobStatus(Arrays.asList("id1")));
+        storage.store(new TestJobStatus(Arrays.asList("id1", "id2")));
+        storage.store(new TestJobStatus(Arrays.asList("id3")));
+
+        Assert.assertEquals(3, storage.getStatusCount());
+        Assert.assertEquals(1, storage.getCachedStatusCount());
+
+        // In memory
+        Assert.assertEquals(Arrays.asList("id3"), storage.getJobStatus("id3").getRequest().getId());
+        Assert.assertEquals(1, storage.getCacheHitCount());
+        Assert.assertEquals(0, storage.getCacheMissCount());
+
+        // Loaded from the file system
+        JobStatus status = storage.getJobStatus(Arrays.asList("id1", "id2"));
+        Assert.assertEquals(Arrays.asList("id1", "id2"), status.getRequest().getId());
+        Assert.assertEquals(JobStatus.State.FINISHED, status.getState());
+        Assert.assertEquals(1, storage.getCacheMissCount());
+
+        Assert.assertSame(status, storage.getJobStatus(Arrays.asList("id1", "id2")));
+        Assert.assertEquals(2, storage.getCacheHitCount());
+
+        Assert.assertNull(storage.getJobStatus("unknown"));
+        Assert.assertEquals(1, storage.getCacheMissCount());
+
+        // Remove a job and the jobs it contains
+        Assert.assertNotNull(storage.remove("id1"));
+        Assert.assertNull(storage.getJobStatus("id1"));
+        Assert.assertNull(storage.getJobStatus(Arrays.asList("id1", "id2")));
+        Assert.assertEquals(1, storage.getStatusCount());
+        Assert.assertFalse(new File(folder, "id1").exists());
+    }
+
+    @Test
+    public void testStoreAndLoadBinary() throws Exception
+    {
+        // XStream 1.4.4 fails to serialize anything on Java 8
+        Assume.assumeTrue(isXStreamSupported());
+
+        File folder = new File("target/DefaultJobStatusStorageTest");
+        FileUtils.deleteDirectory(folder);
+        when(this.jobManagerConfiguration.getStorage()).thenReturn(folder);
+
+        DefaultJobStatusStorage storage = this.componentManager.getComponentUnderTest();
+
+        // Stored as XML
+        storage.store(new TestJobStatus(Arrays.asList("id1")));
+        Assert.assertTrue(new File(folder, "id1/status.xml").exists());
+
+        // Stored as binary, the XML status is removed
+        when(this.jobManagerConfiguration.getJobStatusSerializer()).thenReturn("binary");
+        TestJobStatus status = new TestJobStatus(Arrays.asList("id1"));
+        status.getLog().info("message");
+        storage.store(status);
+        storage.store(new TestJobStatus(Arrays.asList("id2")));
+
+        Assert.assertTrue(new File(folder, "id1/status.bin").exists());
+        Assert.assertFalse(new File(folder, "id1/status.xml").exists());
+
+        // Loaded from the file system
+        status = (TestJobStatus) storage.getJobStatus("id1");
+        Assert.assertEquals(Arrays.asList("id1"), status.getRequest().getId());
+        Assert.assertEquals(1, status.getLog().size());
+        Assert.assertEquals(1, storage.getCacheMissCount());
+
+        // Indexed from the file system
+        storage.initialize();
+        Assert.assertEquals(2, storage.getStatusCount());
+        Assert.assertEquals(Arrays.asList("id2"), storage.getJobStatus("id2").getRequest().getId());
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.job.Job;
+import org.xwiki.job.Request;
+import org.xwiki.job.internal.JobLane.JobElement;
+
+/**
+ * Unit tests for {@link JobLane}.
+ * 
+ * @version $Id$
+ */
+public class JobLaneTest
+{
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void after()
+    {
+        this.executor.shutdownNow();
+    }
+
+    private JobElement createElement(String key)
+    {
+        return new JobElement(mock(Job.class), mock(Request.class), key);
+    }
+
+    private Future<JobElement> take(final JobLane lane)
+    {
+        return this.executor.submit(new Callable<JobElement>()
+        {
+            @Override
+            public JobElement call() throws Exception
+            {
+                return lane.take();
+            }
+        });
+    }
+
+    private void assertWaiting(Future<JobElement> future) throws Exception
+    {
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            Assert.fail("Should be waiting for a job");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testConflictingJobsAreSerialized() throws Exception
+    {
+        JobLane lane = new JobLane("lane", 2, false);
+
+        JobElement a1 = createElement("a");
+        JobElement a2 = createElement("a");
+        JobElement b = createElement("b");
+        lane.add(a1);
+        lane.add(a2);
+        lane.add(b);
+
+        Assert.assertSame(a1, lane.take());
+        // a2 conflicts with the running a1
+        Assert.assertSame(b, lane.take());
+        Assert.assertEquals(2, lane.getRunningCount());
+        Assert.assertEquals(1, lane.getQueueSize());
+
+        lane.finished(b);
+
+        Future<JobElement> future = take(lane);
+        assertWaiting(future);
+
+        lane.finished(a1);
+
+        Assert.assertSame(a2, future.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, lane.getQueueSize());
+        Assert.assertEquals(3, lane.getStartedCount());
+    }
+
+    @Test
+    public void testOrdered() throws Exception
+    {
+        JobLane lane = new JobLane("lane", 2, true);
+
+        JobElement a1 = createElement("a");
+        JobElement a2 = createElement("a");
+        JobElement b = createElement("b");
+        lane.add(a1);
+        lane.add(a2);
+        lane.add(b);
+
+        Assert.assertSame(a1, lane.take());
+
+        // b can't overtake a2
+        Future<JobElement> future = take(lane);
+        assertWaiting(future);
+
+        lane.finished(a1);
+
+        Assert.assertSame(a2, future.get(1, TimeUnit.SECONDS));
+        Assert.assertSame(b, lane.take());
+    }
+
+    @Test
+    public void testWaitTime() throws Exception
+    {
+        JobLane lane = new JobLane("lane", 1, false);
+
+        lane.add(createElement("a"));
+        Thread.sleep(20);
+        lane.take();
+
+        Assert.assertEquals(1, lane.getStartedCount());
+        Assert.assertTrue(lane.getWaitTime() >= 20);
+        Assert.assertEquals(lane.getWaitTime(), lane.getMaxWaitTime());
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+import org.slf4j.helpers.MessageFormatter;
+import org.xwiki.logging.LogLevel;
+import org.xwiki.logging.TranslationMarker;
+import org.xwiki.logging.event.LogEvent;
+
+/**
+ * An append only file of {@link LogEvent}s. Each log is written as a length prefixed record and can be read back
+ * from the offset returned when it was appended.
+ * <p>
+ * The arguments of the logs are stored as formatted strings (which is all that's needed to format the message) and
+ * the throwables using Java serialization or, when it fails, as a copy of their message and stack trace.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class LogEventFile
+{
+    /**
+     * Indicate a null value.
+     */
+    private static final byte NULL = 0;
+
+    /**
+     * Indicate a {@link TranslationMarker}.
+     */
+    private static final byte TRANSLATION_MARKER = 1;
+
+    /**
+     * Indicate any other marker.
+     */
+    private static final byte MARKER = 2;
+
+    /**
+     * Indicate a non null value.
+     */
+    private static final byte VALUE = 1;
+
+    /**
+     * The encoding of the strings.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Used to format the arguments.
+     */
+    private static final String ARGUMENT_PATTERN = "{}";
+
+    /**
+     * The size of a record header.
+     */
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * The file where the logs are stored.
+     */
+    private final File file;
+
+    /**
+     * Used to read and write the file, opened when needed.
+     */
+    private RandomAccessFile randomAccessFile;
+
+    /**
+     * @param file the file where the logs are stored, new logs are appended to the existing ones
+     */
+    public LogEventFile(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the opened file
+     * @throws IOException when failing to open the file
+     */
+    private RandomAccessFile getRandomAccessFile() throws IOException
+    {
+        if (this.randomAccessFile == null) {
+            File parent = this.file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+        }
+
+        return this.randomAccessFile;
+    }
+
+    /**
+     * @return the offset where the next log will be written
+     * @throws IOException when failing to access the file
+     */
+    public synchronized long length() throws IOException
+    {
+        if (this.randomAccessFile == null && !this.file.exists()) {
+            return 0;
+        }
+
+        return getRandomAccessFile().length();
+    }
+
+    /**
+     * @param logEvent the log to write at the end of the file
+     * @return the offset of the written log
+     * @throws IOException when failing to write the log
+     */
+    public long append(LogEvent logEvent) throws IOException
+    {
+        byte[] bytes = encode(logEvent);
+
+        synchronized (this) {
+            RandomAccessFile raf = getRandomAccessFile();
+
+            long offset = raf.length();
+            raf.seek(offset);
+            raf.writeInt(bytes.length);
+            raf.write(bytes);
+
+            return offset;
+        }
+    }
+
+    /**
+     * @param offset the offset of the log
+     * @return the bytes of the log, to be decoded with {@link #decode(byte[])}
+     * @throws IOException when failing to read the log
+     */
+    private synchronized byte[] readRecord(long offset) throws IOException
+    {
+        RandomAccessFile raf = getRandomAccessFile();
+
+        raf.seek(offset);
+        byte[] bytes = new byte[raf.readInt()];
+        raf.readFully(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Iterate over the logs stored between two offsets, each log being read only when reached.
+     * 
+     * @param from the offset of the first log
+     * @param to the offset where to stop
+     * @return the logs
+     */
+    public Iterator<LogEvent> iterator(long from, long to)
+    {
+        return new RecordIterator(from, to);
+    }
+
+    /**
+     * @param e the error
+     * @return the log to return instead of the one that could not be read
+     */
+    private LogEvent createReadError(IOException e)
+    {
+        return new LogEvent(LogLevel.ERROR, "Failed to read log from file [{}]", new Object[] {this.file}, e);
+    }
+
+    /**
+     * Release the file handle. The file stays usable and will be opened again when needed.
+     */
+    public synchronized void close()
+    {
+        if (this.randomAccessFile != null) {
+            try {
+                this.randomAccessFile.close();
+            } catch (IOException e) {
+                // Nothing else to do
+            }
+            this.randomAccessFile = null;
+        }
+    }
+
+    /**
+     * Release the file handle and remove all the stored logs.
+     */
+    public synchronized void delete()
+    {
+        close();
+        this.file.delete();
+    }
+
+    // Serialization
+
+    /**
+     * @param logEvent the log to serialize
+     * @return the serialized log
+     * @throws IOException when failing to serialize the log
+     */
+    private static byte[] encode(LogEvent logEvent) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(stream);
+
+        output.writeByte(logEvent.getLevel() != null ? logEvent.getLevel().ordinal() : -1);
+        writeMarker(logEvent.getMarker(), output);
+        writeString(logEvent.getMessage(), output);
+        Object[] arguments = logEvent.getArgumentArray();
+        if (arguments != null) {
+            output.writeInt(arguments.length);
+            for (Object argument : arguments) {
+                writeString(argument != null ? formatArgument(argument) : null, output);
+            }
+        } else {
+            output.writeInt(-1);
+        }
+        writeThrowable(logEvent.getThrowable(), output);
+
+        output.flush();
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * @param argument the log argument
+     * @return the argument as it would be inserted in the message
+     */
+    private static String formatArgument(Object argument)
+    {
+        return MessageFormatter.arrayFormat(ARGUMENT_PATTERN, new Object[] {argument}).getMessage();
+    }
+
+    /**
+     * @param bytes the serialized log
+     * @return the log
+     * @throws IOException when failing to unserialize the log
+     */
+    private static LogEvent decode(byte[] bytes) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        byte levelOrdinal = input.readByte();
+        LogLevel level = levelOrdinal >= 0 ? LogLevel.values()[levelOrdinal] : null;
+        Marker marker = readMarker(input);
+        String message = readString(input);
+        int argumentsLength = input.readInt();
+        Object[] arguments = null;
+        if (argumentsLength >= 0) {
+            arguments = new Object[argumentsLength];
+            for (int i = 0; i < argumentsLength; ++i) {
+                arguments[i] = readString(input);
+            }
+        }
+        Throwable throwable = readThrowable(input);
+
+        return new LogEvent(marker, level, message, arguments, throwable);
+    }
+
+    /**
+     * @param marker the marker to write
+     * @param output the output
+     * @throws IOException when failing to write
+     */
+    private static void writeMarker(Marker marker, DataOutput output) throws IOException
+    {
+        if (marker instanceof TranslationMarker) {
+            output.writeByte(TRANSLATION_MARKER);
+            writeString(((TranslationMarker) marker).getTranslationKey(), output);
+        } else if (marker != null) {
+            output.writeByte(MARKER);
+            writeString(marker.getName(), output);
+        } else {
+            output.writeByte(NULL);
+        }
+    }
+
+    /**
+     * @param input the input
+     * @return the marker
+     * @throws IOException when failing to read
+     */
+    private static Marker readMarker(DataInput input) throws IOException
+    {
+        byte type = input.readByte();
+
+        if (type == TRANSLATION_MARKER) {
+            return new TranslationMarker(readString(input));
+        } else if (type == MARKER) {
+            return MarkerFactory.getDetachedMarker(readString(input));
+        }
+
+        return null;
+    }
+
+    /**
+     * @param value the string to write, can be null and longer than what {@link DataOutput#writeUTF(String)} supports
+     * @param output the output
+     * @throws IOException when failing to write
+     */
+    private static void writeString(String value, DataOutput output) throws IOException
+    {
+        if (value != null) {
+            byte[] bytes = value.getBytes(ENCODING);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else {
+            output.writeInt(-1);
+        }
+    }
+
+    /**
+     * @param input the input
+     * @return the string
+     * @throws IOException when failing to read
+     */
+    private static String readString(DataInput input) throws IOException
+    {
+        int length = input.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, ENCODING);
+    }
+
+    /**
+     * @param throwable the throwable to write
+     * @param output the output
+     * @throws IOException when failing to write
+     */
+    private static void writeThrowable(Throwable throwable, DataOutput output) throws IOException
+    {
+        if (throwable != null) {
+            byte[] bytes;
+            try {
+                bytes = serialize(throwable);
+            } catch (IOException e) {
+                // Probably something not serializable in the throwable, keep what's displayed
+                Exception copy = new Exception(throwable.toString());
+                copy.setStackTrace(throwable.getStackTrace());
+                bytes = serialize(copy);
+            }
+
+            output.writeByte(VALUE);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        } else {
+            output.writeByte(NULL);
+        }
+    }
+
+    /**
+     * @param input the input
+     * @return the throwable
+     * @throws IOException when failing to read
+     */
+    private static Throwable readThrowable(DataInput input) throws IOException
+    {
+        if (input.readByte() == NULL) {
+            return null;
+        }
+
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+
+        ObjectInputStream objectInput = new ContextObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return (Throwable) objectInput.readObject();
+        } catch (ClassNotFoundException e) {
+            // The class is not available anymore (the extension has been uninstalled for example)
+            return new Exception("Failed to read the stored exception", e);
+        } finally {
+            objectInput.close();
+        }
+    }
+
+    /**
+     * @param throwable the throwable to serialize
+     * @return the serialized throwable
+     * @throws IOException when failing to serialize
+     */
+    private static byte[] serialize(Throwable throwable) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutput = new ObjectOutputStream(stream);
+        objectOutput.writeObject(throwable);
+        objectOutput.close();
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * Iterate over the logs stored between two offsets.
+     * 
+     * @version $Id$
+     */
+    private class RecordIterator implements Iterator<LogEvent>
+    {
+        /**
+         * The offset of the next log.
+         */
+        private long offset;
+
+        /**
+         * The offset where to stop.
+         */
+        private final long end;
+
+        /**
+         * @param from the offset of the first log
+         * @param to the offset where to stop
+         */
+        RecordIterator(long from, long to)
+        {
+            this.offset = from;
+            this.end = to;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.offset < this.end;
+        }
+
+        @Override
+        public LogEvent next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            LogEvent logEvent;
+            try {
+                byte[] bytes = readRecord(this.offset);
+                this.offset += HEADER_SIZE + bytes.length;
+                logEvent = decode(bytes);
+            } catch (IOException e) {
+                // Don't retry a broken file
+                this.offset = this.end;
+                logEvent = createReadError(e);
+            }
+
+            return logEvent;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException("The stored logs can't be removed");
+        }
+    }
+
+    /**
+     * Resolve the classes with the context class loader since the throwable can come from an extension.
+     * 
+     * @version $Id$
+     */
+    private static class ContextObjectInputStream extends ObjectInputStream
+    {
+        /**
+         * @param input the input
+         * @throws IOException when failing to read the stream header
+         */
+        ContextObjectInputStream(ByteArrayInputStream input) throws IOException
+        {
+            super(input);
+        }
+
+        @Override
+        protected Class< ? > resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+        {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // Try the default resolution
+                }
+            }
+
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.logging;
 
+import java.util.Iterator;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
@@ -62,4 +65,56 @@ public void testError()
         logEvent = queue.poll();
         Assert.assertEquals("translation.key", logEvent.getTranslationKey());
     }
+
+    private void fill(LogQueue queue)
+    {
+        queue.error("error1");
+        queue.info("info1 {}", "param");
+        queue.warn("warn1");
+        queue.error("error2");
+        queue.debug("debug1");
+        queue.info(new TranslationMarker("translation.key"), "info2", new Exception("exception"));
+    }
+
+    private void assertLogs(List<LogEvent> logs, String... messages)
+    {
+        Assert.assertEquals(messages.length, logs.size());
+        for (int i = 0; i < messages.length; ++i) {
+            Assert.assertEquals(messages[i], logs.get(i).getFormattedMessage());
+        }
+    }
+
+    private void assertLogs(LogQueue queue)
+    {
+        assertLogs(queue.getLogs(LogLevel.ERROR), "error1", "error2");
+        assertLogs(queue.getLogs(LogLevel.INFO), "info1 param", "info2");
+        assertLogs(queue.getLogsFrom(LogLevel.WARN), "error1", "warn1", "error2");
+        assertLogs(queue.getLogsFrom(LogLevel.INFO), "error1", "info1 param", "warn1", "error2", "info2");
+        assertLogs(queue.getLogsFrom(LogLevel.TRACE), "error1", "info1 param", "warn1", "error2", "debug1",
+            "info2");
+    }
+
+    @Test
+    public void testGetLogs()
+    {
+        LogQueue queue = new LogQueue();
+
+        fill(queue);
+
+        assertLogs(queue);
+
+        Assert.assertEquals("error1", queue.poll().getFormattedMessage());
+        assertLogs(queue.getLogs(LogLevel.ERROR), "error2");
+
+        queue.remove(queue.getLogs(LogLevel.WARN).get(0));
+        assertLogs(queue.getLogsFrom(LogLevel.WARN), "error2");
+
+        Iterator<LogEvent> iterator = queue.iterator();
+        iterator.next();
+        iterator.remove();
+        assertLogs(queue.getLogs(LogLevel.INFO), "info2");
+
+        queue.clear();
+        Assert.assertTrue(queue.getLogsFrom(LogLevel.TRACE).isEmpty());
+    }
 }
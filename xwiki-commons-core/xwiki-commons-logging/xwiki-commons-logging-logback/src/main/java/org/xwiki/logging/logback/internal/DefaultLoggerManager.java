@@ -21,9 +21,10 @@
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Stack;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
 
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
@@ -32,8 +33,6 @@
 import org.xwiki.logging.LogLevel;
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.EventListener;
-import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.WrappedThreadEventListener;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -49,21 +48,26 @@
 public class DefaultLoggerManager implements LoggerManager, Initializable
 {
     /**
-     * Used to register/unregister {@link org.xwiki.logging.event.LogEvent} listeners.
+     * Used to make sure the {@link LogbackEventGenerator} appender producing the
+     * {@link org.xwiki.logging.event.LogEvent}s is registered before any log is captured by a listener. It's resolved
+     * lazily since once registered, logs are also sent to the Observation Manager which initializes all the Event
+     * Listeners on first use and this must not happen from the initialization of a component they may depend on.
      */
     @Inject
-    private ObservationManager observation;
+    @Named("LogbackEventGenerator")
+    private Provider<EventListener> eventGeneratorProvider;
 
     /**
-     * The logger.
+     * Used to route the {@link org.xwiki.logging.event.LogEvent}s of the current thread to its listeners.
      */
     @Inject
-    private Logger logger;
+    private LogCaptureDispatcher captureDispatcher;
 
     /**
-     * The stack of listeners for the current thread.
+     * The logger.
      */
-    private ThreadLocal<Stack<EventListener>> listeners = new ThreadLocal<Stack<EventListener>>();
+    @Inject
+    private Logger logger;
 
     /**
      * Logback utilities.
@@ -100,47 +104,23 @@ public void initialize() throws InitializationException
     @Override
     public void pushLogListener(EventListener listener)
     {
-        Stack<EventListener> listenerStack = this.listeners.get();
-
-        if (listenerStack == null) {
-            listenerStack = new Stack<EventListener>();
-            this.listeners.set(listenerStack);
-        }
-
-        if (!listenerStack.isEmpty()) {
-            this.observation.removeListener(listenerStack.peek().getName());
-        }
-
         if (listener != null) {
-            this.observation.addListener(new WrappedThreadEventListener(listener, Thread.currentThread()));
+            // Make sure the logs to capture are produced
+            this.eventGeneratorProvider.get();
         }
-        if (listenerStack.isEmpty()) {
+
+        if (this.captureDispatcher.push(listener)) {
             grabLog(Thread.currentThread());
         }
-        listenerStack.push(listener);
     }
 
     @Override
     public EventListener popLogListener()
     {
-        Stack<EventListener> listenerStack = this.listeners.get();
+        EventListener listener = this.captureDispatcher.pop();
 
-        EventListener listener;
-        if (listenerStack != null && !listenerStack.isEmpty()) {
-            listener = listenerStack.pop();
-            if (listener != null) {
-                this.observation.removeListener(listener.getName());
-            }
-            if (listenerStack.isEmpty()) {
-                ungrabLog(Thread.currentThread());
-            } else {
-                EventListener topListener = listenerStack.peek();
-                if (topListener != null) {
-                    this.observation.addListener(new WrappedThreadEventListener(topListener, Thread.currentThread()));
-                }
-            }
-        } else {
-            listener = null;
+        if (!this.captureDispatcher.isCapturing()) {
+            ungrabLog(Thread.currentThread());
         }
 
         return listener;
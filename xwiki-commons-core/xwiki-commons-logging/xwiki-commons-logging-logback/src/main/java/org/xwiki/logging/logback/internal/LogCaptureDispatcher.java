@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.observation.AsyncEventDispatcher;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Route the logs of the threads capturing them (see {@link DefaultLoggerManager#pushLogListener(EventListener)})
+ * directly to the listener on top of their stack. The per thread state is only a thread local so that pushing and
+ * popping listeners doesn't have any global effect and logging from threads which don't capture anything costs a single
+ * thread local read.
+ * <p>
+ * {@link AsyncEventListener}s are called through the {@link AsyncEventDispatcher}, i.e. from a shared pool of threads,
+ * one log at a time and in the order they have been logged, which is useful when the listener is slow.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component(roles = LogCaptureDispatcher.class)
+@Singleton
+public class LogCaptureDispatcher
+{
+    /**
+     * Used to call {@link AsyncEventListener}s, only looked up when first needed.
+     */
+    @Inject
+    private Provider<AsyncEventDispatcher> asyncEventDispatcherProvider;
+
+    /**
+     * The stack of listeners of each thread, null when the thread doesn't capture its logs.
+     */
+    private final ThreadLocal<List<EventListener>> listeners = new ThreadLocal<List<EventListener>>();
+
+    /**
+     * @return true if the current thread captures its logs
+     */
+    public boolean isCapturing()
+    {
+        return this.listeners.get() != null;
+    }
+
+    /**
+     * @param listener the listener which will receive the logs of the current thread, null to ignore them
+     * @return true if it's the first listener of the current thread
+     */
+    public boolean push(EventListener listener)
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        boolean first = listenerStack == null;
+        if (first) {
+            listenerStack = new ArrayList<EventListener>();
+            this.listeners.set(listenerStack);
+        }
+
+        listenerStack.add(listener);
+
+        return first;
+    }
+
+    /**
+     * @return the removed listener or null if the current thread didn't capture its logs
+     */
+    public EventListener pop()
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        if (listenerStack == null) {
+            return null;
+        }
+
+        EventListener listener = listenerStack.remove(listenerStack.size() - 1);
+
+        if (listenerStack.isEmpty()) {
+            this.listeners.remove();
+        }
+
+        return listener;
+    }
+
+    /**
+     * Send the passed log to the current listener of the current thread.
+     * 
+     * @param logEvent the log
+     * @param loggerName the name of the logger
+     * @return true if the current thread captures its logs
+     */
+    public boolean dispatch(LogEvent logEvent, String loggerName)
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        if (listenerStack == null) {
+            return false;
+        }
+
+        EventListener listener = listenerStack.get(listenerStack.size() - 1);
+        if (listener != null && matches(listener, logEvent)) {
+            if (listener instanceof AsyncEventListener) {
+                this.asyncEventDispatcherProvider.get().dispatch((AsyncEventListener) listener, logEvent,
+                    loggerName, null);
+            } else {
+                listener.onEvent(logEvent, loggerName, null);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param listener the listener
+     * @param logEvent the log
+     * @return true if the listener is interested in the passed log
+     */
+    private boolean matches(EventListener listener, LogEvent logEvent)
+    {
+        for (Event event : listener.getEvents()) {
+            if (event.matches(logEvent)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -44,7 +44,8 @@
 import ch.qos.logback.core.AppenderBase;
 
 /**
- * Bridge converting log to Observation Events.
+ * Bridge converting log to Observation Events. The logs of the threads capturing them are also sent directly to the
+ * capturing listener through the {@link LogCaptureDispatcher}.
  * <p>
  * Note that this class is implemented as an Event Listener only because we needed a way for this component to be
  * initialized early when the system starts and the Observation Manager Component is the first Component loaded in the
@@ -63,6 +64,11 @@
 @Singleton
 public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implements EventListener, Initializable
 {
+    /**
+     * The error logged when a component can't be found.
+     */
+    private static final String LOOKUP_ERROR = "Can't find any implementation of [{}]";
+
     /**
      * The logger to log.
      */
@@ -80,6 +86,11 @@ public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implement
      */
     private LogbackUtils utils = new LogbackUtils();
 
+    /**
+     * Used to send the logs to the threads capturing them, resolved when first needed.
+     */
+    private volatile LogCaptureDispatcher captureDispatcher;
+
     @Override
     public String getName()
     {
@@ -126,6 +137,22 @@ private ObservationManager getObservationManager() throws ComponentLookupExcepti
         return this.componentManager.getInstance(ObservationManager.class);
     }
 
+    /**
+     * @return the dispatcher of the captured logs or null if it's not available (yet)
+     */
+    private LogCaptureDispatcher getCaptureDispatcher()
+    {
+        if (this.captureDispatcher == null && this.componentManager.hasComponent(LogCaptureDispatcher.class)) {
+            try {
+                this.captureDispatcher = this.componentManager.getInstance(LogCaptureDispatcher.class);
+            } catch (ComponentLookupException e) {
+                this.logger.error(LOOKUP_ERROR, LogCaptureDispatcher.class.getName(), e);
+            }
+        }
+
+        return this.captureDispatcher;
+    }
+
     @Override
     protected void append(ILoggingEvent event)
     {
@@ -141,11 +168,18 @@ protected void append(ILoggingEvent event)
             LogEvent logevent =
                 new LogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(), throwable);
 
+            // Send the log directly to the listener of the current thread if it's capturing its logs
+            LogCaptureDispatcher dispatcher = getCaptureDispatcher();
+            if (dispatcher != null) {
+                dispatcher.dispatch(logevent, event.getLoggerName());
+            }
+
+            // and to the global log listeners
             getObservationManager().notify(logevent, event.getLoggerName(), null);
         } catch (IllegalArgumentException e) {
             this.logger.debug("Unsupported log level [{}]", event.getLevel());
         } catch (ComponentLookupException e) {
-            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
+            this.logger.error(LOOKUP_ERROR, ObservationManager.class.getName(), e);
         }
     }
 
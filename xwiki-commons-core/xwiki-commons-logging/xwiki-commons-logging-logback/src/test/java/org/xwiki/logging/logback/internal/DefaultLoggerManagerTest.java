@@ -25,6 +25,10 @@
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
 
 import junit.framework.Assert;
 
@@ -36,9 +40,14 @@
 import org.xwiki.logging.LogLevel;
 import org.xwiki.logging.LogQueue;
 import org.xwiki.logging.event.LogQueueListener;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.internal.DefaultAsyncEventDispatcher;
 import org.xwiki.observation.internal.DefaultObservationManager;
 import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.internal.MockConfigurationSource;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -53,13 +62,15 @@
  * @version $Id$
  * @since 3.2M3
  */
-@ComponentList({DefaultLoggerManager.class, DefaultObservationManager.class, LogbackEventGenerator.class})
+@ComponentList({DefaultLoggerManager.class, DefaultObservationManager.class, LogbackEventGenerator.class,
+    LogCaptureDispatcher.class, DefaultAsyncEventDispatcher.class})
 public class DefaultLoggerManagerTest
 {
     @Rule
     public final MockitoComponentMockingRule<DefaultLoggerManager> mocker =
         new MockitoComponentMockingRule<DefaultLoggerManager>(DefaultLoggerManager.class,
-            Arrays.asList(ObservationManager.class));
+            Arrays.asList(ObservationManager.class, EventListener.class, LogCaptureDispatcher.class,
+                Provider.class));
 
     private DefaultLoggerManager loggerManager;
 
@@ -99,11 +110,12 @@ public FilterReply decide(ILoggingEvent event)
         rootLogger.addAppender(this.listAppender);
 
         this.logger = LoggerFactory.getLogger(getClass());
+        this.mocker.registerComponent(MockConfigurationSource.getDescriptor(null), new MockConfigurationSource());
         this.loggerManager = this.mocker.getComponentUnderTest();
     }
 
     @Test
-    public void testPushPopLogListener() throws InterruptedException
+    public void testPushPopLogListener() throws Exception
     {
         this.logger.error("[test] before push");
 
@@ -119,6 +131,10 @@ public void testPushPopLogListener() throws InterruptedException
         // Make sure the log has been added to the queue
         Assert.assertEquals("[test] after push", queue.poll().getMessage());
 
+        // Make sure capturing logs doesn't register anything in the Observation Manager
+        Assert.assertNull(this.mocker.<ObservationManager>getInstance(ObservationManager.class).getListener(
+            "loglistenerid"));
+
         // Make sure the log has not been sent to the logback appender
         Assert.assertTrue(this.listAppender.list.size() == 1);
 
@@ -254,4 +270,42 @@ public void getLoggerLevelWhenNoLogback() throws Exception
 
         Assert.assertNull(spyLoggerManager.getLoggerLevel("whatever"));
     }
+
+    @Test
+    public void testAsyncListener() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Thread[] listenerThread = new Thread[1];
+        final LogQueue queue = new LogQueue();
+
+        class AsyncLogQueueListener extends LogQueueListener implements AsyncEventListener
+        {
+            AsyncLogQueueListener()
+            {
+                super("asynclistenerid", queue);
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                super.onEvent(event, source, data);
+
+                listenerThread[0] = Thread.currentThread();
+                latch.countDown();
+            }
+        }
+
+        this.loggerManager.pushLogListener(new AsyncLogQueueListener());
+
+        this.logger.error("[test] async");
+
+        this.loggerManager.popLogListener();
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("[test] async", queue.poll().getMessage());
+        Assert.assertNotSame(Thread.currentThread(), listenerThread[0]);
+
+        // Make sure the log has not been sent to the logback appender
+        Assert.assertTrue(this.listAppender.list.isEmpty());
+    }
 }
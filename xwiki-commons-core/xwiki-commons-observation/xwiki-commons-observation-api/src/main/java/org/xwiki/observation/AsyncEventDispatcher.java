@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Call {@link AsyncEventListener}s on separate threads. The {@link ObservationManager} uses it to notify the
+ * asynchronous listeners it has registered and other components sending events to listeners directly (for example to
+ * route captured logs) can use it to call their asynchronous listeners the same way.
+ * <p>
+ * The events sent to a given listener are delivered in the order they have been dispatched, one at a time.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Role
+public interface AsyncEventDispatcher
+{
+    /**
+     * Queue the event for the passed listener.
+     * 
+     * @param listener the listener to call
+     * @param event the event to pass to the listener
+     * @param source the source of the event (or <code>null</code>)
+     * @param data the additional data related to the event (or <code>null</code>)
+     */
+    void dispatch(AsyncEventListener listener, Event event, Object source, Object data);
+
+    /**
+     * Forget the passed listener: the events waiting for it are dropped.
+     * 
+     * @param listenerName the name of the listener
+     */
+    void removeListener(String listenerName);
+
+    /**
+     * @param listenerName the name of the listener
+     * @return the number of events waiting to be delivered to the passed listener
+     */
+    int getQueueSize(String listenerName);
+
+    /**
+     * @return the number of events waiting to be delivered to all the asynchronous listeners
+     */
+    int getQueueSize();
+}
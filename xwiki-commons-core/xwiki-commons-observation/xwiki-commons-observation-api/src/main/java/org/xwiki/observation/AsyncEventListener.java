@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+/**
+ * Marker interface for {@link EventListener}s which don't need to be called on the thread which sent the event.
+ * <p>
+ * The {@link ObservationManager} still decides synchronously which listeners match an event but the
+ * {@link #onEvent(org.xwiki.observation.event.Event, Object, Object)} call of an asynchronous listener is queued and
+ * executed later on a separate thread. This means that:
+ * <ul>
+ * <li>the events are received in the order they have been sent, one at a time, for a given listener</li>
+ * <li>the listener can't influence the code which sent the event (for example canceling a
+ * {@link org.xwiki.observation.event.CancelableEvent} has no effect)</li>
+ * <li>the listener is not executed in the execution context of the thread which sent the event</li>
+ * <li>when too many events are waiting for a listener the thread sending new events is blocked until the listener
+ * catch up</li>
+ * </ul>
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public interface AsyncEventListener extends EventListener
+{
+}
@@ -77,7 +77,18 @@
      * @return the registered listener's instance or null if no listener is registered under that name 
      */
     EventListener getListener(String listenerName);
-    
+
+    /**
+     * Indicate if sending events of the passed type could reach a listener. It allows costly events to be created only
+     * when someone might be interested in them.
+     * 
+     * @param eventClass the type of the event to send
+     * @return false if no registered listener can receive events of the passed type, true otherwise (it does not mean
+     *         that a listener will match the actual event)
+     * @since 5.0M2
+     */
+    boolean hasListener(Class< ? extends Event> eventClass);
+
     /**
      * Call the registered listeners matching the passed Event. 
      * The definition of <em>source</em> and <em>data</em> is purely up to the communicating classes.
@@ -0,0 +1,416 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.observation.AsyncEventDispatcher;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Default implementation of {@link AsyncEventDispatcher}: deliver events to {@link AsyncEventListener}s on a shared
+ * pool of threads.
+ * <p>
+ * Each listener has its own bounded queue of events which is drained by at most one thread at a time so that a given
+ * listener receive its events in order. When the queue of a listener is full the thread sending the event waits until
+ * there is room for it, unless this thread is itself delivering asynchronous events: waiting there could block the
+ * whole pool (for example when two listeners send events to each other) so the event is dropped and a warning is
+ * logged instead. The events sent after the dispatcher has been disposed are dropped too.
+ * <p>
+ * The number of threads and the capacity of the queues are configured with the {@code observation.async.threads} and
+ * {@code observation.async.queueCapacity} properties.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+@Component
+@Singleton
+public class DefaultAsyncEventDispatcher implements AsyncEventDispatcher, Initializable, Disposable
+{
+    /**
+     * The default number of threads used to call the listeners.
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * The default maximum number of events waiting for a given listener.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * The maximum number of events delivered to a listener before giving the thread back to the other listeners.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The time (in milliseconds) to wait for room in a full queue before checking again if the dispatcher has been
+     * disposed.
+     */
+    private static final long OFFER_TIMEOUT = 1000L;
+
+    /**
+     * The logger to log.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultAsyncEventDispatcher.class);
+
+    /**
+     * The queues of events indexed by listener name.
+     */
+    private final Map<String, ListenerQueue> queues = new ConcurrentHashMap<String, ListenerQueue>();
+
+    /**
+     * The queue drained by the current thread if it's a delivery thread.
+     */
+    private final ThreadLocal<ListenerQueue> currentQueue = new ThreadLocal<ListenerQueue>();
+
+    /**
+     * Used to get the number of threads and the capacity of the queues, null when not created as a component.
+     */
+    @Inject
+    private Provider<ConfigurationSource> configurationProvider;
+
+    /**
+     * The maximum number of events waiting for a given listener.
+     */
+    private int queueCapacity;
+
+    /**
+     * The threads calling the listeners.
+     */
+    private ExecutorService executor;
+
+    /**
+     * An event waiting to be sent to a listener.
+     */
+    private static final class QueuedEvent
+    {
+        /**
+         * The listener to call.
+         */
+        private final AsyncEventListener listener;
+
+        /**
+         * The event to pass to the listener.
+         */
+        private final Event event;
+
+        /**
+         * The source of the event.
+         */
+        private final Object source;
+
+        /**
+         * The additional data related to the event.
+         */
+        private final Object data;
+
+        /**
+         * @param listener the listener to call
+         * @param event the event to pass to the listener
+         * @param source the source of the event
+         * @param data the additional data related to the event
+         */
+        QueuedEvent(AsyncEventListener listener, Event event, Object source, Object data)
+        {
+            this.listener = listener;
+            this.event = event;
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The events waiting for a given listener.
+     */
+    private final class ListenerQueue implements Runnable
+    {
+        /**
+         * The events waiting to be delivered.
+         */
+        private final BlockingQueue<QueuedEvent> events = new ArrayBlockingQueue<QueuedEvent>(queueCapacity);
+
+        /**
+         * True when a task draining this queue has been submitted to the executor and did not finish yet.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * True when the listener has been removed and the waiting events should not be delivered anymore.
+         */
+        private volatile boolean removed;
+
+        /**
+         * Make sure a thread is draining this queue.
+         */
+        void schedule()
+        {
+            if (this.scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    this.scheduled.set(false);
+
+                    LOGGER.warn("Failed to deliver [{}] asynchronous events: the dispatcher has been disposed",
+                        this.events.size());
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            currentQueue.set(this);
+
+            try {
+                for (int i = 0; i < BATCH_SIZE && !this.removed; ++i) {
+                    QueuedEvent queuedEvent = this.events.poll();
+                    if (queuedEvent == null) {
+                        break;
+                    }
+
+                    deliver(queuedEvent);
+                }
+            } finally {
+                currentQueue.remove();
+
+                this.scheduled.set(false);
+            }
+
+            // Events might have been queued after the last poll
+            if (!this.removed && !this.events.isEmpty()) {
+                schedule();
+            }
+        }
+
+        /**
+         * Drop the waiting events and stop delivering them.
+         */
+        void remove()
+        {
+            this.removed = true;
+            this.events.clear();
+        }
+    }
+
+    /**
+     * Used when created as a component, the number of threads and the queue capacity are taken from the configuration
+     * in {@link #initialize()}.
+     */
+    public DefaultAsyncEventDispatcher()
+    {
+        // Initialized in #initialize()
+    }
+
+    /**
+     * @param threads the number of threads used to call the listeners
+     * @param queueCapacity the maximum number of events waiting for a given listener
+     */
+    public DefaultAsyncEventDispatcher(int threads, int queueCapacity)
+    {
+        start(threads, queueCapacity);
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        ConfigurationSource configuration = this.configurationProvider.get();
+
+        int threads = configuration.getProperty("observation.async.threads", DEFAULT_THREADS);
+        int capacity = configuration.getProperty("observation.async.queueCapacity", DEFAULT_QUEUE_CAPACITY);
+
+        if (threads <= 0 || capacity <= 0) {
+            throw new InitializationException(String.format(
+                "Invalid asynchronous observation configuration: [%s] threads and queues of [%s] events", threads,
+                capacity));
+        }
+
+        start(threads, capacity);
+    }
+
+    /**
+     * @param threads the number of threads used to call the listeners
+     * @param capacity the maximum number of events waiting for a given listener
+     */
+    private void start(int threads, int capacity)
+    {
+        this.queueCapacity = capacity;
+
+        BasicThreadFactory threadFactory =
+            new BasicThreadFactory.Builder().namingPattern("Asynchronous event listener %d").daemon(true).build();
+        this.executor =
+            new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                threadFactory);
+    }
+
+    @Override
+    public void dispatch(AsyncEventListener listener, Event event, Object source, Object data)
+    {
+        if (this.executor.isShutdown()) {
+            LOGGER.warn("The asynchronous event dispatcher has been disposed, dropping event [{}] for listener [{}]",
+                event, listener.getName());
+
+            return;
+        }
+
+        ListenerQueue queue = getListenerQueue(listener.getName());
+        QueuedEvent queuedEvent = new QueuedEvent(listener, event, source, data);
+
+        if (!queue.events.offer(queuedEvent)) {
+            if (this.currentQueue.get() != null) {
+                // Never block a delivery thread: it's the one which would have to make room in the queue
+                LOGGER.warn("The queue of listener [{}] is full, dropping event [{}] sent by an asynchronous listener",
+                    listener.getName(), event);
+
+                return;
+            }
+
+            if (!waitForRoom(queue, queuedEvent)) {
+                return;
+            }
+        }
+
+        queue.schedule();
+    }
+
+    /**
+     * Wait until there is room in the passed queue for the event, as long as the dispatcher is not disposed.
+     * 
+     * @param queue the queue of the listener
+     * @param queuedEvent the event to add to the queue
+     * @return true if the event has been added to the queue
+     */
+    private boolean waitForRoom(ListenerQueue queue, QueuedEvent queuedEvent)
+    {
+        try {
+            while (!queue.events.offer(queuedEvent, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (this.executor.isShutdown()) {
+                    LOGGER.warn("The asynchronous event dispatcher has been disposed, dropping event [{}] for "
+                        + "listener [{}]", queuedEvent.event, queuedEvent.listener.getName());
+
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            LOGGER.warn("Interrupted while waiting to send event [{}] to listener [{}]", queuedEvent.event,
+                queuedEvent.listener);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param listenerName the name of the listener
+     * @return the queue associated to the passed listener
+     */
+    private ListenerQueue getListenerQueue(String listenerName)
+    {
+        ListenerQueue queue = this.queues.get(listenerName);
+
+        if (queue == null) {
+            synchronized (this.queues) {
+                queue = this.queues.get(listenerName);
+                if (queue == null) {
+                    queue = new ListenerQueue();
+                    this.queues.put(listenerName, queue);
+                }
+            }
+        }
+
+        return queue;
+    }
+
+    @Override
+    public void removeListener(String listenerName)
+    {
+        ListenerQueue queue = this.queues.remove(listenerName);
+
+        if (queue != null) {
+            queue.remove();
+        }
+    }
+
+    /**
+     * @param queuedEvent the event to send
+     */
+    private void deliver(QueuedEvent queuedEvent)
+    {
+        try {
+            queuedEvent.listener.onEvent(queuedEvent.event, queuedEvent.source, queuedEvent.data);
+        } catch (Exception e) {
+            // protect from bad listeners
+            LOGGER.error("Failed to send event [{}] to listener [{}]", new Object[] {queuedEvent.event,
+                queuedEvent.listener, e});
+        }
+    }
+
+    @Override
+    public int getQueueSize(String listenerName)
+    {
+        ListenerQueue queue = this.queues.get(listenerName);
+
+        return queue != null ? queue.events.size() : 0;
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        int size = 0;
+        for (ListenerQueue queue : this.queues.values()) {
+            size += queue.events.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+}
@@ -20,10 +20,11 @@
 package org.xwiki.observation.internal;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,8 +35,12 @@
 import org.xwiki.component.event.ComponentDescriptorAddedEvent;
 import org.xwiki.component.event.ComponentDescriptorEvent;
 import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.observation.AsyncEventDispatcher;
+import org.xwiki.observation.AsyncEventListener;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.AllEvent;
@@ -47,12 +52,20 @@
  * This component use synchronized for concurrent protection instead of having
  * {@link java.util.concurrent.ConcurrentHashMap} everywhere because it's more efficient since most of methods access to
  * several maps and generally do enumerations.
+ * <p>
+ * To make {@link #notify(Event, Object, Object)} cheap the listeners to call for a given concrete event class are
+ * precompiled in an immutable dispatch table which includes the listeners registered for this class, for any of its
+ * super types or interfaces and for {@link AllEvent}. Dispatch tables are computed lazily and are all dropped each time
+ * the registered listeners or events change.
+ * <p>
+ * {@link AsyncEventListener}s are not called directly but through the {@link AsyncEventDispatcher}. When no
+ * dispatcher component can be found a private one is created and it's disposed with this component.
  * 
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultObservationManager implements ObservationManager
+public class DefaultObservationManager implements ObservationManager, Disposable
 {
     /**
      * @see #getListenersByEvent()
@@ -64,6 +77,23 @@ public class DefaultObservationManager implements ObservationManager
      */
     private volatile Map<String, EventListener> listenersByName;
 
+    /**
+     * @see #getDispatchTable(Class)
+     */
+    private volatile Map<Class< ? extends Event>, DispatchEntry[]> dispatchTables =
+        new ConcurrentHashMap<Class< ? extends Event>, DispatchEntry[]>();
+
+    /**
+     * @see #getAsyncEventDispatcher()
+     */
+    private volatile AsyncEventDispatcher asyncEventDispatcher;
+
+    /**
+     * The dispatcher created by this component when none could be found in the component manager, disposed with this
+     * component.
+     */
+    private DefaultAsyncEventDispatcher ownedAsyncEventDispatcher;
+
     /**
      * Used to find all components implementing {@link EventListener} to register them automatically.
      */
@@ -85,7 +115,7 @@ public class DefaultObservationManager implements ObservationManager
         /**
          * Events of a given type associated with a given listener.
          */
-        private List<Event> events = new ArrayList<Event>();
+        private List<Event> events = new CopyOnWriteArrayList<Event>();
 
         /**
          * Listener associated with the events.
@@ -121,6 +151,38 @@ void removeEvent(Event event)
         }
     }
 
+    /**
+     * Immutable association between a listener and all the registered events which can match a given concrete event
+     * class.
+     */
+    private static final class DispatchEntry
+    {
+        /**
+         * Used when no listener is interested in an event class.
+         */
+        static final DispatchEntry[] EMPTY = new DispatchEntry[0];
+
+        /**
+         * The listener to call.
+         */
+        private final EventListener listener;
+
+        /**
+         * The events of the listener to check, in registration order.
+         */
+        private final Event[] events;
+
+        /**
+         * @param listener the listener to call
+         * @param events the events of the listener to check
+         */
+        DispatchEntry(EventListener listener, List<Event> events)
+        {
+            this.listener = listener;
+            this.events = events.toArray(new Event[events.size()]);
+        }
+    }
+
     /**
      * @return the registered listeners indexed on Event classes so that it's fast to find all the listeners registered
      *         for a given event, so that {@link #notify} calls execute fast and in a fixed amount a time.
@@ -149,8 +211,6 @@ private Map<String, EventListener> getListenersByName()
 
     /**
      * Lazily initialized to allow @Inject {@link ObservationManager} in a listener.
-     * 
-     * @todo Should we allow event inheritance ?
      */
     private synchronized void initializeListeners()
     {
@@ -172,6 +232,54 @@ private synchronized void initializeListeners()
         }
     }
 
+    /**
+     * @return the dispatcher used to call {@link AsyncEventListener}s
+     */
+    private AsyncEventDispatcher getAsyncEventDispatcher()
+    {
+        if (this.asyncEventDispatcher == null) {
+            initializeAsyncEventDispatcher();
+        }
+
+        return this.asyncEventDispatcher;
+    }
+
+    /**
+     * Lazily initialized since most of the time there is no asynchronous listener.
+     */
+    private synchronized void initializeAsyncEventDispatcher()
+    {
+        if (this.asyncEventDispatcher == null) {
+            AsyncEventDispatcher dispatcher = null;
+
+            // Can be null in unit tests
+            if (this.componentManager != null) {
+                try {
+                    dispatcher = this.componentManager.getInstance(AsyncEventDispatcher.class);
+                } catch (ComponentLookupException e) {
+                    this.logger.error("Failed to lookup the asynchronous event dispatcher, using a default one", e);
+                }
+            }
+
+            if (dispatcher == null) {
+                this.ownedAsyncEventDispatcher =
+                    new DefaultAsyncEventDispatcher(DefaultAsyncEventDispatcher.DEFAULT_THREADS,
+                        DefaultAsyncEventDispatcher.DEFAULT_QUEUE_CAPACITY);
+                dispatcher = this.ownedAsyncEventDispatcher;
+            }
+
+            this.asyncEventDispatcher = dispatcher;
+        }
+    }
+
+    @Override
+    public synchronized void dispose() throws ComponentLifecycleException
+    {
+        if (this.ownedAsyncEventDispatcher != null) {
+            this.ownedAsyncEventDispatcher.dispose();
+        }
+    }
+
     @Override
     public void addListener(EventListener eventListener)
     {
@@ -186,6 +294,9 @@ public void addListener(EventListener eventListener)
                     + "In the future consider removing a Listener first if you really want to register it again.",
                 new Object[] {eventListener.getClass().getName(), previousListener.getClass().getName(),
                         eventListener.getName()});
+
+            // The events waiting for the replaced listener should not be delivered to it anymore
+            removeAsyncListener(previousListener.getName());
         }
 
         // For each event defined for this listener, add it to the Event Map.
@@ -208,6 +319,8 @@ public void addListener(EventListener eventListener)
                 }
             }
         }
+
+        invalidateDispatchTables();
     }
 
     @Override
@@ -221,6 +334,24 @@ public void removeListener(String listenerName)
                 this.listenersByEvent.remove(entry.getKey());
             }
         }
+
+        invalidateDispatchTables();
+
+        removeAsyncListener(listenerName);
+    }
+
+    /**
+     * Drop the events waiting to be delivered to a removed {@link AsyncEventListener}.
+     * 
+     * @param listenerName the name of the removed listener
+     */
+    private void removeAsyncListener(String listenerName)
+    {
+        // Nothing to do if no asynchronous listener has been called yet
+        AsyncEventDispatcher dispatcher = this.asyncEventDispatcher;
+        if (dispatcher != null) {
+            dispatcher.removeListener(listenerName);
+        }
     }
 
     @Override
@@ -237,15 +368,21 @@ public void addEvent(String listenerName, Event event)
         } else {
             listeners.put(listenerName, new RegisteredListener(this.getListener(listenerName), event));
         }
+
+        invalidateDispatchTables();
     }
 
     @Override
     public void removeEvent(String listenerName, Event event)
     {
         Map<String, RegisteredListener> listeners = getListenersByEvent().get(event.getClass());
-        RegisteredListener listener = listeners.get(listenerName);
-        if (listener != null) {
-            listener.removeEvent(event);
+        if (listeners != null) {
+            RegisteredListener listener = listeners.get(listenerName);
+            if (listener != null) {
+                listener.removeEvent(event);
+
+                invalidateDispatchTables();
+            }
         }
     }
 
@@ -255,19 +392,109 @@ public EventListener getListener(String listenerName)
         return getListenersByName().get(listenerName);
     }
 
+    /**
+     * Drop all the precompiled dispatch tables. Must be called after the registered listeners or events have been
+     * modified so that a dispatch table computed concurrently from the previous state is discarded too.
+     */
+    private void invalidateDispatchTables()
+    {
+        this.dispatchTables = new ConcurrentHashMap<Class< ? extends Event>, DispatchEntry[]>();
+    }
+
+    /**
+     * @param eventClass the concrete class of the notified event
+     * @return the listeners which might be interested in events of the passed class, never null
+     */
+    private DispatchEntry[] getDispatchTable(Class< ? extends Event> eventClass)
+    {
+        Map<Class< ? extends Event>, DispatchEntry[]> tables = this.dispatchTables;
+
+        DispatchEntry[] table = tables.get(eventClass);
+        if (table == null) {
+            table = createDispatchTable(eventClass);
+            tables.put(eventClass, table);
+        }
+
+        return table;
+    }
+
+    /**
+     * Compile the listeners to call for the passed event class. The listeners registered for the exact class come
+     * first, then the ones registered for a super type or an interface and finally the ones registered for
+     * {@link AllEvent}. A listener appears only once even if it registered events of several of those types.
+     * 
+     * @param eventClass the concrete class of the notified event
+     * @return the listeners which might be interested in events of the passed class
+     */
+    private DispatchEntry[] createDispatchTable(Class< ? extends Event> eventClass)
+    {
+        Map<Class< ? extends Event>, Map<String, RegisteredListener>> listeners = getListenersByEvent();
+
+        Map<String, EventListener> eventListeners = new LinkedHashMap<String, EventListener>();
+        Map<String, List<Event>> events = new LinkedHashMap<String, List<Event>>();
+
+        addDispatchEvents(listeners.get(eventClass), eventListeners, events);
+        for (Map.Entry<Class< ? extends Event>, Map<String, RegisteredListener>> entry : listeners.entrySet()) {
+            Class< ? extends Event> registeredClass = entry.getKey();
+            if (registeredClass != eventClass && registeredClass != AllEvent.class
+                && registeredClass.isAssignableFrom(eventClass)) {
+                addDispatchEvents(entry.getValue(), eventListeners, events);
+            }
+        }
+        if (eventClass != AllEvent.class) {
+            addDispatchEvents(listeners.get(AllEvent.class), eventListeners, events);
+        }
+
+        if (eventListeners.isEmpty()) {
+            return DispatchEntry.EMPTY;
+        }
+
+        DispatchEntry[] table = new DispatchEntry[eventListeners.size()];
+        int index = 0;
+        for (Map.Entry<String, EventListener> entry : eventListeners.entrySet()) {
+            table[index++] = new DispatchEntry(entry.getValue(), events.get(entry.getKey()));
+        }
+
+        return table;
+    }
+
+    /**
+     * @param registeredListeners the registered listeners to add to the dispatch table (can be null)
+     * @param eventListeners the listeners of the dispatch table being compiled
+     * @param events the events of each listener of the dispatch table being compiled
+     */
+    private void addDispatchEvents(Map<String, RegisteredListener> registeredListeners,
+        Map<String, EventListener> eventListeners, Map<String, List<Event>> events)
+    {
+        if (registeredListeners != null) {
+            for (Map.Entry<String, RegisteredListener> entry : registeredListeners.entrySet()) {
+                RegisteredListener registeredListener = entry.getValue();
+                if (registeredListener.listener != null) {
+                    List<Event> listenerEvents = events.get(entry.getKey());
+                    if (listenerEvents == null) {
+                        listenerEvents = new ArrayList<Event>();
+                        events.put(entry.getKey(), listenerEvents);
+                        eventListeners.put(entry.getKey(), registeredListener.listener);
+                    }
+                    listenerEvents.addAll(registeredListener.events);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasListener(Class< ? extends Event> eventClass)
+    {
+        return getDispatchTable(eventClass).length > 0;
+    }
+
     @Override
     public void notify(Event event, Object source, Object data)
     {
         // Find all listeners for this event
-        Map<String, RegisteredListener> regListeners = getListenersByEvent().get(event.getClass());
-        if (regListeners != null) {
-            notify(regListeners.values(), event, source, data);
-        }
-
-        // Find listener listening all events
-        Map<String, RegisteredListener> allEventRegListeners = this.listenersByEvent.get(AllEvent.class);
-        if (allEventRegListeners != null) {
-            notify(allEventRegListeners.values(), event, source, data);
+        DispatchEntry[] table = getDispatchTable(event.getClass());
+        if (table.length > 0) {
+            notify(table, event, source, data);
         }
 
         // We want this Observation Manager to be able to handle new Event Listener components being added or removed
@@ -289,19 +516,16 @@ public void notify(Event event, Object source, Object data)
      * @param source the source of the event (or <code>null</code>)
      * @param data the additional data related to the event (or <code>null</code>)
      */
-    private void notify(Collection<RegisteredListener> listeners, Event event, Object source, Object data)
+    private void notify(DispatchEntry[] listeners, Event event, Object source, Object data)
     {
-        for (RegisteredListener listener : listeners) {
+        for (int i = 0; i < listeners.length; ++i) {
+            DispatchEntry listener = listeners[i];
+
             // Verify that one of the events matches and send the first matching event
-            for (Event listenerEvent : listener.events) {
-                if (listenerEvent.matches(event)) {
-                    try {
-                        listener.listener.onEvent(event, source, data);
-                    } catch (Exception e) {
-                        // protect from bad listeners
-                        this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {event,
-                            listener.listener, e});
-                    }
+            Event[] listenerEvents = listener.events;
+            for (int j = 0; j < listenerEvents.length; ++j) {
+                if (listenerEvents[j].matches(event)) {
+                    notify(listener.listener, event, source, data);
 
                     // Only send the first matching event since the listener should only be called once per event.
                     break;
@@ -310,6 +534,28 @@ private void notify(Collection<RegisteredListener> listeners, Event event, Objec
         }
     }
 
+    /**
+     * Call the provided listener, directly or through the {@link AsyncEventDispatcher} depending on its type.
+     * 
+     * @param listener the listener to notify
+     * @param event the event to pass to the listener
+     * @param source the source of the event (or <code>null</code>)
+     * @param data the additional data related to the event (or <code>null</code>)
+     */
+    private void notify(EventListener listener, Event event, Object source, Object data)
+    {
+        if (listener instanceof AsyncEventListener) {
+            getAsyncEventDispatcher().dispatch((AsyncEventListener) listener, event, source, data);
+        } else {
+            try {
+                listener.onEvent(event, source, data);
+            } catch (Exception e) {
+                // protect from bad listeners
+                this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {event, listener, e});
+            }
+        }
+    }
+
     @Override
     public void notify(Event event, Object source)
     {
@@ -72,6 +72,26 @@ public void testNotifyWhenMatching()
         this.manager.notify(event, "some source", "some data");
     }
 
+    @Test
+    public void testHasListener()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(new ActionExecutionEvent("action"))));
+        }});
+
+        Assert.assertFalse(this.manager.hasListener(ActionExecutionEvent.class));
+
+        this.manager.addListener(listener);
+        Assert.assertTrue(this.manager.hasListener(ActionExecutionEvent.class));
+        Assert.assertFalse(this.manager.hasListener(AllEvent.class));
+
+        this.manager.removeListener("mylistener");
+        Assert.assertFalse(this.manager.hasListener(ActionExecutionEvent.class));
+    }
+
     @Test
     public void testRemoveListener()
     {
@@ -261,4 +281,69 @@ public void testRegisterListenerForTwoEventsOfSameType()
         this.manager.notify(eventMatcher1, "some source", "some data");
         this.manager.notify(eventMatcher2, "some source", "some data");
     }
+
+    /**
+     * Verify that a listener registered for an event type receives the events of its sub types.
+     */
+    @Test
+    public void testRegisterListenerForSuperTypeEvent()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+        final Event eventMatcher = new ActionExecutionEvent("action");
+        final Event subEvent = new ActionExecutionEvent("action")
+        {
+        };
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(eventMatcher)));
+
+            oneOf(listener).onEvent(with(same(subEvent)), with(any(Object.class)), with(any(Object.class)));
+        }});
+
+        this.manager.addListener(listener);
+        this.manager.notify(subEvent, "some source", "some data");
+        this.manager.notify(new ActionExecutionEvent("other action") {}, "some source", "some data");
+    }
+
+    /**
+     * Verify that a listener matching an event through several registered event types is called only once.
+     */
+    @Test
+    public void testListenerCalledOncePerEvent()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+        final Event eventMatcher = new ActionExecutionEvent("action");
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(eventMatcher, AllEvent.ALLEVENT)));
+
+            oneOf(listener).onEvent(with(same(eventMatcher)), with(any(Object.class)), with(any(Object.class)));
+        }});
+
+        this.manager.addListener(listener);
+        this.manager.notify(eventMatcher, "some source", "some data");
+    }
+
+    /**
+     * Verify that the dispatch tables are updated when a listener is added after an event has been notified.
+     */
+    @Test
+    public void testAddListenerAfterNotify()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+        final Event eventMatcher = new ActionExecutionEvent("action");
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(eventMatcher)));
+
+            oneOf(listener).onEvent(with(same(eventMatcher)), with(any(Object.class)), with(any(Object.class)));
+        }});
+
+        this.manager.notify(eventMatcher, "some source", "some data");
+        this.manager.addListener(listener);
+        this.manager.notify(eventMatcher, "some source", "some data");
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.event.ActionExecutionEvent;
+import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Unit tests for {@link DefaultAsyncEventDispatcher}.
+ * 
+ * @version $Id$
+ */
+public class DefaultAsyncEventDispatcherTest
+{
+    private DefaultAsyncEventDispatcher dispatcher = new DefaultAsyncEventDispatcher(2, 10);
+
+    private static class TestAsyncEventListener implements AsyncEventListener
+    {
+        private final List<Event> received = Collections.synchronizedList(new ArrayList<Event>());
+
+        private final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        private final CountDownLatch done;
+
+        private final CountDownLatch blocker;
+
+        TestAsyncEventListener(int expected, CountDownLatch blocker)
+        {
+            this.done = new CountDownLatch(expected);
+            this.blocker = blocker;
+        }
+
+        @Override
+        public String getName()
+        {
+            return "async";
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return Arrays.<Event> asList(AllEvent.ALLEVENT);
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            try {
+                this.blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            this.received.add(event);
+            this.threads.add(Thread.currentThread());
+            this.done.countDown();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.dispatcher.dispose();
+    }
+
+    @Test
+    public void dispatchInOrderOnAnotherThread() throws Exception
+    {
+        CountDownLatch blocker = new CountDownLatch(1);
+        TestAsyncEventListener listener = new TestAsyncEventListener(50, blocker);
+
+        List<Event> sent = new ArrayList<Event>();
+        for (int i = 0; i < 5; ++i) {
+            Event event = new ActionExecutionEvent("action" + i);
+            sent.add(event);
+            this.dispatcher.dispatch(listener, event, null, null);
+        }
+
+        // The first event is being delivered and blocked, the others are waiting
+        Assert.assertTrue(this.dispatcher.getQueueSize("async") >= 4);
+        Assert.assertEquals(this.dispatcher.getQueueSize("async"), this.dispatcher.getQueueSize());
+        Assert.assertEquals(0, this.dispatcher.getQueueSize("other"));
+
+        blocker.countDown();
+
+        // More events than the capacity of the queue to check back pressure
+        for (int i = 5; i < 50; ++i) {
+            Event event = new ActionExecutionEvent("action" + i);
+            sent.add(event);
+            this.dispatcher.dispatch(listener, event, null, null);
+        }
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(sent, listener.received);
+        Assert.assertFalse(listener.threads.contains(Thread.currentThread()));
+        Assert.assertEquals(0, this.dispatcher.getQueueSize());
+    }
+
+    @Test
+    public void dispatchFromDeliveryThreadDoesNotBlock() throws Exception
+    {
+        this.dispatcher.dispose();
+        this.dispatcher = new DefaultAsyncEventDispatcher(2, 1);
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        final TestAsyncEventListener blocked = new TestAsyncEventListener(2, blocker);
+
+        // One event being delivered and one filling the queue
+        this.dispatcher.dispatch(blocked, new ActionExecutionEvent("action0"), null, null);
+        this.dispatcher.dispatch(blocked, new ActionExecutionEvent("action1"), null, null);
+
+        final CountDownLatch sent = new CountDownLatch(1);
+        AsyncEventListener sender = new AsyncEventListener()
+        {
+            @Override
+            public String getName()
+            {
+                return "sender";
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return Arrays.<Event> asList(AllEvent.ALLEVENT);
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                dispatcher.dispatch(blocked, event, source, data);
+                sent.countDown();
+            }
+        };
+
+        // The second delivery thread must not wait for the blocked listener to make room in its queue
+        this.dispatcher.dispatch(sender, new ActionExecutionEvent("action2"), null, null);
+        Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+
+        blocker.countDown();
+
+        Assert.assertTrue(blocked.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.<Event> asList(new ActionExecutionEvent("action0"),
+            new ActionExecutionEvent("action1")), blocked.received);
+    }
+
+    @Test
+    public void dispatchAfterDisposeDoesNotBlock() throws Exception
+    {
+        this.dispatcher.dispose();
+        this.dispatcher = new DefaultAsyncEventDispatcher(1, 1);
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        TestAsyncEventListener listener = new TestAsyncEventListener(1, blocker);
+
+        // One event being delivered and one filling the queue
+        this.dispatcher.dispatch(listener, new ActionExecutionEvent("action0"), null, null);
+        this.dispatcher.dispatch(listener, new ActionExecutionEvent("action1"), null, null);
+
+        this.dispatcher.dispose();
+
+        // Would wait forever for room in the queue if the event was not dropped
+        this.dispatcher.dispatch(listener, new ActionExecutionEvent("action2"), null, null);
+
+        blocker.countDown();
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void removeListenerDropsWaitingEvents() throws Exception
+    {
+        CountDownLatch blocker = new CountDownLatch(1);
+        TestAsyncEventListener listener = new TestAsyncEventListener(1, blocker);
+
+        // The first event is being delivered and blocked, the others are waiting
+        for (int i = 0; i < 3; ++i) {
+            this.dispatcher.dispatch(listener, new ActionExecutionEvent("action" + i), null, null);
+        }
+        for (int i = 0; i < 100 && this.dispatcher.getQueueSize("async") > 2; ++i) {
+            Thread.sleep(100);
+        }
+
+        this.dispatcher.removeListener("async");
+        Assert.assertEquals(0, this.dispatcher.getQueueSize("async"));
+
+        blocker.countDown();
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(Arrays.<Event> asList(new ActionExecutionEvent("action0")), listener.received);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+/**
+ * A {@link VelocityContextInitializer} whose entries are the same for all the Velocity contexts and are never modified
+ * (for example singleton components or constants).
+ * <p>
+ * Such an initializer is called only once, with a shared read-only context which is used as the parent of the created
+ * contexts, instead of being called for each new context. The entries of the other initializers take precedence over
+ * the shared ones.
+ * <p>
+ * Note that since the shared entries are stored in the parent context they can be retrieved with
+ * {@link org.apache.velocity.VelocityContext#get(String)} and checked with
+ * {@link org.apache.velocity.VelocityContext#containsKey(Object)}, but they are not returned by
+ * {@link org.apache.velocity.VelocityContext#getKeys()} (nor by {@code internalGetKeys()}), which only lists the
+ * entries of the created context itself. Code which needs to enumerate all the available entries has to take the
+ * parent context ({@link org.apache.velocity.VelocityContext#getChainedContext()}) into account too.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public interface SharedVelocityContextInitializer extends VelocityContextInitializer
+{
+}
@@ -78,6 +78,17 @@
      */
     void clearMacroNamespace(String templateName);
 
+    /**
+     * Forget the parsed content of the passed template when parsed templates are cached (see the
+     * {@code xwiki.parsedtemplate.cache.size} Velocity property). The content of a template is part of the cache key
+     * so this is only needed to free memory or to force a template to be parsed again.
+     * 
+     * @param templateName the name of the template for which to forget the parsed content, null to forget all parsed
+     *            templates
+     * @since 5.0M2
+     */
+    void clearParsedTemplates(String templateName);
+
     /**
      * Notify that a rendering action is starting in the given namespace.
      * 
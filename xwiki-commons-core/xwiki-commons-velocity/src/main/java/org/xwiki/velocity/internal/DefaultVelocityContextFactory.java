@@ -19,8 +19,12 @@
  */
 package org.xwiki.velocity.internal;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -29,10 +33,13 @@
 import org.apache.velocity.context.Context;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.velocity.SharedVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
@@ -72,6 +79,59 @@ public class DefaultVelocityContextFactory implements VelocityContextFactory, In
      */
     private Context toolsContext;
 
+    /**
+     * The Velocity Context Initializers to call for each new context, null when they have to be looked up again.
+     */
+    private volatile InitializerPipeline pipeline;
+
+    /**
+     * Incremented each time the Velocity Context Initializers change, used to know if the pipeline is still valid.
+     */
+    private final AtomicLong initializersVersion = new AtomicLong();
+
+    /**
+     * The Velocity Context Initializers looked up from the component manager.
+     *
+     * @version $Id$
+     */
+    private static final class InitializerPipeline
+    {
+        /**
+         * The version of the Velocity Context Initializers the pipeline has been created from.
+         */
+        private final long version;
+
+        /**
+         * The read-only context initialized by the {@link SharedVelocityContextInitializer}s, with the tools as parent.
+         */
+        private final Context sharedContext;
+
+        /**
+         * The singleton initializers to call for each new context.
+         */
+        private final List<VelocityContextInitializer> initializers;
+
+        /**
+         * The hints of the initializers which have to be looked up for each new context.
+         */
+        private final List<String> perLookupHints;
+
+        /**
+         * @param version the version of the Velocity Context Initializers the pipeline is created from
+         * @param sharedContext the read-only context initialized by the shared initializers
+         * @param initializers the singleton initializers to call for each new context
+         * @param perLookupHints the hints of the initializers which have to be looked up for each new context
+         */
+        InitializerPipeline(long version, Context sharedContext, List<VelocityContextInitializer> initializers,
+            List<String> perLookupHints)
+        {
+            this.version = version;
+            this.sharedContext = sharedContext;
+            this.initializers = initializers;
+            this.perLookupHints = perLookupHints;
+        }
+    }
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -98,18 +158,73 @@ public void initialize() throws InitializationException
     @Override
     public VelocityContext createContext() throws XWikiVelocityException
     {
-        // Note: This constructor uses the passed context as an internal read-only context.
-        VelocityContext context = new VelocityContext(this.toolsContext);
-
-        // Call all components implementing the VelocityContextInitializer's role.
         try {
-            for (Object interceptor : this.componentManager.getInstanceList(VelocityContextInitializer.class)) {
-                ((VelocityContextInitializer) interceptor).initialize(context);
+            InitializerPipeline currentPipeline = getPipeline();
+
+            // Note: This constructor uses the passed context as an internal read-only context.
+            VelocityContext context = new VelocityContext(currentPipeline.sharedContext);
+
+            // Call all components implementing the VelocityContextInitializer's role.
+            for (VelocityContextInitializer initializer : currentPipeline.initializers) {
+                initializer.initialize(context);
             }
+            for (String hint : currentPipeline.perLookupHints) {
+                this.componentManager.<VelocityContextInitializer> getInstance(VelocityContextInitializer.class, hint)
+                    .initialize(context);
+            }
+
+            return context;
         } catch (ComponentLookupException e) {
             throw new XWikiVelocityException("Failed to locate some Velocity Context initializers", e);
         }
+    }
+
+    /**
+     * Forget the Velocity Context Initializers so that they are looked up again when the next context is created.
+     * <p>
+     * Called when a Velocity Context Initializer is registered or unregistered.
+     *
+     * @since 5.0M2
+     */
+    public void resetInitializers()
+    {
+        this.initializersVersion.incrementAndGet();
+    }
+
+    /**
+     * @return the Velocity Context Initializers to call, looked up again if they changed since the last call
+     * @throws ComponentLookupException when failing to lookup the Velocity Context Initializers
+     */
+    private InitializerPipeline getPipeline() throws ComponentLookupException
+    {
+        long version = this.initializersVersion.get();
+
+        InitializerPipeline currentPipeline = this.pipeline;
+        if (currentPipeline == null || currentPipeline.version != version) {
+            VelocityContext sharedContext = new VelocityContext(this.toolsContext);
+            List<VelocityContextInitializer> initializers = new ArrayList<VelocityContextInitializer>();
+            List<String> perLookupHints = new ArrayList<String>();
+
+            for (ComponentDescriptor<VelocityContextInitializer> descriptor : this.componentManager
+                .<VelocityContextInitializer> getComponentDescriptorList((Type) VelocityContextInitializer.class)) {
+                if (descriptor.getInstantiationStrategy() == ComponentInstantiationStrategy.PER_LOOKUP) {
+                    perLookupHints.add(descriptor.getRoleHint());
+                } else {
+                    VelocityContextInitializer initializer =
+                        this.componentManager.getInstance(VelocityContextInitializer.class, descriptor.getRoleHint());
+                    if (initializer instanceof SharedVelocityContextInitializer) {
+                        initializer.initialize(sharedContext);
+                    } else {
+                        initializers.add(initializer);
+                    }
+                }
+            }
+
+            // If the initializers changed in the meantime the pipeline will be created again for the next context
+            currentPipeline = new InitializerPipeline(version, sharedContext, initializers, perLookupHints);
+            this.pipeline = currentPipeline;
+        }
 
-        return context;
+        return currentPipeline;
     }
 }
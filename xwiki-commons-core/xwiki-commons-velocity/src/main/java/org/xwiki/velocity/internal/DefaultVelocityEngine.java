@@ -23,8 +23,6 @@
 import java.io.StringReader;
 import java.io.Writer;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 
 import javax.inject.Inject;
@@ -35,7 +33,6 @@
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.runtime.directive.Scope;
 import org.apache.velocity.runtime.directive.StopCommand;
-import org.apache.velocity.runtime.parser.node.SimpleNode;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
@@ -66,6 +63,22 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
      */
     private static final String TEMPLATE_SCOPE_NAME = "template";
 
+    /**
+     * The Velocity property containing the maximum number of parsed templates to cache, 0 (the default) to disable the
+     * cache.
+     */
+    private static final String PARSEDTEMPLATE_CACHE_SIZE = "xwiki.parsedtemplate.cache.size";
+
+    /**
+     * The Velocity property containing the maximum total length of the contents of the cached parsed templates.
+     */
+    private static final String PARSEDTEMPLATE_CACHE_WEIGHT = "xwiki.parsedtemplate.cache.weight";
+
+    /**
+     * The default maximum total length of the contents of the cached parsed templates.
+     */
+    private static final long DEFAULT_PARSEDTEMPLATE_CACHE_WEIGHT = 10000000L;
+
     /**
      * Used to set it as a Velocity Application Attribute so that Velocity extensions done by XWiki can use it to lookup
      * other components.
@@ -103,7 +116,12 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
     private RuntimeServices rsvc;
 
     /** Counter for the number of active rendering processes using each namespace. */
-    private final Map<String, Integer> namespaceUsageCount = new HashMap<String, Integer>();
+    private final MacroNamespaceUsageCounter namespaceUsageCount = new MacroNamespaceUsageCounter();
+
+    /**
+     * The cached parsed templates and the parsing statistics.
+     */
+    private ParsedTemplateCache parsedTemplateCache = new ParsedTemplateCache(0, 0);
 
     @Override
     public void initialize(Properties overridingProperties) throws XWikiVelocityException
@@ -122,6 +140,19 @@ public void initialize(Properties overridingProperties) throws XWikiVelocityExce
         }
 
         this.engine = velocityEngine;
+
+        this.parsedTemplateCache =
+            new ParsedTemplateCache(this.rsvc.getInt(PARSEDTEMPLATE_CACHE_SIZE, 0), this.rsvc.getConfiguration()
+                .getLong(PARSEDTEMPLATE_CACHE_WEIGHT, DEFAULT_PARSEDTEMPLATE_CACHE_WEIGHT));
+    }
+
+    /**
+     * @return the cached parsed templates and the parsing statistics
+     * @since 5.0M2
+     */
+    public ParsedTemplateCache getParsedTemplateCache()
+    {
+        return this.parsedTemplateCache;
     }
 
     /**
@@ -200,16 +231,9 @@ public boolean evaluate(Context context, Writer out, String templateName, Reader
         // We override the default implementation here. See #init(RuntimeServices)
         // for explanations.
         try {
-            SimpleNode nodeTree = null;
+            ParsedTemplateCache.Entry template = this.parsedTemplateCache.parse(templateName, source, this.rsvc);
 
-            // The trick is done here: We use the signature that allows
-            // passing a boolean and we pass false, thus preventing Velocity
-            // from cleaning the context of its velocimacros even though the
-            // config property velocimacro.permissions.allow.inline.local.scope
-            // is set to true.
-            nodeTree = this.rsvc.parse(source, templateName, false);
-
-            if (nodeTree != null) {
+            if (template != null) {
                 InternalContextAdapterImpl ica =
                     new InternalContextAdapterImpl(context != null ? context
                         : this.velocityContextFactory.createContext());
@@ -224,8 +248,8 @@ public boolean evaluate(Context context, Writer out, String templateName, Reader
                     ica.put(TEMPLATE_SCOPE_NAME, templateScope);
                 }
                 try {
-                    nodeTree.init(ica, this.rsvc);
-                    nodeTree.render(ica, out);
+                    this.parsedTemplateCache.initialize(template, ica, this.rsvc);
+                    template.getNodeTree().render(ica, out);
                 } catch (StopCommand stop) {
                     // Check if we're supposed to stop here or not:
                     // - stop if the template is breaking explicitly on the provided $template
@@ -248,6 +272,12 @@ public boolean evaluate(Context context, Writer out, String templateName, Reader
         }
     }
 
+    @Override
+    public void clearParsedTemplates(String templateName)
+    {
+        this.parsedTemplateCache.remove(templateName);
+    }
+
     @Override
     public void clearMacroNamespace(String templateName)
     {
@@ -257,33 +287,24 @@ public void clearMacroNamespace(String templateName)
     @Override
     public void startedUsingMacroNamespace(String namespace)
     {
-        synchronized (this.namespaceUsageCount) {
-            Integer count = this.namespaceUsageCount.get(namespace);
-            if (count == null) {
-                count = Integer.valueOf(0);
-            }
-            count = count + 1;
-            this.namespaceUsageCount.put(namespace, count);
-        }
+        this.namespaceUsageCount.start(namespace);
     }
 
     @Override
     public void stoppedUsingMacroNamespace(String namespace)
     {
-        synchronized (this.namespaceUsageCount) {
-            Integer count = this.namespaceUsageCount.get(namespace);
-            if (count == null) {
-                // This shouldn't happen
-                this.logger.warn("Wrong usage count for namespace [{}]", namespace);
-                return;
-            }
-            count = count - 1;
-            if (count <= 0) {
-                this.namespaceUsageCount.remove(namespace);
+        int count = this.namespaceUsageCount.stop(namespace);
+        if (count == 0) {
+            // The namespace is cleared before its count is removed so that it can't be used again before being cleared
+            try {
                 this.clearMacroNamespace(namespace);
-            } else {
-                this.namespaceUsageCount.put(namespace, count);
+            } finally {
+                // Always release the namespace, otherwise the threads waiting to use it would wait forever
+                this.namespaceUsageCount.remove(namespace);
             }
+        } else if (count < 0) {
+            // This shouldn't happen
+            this.logger.warn("Wrong usage count for namespace [{}]", namespace);
         }
     }
 
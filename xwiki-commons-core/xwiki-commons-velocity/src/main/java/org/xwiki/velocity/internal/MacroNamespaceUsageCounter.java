@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free counter of the number of active rendering processes using each macro namespace.
+ * <p>
+ * When the count of a namespace reaches 0 it is kept until {@link #remove(String)} is called, and the namespace can't
+ * be used again in the meantime. This gives the caller the time to clear the namespace before someone else uses it.
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+class MacroNamespaceUsageCounter
+{
+    /**
+     * The number of times a thread yields while waiting for a namespace to be cleared before it starts parking.
+     */
+    private static final int MAX_SPINS = 100;
+
+    /**
+     * The time (in nanoseconds) a thread parks between two checks once it has spun {@link #MAX_SPINS} times.
+     */
+    private static final long PARK_NANOS = 1000000L;
+
+    /**
+     * The usage count of each namespace.
+     */
+    private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Increment the usage count of the passed namespace, waiting for it to be removed if it has reached 0.
+     * <p>
+     * The wait is a short spin followed by periodic parking so that a slow namespace clearing doesn't burn the CPU.
+     * 
+     * @param namespace the namespace
+     */
+    void start(String namespace)
+    {
+        for (int spins = 0;; ++spins) {
+            AtomicInteger count = this.counts.get(namespace);
+            if (count == null) {
+                count = this.counts.putIfAbsent(namespace, new AtomicInteger(1));
+                if (count == null) {
+                    return;
+                }
+            }
+
+            // A count of 0 means the namespace is being cleared and the count will be removed, so wait for a new one
+            for (int current = count.get(); current > 0; current = count.get()) {
+                if (count.compareAndSet(current, current + 1)) {
+                    return;
+                }
+            }
+
+            if (spins < MAX_SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Decrement the usage count of the passed namespace. When it reaches 0, {@link #remove(String)} has to be called.
+     * 
+     * @param namespace the namespace
+     * @return the new usage count, -1 if the namespace was not used
+     */
+    int stop(String namespace)
+    {
+        AtomicInteger count = this.counts.get(namespace);
+        if (count != null) {
+            for (int current = count.get(); current > 0; current = count.get()) {
+                if (count.compareAndSet(current, current - 1)) {
+                    return current - 1;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Forget the usage count of a namespace which has reached 0 so that it can be used again.
+     * 
+     * @param namespace the namespace
+     */
+    void remove(String namespace)
+    {
+        AtomicInteger count = this.counts.get(namespace);
+        if (count != null && count.get() == 0) {
+            this.counts.remove(namespace, count);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.TemplateInitException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.directive.Macro;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * A bounded cache of the Velocity trees parsed by {@link DefaultVelocityEngine}, indexed by template name and content
+ * hash. The least recently used trees are evicted when there are more than the maximum number of trees or when the
+ * total length of the contents they have been parsed from exceeds the maximum weight.
+ * <p>
+ * Also keeps statistics about the parsing of the templates (even when the cache is disabled).
+ * 
+ * @version $Id$
+ * @since 5.0M2
+ */
+public class ParsedTemplateCache
+{
+    /**
+     * The name of the directive defining a macro.
+     */
+    private static final String MACRO_DIRECTIVE = "macro";
+
+    /**
+     * A parsed template.
+     * 
+     * @version $Id$
+     */
+    public static class Entry
+    {
+        /**
+         * @see #getKey()
+         */
+        private final String key;
+
+        /**
+         * @see #getTemplateName()
+         */
+        private final String templateName;
+
+        /**
+         * @see #getNodeTree()
+         */
+        private final SimpleNode nodeTree;
+
+        /**
+         * The length of the content the tree has been parsed from.
+         */
+        private final int weight;
+
+        /**
+         * @see #getMacros()
+         */
+        private volatile List<Node> macros;
+
+        /**
+         * @param key the key of the tree in the cache, null if it's not supposed to be cached
+         * @param templateName the name of the template
+         * @param nodeTree the parsed tree
+         * @param weight the length of the content the tree has been parsed from
+         */
+        public Entry(String key, String templateName, SimpleNode nodeTree, int weight)
+        {
+            this.key = key;
+            this.templateName = templateName;
+            this.nodeTree = nodeTree;
+            this.weight = weight;
+        }
+
+        /**
+         * @return the key of the tree in the cache, null if it's not supposed to be cached
+         */
+        public String getKey()
+        {
+            return this.key;
+        }
+
+        /**
+         * @return the name of the template
+         */
+        public String getTemplateName()
+        {
+            return this.templateName;
+        }
+
+        /**
+         * @return the parsed tree, already initialized when the entry comes from the cache
+         */
+        public SimpleNode getNodeTree()
+        {
+            return this.nodeTree;
+        }
+
+        /**
+         * @return true if the entry comes from the cache
+         */
+        public boolean isCached()
+        {
+            return this.macros != null;
+        }
+
+        /**
+         * @return the macro definition nodes of the tree when the entry comes from the cache, they have to be
+         *         registered again in the template namespace each time the tree is reused since the namespace might
+         *         have been cleared in the meantime
+         */
+        public List<Node> getMacros()
+        {
+            return this.macros;
+        }
+    }
+
+    /**
+     * The maximum number of cached trees, 0 when the cache is disabled.
+     */
+    private final int maxSize;
+
+    /**
+     * The maximum total length of the contents of the cached trees.
+     */
+    private final long maxWeight;
+
+    /**
+     * The cached trees, the least recently used first.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+
+    /**
+     * The total length of the contents of the cached trees.
+     */
+    private long weight;
+
+    /**
+     * @see #getHits()
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * @see #getMisses()
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @see #getParseCount()
+     */
+    private final AtomicLong parseCount = new AtomicLong();
+
+    /**
+     * @see #getParseTime()
+     */
+    private final AtomicLong parseTime = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of cached trees, 0 to disable the cache
+     * @param maxWeight the maximum total length of the contents of the cached trees
+     */
+    public ParsedTemplateCache(int maxSize, long maxWeight)
+    {
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * @return true if the parsed trees are cached
+     */
+    public boolean isEnabled()
+    {
+        return this.maxSize > 0;
+    }
+
+    /**
+     * @param templateName the name of the template
+     * @param content the content of the template
+     * @return the key of the tree parsed from the passed content
+     */
+    public static String getKey(String templateName, String content)
+    {
+        return DigestUtils.md5Hex(content) + ':' + templateName;
+    }
+
+    /**
+     * Parse the passed template or get it from the cache.
+     * 
+     * @param templateName the name of the template
+     * @param source the content of the template
+     * @param runtimeServices the Velocity runtime
+     * @return the parsed template, null if Velocity failed to parse it
+     * @throws ParseException when failing to parse the template
+     * @throws IOException when failing to read the template
+     */
+    public Entry parse(String templateName, Reader source, RuntimeServices runtimeServices) throws ParseException,
+        IOException
+    {
+        if (!isEnabled()) {
+            SimpleNode nodeTree = parse(source, templateName, runtimeServices);
+
+            return nodeTree != null ? new Entry(null, templateName, nodeTree, 0) : null;
+        }
+
+        String content = read(source);
+        String key = getKey(templateName, content);
+
+        Entry entry = get(key);
+        if (entry == null) {
+            SimpleNode nodeTree = parse(new StringReader(content), templateName, runtimeServices);
+            if (nodeTree != null) {
+                entry = new Entry(key, templateName, nodeTree, content.length());
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * @param source the content of the template
+     * @param templateName the name of the template
+     * @param runtimeServices the Velocity runtime
+     * @return the parsed tree
+     * @throws ParseException when failing to parse the template
+     */
+    private SimpleNode parse(Reader source, String templateName, RuntimeServices runtimeServices)
+        throws ParseException
+    {
+        long start = System.nanoTime();
+
+        try {
+            // The trick is done here: We use the signature that allows
+            // passing a boolean and we pass false, thus preventing Velocity
+            // from cleaning the context of its velocimacros even though the
+            // config property velocimacro.permissions.allow.inline.local.scope
+            // is set to true.
+            return runtimeServices.parse(source, templateName, false);
+        } finally {
+            this.parseCount.incrementAndGet();
+            this.parseTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param source the content to read
+     * @return the content as a String
+     * @throws IOException when failing to read the content
+     */
+    private static String read(Reader source) throws IOException
+    {
+        StringBuilder builder = new StringBuilder();
+
+        char[] buffer = new char[4096];
+        for (int length = source.read(buffer); length != -1; length = source.read(buffer)) {
+            builder.append(buffer, 0, length);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @param key the key of the tree
+     * @return the cached tree or null if there is none
+     */
+    public Entry get(String key)
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+
+        if (entry != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Initialize the parsed tree of the passed template and cache it. A tree coming from the cache is already
+     * initialized but the macros it defines are registered again since they might have been removed from the template
+     * namespace since the tree was initialized.
+     * 
+     * @param entry the parsed template
+     * @param context the context
+     * @param runtimeServices the Velocity runtime
+     * @throws TemplateInitException when failing to initialize the tree
+     */
+    public void initialize(Entry entry, InternalContextAdapter context, RuntimeServices runtimeServices)
+        throws TemplateInitException
+    {
+        if (entry.isCached()) {
+            for (Node macro : entry.getMacros()) {
+                new Macro().init(runtimeServices, context, macro);
+            }
+        } else {
+            entry.getNodeTree().init(context, runtimeServices);
+
+            put(entry);
+        }
+    }
+
+    /**
+     * @param entry the initialized parsed template to cache
+     */
+    public void put(Entry entry)
+    {
+        if (!isEnabled() || entry.key == null || entry.weight > this.maxWeight) {
+            return;
+        }
+
+        List<Node> foundMacros = new ArrayList<Node>();
+        collectMacros(entry.nodeTree, foundMacros);
+        entry.macros = Collections.unmodifiableList(foundMacros);
+
+        synchronized (this) {
+            Entry previousEntry = this.entries.put(entry.key, entry);
+            if (previousEntry != null) {
+                this.weight -= previousEntry.weight;
+            }
+            this.weight += entry.weight;
+
+            // Evict the least recently used trees
+            for (Iterator<Entry> it = this.entries.values().iterator(); it.hasNext()
+                && (this.entries.size() > this.maxSize || this.weight > this.maxWeight);) {
+                this.weight -= it.next().weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param node the node from which to start looking for macro definitions
+     * @param foundMacros the list where to put the found macro definitions
+     */
+    private static void collectMacros(Node node, List<Node> foundMacros)
+    {
+        if (node instanceof ASTDirective && MACRO_DIRECTIVE.equals(((ASTDirective) node).getDirectiveName())) {
+            foundMacros.add(node);
+        }
+
+        for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+            collectMacros(node.jjtGetChild(i), foundMacros);
+        }
+    }
+
+    /**
+     * Forget the trees parsed for the passed template.
+     * 
+     * @param templateName the name of the template, null to forget all the trees
+     */
+    public synchronized void remove(String templateName)
+    {
+        for (Iterator<Entry> it = this.entries.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (templateName == null || templateName.equals(entry.templateName)) {
+                this.weight -= entry.weight;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached trees
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the total length of the contents of the cached trees
+     */
+    public synchronized long getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * @return the number of times a tree has been found in the cache
+     */
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of times a tree has not been found in the cache
+     */
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of parsed templates
+     */
+    public long getParseCount()
+    {
+        return this.parseCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds spent parsing templates
+     */
+    public long getParseTime()
+    {
+        return this.parseTime.get() / 1000000L;
+    }
+}
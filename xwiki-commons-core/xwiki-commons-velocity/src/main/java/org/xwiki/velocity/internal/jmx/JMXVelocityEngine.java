@@ -20,6 +20,8 @@
 package org.xwiki.velocity.internal.jmx;
 
 import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.internal.DefaultVelocityEngine;
+import org.xwiki.velocity.internal.ParsedTemplateCache;
 
 import javax.management.openmbean.ArrayType;
 import javax.management.openmbean.CompositeData;
@@ -99,6 +101,64 @@ public TabularData getTemplates()
         return data;
     }
 
+    @Override
+    public long getParsedTemplateCacheHits()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateCacheMisses()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    @Override
+    public int getParsedTemplateCacheSize()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public long getParseCount()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getParseCount() : 0;
+    }
+
+    @Override
+    public long getParseTime()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getParseTime() : 0;
+    }
+
+    @Override
+    public void clearParsedTemplateCache()
+    {
+        this.engine.clearParsedTemplates(null);
+    }
+
+    /**
+     * @return the cached parsed templates and parsing statistics of the engine, null if the engine doesn't provide any
+     */
+    private ParsedTemplateCache getParsedTemplateCache()
+    {
+        if (this.engine instanceof DefaultVelocityEngine) {
+            return ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+        }
+
+        return null;
+    }
+
     /**
      * @return the data using standard Java classes, {@link #getTemplates()} wraps it in generic Open types to make the
      *         returned data portable and accessible remotely from a JMX management console
@@ -25,6 +25,7 @@
  * MBean API related to Velocity Engines. Supports the following features:
  * <ul>
  *   <li>Retrieve list of template namespaces along with the name of macros registered in each template namespace</li>
+ *   <li>Retrieve statistics about the parsing of templates and the cache of parsed templates</li>
  * </ul>
  *
  * @version $Id$
@@ -36,4 +37,41 @@
      * @return the list of template namespaces along with the name of macros registered in each template namespace
      */
     TabularData getTemplates();
+
+    /**
+     * @return the number of times a parsed template has been found in the cache
+     * @since 5.0M2
+     */
+    long getParsedTemplateCacheHits();
+
+    /**
+     * @return the number of times a parsed template has not been found in the cache
+     * @since 5.0M2
+     */
+    long getParsedTemplateCacheMisses();
+
+    /**
+     * @return the number of cached parsed templates
+     * @since 5.0M2
+     */
+    int getParsedTemplateCacheSize();
+
+    /**
+     * @return the number of parsed templates
+     * @since 5.0M2
+     */
+    long getParseCount();
+
+    /**
+     * @return the total time in milliseconds spent parsing templates
+     * @since 5.0M2
+     */
+    long getParseTime();
+
+    /**
+     * Forget all the cached parsed templates.
+     * 
+     * @since 5.0M2
+     */
+    void clearParsedTemplateCache();
 }
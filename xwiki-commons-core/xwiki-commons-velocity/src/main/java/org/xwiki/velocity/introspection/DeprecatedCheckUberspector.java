@@ -20,7 +20,11 @@
 package org.xwiki.velocity.introspection;
 
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.velocity.util.introspection.Info;
 import org.apache.velocity.util.introspection.Introspector;
 import org.apache.velocity.util.introspection.Uberspect;
@@ -34,6 +38,10 @@
  * if the returned method has a Deprecated annotation. Because this is a chainable uberspector, it
  * has to re-get the method using a default introspector, which is not safe; future uberspectors
  * might not be able to return a precise method name, or a method of the original target object.
+ * <p>
+ * Whether a method is deprecated is remembered for each class, method name and argument types, so
+ * that the reflection checks are done only once. A warning is logged only once for each template
+ * location and at most {@value #MAX_WARNINGS_PER_PERIOD} warnings are logged per minute.
  * 
  * @since 1.5M1
  * @version $Id$
@@ -42,6 +50,115 @@
 public class DeprecatedCheckUberspector extends AbstractChainableUberspector implements Uberspect,
     ChainableUberspector, UberspectLoggable
 {
+    /**
+     * The maximum number of warnings logged during {@link #WARNING_PERIOD}.
+     */
+    private static final int MAX_WARNINGS_PER_PERIOD = 100;
+
+    /**
+     * The period in milliseconds during which at most {@link #MAX_WARNINGS_PER_PERIOD} warnings are logged.
+     */
+    private static final long WARNING_PERIOD = 60000L;
+
+    /**
+     * The maximum number of remembered template locations for which a warning has been logged. They are all forgotten
+     * when there are more.
+     */
+    private static final int MAX_WARNED_LOCATIONS = 10000;
+
+    /**
+     * Whether the methods are deprecated, indexed by class and then by method name and argument types. The classes are
+     * weakly referenced so that they can still be unloaded.
+     */
+    private final Map<Class< ? >, Map<String, Boolean>> deprecatedMethods =
+        new WeakHashMap<Class< ? >, Map<String, Boolean>>();
+
+    /**
+     * The deprecated usages (template location and method) for which a warning has already been logged.
+     */
+    private final Map<WarningLocation, Boolean> warnedLocations = new ConcurrentHashMap<WarningLocation, Boolean>();
+
+    /**
+     * The time when the current warning period started.
+     */
+    private long warningPeriodStart;
+
+    /**
+     * The number of warnings logged since the start of the current warning period.
+     */
+    private int warningCount;
+
+    /**
+     * A deprecated method used at a given template location.
+     */
+    private static final class WarningLocation
+    {
+        /**
+         * The name of the template.
+         */
+        private final String templateName;
+
+        /**
+         * The line in the template.
+         */
+        private final int line;
+
+        /**
+         * The column in the template.
+         */
+        private final int column;
+
+        /**
+         * The name of the deprecated method.
+         */
+        private final String methodName;
+
+        /**
+         * The precomputed hash code.
+         */
+        private final int hashCode;
+
+        /**
+         * @param info the template location
+         * @param methodName the name of the deprecated method
+         */
+        WarningLocation(Info info, String methodName)
+        {
+            this.templateName = info.getTemplateName();
+            this.line = info.getLine();
+            this.column = info.getColumn();
+            this.methodName = methodName;
+
+            int hash = this.templateName != null ? this.templateName.hashCode() : 0;
+            hash = 31 * hash + this.line;
+            hash = 31 * hash + this.column;
+            this.hashCode = 31 * hash + (this.methodName != null ? this.methodName.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object object)
+        {
+            if (object == this) {
+                return true;
+            }
+            if (!(object instanceof WarningLocation)) {
+                return false;
+            }
+
+            WarningLocation other = (WarningLocation) object;
+
+            return this.line == other.line && this.column == other.column
+                && StringUtils.equals(this.templateName, other.templateName)
+                && StringUtils.equals(this.methodName, other.methodName);
+        }
+    }
+
     @Override
     public void init()
     {
@@ -54,13 +171,8 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
         throws Exception
     {
         VelMethod method = super.getMethod(obj, methodName, args, i);
-        if (method != null) {
-            Method m = introspector.getMethod(obj.getClass(), method.getMethodName(), args);
-            if (m != null
-                && (m.isAnnotationPresent(Deprecated.class) || m.getDeclaringClass().isAnnotationPresent(
-                    Deprecated.class))) {
-                logWarning("method", obj, method.getMethodName(), i);
-            }
+        if (method != null && isDeprecated(obj.getClass(), method.getMethodName(), args)) {
+            logWarning("method", obj, method.getMethodName(), i);
         }
 
         return method;
@@ -70,13 +182,8 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
     public VelPropertyGet getPropertyGet(Object obj, String identifier, Info i) throws Exception
     {
         VelPropertyGet method = super.getPropertyGet(obj, identifier, i);
-        if (method != null) {
-            Method m = introspector.getMethod(obj.getClass(), method.getMethodName(), new Object[] {});
-            if (m != null
-                && (m.isAnnotationPresent(Deprecated.class) || m.getDeclaringClass().isAnnotationPresent(
-                    Deprecated.class))) {
-                logWarning("getter", obj, method.getMethodName(), i);
-            }
+        if (method != null && isDeprecated(obj.getClass(), method.getMethodName(), new Object[] {})) {
+            logWarning("getter", obj, method.getMethodName(), i);
         }
 
         return method;
@@ -85,20 +192,51 @@ public VelPropertyGet getPropertyGet(Object obj, String identifier, Info i) thro
     @Override
     public VelPropertySet getPropertySet(Object obj, String identifier, Object arg, Info i) throws Exception
     {
-        // TODO Auto-generated method stub
         VelPropertySet method = super.getPropertySet(obj, identifier, arg, i);
-        if (method != null) {
-            Method m = introspector.getMethod(obj.getClass(), method.getMethodName(), new Object[] {arg});
-            if (m != null
-                && (m.isAnnotationPresent(Deprecated.class) || m.getDeclaringClass().isAnnotationPresent(
-                    Deprecated.class))) {
-                logWarning("setter", obj, method.getMethodName(), i);
-            }
+        if (method != null && isDeprecated(obj.getClass(), method.getMethodName(), new Object[] {arg})) {
+            logWarning("setter", obj, method.getMethodName(), i);
         }
 
         return method;
     }
 
+    /**
+     * @param type the class of the object the method is called on
+     * @param methodName the name of the called method
+     * @param args the arguments passed to the method
+     * @return true if the method matching the passed arguments, or the class declaring it, is deprecated
+     */
+    private boolean isDeprecated(Class< ? > type, String methodName, Object[] args)
+    {
+        Map<String, Boolean> classMethods;
+        synchronized (this.deprecatedMethods) {
+            classMethods = this.deprecatedMethods.get(type);
+            if (classMethods == null) {
+                classMethods = new ConcurrentHashMap<String, Boolean>();
+                this.deprecatedMethods.put(type, classMethods);
+            }
+        }
+
+        // Only the class names of the arguments are used so that the cache does not keep a reference to their classes
+        StringBuilder key = new StringBuilder(methodName);
+        for (Object arg : args) {
+            key.append(',');
+            key.append(arg != null ? arg.getClass().getName() : null);
+        }
+
+        Boolean deprecated = classMethods.get(key.toString());
+        if (deprecated == null) {
+            Method m = introspector.getMethod(type, methodName, args);
+            deprecated =
+                m != null
+                    && (m.isAnnotationPresent(Deprecated.class) || m.getDeclaringClass().isAnnotationPresent(
+                        Deprecated.class));
+            classMethods.put(key.toString(), deprecated);
+        }
+
+        return deprecated;
+    }
+
     /**
      * Helper method to log a warning when a deprecation has been found.
      * 
@@ -110,8 +248,37 @@ public VelPropertySet getPropertySet(Object obj, String identifier, Object arg,
      */
     private void logWarning(String deprecationType, Object object, String methodName, Info info)
     {
-        log.warn(String.format("Deprecated usage of %s [%s] in %s@%d,%d", deprecationType, object
-            .getClass().getCanonicalName()
-            + "." + methodName, info.getTemplateName(), info.getLine(), info.getColumn()));
+        WarningLocation location = new WarningLocation(info, methodName);
+
+        if (!this.warnedLocations.containsKey(location) && acquireWarning()) {
+            if (this.warnedLocations.size() >= MAX_WARNED_LOCATIONS) {
+                this.warnedLocations.clear();
+            }
+            if (this.warnedLocations.put(location, Boolean.TRUE) == null) {
+                // The message is built only when it's actually logged
+                log.warn("Deprecated usage of " + deprecationType + " [" + object.getClass().getCanonicalName() + '.'
+                    + methodName + "] in " + info.getTemplateName() + '@' + info.getLine() + ',' + info.getColumn());
+            }
+        }
+    }
+
+    /**
+     * @return true if a warning can be logged without exceeding the maximum number of warnings of the current period
+     */
+    private synchronized boolean acquireWarning()
+    {
+        long now = System.currentTimeMillis();
+        if (now - this.warningPeriodStart >= WARNING_PERIOD) {
+            this.warningPeriodStart = now;
+            this.warningCount = 0;
+        }
+
+        if (this.warningCount < MAX_WARNINGS_PER_PERIOD) {
+            ++this.warningCount;
+
+            return true;
+        }
+
+        return false;
     }
 }
@@ -22,6 +22,7 @@
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
+import org.apache.commons.lang3.ClassUtils;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.util.RuntimeServicesAware;
 import org.apache.velocity.util.introspection.Info;
@@ -72,11 +73,12 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
         VelMethod method = super.getMethod(obj, methodName, args, i);
         if (method == null && this.converterManager != null) {
             // Try to convert method arguments to formal parameter types.
-            Object[] convertedArguments = this.convertArguments(obj, methodName, args);
-            if (convertedArguments != null) {
-                method = super.getMethod(obj, methodName, convertedArguments, i);
+            Method convertibleMethod = getConvertibleMethod(obj, methodName, args);
+            if (convertibleMethod != null) {
+                ConversionPlan plan = new ConversionPlan(convertibleMethod.getParameterTypes());
+                method = super.getMethod(obj, methodName, plan.convert(args), i);
                 if (method != null) {
-                    method = new ConvertingVelMethod(method);
+                    method = new ConvertingVelMethod(method, plan);
                 }
             }
         }
@@ -84,21 +86,22 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
     }
 
     /**
-     * Converts the given arguments to match a method with the specified name and the same number of formal parameters
-     * as the number of arguments.
+     * Looks for a method with the specified name and the same number of formal parameters as the number of arguments
+     * to which the given arguments can be converted.
      * 
      * @param obj the object the method is invoked on, used to retrieve the list of available methods
      * @param methodName the method we're looking for
      * @param args the method arguments
-     * @return a new array of arguments where some values have been converted to match the formal method parameter
-     *         types, {@code null} if no such method is found
+     * @return the first method to which the arguments can be converted, {@code null} if no such method is found
      */
-    private Object[] convertArguments(Object obj, String methodName, Object[] args)
+    private Method getConvertibleMethod(Object obj, String methodName, Object[] args)
     {
         for (Method method : obj.getClass().getMethods()) {
             if (method.getName().equalsIgnoreCase(methodName) && method.getParameterTypes().length == args.length) {
                 try {
-                    return convertArguments(args, method.getParameterTypes());
+                    new ConversionPlan(method.getParameterTypes()).convert(args);
+
+                    return method;
                 } catch (Exception e) {
                     // Ignore and try the next method.
                 }
@@ -108,24 +111,71 @@ private Object[] convertArguments(Object obj, String methodName, Object[] args)
     }
 
     /**
-     * Tries to convert the given arguments to match the specified formal parameters types.
-     * <p>
-     * Throws a runtime exception if the conversion fails.
+     * Converts the given arguments to match a method with the specified name and the same number of formal parameters
+     * as the number of arguments.
      * 
-     * @param arguments the method actual arguments
-     * @param parameterTypes the method formal parameter types
-     * @return a new array of arguments where some values have been converted to match the formal method parameter types
+     * @param obj the object the method is invoked on, used to retrieve the list of available methods
+     * @param methodName the method we're looking for
+     * @param args the method arguments
+     * @return a new array of arguments where some values have been converted to match the formal method parameter
+     *         types, {@code null} if no such method is found
+     */
+    private Object[] convertArguments(Object obj, String methodName, Object[] args)
+    {
+        Method method = getConvertibleMethod(obj, methodName, args);
+
+        return method != null ? new ConversionPlan(method.getParameterTypes()).convert(args) : null;
+    }
+
+    /**
+     * The conversions to apply to the arguments of a method, resolved once when the method is found.
+     *
+     * @version $Id$
      */
-    private Object[] convertArguments(Object[] arguments, Class< ? >[] parameterTypes)
+    private class ConversionPlan
     {
-        Object[] convertedArguments = Arrays.copyOf(arguments, arguments.length);
-        for (int i = 0; i < parameterTypes.length; i++) {
-            // Try to convert the argument if it's not null and if it doesn't match the parameter type.
-            if (arguments[i] != null && !parameterTypes[i].isInstance(arguments[i])) {
-                convertedArguments[i] = this.converterManager.convert(parameterTypes[i], arguments[i]);
+        /** The method formal parameter types, the target types of the conversions. */
+        private final Class< ? >[] parameterTypes;
+
+        /**
+         * The types the arguments must be instances of to be passed as is, i.e. the formal parameter types with
+         * primitive types replaced by their wrapper types (boxed arguments don't need to be converted).
+         */
+        private final Class< ? >[] instanceTypes;
+
+        /**
+         * @param parameterTypes the method formal parameter types
+         */
+        ConversionPlan(Class< ? >[] parameterTypes)
+        {
+            this.parameterTypes = parameterTypes;
+            this.instanceTypes = ClassUtils.primitivesToWrappers(parameterTypes);
+        }
+
+        /**
+         * Tries to convert the given arguments to match the formal parameters types.
+         * <p>
+         * Throws a runtime exception if the conversion fails.
+         * 
+         * @param arguments the method actual arguments
+         * @return the passed arguments if none of them has to be converted, otherwise a new array of arguments where
+         *         some values have been converted to match the formal method parameter types
+         */
+        Object[] convert(Object[] arguments)
+        {
+            Object[] convertedArguments = arguments;
+            for (int i = 0; i < this.parameterTypes.length; i++) {
+                // Try to convert the argument if it's not null and if it doesn't match the parameter type.
+                if (arguments[i] != null && !this.instanceTypes[i].isInstance(arguments[i])) {
+                    if (convertedArguments == arguments) {
+                        convertedArguments = Arrays.copyOf(arguments, arguments.length);
+                    }
+                    convertedArguments[i] =
+                        MethodArgumentsUberspector.this.converterManager.convert(this.parameterTypes[i], arguments[i]);
+                }
             }
+            return convertedArguments;
         }
-        return convertedArguments;
     }
 
     /**
@@ -138,20 +188,34 @@ private class ConvertingVelMethod implements VelMethod
         /** The real method that performs the actual call. */
         private VelMethod innerMethod;
 
+        /** The conversions expected by the real method. */
+        private ConversionPlan plan;
+
         /**
          * Constructor.
          *
          * @param realMethod the real method to wrap
+         * @param plan the conversions expected by the real method
          */
-        public ConvertingVelMethod(VelMethod realMethod)
+        public ConvertingVelMethod(VelMethod realMethod, ConversionPlan plan)
         {
             this.innerMethod = realMethod;
+            this.plan = plan;
         }
 
         @Override
         public Object invoke(Object o, Object[] params) throws Exception
         {
-            return this.innerMethod.invoke(o, convertArguments(o, this.innerMethod.getMethodName(), params));
+            Object[] convertedArguments;
+            try {
+                convertedArguments = this.plan.convert(params);
+            } catch (Exception e) {
+                // The passed arguments can't be converted the same way as the ones the method was found with, look
+                // again for a method they can be converted to.
+                convertedArguments = convertArguments(o, this.innerMethod.getMethodName(), params);
+            }
+
+            return this.innerMethod.invoke(o, convertedArguments);
         }
 
         @Override
@@ -19,6 +19,7 @@
  */
 package org.xwiki.velocity.internal;
 
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Properties;
 
@@ -29,9 +30,13 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.test.jmock.AbstractMockingComponentTestCase;
 import org.xwiki.test.jmock.annotation.MockingRequirement;
+import org.xwiki.velocity.SharedVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
@@ -65,6 +70,18 @@ public void configure() throws Exception
         this.factory = getComponentManager().getInstance(VelocityContextFactory.class);
     }
 
+    private ComponentDescriptor<VelocityContextInitializer> createDescriptor(String hint,
+        ComponentInstantiationStrategy instantiationStrategy)
+    {
+        DefaultComponentDescriptor<VelocityContextInitializer> descriptor =
+            new DefaultComponentDescriptor<VelocityContextInitializer>();
+        descriptor.setRoleType(VelocityContextInitializer.class);
+        descriptor.setRoleHint(hint);
+        descriptor.setInstantiationStrategy(instantiationStrategy);
+
+        return descriptor;
+    }
+
     /**
      * Verify that we get different contexts when we call the createContext method but that
      * they contain the same references to the Velocity tools. Also tests that objects we
@@ -79,8 +96,11 @@ public void testCreateDifferentContext() throws Exception
         final ComponentManager mockComponentManager = getComponentManager().getInstance(ComponentManager.class);
         getMockery().checking(new Expectations() {{
             exactly(2).of(mockInitializer).initialize(with(any(VelocityContext.class)));
-            exactly(2). of(mockComponentManager).getInstanceList(VelocityContextInitializer.class);
-            will(returnValue(Arrays.asList(mockInitializer)));
+            // The initializers are looked up only once
+            oneOf(mockComponentManager).getComponentDescriptorList((Type) VelocityContextInitializer.class);
+            will(returnValue(Arrays.asList(createDescriptor("test", ComponentInstantiationStrategy.SINGLETON))));
+            oneOf(mockComponentManager).getInstance(VelocityContextInitializer.class, "test");
+            will(returnValue(mockInitializer));
         }});
 
         VelocityContext context1 = this.factory.createContext();
@@ -92,4 +112,57 @@ public void testCreateDifferentContext() throws Exception
         Assert.assertSame(context2.get("listtool"), context1.get("listtool"));
         Assert.assertNull(context2.get("param"));
     }
+
+    /**
+     * Verify that shared initializers are called once, per lookup initializers are looked up for each context and that
+     * the initializers are looked up again when they change.
+     */
+    @Test
+    public void testCreateContextWithSharedAndPerLookupInitializers() throws Exception
+    {
+        final SharedVelocityContextInitializer sharedInitializer = new SharedVelocityContextInitializer()
+        {
+            @Override
+            public void initialize(VelocityContext context)
+            {
+                context.put("shared", new Object());
+                context.put("overridden", "shared");
+            }
+        };
+        final VelocityContextInitializer perLookupInitializer = new VelocityContextInitializer()
+        {
+            @Override
+            public void initialize(VelocityContext context)
+            {
+                context.put("overridden", "perlookup");
+            }
+        };
+        final ComponentManager mockComponentManager = getComponentManager().getInstance(ComponentManager.class);
+        getMockery().checking(new Expectations() {{
+            exactly(2).of(mockComponentManager).getComponentDescriptorList((Type) VelocityContextInitializer.class);
+            will(returnValue(Arrays.asList(createDescriptor("shared", ComponentInstantiationStrategy.SINGLETON),
+                createDescriptor("perlookup", ComponentInstantiationStrategy.PER_LOOKUP))));
+            exactly(2).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "shared");
+            will(returnValue(sharedInitializer));
+            exactly(3).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "perlookup");
+            will(returnValue(perLookupInitializer));
+        }});
+
+        VelocityContext context1 = this.factory.createContext();
+        VelocityContext context2 = this.factory.createContext();
+
+        Assert.assertNotNull(context1.get("shared"));
+        Assert.assertSame(context1.get("shared"), context2.get("shared"));
+        Assert.assertNotNull(context1.get("listtool"));
+        // The entries of the other initializers take precedence over the shared ones
+        Assert.assertEquals("perlookup", context1.get("overridden"));
+        // The shared entries are not copied in each context
+        Assert.assertFalse(Arrays.asList(context1.getKeys()).contains("shared"));
+
+        ((DefaultVelocityContextFactory) this.factory).resetInitializers();
+
+        VelocityContext context3 = this.factory.createContext();
+
+        Assert.assertNotSame(context1.get("shared"), context3.get("shared"));
+    }
 }
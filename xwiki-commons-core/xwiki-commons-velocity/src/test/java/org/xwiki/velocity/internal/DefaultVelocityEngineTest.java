@@ -22,8 +22,16 @@
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.velocity.context.Context;
 import org.apache.velocity.util.introspection.SecureUberspector;
@@ -174,4 +182,185 @@ public void testConfigureMacrosToBeGlobal() throws Exception
         this.engine.evaluate(context, writer, "template2", "#mymacro");
         Assert.assertEquals("test", writer.toString());
     }
+
+    private String evaluate(Context context, String templateName, String source) throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, templateName, source);
+
+        return writer.toString();
+    }
+
+    @Test
+    public void testParsedTemplateCache() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.parsedtemplate.cache.size", "10");
+        this.engine.initialize(properties);
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+
+        Context context = new org.apache.velocity.VelocityContext();
+        context.put("name", "World");
+        Assert.assertEquals("Hello World", evaluate(context, "mytemplate", "Hello $name"));
+        context.put("name", "You");
+        Assert.assertEquals("Hello You", evaluate(context, "mytemplate", "Hello $name"));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getParseCount());
+        Assert.assertEquals(1, cache.size());
+
+        // Same template name but different content
+        Assert.assertEquals("Bye You", evaluate(context, "mytemplate", "Bye $name"));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+
+        evaluate(context, "othertemplate", "Hello $name");
+        Assert.assertEquals(3, cache.size());
+
+        this.engine.clearParsedTemplates("mytemplate");
+        Assert.assertEquals(1, cache.size());
+
+        this.engine.clearParsedTemplates(null);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testParsedTemplateCacheEviction() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.parsedtemplate.cache.size", "2");
+        properties.setProperty("xwiki.parsedtemplate.cache.weight", "10");
+        this.engine.initialize(properties);
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+
+        Context context = new org.apache.velocity.VelocityContext();
+        evaluate(context, "template1", "one");
+        evaluate(context, "template2", "two");
+        evaluate(context, "template1", "one");
+        evaluate(context, "template3", "three");
+
+        // The least recently used template has been evicted
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getHits());
+        evaluate(context, "template1", "one");
+        Assert.assertEquals(2, cache.getHits());
+
+        // Too big to be cached
+        evaluate(context, "template4", "four four four");
+        evaluate(context, "template4", "four four four");
+        Assert.assertEquals(2, cache.getHits());
+
+        // Evicts the other templates to stay under the maximum weight
+        evaluate(context, "template5", "fivefive");
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(8, cache.getWeight());
+    }
+
+    @Test
+    public void testParsedTemplateCacheWithMacros() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.parsedtemplate.cache.size", "10");
+        this.engine.initialize(properties);
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+
+        Context context = new org.apache.velocity.VelocityContext();
+        String source = "#if(false)#macro(mymacro)test#end#end#mymacro";
+        Assert.assertEquals("test", evaluate(context, "template1", source));
+
+        // The macros defined by a cached template are registered again in the template namespace
+        this.engine.clearMacroNamespace("template1");
+        Assert.assertEquals("test", evaluate(context, "template1", source));
+        Assert.assertEquals(1, cache.getHits());
+
+        // And only in the template namespace
+        Assert.assertEquals("#mymacro", evaluate(context, "template2", "#mymacro"));
+    }
+
+    @Test
+    public void testMacroNamespaceUsage() throws Exception
+    {
+        this.engine.initialize(new Properties());
+        Context context = new org.apache.velocity.VelocityContext();
+
+        this.engine.startedUsingMacroNamespace("namespace");
+        this.engine.startedUsingMacroNamespace("namespace");
+        Assert.assertEquals("", evaluate(context, "namespace", "#macro(mymacro)test#end"));
+
+        // The namespace is still in use
+        this.engine.stoppedUsingMacroNamespace("namespace");
+        Assert.assertEquals("test", evaluate(context, "namespace", "#mymacro"));
+
+        // The namespace is cleared when the last user stops using it
+        this.engine.stoppedUsingMacroNamespace("namespace");
+        Assert.assertEquals("#mymacro", evaluate(context, "namespace", "#mymacro"));
+
+        final Logger logger = getMockLogger();
+        getMockery().checking(new Expectations() {{
+            oneOf(logger).warn("Wrong usage count for namespace [{}]", "namespace");
+        }});
+
+        this.engine.stoppedUsingMacroNamespace("namespace");
+    }
+
+    @Test
+    public void testMacroNamespaceUsageFromSeveralThreads() throws Exception
+    {
+        this.engine.initialize(new Properties());
+
+        final String[] namespaces = new String[] {"namespace1", "namespace2"};
+        final Map<String, AtomicInteger> users = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger clears = new AtomicInteger();
+        final List<String> errors = new CopyOnWriteArrayList<String>();
+        for (String namespace : namespaces) {
+            users.put(namespace, new AtomicInteger());
+        }
+
+        // Check that a namespace is never cleared while it's used
+        final DefaultVelocityEngine countingEngine = new DefaultVelocityEngine()
+        {
+            @Override
+            public void clearMacroNamespace(String templateName)
+            {
+                clears.incrementAndGet();
+                if (users.get(templateName).get() != 0) {
+                    errors.add("Namespace [" + templateName + "] cleared while used");
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future< ? >> futures = new ArrayList<Future< ? >>();
+        for (int i = 0; i < 8; ++i) {
+            final String namespace = namespaces[i % namespaces.length];
+            futures.add(executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 10000; ++j) {
+                        countingEngine.startedUsingMacroNamespace(namespace);
+                        users.get(namespace).incrementAndGet();
+                        users.get(namespace).decrementAndGet();
+                        countingEngine.stoppedUsingMacroNamespace(namespace);
+                    }
+                }
+            }));
+        }
+        for (Future< ? > future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(Arrays.asList(), errors);
+        Assert.assertTrue(clears.get() > 0);
+
+        // All the usages have been counted down: the next stop clears the namespace
+        clears.set(0);
+        countingEngine.startedUsingMacroNamespace(namespaces[0]);
+        countingEngine.stoppedUsingMacroNamespace(namespaces[0]);
+        Assert.assertEquals(1, clears.get());
+    }
 }
@@ -68,4 +68,27 @@ public void testGetTemplates() throws Exception
         Assert.assertEquals(1, retrievedData.get("testmacronamespace").length);
         Assert.assertEquals("testmacro", retrievedData.get("testmacronamespace")[0]);
     }
+
+    @Test
+    public void testGetParsedTemplateStatistics() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        Properties properties = new Properties();
+        properties.setProperty("xwiki.parsedtemplate.cache.size", "10");
+        engine.initialize(properties);
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "content");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "content");
+
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheHits());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheMisses());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheSize());
+        Assert.assertEquals(1, jmxBean.getParseCount());
+        Assert.assertTrue(jmxBean.getParseTime() >= 0);
+
+        jmxBean.clearParsedTemplateCache();
+
+        Assert.assertEquals(0, jmxBean.getParsedTemplateCacheSize());
+    }
 }
@@ -21,6 +21,7 @@
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Properties;
 
@@ -276,4 +277,38 @@ public void testDeprecatedUberspector() throws Exception
         Assert.assertEquals(2, TestingUberspector.methodCalls);
         Assert.assertEquals(1, TestingUberspector.getterCalls);
     }
+
+    /*
+     * Tests that a deprecated usage is logged only once for each template location.
+     */
+    @Test
+    public void testDeprecatedUberspectorLogsOncePerLocation() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class
+                .getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class
+                .getCanonicalName()
+                + ","
+                + DeprecatedCheckUberspector.class.getCanonicalName());
+        this.engine.initialize(prop);
+
+        // Define expectations on the Logger
+        this.loggingVerification.become("on");
+        this.mockery.checking(new Expectations()
+        {{
+            oneOf(mockLogger).warn("Deprecated usage of method [org.xwiki.velocity.introspection.DeprecatedObject.foo] in mytemplate@1,10");
+            oneOf(mockLogger).warn("Deprecated usage of method [org.xwiki.velocity.introspection.DeprecatedObject.foo] in mytemplate@1,12");
+        }});
+
+        // The same location is evaluated several times, with a new context each time
+        for (String source : Arrays.asList("$dobject.foo()", "$dobject.foo()", "$dobject.foo() ", "x $dobject.foo()")) {
+            StringWriter writer = new StringWriter();
+            VelocityContext context = new org.apache.velocity.VelocityContext();
+            context.put("dobject", new DeprecatedObject());
+            this.engine.evaluate(context, writer, "mytemplate", new StringReader(source));
+
+            Assert.assertEquals(source.replace("$dobject.foo()", "foo"), writer.toString());
+        }
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.introspection;
+
+import java.io.StringWriter;
+import java.lang.annotation.ElementType;
+import java.util.Properties;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+import org.xwiki.velocity.VelocityEngine;
+
+/**
+ * Unit tests for {@link MethodArgumentsUberspector}.
+ *
+ * @version $Id$
+ */
+public class MethodArgumentsUberspectorTest extends AbstractComponentTestCase
+{
+    public static class TestObject
+    {
+        public String describe(ElementType type, int count)
+        {
+            return type.name() + count;
+        }
+
+        public String describe(ElementType type, String suffix)
+        {
+            return type.name() + '-' + suffix;
+        }
+    }
+
+    private VelocityEngine engine;
+
+    private VelocityContext context;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.engine = getComponentManager().getInstance(VelocityEngine.class);
+        this.engine.initialize(new Properties());
+
+        this.context = new VelocityContext();
+        this.context.put("obj", new TestObject());
+    }
+
+    private String evaluate(String source) throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(this.context, writer, "mytemplate", source);
+
+        return writer.toString();
+    }
+
+    @Test
+    public void testConvertArguments() throws Exception
+    {
+        Assert.assertEquals("FIELD-suffix", evaluate("$obj.describe('FIELD', 'suffix')"));
+    }
+
+    @Test
+    public void testConvertArgumentsInLoop() throws Exception
+    {
+        // The method found for the first iteration is reused for the next ones, with different argument values
+        Assert.assertEquals("FIELD1 METHOD2 TYPE3 ",
+            evaluate("#foreach($type in ['FIELD', 'METHOD', 'TYPE'])$obj.describe($type, $velocityCount) #end"));
+    }
+
+    @Test
+    public void testConvertArgumentsWhenMethodNotFound() throws Exception
+    {
+        Assert.assertEquals("$obj.describe('UNKNOWN', 1)", evaluate("$obj.describe('UNKNOWN', 1)"));
+    }
+}